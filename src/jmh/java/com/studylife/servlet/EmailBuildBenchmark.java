@@ -0,0 +1,52 @@
+package com.studylife.servlet;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.mail.internet.MimeMessage;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reminder e-mail construction without the SMTP round trip: building the MimeMessage, and
+ * building plus MIME-encoding it as Transport would before sending.
+ *
+ * mvn -Pjmh -DskipTests verify -Djmh.include=EmailBuildBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailBuildBenchmark {
+
+    private static final String BODY = "⏰ Reminder at 2030-05-01 09:30:\n\nHand in the statistics assignment";
+
+    private MailTransportPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // Never connects: the pool only opens a Transport when a message is sent.
+        pool = new MailTransportPool(new MailTransportPool.Settings(
+                "localhost", 3025, false, false, false, "noreply@test.local", "dummy", "noreply@test.local"),
+                1, 100, 60_000, 1_000);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    public MimeMessage build() throws Exception {
+        return EmailUtil.build(pool, "student42@example.com", "Reminder Alert", BODY);
+    }
+
+    @Benchmark
+    public MimeMessage buildAndEncode() throws Exception {
+        MimeMessage m = EmailUtil.build(pool, "student42@example.com", "Reminder Alert", BODY);
+        m.saveChanges();
+        m.writeTo(OutputStream.nullOutputStream());
+        return m;
+    }
+}
@@ -0,0 +1,201 @@
+package com.studylife.servlet;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.mindrot.jbcrypt.BCrypt;
+import org.openjdk.jmh.annotations.*;
+import testsupport.StubHttpServletRequest;
+import testsupport.StubHttpServletResponse;
+
+import javax.servlet.http.HttpServlet;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The database-backed endpoints end to end against in-memory H2 in MySQL mode: the servlets'
+ * decoding, SQL and response writing, without network or MySQL variance. Absolute numbers say
+ * little about production; compare them between builds.
+ *
+ * Login, registration and login locations go through {@link Db} and its {@link ConnectionPool},
+ * as in production. BCrypt runs at cost 4, the lowest it goes, and still takes a few milliseconds,
+ * so loginUnknownUser measures the lookup alone; the registration insert uses a ready-made hash.
+ *
+ * mvn -Pjmh -DskipTests verify -Djmh.include=JdbcPathBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JdbcPathBenchmark {
+
+    private static final int USERS = 100;
+    private static final String[] COUNTRIES = { "Ireland", "IE", "france", "Deutschland", "GBR", "中国" };
+    private static final String[] DB_PROPERTIES = { Db.ENV_DB_URL, Db.ENV_DB_USER, Db.ENV_DB_PASS, "BCRYPT_COST" };
+
+    private JdbcDataSource h2;
+    private ExpenseServlet expenses;
+    private ExpenseSummaryServlet summary;
+    private TodoSyncServlet todos;
+    private MoodServlet moods;
+    private LoginServlet login;
+    private SaveCountryServlet saveCountry;
+    private SaveCountryServlet.DbConf dbConf;
+    private String expenseBatch;
+    private String passwordHash;
+    private final AtomicLong registered = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        String url = "jdbc:h2:mem:jmh_" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE";
+        h2 = new JdbcDataSource();
+        h2.setURL(url);
+        h2.setUser("sa");
+        h2.setPassword("x");
+        new SchemaMigrator(h2).migrate();
+
+        System.setProperty(Db.ENV_DB_URL, url);
+        System.setProperty(Db.ENV_DB_USER, "sa");
+        System.setProperty(Db.ENV_DB_PASS, "x");
+        System.setProperty("BCRYPT_COST", "4");
+        login = new LoginServlet();
+        saveCountry = new SaveCountryServlet();
+        dbConf = saveCountry.getDbConf();
+
+        passwordHash = BCrypt.hashpw("pw", BCrypt.gensalt(4));
+        try (Connection c = h2.getConnection();
+             PreparedStatement ps = c.prepareStatement("INSERT INTO users(username, password) VALUES(?, ?)")) {
+            for (int u = 1; u <= USERS; u++) {
+                ps.setString(1, "user" + u);
+                ps.setString(2, passwordHash);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+
+        expenses = new ExpenseServlet() {
+            @Override protected DataSource dataSource() { return h2; }
+        };
+        summary = new ExpenseSummaryServlet() {
+            @Override protected DataSource dataSource() { return h2; }
+        };
+        todos = new TodoSyncServlet() {
+            @Override protected DataSource dataSource() { return h2; }
+        };
+        moods = new MoodServlet() {
+            @Override protected DataSource dataSource() { return h2; }
+        };
+
+        JSONArray batch = new JSONArray();
+        for (int i = 0; i < 20; i++) {
+            batch.put(new JSONObject().put("id", "e" + i).put("type", i == 0 ? "income" : "expense")
+                    .put("name", "Item " + i).put("category", "cat" + (i % 4))
+                    .put("amount", 5 + i).put("date", "2025-03-" + String.format("%02d", 1 + i)));
+        }
+        expenseBatch = batch.toString();
+        for (int u = 1; u <= USERS; u++) {
+            post(expenses, new JSONObject().put("userId", u).put("expenses", new JSONArray(expenseBatch)).toString());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Db.shutdown();
+        PasswordHasher.shutdownShared();
+        for (String key : DB_PROPERTIES) System.clearProperty(key);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int user;
+        long seq;
+
+        int nextUser() {
+            user = user % USERS + 1;
+            return user;
+        }
+    }
+
+    private static StubHttpServletResponse post(HttpServlet servlet, String body) throws Exception {
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        servlet.service(new StubHttpServletRequest(body), resp);
+        if (resp.getStatus() != 200) throw new IllegalStateException(resp.getBody());
+        return resp;
+    }
+
+    private static StubHttpServletRequest get(String... params) {
+        StubHttpServletRequest req = new StubHttpServletRequest("");
+        req.setMethod("GET");
+        for (int i = 0; i < params.length; i += 2) req.setParameter(params[i], params[i + 1]);
+        return req;
+    }
+
+    /** Re-sends a batch the server already has: lock, compare, no writes. */
+    @Benchmark
+    public StubHttpServletResponse expenseUpsertUnchanged(Cursor c) throws Exception {
+        return post(expenses, "{\"userId\":" + c.nextUser() + ",\"expenses\":" + expenseBatch + "}");
+    }
+
+    @Benchmark
+    public StubHttpServletResponse expenseInsert(Cursor c) throws Exception {
+        String record = "{\"id\":\"n" + (++c.seq) + "\",\"type\":\"expense\",\"name\":\"Coffee\","
+                + "\"category\":\"food\",\"amount\":3.2,\"date\":\"2025-04-02\"}";
+        return post(expenses, "{\"userId\":" + c.nextUser() + ",\"expenses\":[" + record + "]}");
+    }
+
+    @Benchmark
+    public StubHttpServletResponse expensePage(Cursor c) throws Exception {
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        expenses.doGet(get("userId", String.valueOf(c.nextUser()), "month", "2025-03", "limit", "20"), resp);
+        return resp;
+    }
+
+    @Benchmark
+    public StubHttpServletResponse expenseSummary(Cursor c) throws Exception {
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        summary.doGet(get("userId", String.valueOf(c.nextUser()), "month", "2025-03"), resp);
+        return resp;
+    }
+
+    @Benchmark
+    public StubHttpServletResponse todoSync(Cursor c) throws Exception {
+        String change = "{\"id\":\"t" + (c.seq++ % 50) + "\",\"date\":\"2025-03-03\",\"text\":\"Read chapter\",\"status\":\"todo\"}";
+        return post(todos, "{\"userId\":" + c.nextUser() + ",\"token\":0,\"changes\":[" + change + "]}");
+    }
+
+    @Benchmark
+    public StubHttpServletResponse moodSet(Cursor c) throws Exception {
+        String day = String.format("2025-%02d-%02d", 1 + (int) (c.seq % 12), 1 + (int) (c.seq++ % 28));
+        return post(moods, "{\"userId\":" + c.nextUser() + ",\"date\":\"" + day + "\",\"mood\":\"happy\"}");
+    }
+
+    /** SELECT by username on a pooled connection, then a cost-4 BCrypt check. */
+    @Benchmark
+    public Integer loginAuthenticate(Cursor c) throws Exception {
+        Integer id = login.authenticateFromDb("user" + c.nextUser(), "pw");
+        if (id == null) throw new IllegalStateException("login failed");
+        return id;
+    }
+
+    /** The same SELECT for a name that does not exist: no BCrypt, only the query. */
+    @Benchmark
+    public Integer loginUnknownUser(Cursor c) throws Exception {
+        return login.authenticateFromDb("nobody" + c.nextUser(), "pw");
+    }
+
+    @Benchmark
+    public void registerInsert() throws Exception {
+        RegisterServlet.insertUser(Db.dataSource(), "new" + registered.incrementAndGet(), passwordHash);
+    }
+
+    /** Dictionary lookup (a map hit after warm-up) plus the INSERT returning the generated key. */
+    @Benchmark
+    public long saveCountryInsert(Cursor c) throws Exception {
+        return saveCountry.insertLocation(c.nextUser(), COUNTRIES[(int) (c.seq++ % COUNTRIES.length)], dbConf);
+    }
+}
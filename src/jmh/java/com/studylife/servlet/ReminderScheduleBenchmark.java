@@ -0,0 +1,54 @@
+package com.studylife.servlet;
+
+import org.openjdk.jmh.annotations.*;
+import testsupport.StubHttpServletRequest;
+import testsupport.StubHttpServletResponse;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A reminder POST end to end without the journal: decode, date/time parsing, lead-time check
+ * and scheduling on the timing wheel. The scheduler is replaced every iteration so the backlog
+ * of accepted reminders does not keep growing.
+ *
+ * mvn -Pjmh -DskipTests verify -Djmh.include=ReminderScheduleBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class ReminderScheduleBenchmark {
+
+    private String body;
+    private SendReminderServlet servlet;
+
+    @Setup(Level.Trial)
+    public void setUpBody() {
+        LocalDate due = LocalDate.now(ZoneId.of("Europe/Dublin")).plusDays(30);
+        body = "{\"email\":\"student42@example.com\",\"date\":\"" + due + "\",\"time\":\"09:30\","
+                + "\"message\":\"Hand in the statistics assignment\"}";
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpServlet() {
+        servlet = new SendReminderServlet(new TimingWheelScheduler(100, 8, 4, Runnable::run),
+                ReminderDispatcher.unbatched((to, subject, text) -> { }, Runnable::run), null);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        servlet.destroy();
+    }
+
+    @Benchmark
+    public StubHttpServletResponse schedule() throws Exception {
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        servlet.doPost(new StubHttpServletRequest(body), resp);
+        if (resp.getStatus() != 200) throw new IllegalStateException(resp.getBody());
+        return resp;
+    }
+}
@@ -0,0 +1,85 @@
+package com.studylife.servlet;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.openjdk.jmh.annotations.*;
+import testsupport.StubHttpServletRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Body reading and JSON parsing as each servlet does it, JsonRequestDecoder against a full
+ * org.json parse of the same body.
+ *
+ * mvn -Pjmh -DskipTests verify -Djmh.include=RequestDecodeBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestDecodeBenchmark {
+
+    @Param({"login", "reminder", "country", "mood", "expense", "todo"})
+    public String servlet;
+
+    private String body;
+    private JsonRequestDecoder decoder;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (servlet) {
+            case "login":
+                body = new JSONObject().put("username", "student42").put("password", "correct horse battery").toString();
+                decoder = new JsonRequestDecoder("username", "password");
+                break;
+            case "reminder":
+                body = new JSONObject().put("email", "student42@example.com").put("date", "2030-05-01")
+                        .put("time", "09:30").put("message", "Hand in the statistics assignment").toString();
+                decoder = new JsonRequestDecoder("email", "date", "time", "message");
+                break;
+            case "country":
+                body = new JSONObject().put("userId", 42).put("country", "Ireland").toString();
+                decoder = new JsonRequestDecoder("userId", "country");
+                break;
+            case "mood":
+                body = new JSONObject().put("userId", 42).put("date", "2025-03-01").put("mood", "happy").toString();
+                decoder = new JsonRequestDecoder("userId", "date", "mood");
+                break;
+            case "expense": {
+                JSONArray batch = new JSONArray();
+                for (int i = 0; i < 50; i++) {
+                    batch.put(new JSONObject().put("id", "e" + i).put("type", "expense").put("name", "Lunch " + i)
+                            .put("category", "food").put("amount", 9.5 + i).put("date", "2025-03-03"));
+                }
+                body = new JSONObject().put("userId", 42).put("expenses", batch).toString();
+                decoder = new JsonRequestDecoder(256 * 1024, "userId", "expenses");
+                break;
+            }
+            case "todo": {
+                JSONArray changes = new JSONArray();
+                for (int i = 0; i < 50; i++) {
+                    changes.put(new JSONObject().put("id", "t" + i).put("date", "2025-03-03")
+                            .put("text", "Read chapter " + i).put("status", "todo"));
+                }
+                body = new JSONObject().put("userId", 42).put("token", 17).put("changes", changes).toString();
+                decoder = new JsonRequestDecoder(256 * 1024, "userId", "token", "changes");
+                break;
+            }
+            default:
+                throw new IllegalArgumentException(servlet);
+        }
+    }
+
+    @Benchmark
+    public String[] decoder() throws Exception {
+        return decoder.decode(new StubHttpServletRequest(body));
+    }
+
+    @Benchmark
+    public JSONObject jsonObject() throws Exception {
+        return new JSONObject(new JSONTokener(new StubHttpServletRequest(body).getReader()));
+    }
+}
@@ -0,0 +1,82 @@
+package com.studylife.servlet;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+import testsupport.StubHttpServletResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a response with JSONObject and writing it the way the servlets' writeJson does,
+ * for a one-line status reply and for a dashboard-sized document; and the same status reply,
+ * plus a constant error, through {@link JsonResponse}.
+ *
+ * mvn -Pjmh -DskipTests verify -Djmh.include=ResponseWriteBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseWriteBenchmark {
+
+    private static void writeJson(StubHttpServletResponse resp, int status, String json) {
+        resp.setStatus(status);
+        try (PrintWriter out = resp.getWriter()) {
+            out.print(json);
+        }
+    }
+
+    @Benchmark
+    public StubHttpServletResponse status() {
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        writeJson(resp, 200, new JSONObject().put("status", "success").put("message", "Login successful")
+                .put("userId", 42).put("username", "student42").toString());
+        return resp;
+    }
+
+    private static final byte[] INVALID = JsonResponse.message("fail", "Invalid credentials.");
+
+    @Benchmark
+    public StubHttpServletResponse statusStreamed() throws IOException {
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        JsonResponse.object().field("status", "success").field("message", "Login successful")
+                .field("userId", 42).field("username", "student42").send(resp, 200);
+        return resp;
+    }
+
+    @Benchmark
+    public StubHttpServletResponse constantError() throws IOException {
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        JsonResponse.send(resp, 401, INVALID);
+        return resp;
+    }
+
+    @Benchmark
+    public StubHttpServletResponse dashboard() {
+        JSONArray top = new JSONArray();
+        for (int i = 0; i < 5; i++) {
+            top.put(new JSONObject().put("category", "category" + i).put("amount", BigDecimal.valueOf(12_345 - i * 1_000, 2)));
+        }
+        JSONObject distribution = new JSONObject();
+        for (String mood : new String[]{"happy", "calm", "sad", "angry", "tired"}) distribution.put(mood, 12);
+        JSONObject doc = new JSONObject()
+                .put("status", "success")
+                .put("expenses", new JSONObject().put("month", "2025-03")
+                        .put("income", BigDecimal.valueOf(30_000, 2)).put("expense", BigDecimal.valueOf(21_75, 2))
+                        .put("balance", BigDecimal.valueOf(27_825, 2)).put("topCategories", top))
+                .put("todos", new JSONObject().put("date", "2025-03-03").put("todo", 3).put("progress", 1)
+                        .put("done", 4).put("open", 7))
+                .put("moods", new JSONObject().put("today", "happy")
+                        .put("stats", new JSONObject().put("distribution", distribution).put("streak", 6)));
+
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        writeJson(resp, 200, doc.toString());
+        return resp;
+    }
+}
@@ -0,0 +1,77 @@
+package com.studylife.servlet;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedule + cancel cost with a large backlog of far-future reminders already pending,
+ * ScheduledThreadPoolExecutor (the old default) against TimingWheelScheduler.
+ *
+ * mvn -Pjmh -DskipTests verify -Djmh.include=TimingWheelBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class TimingWheelBenchmark {
+
+    private static final Runnable NOOP = () -> { };
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+
+    @Param({"stpe", "wheel"})
+    public String impl;
+
+    @Param({"10000", "1000000"})
+    public int pending;
+
+    private ScheduledExecutorService scheduler;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("wheel".equals(impl)) {
+            scheduler = new TimingWheelScheduler(100, 8, 4, Runnable::run);
+        } else {
+            ScheduledThreadPoolExecutor stpe = new ScheduledThreadPoolExecutor(5);
+            stpe.setRemoveOnCancelPolicy(true);
+            scheduler = stpe;
+        }
+        SplittableRandom rnd = new SplittableRandom(42);
+        for (int i = 0; i < pending; i++) {
+            scheduler.schedule(NOOP, DAY_MS + rnd.nextLong(30 * DAY_MS), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @State(Scope.Thread)
+    public static class Delays {
+        final SplittableRandom rnd = new SplittableRandom();
+
+        long next() {
+            return DAY_MS + rnd.nextLong(30 * DAY_MS);
+        }
+    }
+
+    @Benchmark
+    public boolean scheduleThenCancel(Delays d) {
+        ScheduledFuture<?> f = scheduler.schedule(NOOP, d.next(), TimeUnit.MILLISECONDS);
+        return f.cancel(false);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean scheduleThenCancel_4threads(Delays d) {
+        ScheduledFuture<?> f = scheduler.schedule(NOOP, d.next(), TimeUnit.MILLISECONDS);
+        return f.cancel(false);
+    }
+}
@@ -0,0 +1,400 @@
+package com.studylife.servlet;
+
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetup;
+import org.apache.catalina.Context;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.startup.Constants;
+import org.apache.catalina.startup.ContextConfig;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.scan.StandardJarScanner;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end load test of the web app as deployed: web.xml in an embedded Tomcat, DB_URL on
+ * in-memory H2 in MySQL mode and the SMTP relay on a local GreenMail server, so the whole stack
+ * (filters, IoLane, connection pool, BCrypt, batching, SMTP) runs without MySQL or a mail account.
+ *
+ * After seeding {@code loadtest.users} accounts, {@code loadtest.threads} closed-loop clients send
+ * requests drawn from {@code loadtest.mix} (weights per endpoint) for a warm-up and a measured
+ * period. Throughput, p50/p99/p99.9 latency and error rates per endpoint are printed and written
+ * as JSON to {@code loadtest.result}, and the server's /api/metrics scrape beside it. Any 4xx/5xx
+ * or transport failure counts as an error.
+ *
+ * mvn -Ploadtest -DskipTests verify -Dloadtest.threads=64 -Dloadtest.mix=login=70,register=30
+ *
+ * Rate limits are raised far above what the run can reach; reminders are due a minute or two
+ * after they are posted, so those accepted early in the run are delivered to GreenMail during it.
+ */
+public final class LoadTest {
+
+    private static final String[] ENDPOINTS = {"login", "register", "save-country", "send-reminder"};
+    private static final String[] COUNTRIES = {"Ireland", "IE", "China", "CN", "United Kingdom", "France", "Germany", "India"};
+    private static final ZoneId ZONE_ID = ZoneId.of("Europe/Dublin");
+    private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm");
+    private static final String MAIL_ACCOUNT = "noreply@loadtest.local";
+
+    /** Latencies and outcomes seen by one client thread for one endpoint. */
+    private static final class Stats {
+        long[] nanos = new long[1024];
+        int count;
+        long errors;
+        final Map<Integer, Long> statuses = new TreeMap<>();
+
+        void record(long latency, int status) {
+            if (count == nanos.length) nanos = Arrays.copyOf(nanos, count * 2);
+            nanos[count++] = latency;
+            if (status < 200 || status >= 400) errors++;
+            statuses.merge(status, 1L, Long::sum);
+        }
+
+        void add(Stats o) {
+            if (count + o.count > nanos.length) nanos = Arrays.copyOf(nanos, count + o.count);
+            System.arraycopy(o.nanos, 0, nanos, count, o.count);
+            count += o.count;
+            errors += o.errors;
+            o.statuses.forEach((k, v) -> statuses.merge(k, v, Long::sum));
+        }
+
+        /** Nearest-rank percentile in milliseconds; {@link #nanos} must be sorted. */
+        double percentileMs(double q) {
+            if (count == 0) return 0;
+            int rank = (int) Math.ceil(q * count);
+            return nanos[Math.max(0, rank - 1)] / 1e6;
+        }
+    }
+
+    private static final class Account {
+        final String username;
+        final String password;
+        final int userId;
+
+        Account(String username, String password, int userId) {
+            this.username = username;
+            this.password = password;
+            this.userId = userId;
+        }
+    }
+
+    private final int threads = Integer.getInteger("loadtest.threads", 32);
+    private final int warmupSeconds = Integer.getInteger("loadtest.warmup", 10);
+    private final int durationSeconds = Integer.getInteger("loadtest.duration", 60);
+    private final int users = Integer.getInteger("loadtest.users", 200);
+    private final String mix = System.getProperty("loadtest.mix", "login=40,save-country=30,send-reminder=20,register=10");
+    private final String[] mixNames;
+    private final int[] mixCumulative;
+    private final Path result = Paths.get(System.getProperty("loadtest.result", "target/loadtest-result.json"));
+    private final Path webXml = Paths.get(System.getProperty("loadtest.webxml", "src/main/webapp/WEB-INF/web.xml"));
+
+    private final String run = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong registrations = new AtomicLong();
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private URI base;
+    private List<Account> accounts;
+
+    private LoadTest() {
+        Map<String, Integer> weights = parseMix(mix);
+        mixNames = weights.keySet().toArray(new String[0]);
+        mixCumulative = new int[mixNames.length];
+        int sum = 0;
+        for (int i = 0; i < mixNames.length; i++) {
+            sum += weights.get(mixNames[i]);
+            mixCumulative[i] = sum;
+        }
+    }
+
+    static Map<String, Integer> parseMix(String spec) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String part : spec.split(",")) {
+            if (part.trim().isEmpty()) continue;
+            String[] kv = part.split("=", 2);
+            String name = kv[0].trim();
+            if (!Arrays.asList(ENDPOINTS).contains(name)) {
+                throw new IllegalArgumentException("unknown endpoint in loadtest.mix: " + name
+                        + " (expected one of " + String.join(", ", ENDPOINTS) + ")");
+            }
+            int w = kv.length == 2 ? Integer.parseInt(kv[1].trim()) : 1;
+            if (w > 0) weights.put(name, w);
+        }
+        if (weights.isEmpty()) throw new IllegalArgumentException("loadtest.mix selects no endpoint");
+        return weights;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadTest().run();
+    }
+
+    private void run() throws Exception {
+        int smtpPort = freePort();
+        GreenMail smtp = new GreenMail(new ServerSetup(smtpPort, "127.0.0.1", ServerSetup.PROTOCOL_SMTP));
+        smtp.start();
+        smtp.setUser(MAIL_ACCOUNT, MAIL_ACCOUNT, "loadtest");
+
+        Path work = Files.createTempDirectory("studylife-loadtest");
+        configure(smtpPort, work);
+        Tomcat tomcat = startTomcat(work);
+        try {
+            base = URI.create("http://127.0.0.1:" + tomcat.getConnector().getLocalPort());
+            System.out.printf("[LoadTest] app on %s, SMTP on %d, %d threads, mix %s%n",
+                    base, smtpPort, threads, mix);
+
+            long t0 = System.nanoTime();
+            accounts = seed();
+            System.out.printf("[LoadTest] seeded %d accounts in %d ms%n",
+                    accounts.size(), (System.nanoTime() - t0) / 1_000_000);
+
+            Map<String, Stats> totals = drive();
+            report(totals, smtp.getReceivedMessages().length);
+            saveServerMetrics();
+        } finally {
+            tomcat.stop();
+            tomcat.destroy();
+            smtp.stop();
+        }
+    }
+
+    /** App settings as system properties, which Config prefers over the environment. */
+    private static void configure(int smtpPort, Path work) {
+        setIfAbsent("DB_URL", "jdbc:h2:mem:loadtest;MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE");
+        setIfAbsent("DB_USER", "sa");
+        setIfAbsent("DB_PASS", "loadtest");
+        setIfAbsent("MAIL_SMTP_HOST", "127.0.0.1");
+        setIfAbsent("MAIL_SMTP_PORT", String.valueOf(smtpPort));
+        setIfAbsent("MAIL_STARTTLS", "false");
+        setIfAbsent("MAIL_USERNAME", MAIL_ACCOUNT);
+        setIfAbsent("MAIL_PASSWORD", "loadtest");
+        setIfAbsent("MAIL_FROM", MAIL_ACCOUNT);
+        setIfAbsent("REMINDER_MIN_LEAD_MINUTES", "0");
+        setIfAbsent("REMINDER_JOURNAL_DIR", work.resolve("journal").toString());
+        // Every client comes from 127.0.0.1 and reuses a few hundred usernames.
+        setIfAbsent("RATE_LIMIT_IP_PER_MINUTE", "100000000");
+        setIfAbsent("RATE_LIMIT_IP_BURST", "1000000");
+        setIfAbsent("RATE_LIMIT_USER_PER_MINUTE", "100000000");
+        setIfAbsent("RATE_LIMIT_USER_BURST", "1000000");
+    }
+
+    private static void setIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) System.setProperty(key, value);
+    }
+
+    private Tomcat startTomcat(Path work) throws Exception {
+        Tomcat tomcat = new Tomcat();
+        tomcat.setBaseDir(work.toString());
+        tomcat.setPort(0);
+        tomcat.getConnector().setProperty("maxThreads", String.valueOf(Math.max(200, threads * 2)));
+
+        // The real web.xml against an empty document root: the servlets come from target/classes,
+        // not from the jars checked into WEB-INF/lib, and there is no JSP engine to configure.
+        tomcat.setAddDefaultWebXmlToWebapp(false);
+        ContextConfig config = new ContextConfig();
+        config.setDefaultWebXml(Constants.NoDefaultWebXml);
+        Path docBase = Files.createDirectories(work.resolve("webapp"));
+        Context ctx = tomcat.addWebapp(tomcat.getHost(), "", docBase.toString(), config);
+        ((StandardContext) ctx).setAltDDName(webXml.toAbsolutePath().toString());
+        ((StandardJarScanner) ctx.getJarScanner()).setScanClassPath(false);
+
+        tomcat.start();
+        if (!ctx.getState().isAvailable()) throw new IllegalStateException("web application failed to start");
+        return tomcat;
+    }
+
+    private List<Account> seed() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Account>> futures = new ArrayList<>();
+            for (int i = 0; i < users; i++) {
+                String name = "lt_" + run + "_" + i;
+                String password = "pw-" + i + "-" + run;
+                futures.add(pool.submit(() -> {
+                    HttpResponse<String> r = post("register", credentials(name, password));
+                    if (r.statusCode() != 200 || !"success".equals(new JSONObject(r.body()).optString("status"))) {
+                        throw new IllegalStateException("register " + name + ": " + r.statusCode() + " " + r.body());
+                    }
+                    r = post("login", credentials(name, password));
+                    if (r.statusCode() != 200) throw new IllegalStateException("login " + name + ": " + r.body());
+                    return new Account(name, password, new JSONObject(r.body()).getInt("userId"));
+                }));
+            }
+            List<Account> out = new ArrayList<>();
+            for (Future<Account> f : futures) out.add(f.get());
+            return out;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Map<String, Stats> drive() throws Exception {
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Map<String, Stats>>> clients = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            clients.add(pool.submit(() -> client(new SplittableRandom(seed), measureFrom, end)));
+        }
+        Map<String, Stats> totals = new LinkedHashMap<>();
+        for (String name : mixNames) totals.put(name, new Stats());
+        for (Future<Map<String, Stats>> f : clients) f.get().forEach((k, v) -> totals.get(k).add(v));
+        pool.shutdown();
+        return totals;
+    }
+
+    /** One closed-loop client: a new request as soon as the previous response has arrived. */
+    private Map<String, Stats> client(SplittableRandom rnd, long measureFrom, long end) {
+        Map<String, Stats> mine = new LinkedHashMap<>();
+        for (String name : mixNames) mine.put(name, new Stats());
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            String endpoint = pick(rnd);
+            String body = body(endpoint, rnd);
+            int status;
+            try {
+                status = post(endpoint, body).statusCode();
+            } catch (IOException e) {
+                status = -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (now >= measureFrom) mine.get(endpoint).record(System.nanoTime() - now, status);
+        }
+        return mine;
+    }
+
+    private String pick(SplittableRandom rnd) {
+        int r = rnd.nextInt(mixCumulative[mixCumulative.length - 1]);
+        for (int i = 0; i < mixCumulative.length; i++) if (r < mixCumulative[i]) return mixNames[i];
+        throw new AssertionError();
+    }
+
+    private String body(String endpoint, SplittableRandom rnd) {
+        Account a = accounts.get(rnd.nextInt(accounts.size()));
+        switch (endpoint) {
+            case "login":
+                return credentials(a.username, a.password);
+            case "register":
+                return credentials("lt_" + run + "_new_" + registrations.incrementAndGet(), "pw-" + run);
+            case "save-country":
+                return new JSONObject().put("userId", a.userId)
+                        .put("country", COUNTRIES[rnd.nextInt(COUNTRIES.length)]).toString();
+            case "send-reminder": {
+                ZonedDateTime due = ZonedDateTime.now(ZONE_ID).plusMinutes(1 + rnd.nextInt(2));
+                return new JSONObject().put("email", a.username + "@loadtest.local")
+                        .put("date", due.toLocalDate().toString())
+                        .put("time", TIME_FMT.format(due))
+                        .put("message", "Load test reminder for user " + a.userId).toString();
+            }
+            default:
+                throw new IllegalArgumentException(endpoint);
+        }
+    }
+
+    private static String credentials(String username, String password) {
+        return new JSONObject().put("username", username).put("password", password).toString();
+    }
+
+    private HttpResponse<String> post(String endpoint, String json) throws IOException, InterruptedException {
+        HttpRequest req = HttpRequest.newBuilder(base.resolve("/api/" + endpoint))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
+                .build();
+        return http.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+
+    private void report(Map<String, Stats> totals, int mailsDelivered) throws IOException {
+        JSONArray endpoints = new JSONArray();
+        System.out.printf("%n%-14s %9s %9s %8s %7s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "req/s", "errors", "err%", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        long allRequests = 0;
+        long allErrors = 0;
+        for (Map.Entry<String, Stats> e : totals.entrySet()) {
+            Stats s = e.getValue();
+            Arrays.sort(s.nanos, 0, s.count);
+            double rps = s.count / (double) durationSeconds;
+            double errorRate = s.count == 0 ? 0 : (double) s.errors / s.count;
+            double max = s.count == 0 ? 0 : s.nanos[s.count - 1] / 1e6;
+            System.out.printf("%-14s %9d %9.1f %8d %6.2f%% %9.2f %9.2f %9.2f %9.2f%n",
+                    e.getKey(), s.count, rps, s.errors, errorRate * 100,
+                    s.percentileMs(0.50), s.percentileMs(0.99), s.percentileMs(0.999), max);
+            allRequests += s.count;
+            allErrors += s.errors;
+
+            JSONObject statuses = new JSONObject();
+            s.statuses.forEach((k, v) -> statuses.put(String.valueOf(k), v));
+            endpoints.put(new JSONObject()
+                    .put("endpoint", "/api/" + e.getKey())
+                    .put("requests", s.count)
+                    .put("throughput", rps)
+                    .put("errors", s.errors)
+                    .put("errorRate", errorRate)
+                    .put("p50Ms", s.percentileMs(0.50))
+                    .put("p99Ms", s.percentileMs(0.99))
+                    .put("p999Ms", s.percentileMs(0.999))
+                    .put("maxMs", max)
+                    .put("statuses", statuses));
+        }
+        System.out.printf("%-14s %9d %9.1f %8d%n", "total", allRequests, allRequests / (double) durationSeconds, allErrors);
+        System.out.printf("reminder mails delivered to GreenMail during the run: %d%n", mailsDelivered);
+
+        JSONObject doc = new JSONObject()
+                .put("threads", threads)
+                .put("warmupSeconds", warmupSeconds)
+                .put("durationSeconds", durationSeconds)
+                .put("users", users)
+                .put("mix", mix)
+                .put("endpoints", endpoints)
+                .put("mailsDelivered", mailsDelivered);
+        Files.createDirectories(result.toAbsolutePath().getParent());
+        Files.write(result, doc.toString(2).getBytes(StandardCharsets.UTF_8));
+        System.out.println("[LoadTest] results written to " + result);
+    }
+
+    /** The server's own view of the run, next to the result file. */
+    private void saveServerMetrics() throws IOException, InterruptedException {
+        HttpResponse<String> r = http.send(HttpRequest.newBuilder(base.resolve("/api/metrics")).GET().build(),
+                HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        Path file = result.resolveSibling("loadtest-metrics.txt");
+        Files.write(file, r.body().getBytes(StandardCharsets.UTF_8));
+        System.out.println("[LoadTest] server metrics written to " + file);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.studylife.servlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe Bloom filter over strings. Bits are set with CAS so concurrent {@link #put} calls never
+ * lose updates; readers need no locking. False positives are possible, false negatives are not.
+ */
+final class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashes;
+
+    BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        long n = Math.max(1, expectedInsertions);
+        double p = Math.min(0.5, Math.max(1e-9, falsePositiveRate));
+        long m = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, (m + 63) / 64);
+        this.words = new AtomicLongArray(Math.max(1, words));
+        this.bitCount = (long) this.words.length() * 64;
+        this.hashes = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+    }
+
+    void put(String key) {
+        long h = hash64(key);
+        int h1 = (int) h, h2 = (int) (h >>> 32);
+        for (int i = 1; i <= hashes; i++) {
+            long bit = index(h1 + i * h2);
+            int w = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long cur;
+            do {
+                cur = words.get(w);
+                if ((cur & mask) != 0) break;
+            } while (!words.compareAndSet(w, cur, cur | mask));
+        }
+    }
+
+    boolean mightContain(String key) {
+        long h = hash64(key);
+        int h1 = (int) h, h2 = (int) (h >>> 32);
+        for (int i = 1; i <= hashes; i++) {
+            long bit = index(h1 + i * h2);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    long bitSize() { return bitCount; }
+
+    int hashCount() { return hashes; }
+
+    private long index(int combined) {
+        return (combined & 0x7fffffffL) % bitCount;
+    }
+
+    /** 64-bit FNV-1a followed by the murmur3 finaliser for better bit spread. */
+    private static long hash64(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
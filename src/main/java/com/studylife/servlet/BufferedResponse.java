@@ -0,0 +1,74 @@
+package com.studylife.servlet;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Holds status and body in memory until {@link #commitTo} copies them to the real response.
+ * Used by {@link IoLane} so a handler that finishes after the async timeout cannot write over
+ * the timeout response. Headers go straight to the wrapped response.
+ */
+final class BufferedResponse extends HttpServletResponseWrapper {
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+    private int status = SC_OK;
+    private PrintWriter writer;
+    private ServletOutputStream stream;
+
+    BufferedResponse(HttpServletResponse response) {
+        super(response);
+    }
+
+    @Override public void setStatus(int sc) { this.status = sc; }
+    @Override @Deprecated public void setStatus(int sc, String sm) { this.status = sc; }
+    @Override public int getStatus() { return status; }
+
+    @Override public void sendError(int sc) { this.status = sc; }
+    @Override public void sendError(int sc, String msg) { this.status = sc; }
+
+    @Override public void setContentLength(int len) { /* computed on commit */ }
+    @Override public void setContentLengthLong(long len) { /* computed on commit */ }
+    @Override public void flushBuffer() { /* nothing leaves before commitTo */ }
+    @Override public boolean isCommitted() { return false; }
+    @Override public void resetBuffer() { body.reset(); }
+
+    @Override
+    public PrintWriter getWriter() {
+        if (writer == null) {
+            String enc = getCharacterEncoding();
+            Charset cs = enc == null ? StandardCharsets.UTF_8 : Charset.forName(enc);
+            writer = new PrintWriter(new OutputStreamWriter(body, cs), false);
+        }
+        return writer;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        if (stream == null) {
+            stream = new ServletOutputStream() {
+                @Override public boolean isReady() { return true; }
+                @Override public void setWriteListener(WriteListener l) { throw new UnsupportedOperationException(); }
+                @Override public void write(int b) { body.write(b); }
+                @Override public void write(byte[] b, int off, int len) { body.write(b, off, len); }
+            };
+        }
+        return stream;
+    }
+
+    void commitTo(HttpServletResponse target) throws IOException {
+        if (writer != null) writer.flush();
+        target.setStatus(status);
+        target.setContentLength(body.size());
+        ServletOutputStream out = target.getOutputStream();
+        body.writeTo(out);
+        out.flush();
+    }
+}
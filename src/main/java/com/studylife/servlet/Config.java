@@ -0,0 +1,48 @@
+package com.studylife.servlet;
+
+/**
+ * Central lookup for runtime settings.
+ * A JVM system property wins over the environment variable of the same name,
+ * so tests and embedded runs can override values without touching the process env.
+ */
+final class Config {
+
+    private Config() {}
+
+    static String get(String key) {
+        String v = System.getProperty(key);
+        if (v == null || v.trim().isEmpty()) v = System.getenv(key);
+        return (v == null || v.trim().isEmpty()) ? null : v.trim();
+    }
+
+    static String get(String key, String defVal) {
+        String v = get(key);
+        return v == null ? defVal : v;
+    }
+
+    static int getInt(String key, int defVal) {
+        String v = get(key);
+        if (v == null) return defVal;
+        try {
+            return Integer.parseInt(v);
+        } catch (NumberFormatException ignore) {
+            return defVal;
+        }
+    }
+
+    static long getLong(String key, long defVal) {
+        String v = get(key);
+        if (v == null) return defVal;
+        try {
+            return Long.parseLong(v);
+        } catch (NumberFormatException ignore) {
+            return defVal;
+        }
+    }
+
+    static boolean getBool(String key, boolean defVal) {
+        String v = get(key);
+        if (v == null) return defVal;
+        return "1".equals(v) || "true".equalsIgnoreCase(v) || "yes".equalsIgnoreCase(v);
+    }
+}
@@ -0,0 +1,385 @@
+package com.studylife.servlet;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Small bounded JDBC connection pool used when the container does not provide
+ * {@code jdbc/StudyLife} through JNDI.
+ *
+ * - at most {@code maxSize} physical connections, borrowers wait up to {@code borrowTimeoutMs}
+ * - idle connections are checked with {@link Connection#isValid(int)} before being handed out
+ * - connections held longer than {@code leakThresholdMs} are logged once; the borrowing stack is
+ *   only captured with {@code leakTrace} (DB_POOL_LEAK_TRACE=true), as it costs a stack walk per borrow
+ * - borrow wait times are accumulated per pool and exposed through {@link #stats()}
+ */
+final class ConnectionPool implements DataSource, AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(ConnectionPool.class.getName());
+
+    static final class Settings {
+        final int maxSize;
+        final long borrowTimeoutMs;
+        final int validationTimeoutSec;
+        final long leakThresholdMs;
+        final long idleTimeoutMs;
+        final boolean leakTrace;
+
+        Settings(int maxSize, long borrowTimeoutMs, int validationTimeoutSec, long leakThresholdMs, long idleTimeoutMs) {
+            this(maxSize, borrowTimeoutMs, validationTimeoutSec, leakThresholdMs, idleTimeoutMs, false);
+        }
+
+        Settings(int maxSize, long borrowTimeoutMs, int validationTimeoutSec, long leakThresholdMs, long idleTimeoutMs,
+                 boolean leakTrace) {
+            this.leakTrace = leakTrace;
+            this.maxSize = Math.max(1, maxSize);
+            this.borrowTimeoutMs = Math.max(0, borrowTimeoutMs);
+            this.validationTimeoutSec = Math.max(1, validationTimeoutSec);
+            this.leakThresholdMs = Math.max(0, leakThresholdMs);
+            this.idleTimeoutMs = Math.max(0, idleTimeoutMs);
+        }
+
+        static Settings fromConfig() {
+            return new Settings(
+                    Config.getInt("DB_POOL_MAX_SIZE", 10),
+                    Config.getLong("DB_POOL_TIMEOUT_MS", 5000),
+                    Config.getInt("DB_POOL_VALIDATION_TIMEOUT_S", 2),
+                    Config.getLong("DB_POOL_LEAK_THRESHOLD_MS", 30000),
+                    Config.getLong("DB_POOL_IDLE_TIMEOUT_MS", 600000),
+                    Config.getBool("DB_POOL_LEAK_TRACE", false));
+        }
+    }
+
+    /** Point-in-time view of a pool's counters. */
+    static final class Stats {
+        final String name;
+        final int maxSize, active, idle;
+        final long created, borrows, timeouts, validationFailures, leaks;
+        final long waitNanosTotal, waitNanosMax;
+
+        Stats(String name, int maxSize, int active, int idle, long created, long borrows, long timeouts,
+              long validationFailures, long leaks, long waitNanosTotal, long waitNanosMax) {
+            this.name = name;
+            this.maxSize = maxSize;
+            this.active = active;
+            this.idle = idle;
+            this.created = created;
+            this.borrows = borrows;
+            this.timeouts = timeouts;
+            this.validationFailures = validationFailures;
+            this.leaks = leaks;
+            this.waitNanosTotal = waitNanosTotal;
+            this.waitNanosMax = waitNanosMax;
+        }
+
+        double meanWaitMillis() {
+            return borrows == 0 ? 0.0 : (waitNanosTotal / (double) borrows) / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("pool=%s active=%d idle=%d max=%d created=%d borrows=%d timeouts=%d " +
+                            "invalid=%d leaks=%d waitMeanMs=%.3f waitMaxMs=%.3f",
+                    name, active, idle, maxSize, created, borrows, timeouts, validationFailures, leaks,
+                    meanWaitMillis(), waitNanosMax / 1_000_000.0);
+        }
+    }
+
+    private final String name;
+    private final String url, user, pass;
+    private final Settings settings;
+
+    private final Semaphore permits;
+    private final BlockingDeque<Entry> idle = new LinkedBlockingDeque<>();
+    private final Map<Entry, Boolean> inUse = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    private final AtomicLong created = new AtomicLong();
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+    private final LongAdder waitNanosTotal = new LongAdder();
+    private final LongAccumulator waitNanosMax = new LongAccumulator(Math::max, 0L);
+
+    ConnectionPool(String name, String url, String user, String pass, Settings settings) {
+        this.name = name;
+        this.url = url;
+        this.user = user;
+        this.pass = pass;
+        this.settings = settings;
+        this.permits = new Semaphore(settings.maxSize, true);
+
+        if (url != null && url.startsWith("jdbc:mysql:")) {
+            // Servlet containers do not always let DriverManager see drivers in WEB-INF/lib.
+            try {
+                Class.forName("com.mysql.cj.jdbc.Driver");
+            } catch (ClassNotFoundException e) {
+                LOG.log(Level.WARNING, "MySQL driver not on classpath", e);
+            }
+        }
+
+        long period = Math.max(1000L, Math.min(
+                settings.leakThresholdMs > 0 ? settings.leakThresholdMs / 2 : Long.MAX_VALUE,
+                settings.idleTimeoutMs > 0 ? settings.idleTimeoutMs / 2 : 30000L));
+        // One thread per pool, stopped by close(), so an undeployed webapp leaves nothing running.
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper-" + name);
+            t.setDaemon(true);
+            return t;
+        });
+        housekeeper.scheduleWithFixedDelay(this::runHousekeeping, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    String name() { return name; }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) throw new SQLException("Connection pool " + name + " is closed");
+
+        final long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(settings.borrowTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        if (!acquired) {
+            timeouts.increment();
+            throw new SQLTransientConnectionException("Connection pool " + name + " exhausted: no connection within "
+                    + settings.borrowTimeoutMs + "ms (max " + settings.maxSize + ")");
+        }
+
+        try {
+            Entry e = takeIdle();
+            if (e == null) e = open();
+            long waited = System.nanoTime() - start;
+            borrows.increment();
+            waitNanosTotal.add(waited);
+            waitNanosMax.accumulate(waited);
+            Metrics.shared().recordDbAcquire(waited);
+
+            e.borrowedAtNanos = System.nanoTime();
+            e.borrowSite = settings.leakTrace && settings.leakThresholdMs > 0
+                    ? new Throwable("Connection borrowed here") : null;
+            e.leakReported = false;
+            inUse.put(e, Boolean.TRUE);
+            return e.newHandle();
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    private Entry takeIdle() {
+        Entry e;
+        while ((e = idle.pollFirst()) != null) {
+            if (isUsable(e)) return e;
+            validationFailures.increment();
+            closeQuietly(e.physical);
+        }
+        return null;
+    }
+
+    private boolean isUsable(Entry e) {
+        try {
+            return !e.physical.isClosed() && e.physical.isValid(settings.validationTimeoutSec);
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    private Entry open() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, user, pass);
+        created.incrementAndGet();
+        return new Entry(physical);
+    }
+
+    private void release(Entry e) {
+        inUse.remove(e);
+        boolean reusable = !closed;
+        if (reusable) {
+            try {
+                if (e.physical.isClosed()) {
+                    reusable = false;
+                } else if (!e.physical.getAutoCommit()) {
+                    e.physical.rollback();
+                    e.physical.setAutoCommit(true);
+                }
+            } catch (SQLException ex) {
+                reusable = false;
+            }
+        }
+        if (reusable) {
+            e.lastReturnedAtNanos = System.nanoTime();
+            idle.offerFirst(e);
+        } else {
+            closeQuietly(e.physical);
+        }
+        permits.release();
+    }
+
+    /** Reports leaked connections and retires connections idle longer than the idle timeout. */
+    void runHousekeeping() {
+        long now = System.nanoTime();
+        if (settings.leakThresholdMs > 0) {
+            long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(settings.leakThresholdMs);
+            for (Entry e : inUse.keySet()) {
+                if (!e.leakReported && now - e.borrowedAtNanos > thresholdNanos) {
+                    e.leakReported = true;
+                    leaks.increment();
+                    LOG.log(Level.WARNING, "Possible connection leak in pool " + name + ": held for more than "
+                            + settings.leakThresholdMs + "ms"
+                            + (e.borrowSite == null ? " (set DB_POOL_LEAK_TRACE=true for the borrowing stack)" : ""),
+                            e.borrowSite);
+                }
+            }
+        }
+        if (settings.idleTimeoutMs > 0) {
+            long idleNanos = TimeUnit.MILLISECONDS.toNanos(settings.idleTimeoutMs);
+            for (Entry e : idle) {
+                if (now - e.lastReturnedAtNanos > idleNanos && idle.remove(e)) {
+                    closeQuietly(e.physical);
+                }
+            }
+        }
+    }
+
+    Stats stats() {
+        return new Stats(name, settings.maxSize, inUse.size(), idle.size(), created.get(), borrows.sum(),
+                timeouts.sum(), validationFailures.sum(), leaks.sum(), waitNanosTotal.sum(), waitNanosMax.get());
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        housekeeper.shutdownNow();
+        Entry e;
+        while ((e = idle.pollFirst()) != null) closeQuietly(e.physical);
+        LOG.info("[DB] closed " + stats());
+    }
+
+    private static void closeQuietly(Connection c) {
+        try {
+            c.close();
+        } catch (SQLException ignore) {
+            // already broken, nothing to do
+        }
+    }
+
+    /** One physical connection plus the bookkeeping needed for leak and idle tracking. */
+    private final class Entry {
+        final Connection physical;
+        volatile long borrowedAtNanos;
+        volatile long lastReturnedAtNanos = System.nanoTime();
+        volatile Throwable borrowSite;
+        volatile boolean leakReported;
+
+        Entry(Connection physical) { this.physical = physical; }
+
+        Connection newHandle() {
+            final AtomicBoolean handleClosed = new AtomicBoolean(false);
+            return (Connection) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        String m = method.getName();
+                        switch (m) {
+                            case "close":
+                                if (handleClosed.compareAndSet(false, true)) release(this);
+                                return null;
+                            case "isClosed":
+                                return handleClosed.get() || physical.isClosed();
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "toString":
+                                return "Pooled[" + name + "]" + physical;
+                            default:
+                                if (handleClosed.get()) throw new SQLException("Connection is closed");
+                                Object result = invoke(physical, method, args);
+                                return result instanceof Statement ? timed((Statement) result, method.getReturnType()) : result;
+                        }
+                    });
+        }
+    }
+
+    /** Wraps a statement so that its execute calls are recorded in {@link Metrics}. */
+    private static Object timed(Statement statement, Class<?> type) {
+        return Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    String m = method.getName();
+                    if (!m.startsWith("execute")) return invoke(statement, method, args);
+                    long start = System.nanoTime();
+                    try {
+                        return invoke(statement, method, args);
+                    } finally {
+                        Metrics.shared().recordDbQuery(queryKind(m), System.nanoTime() - start);
+                    }
+                });
+    }
+
+    private static String queryKind(String method) {
+        switch (method) {
+            case "executeQuery": return "query";
+            case "executeUpdate":
+            case "executeLargeUpdate": return "update";
+            case "executeBatch":
+            case "executeLargeBatch": return "batch";
+            default: return "execute";
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ite) {
+            throw ite.getCause();
+        }
+    }
+
+    // ===== DataSource plumbing =====
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Pool " + name + " uses fixed credentials");
+    }
+
+    @Override public PrintWriter getLogWriter() { return null; }
+    @Override public void setLogWriter(PrintWriter out) { /* java.util.logging is used instead */ }
+    @Override public void setLoginTimeout(int seconds) { /* borrow timeout is configured via DB_POOL_TIMEOUT_MS */ }
+    @Override public int getLoginTimeout() { return (int) TimeUnit.MILLISECONDS.toSeconds(settings.borrowTimeoutMs); }
+    @Override public Logger getParentLogger() { return LOG; }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) return iface.cast(this);
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) { return iface.isInstance(this); }
+}
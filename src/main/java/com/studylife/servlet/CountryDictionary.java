@@ -0,0 +1,299 @@
+package com.studylife.servlet;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code countries} table and an in-memory cache of it, one per DataSource.
+ *
+ * Client-supplied names are canonicalised before lookup: ISO 3166 alpha-2/alpha-3 codes and the
+ * country's name in English, Chinese or any of its own JDK locales all map to the English name,
+ * so "IE", "irl", "Éire" and "ireland " share one id. Each raw spelling is canonicalised once and
+ * its id remembered, so a spelling seen before costs a map lookup; the database is only consulted
+ * for a name not seen before.
+ *
+ * Codes, English and Chinese names are loaded with the class (about 100 ms). The names in each
+ * country's own languages take seconds to read from the JDK's locale data, so they are loaded by
+ * {@link #warmAsync} off the startup path, or by the first lookup the other names cannot answer.
+ *
+ * Names that are not countries are added as custom entries up to {@code COUNTRY_DICT_MAX_CUSTOM};
+ * past that they resolve to {@link #UNKNOWN} so junk input cannot grow the table without bound,
+ * and the spelling is remembered as unknown so repeating it does not query the database again.
+ * The per-spelling caches hold {@link #RAW_CACHE} entries each; spellings past that are still
+ * resolved, just not remembered.
+ */
+final class CountryDictionary {
+
+    private static final Logger LOG = Logger.getLogger(CountryDictionary.class.getName());
+
+    static final int UNKNOWN = 1;
+    static final int MAX_NAME = 100;
+    static final int RAW_CACHE = 10_000;
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    private static final ConcurrentMap<DataSource, CountryDictionary> BY_SOURCE = new ConcurrentHashMap<>();
+
+    /** normalised alias -> English name */
+    private static final Map<String, String> ALIASES = new HashMap<>();
+    /** English name -> ISO alpha-2 */
+    private static final Map<String, String> ISO2 = new HashMap<>();
+    /** ISO alpha-2 -> English name */
+    private static final Map<String, String> BY_ISO = new HashMap<>();
+    /** raw spelling -> {@link #canonical} */
+    private static final ConcurrentMap<String, String> CANONICAL = new ConcurrentHashMap<>();
+
+    static {
+        for (String iso : Locale.getISOCountries()) {
+            Locale region = new Locale("", iso);
+            String name = region.getDisplayCountry(Locale.ENGLISH);
+            if (name.isEmpty() || name.equals(iso)) continue;
+            ISO2.put(name, iso);
+            BY_ISO.put(iso, name);
+            alias(iso, name);
+            alias(name, name);
+            alias(region.getDisplayCountry(Locale.SIMPLIFIED_CHINESE), name);
+            try {
+                alias(region.getISO3Country(), name);
+            } catch (MissingResourceException ignored) {
+                // no alpha-3 code for this region
+            }
+        }
+        alias("UK", "United Kingdom");
+        alias("USA", "United States");
+    }
+
+    private static void alias(String alias, String name) {
+        String k = key(alias);
+        if (!k.isEmpty()) ALIASES.putIfAbsent(k, name);
+    }
+
+    /** normalised name in one of the country's own languages -> English name; see the class comment. */
+    private static final class NativeNames {
+        static final Map<String, String> ALIASES = build();
+
+        private static Map<String, String> build() {
+            Map<String, String> out = new HashMap<>();
+            for (Locale l : Locale.getAvailableLocales()) {
+                String name = BY_ISO.get(l.getCountry());
+                if (name == null) continue;
+                String k = key(new Locale("", l.getCountry()).getDisplayCountry(l));
+                if (!k.isEmpty()) out.putIfAbsent(k, name);
+            }
+            return out;
+        }
+    }
+
+    private static String known(String key) {
+        String name = ALIASES.get(key);
+        return name != null ? name : NativeNames.ALIASES.get(key);
+    }
+
+    private final DataSource dataSource;
+    private final int maxCustom;
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, String> names = new ConcurrentHashMap<>();
+    /** raw spelling -> id, including spellings that resolved to {@link #UNKNOWN} */
+    private final ConcurrentMap<String, Integer> byRaw = new ConcurrentHashMap<>();
+    private final AtomicInteger custom = new AtomicInteger();
+
+    CountryDictionary(DataSource dataSource, int maxCustom) {
+        this.dataSource = dataSource;
+        this.maxCustom = Math.max(0, maxCustom);
+    }
+
+    static CountryDictionary of(DataSource ds) {
+        return BY_SOURCE.computeIfAbsent(ds, k -> new CountryDictionary(k, Config.getInt("COUNTRY_DICT_MAX_CUSTOM", 200)));
+    }
+
+    /** Lower case, accents and punctuation removed, single spaces. */
+    static String key(String raw) {
+        if (raw == null) return "";
+        String s = MARKS.matcher(Normalizer.normalize(raw, Normalizer.Form.NFKD)).replaceAll("");
+        s = NON_WORD.matcher(s.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+        return s.length() > MAX_NAME ? s.substring(0, MAX_NAME) : s;
+    }
+
+    /** The English name for anything recognised as a country, otherwise the input tidied up. */
+    static String canonical(String raw) {
+        if (raw == null) return "";
+        String name = CANONICAL.get(raw);
+        if (name == null) {
+            name = resolve(raw);
+            remember(CANONICAL, raw, name);
+        }
+        return name;
+    }
+
+    private static String resolve(String raw) {
+        String known = known(key(raw));
+        if (known != null) return known;
+        if (raw.indexOf('/') >= 0) {   // OpenStreetMap names bilingual countries "Éire / Ireland"
+            for (String part : raw.split("/")) {
+                known = known(key(part));
+                if (known != null) return known;
+            }
+        }
+        String s = SPACES.matcher(raw.trim()).replaceAll(" ");
+        return s.length() > MAX_NAME ? s.substring(0, MAX_NAME) : s;
+    }
+
+    /** Adds to a per-spelling cache until it is full; long input is not worth keeping. */
+    private static <V> void remember(ConcurrentMap<String, V> cache, String raw, V value) {
+        if (raw.length() <= 4 * MAX_NAME && cache.size() < RAW_CACHE) cache.putIfAbsent(raw, value);
+    }
+
+    /**
+     * Id for {@code raw}, adding it to the dictionary when new. New entries are committed on a
+     * connection of their own, so a cached id never points at a row that was rolled back with
+     * the caller's transaction.
+     */
+    int idFor(String raw) throws SQLException {
+        Integer id = raw == null ? null : byRaw.get(raw);
+        if (id != null) return id;
+        String name = canonical(raw);
+        String k = key(name);
+        if (k.isEmpty()) throw new SQLIntegrityConstraintViolationException("country is required");
+        id = ids.get(k);
+        if (id != null) {
+            remember(byRaw, raw, id);
+            return id;
+        }
+
+        try (Connection conn = dataSource.getConnection()) {
+            id = select(conn, k);
+            if (id == null) {
+                String iso = ISO2.get(name);
+                if (iso == null && custom.get() >= maxCustom) {
+                    remember(byRaw, raw, UNKNOWN);
+                    return UNKNOWN;
+                }
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "INSERT IGNORE INTO countries (iso2, name, name_key) VALUES (?, ?, ?)")) {
+                    ps.setString(1, iso);
+                    ps.setString(2, name);
+                    ps.setString(3, k);
+                    if (ps.executeUpdate() == 1 && iso == null) custom.incrementAndGet();
+                }
+                id = select(conn, k);
+                if (id == null) return UNKNOWN;
+            }
+        }
+        ids.put(k, id);
+        names.put(id, name);
+        remember(byRaw, raw, id);
+        return id;
+    }
+
+    private static Integer select(Connection conn, String k) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT id FROM countries WHERE name_key = ?")) {
+            ps.setString(1, k);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+
+    /** Display name for an id, or {@code null} when it is not cached. */
+    String name(int id) {
+        return names.get(id);
+    }
+
+    int size() {
+        return ids.size();
+    }
+
+    /** Loads the whole table; it holds a few hundred rows at most. */
+    int warm() throws SQLException {
+        int n = 0;
+        int customRows = 0;
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT id, iso2, name, name_key FROM countries");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                int id = rs.getInt(1);
+                if (rs.getString(2) == null && id != UNKNOWN) customRows++;
+                ids.put(rs.getString(4), id);
+                names.put(id, rs.getString(3));
+                n++;
+            }
+        }
+        custom.set(customRows);
+        return n;
+    }
+
+    /**
+     * Moves rows written before V7 from the text column to {@code country_id}, one distinct
+     * spelling at a time. Rows that resolve to {@link #UNKNOWN} keep their text, so what the
+     * client sent is not lost. Safe to interrupt and rerun.
+     */
+    int backfill() throws SQLException {
+        int moved = 0;
+        try (Connection conn = dataSource.getConnection()) {
+            while (true) {
+                List<String> spellings = new ArrayList<>();
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT DISTINCT country FROM user_login_locations WHERE country_id IS NULL AND country IS NOT NULL LIMIT 100");
+                     ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) spellings.add(rs.getString(1));
+                }
+                if (spellings.isEmpty()) return moved;
+
+                int round = 0;
+                for (String s : spellings) {
+                    int id;
+                    try {
+                        id = idFor(s);
+                    } catch (SQLIntegrityConstraintViolationException blank) {
+                        id = UNKNOWN;
+                    }
+                    try (PreparedStatement ps = conn.prepareStatement(id == UNKNOWN
+                            ? "UPDATE user_login_locations SET country_id = ? WHERE country_id IS NULL AND country = ?"
+                            : "UPDATE user_login_locations SET country_id = ?, country = NULL WHERE country_id IS NULL AND country = ?")) {
+                        ps.setInt(1, id);
+                        ps.setString(2, s);
+                        round += ps.executeUpdate();
+                    }
+                }
+                if (round == 0) return moved;   // nothing matched back; do not spin
+                moved += round;
+            }
+        }
+    }
+
+    void warmAsync() {
+        Thread t = new Thread(() -> {
+            long t0 = System.nanoTime();
+            int natives = NativeNames.ALIASES.size();
+            try {
+                int n = warm();
+                int moved = backfill();
+                LOG.info(String.format("[Country] dictionary warmed with %d entries and %d native names, "
+                        + "%d old rows converted in %d ms", n, natives, moved, (System.nanoTime() - t0) / 1_000_000));
+            } catch (SQLException e) {
+                LOG.log(Level.WARNING, "[Country] warm-up failed, countries will be looked up on first use", e);
+            }
+        }, "country-dictionary-warmup");
+        t.setDaemon(true);
+        t.start();
+    }
+}
@@ -0,0 +1,130 @@
+package com.studylife.servlet;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rendered {@code /api/dashboard} responses, one per user, bounded by count (LRU) and age (TTL).
+ *
+ * Write paths call {@link #invalidate} after their commit. A load that started before an
+ * invalidation must not store its now stale result, so every user maps to a generation stripe:
+ * {@link #generation} is read before loading and {@link #put} only stores when it is unchanged.
+ * Users sharing a stripe occasionally skip a store, which costs one extra load and never
+ * serves stale data.
+ */
+final class DashboardCache {
+
+    private static final int STRIPES = 1024;
+
+    private static volatile DashboardCache shared;
+
+    private static final class Cached {
+        final String json;
+        final LocalDate day;
+        final long storedNanos;
+
+        Cached(String json, LocalDate day, long storedNanos) {
+            this.json = json;
+            this.day = day;
+            this.storedNanos = storedNanos;
+        }
+    }
+
+    private final Map<Integer, Cached> entries;
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+    private final long ttlNanos;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    DashboardCache(int maxUsers, long ttlMs) {
+        final int max = Math.max(1, maxUsers);
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, ttlMs));
+        this.entries = new LinkedHashMap<Integer, Cached>(256, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override protected boolean removeEldestEntry(Map.Entry<Integer, Cached> e) { return size() > max; }
+        };
+    }
+
+    static DashboardCache shared() {
+        DashboardCache c = shared;
+        if (c == null) {
+            synchronized (DashboardCache.class) {
+                c = shared;
+                if (c == null) {
+                    c = new DashboardCache(
+                            Config.getInt("DASHBOARD_CACHE_SIZE", 10_000),
+                            Config.getLong("DASHBOARD_CACHE_TTL_MS", 60_000));
+                    shared = c;
+                }
+            }
+        }
+        return c;
+    }
+
+    static synchronized void resetShared() {
+        shared = null;
+    }
+
+    /** The cached response for {@code day}, or {@code null} when absent, expired or from another day. */
+    String get(int userId, LocalDate day) {
+        Cached e;
+        synchronized (entries) {
+            e = entries.get(userId);
+            if (e != null && (System.nanoTime() - e.storedNanos > ttlNanos || !e.day.equals(day))) {
+                entries.remove(userId);
+                e = null;
+            }
+        }
+        if (e == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return e.json;
+    }
+
+    /** Read before loading; pass to {@link #put}. */
+    long generation(int userId) {
+        return generations.get(stripe(userId));
+    }
+
+    /** Stores a freshly built response unless the user was invalidated since {@code generation}. */
+    void put(int userId, LocalDate day, String json, long generation) {
+        synchronized (entries) {
+            if (generations.get(stripe(userId)) != generation) return;
+            entries.put(userId, new Cached(json, day, System.nanoTime()));
+        }
+    }
+
+    /** Drops the user's entry; call after a write that changes anything the dashboard shows. */
+    void invalidate(int userId) {
+        synchronized (entries) {
+            generations.incrementAndGet(stripe(userId));
+            entries.remove(userId);
+        }
+        invalidations.increment();
+    }
+
+    private static int stripe(int userId) {
+        int h = userId * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    long hits() { return hits.sum(); }
+
+    long misses() { return misses.sum(); }
+
+    long invalidations() { return invalidations.sum(); }
+}
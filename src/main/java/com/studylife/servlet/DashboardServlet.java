@@ -0,0 +1,139 @@
+package com.studylife.servlet;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * GET /api/dashboard?userId=1 for dashboard.html: every widget's data in one response.
+ *
+ * {"expenses":{month, income, expense, balance, topCategories:[{category, amount}]},
+ *  "todos":{date, todo, progress, done, open}, "moods":{today, stats}}.
+ * Responses are kept in {@link DashboardCache} until a write invalidates them, they expire or the
+ * day changes, so repeated loads are answered without touching the database. The
+ * {@code X-Cache} header says which way a response was served.
+ */
+public class DashboardServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = Logger.getLogger(DashboardServlet.class.getName());
+    private static final ZoneId ZONE_ID = ZoneId.of("Europe/Dublin");
+
+    static final int TOP_CATEGORIES = 5;
+
+    /** Overridable for tests; {@code null} when no database is configured. */
+    protected DataSource dataSource() {
+        return Db.dataSource();
+    }
+
+    /** Overridable for tests. */
+    protected LocalDate today() {
+        return LocalDate.now(ZONE_ID);
+    }
+
+    @Override
+    protected void doOptions(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        JsonApi.addCors(resp, "GET, OPTIONS");
+        resp.setStatus(HttpServletResponse.SC_NO_CONTENT);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        JsonApi.addCors(response, "GET, OPTIONS");
+        response.setContentType("application/json;charset=UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+
+        final int userId;
+        try {
+            userId = Integer.parseInt(String.valueOf(request.getParameter("userId")).trim());
+        } catch (NumberFormatException bad) {
+            JsonApi.writeJson(response, HttpServletResponse.SC_BAD_REQUEST,
+                    JsonApi.fail("userId must be a number"));
+            return;
+        }
+
+        final LocalDate today = today();
+        final DashboardCache cache = DashboardCache.shared();
+        String cached = cache.get(userId, today);
+        if (cached != null) {
+            response.setHeader("X-Cache", "HIT");
+            JsonApi.writeJson(response, HttpServletResponse.SC_OK, cached);
+            return;
+        }
+
+        final DataSource ds = dataSource();
+        if (ds == null) {
+            JsonApi.writeJson(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                    JsonApi.error("DB_URL/DB_USER/DB_PASS not set"));
+            return;
+        }
+
+        final long generation = cache.generation(userId);
+        IoLane.db().dispatch(request, response, resp -> {
+            String json;
+            try {
+                json = build(ds, userId, today).toString();
+            } catch (SQLException e) {
+                LOG.log(Level.WARNING, "[Dashboard] load failed for user " + userId, e);
+                JsonApi.writeJson(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                        JsonApi.error("Database error"));
+                return;
+            }
+            cache.put(userId, today, json, generation);
+            resp.setHeader("X-Cache", "MISS");
+            JsonApi.writeJson(resp, HttpServletResponse.SC_OK, json);
+        });
+    }
+
+    private static JSONObject build(DataSource ds, int userId, LocalDate today) throws SQLException {
+        YearMonth month = YearMonth.from(today);
+        ExpenseStore.Totals totals = new ExpenseStore(ds).totals(userId, month, month);
+        JSONArray top = new JSONArray();
+        Map<String, Long> spent = totals.byCategory.getOrDefault(ExpenseStore.EXPENSE, Collections.emptyMap());
+        for (Map.Entry<String, Long> e : spent.entrySet()) {
+            if (top.length() == TOP_CATEGORIES) break;
+            top.put(new JSONObject().put("category", e.getKey()).put("amount", BigDecimal.valueOf(e.getValue(), 2)));
+        }
+        JSONObject expenses = new JSONObject()
+                .put("month", month.toString())
+                .put("income", BigDecimal.valueOf(totals.incomeCents, 2))
+                .put("expense", BigDecimal.valueOf(totals.expenseCents, 2))
+                .put("balance", BigDecimal.valueOf(totals.incomeCents - totals.expenseCents, 2))
+                .put("topCategories", top);
+
+        TodoStore.Counts counts = new TodoStore(ds).counts(userId, today);
+        JSONObject todos = new JSONObject()
+                .put("date", today.toString())
+                .put("todo", counts.todo)
+                .put("progress", counts.progress)
+                .put("done", counts.done)
+                .put("open", counts.open);
+
+        MoodYear year = new MoodStore(ds).load(userId, today.getYear());
+        JSONObject moods = new JSONObject()
+                .put("today", MoodYear.EMOJI[year.get(today)])
+                .put("stats", MoodServlet.stats(year, today));
+
+        return new JSONObject()
+                .put("status", "success")
+                .put("expenses", expenses)
+                .put("todos", todos)
+                .put("moods", moods);
+    }
+}
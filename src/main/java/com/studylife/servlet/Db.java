@@ -0,0 +1,94 @@
+package com.studylife.servlet;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * Shared entry point for database access.
+ *
+ * The {@code jdbc/StudyLife} resource-ref from web.xml is used when the container binds it;
+ * otherwise a {@link ConnectionPool} is built from DB_URL/DB_USER/DB_PASS and shared by every servlet.
+ */
+final class Db {
+
+    static final String JNDI_NAME = "java:comp/env/jdbc/StudyLife";
+
+    static final String ENV_DB_URL  = "DB_URL";
+    static final String ENV_DB_USER = "DB_USER";
+    static final String ENV_DB_PASS = "DB_PASS";
+
+    private static final Logger LOG = Logger.getLogger(Db.class.getName());
+
+    private static final ConcurrentMap<List<String>, ConnectionPool> POOLS = new ConcurrentHashMap<>();
+    private static volatile DataSource containerDataSource;
+    private static volatile boolean jndiResolved;
+
+    private Db() {}
+
+    /** DataSource for the current configuration, or {@code null} when nothing is configured. */
+    static DataSource dataSource() {
+        return dataSource(Config.get(ENV_DB_URL), Config.get(ENV_DB_USER), Config.get(ENV_DB_PASS));
+    }
+
+    static DataSource dataSource(String url, String user, String pass) {
+        DataSource jndi = containerDataSource();
+        if (jndi != null) return jndi;
+        if (isBlank(url) || isBlank(user) || isBlank(pass)) return null;
+
+        return POOLS.computeIfAbsent(Arrays.asList(url, user, pass), k -> {
+            ConnectionPool pool = new ConnectionPool("studylife-" + (POOLS.size() + 1), url, user, pass,
+                    ConnectionPool.Settings.fromConfig());
+            LOG.info("[DB] created connection pool " + pool.name() + " for " + url);
+            return pool;
+        });
+    }
+
+    static boolean hasContainerDataSource() {
+        return containerDataSource() != null;
+    }
+
+    private static DataSource containerDataSource() {
+        if (!jndiResolved) {
+            synchronized (Db.class) {
+                if (!jndiResolved) {
+                    containerDataSource = lookupJndi();
+                    jndiResolved = true;
+                }
+            }
+        }
+        return containerDataSource;
+    }
+
+    private static DataSource lookupJndi() {
+        try {
+            Object o = new InitialContext().lookup(JNDI_NAME);
+            if (o instanceof DataSource) {
+                LOG.info("[DB] using container DataSource " + JNDI_NAME);
+                return (DataSource) o;
+            }
+        } catch (NamingException | RuntimeException notBound) {
+            // no container resource: fall back to DB_URL/DB_USER/DB_PASS
+        }
+        return null;
+    }
+
+    static Collection<ConnectionPool> pools() {
+        return new ArrayList<>(POOLS.values());
+    }
+
+    /** Closes every pool built by this class; the container owns the JNDI DataSource. */
+    static void shutdown() {
+        for (ConnectionPool p : POOLS.values()) p.close();
+        POOLS.clear();
+    }
+
+    private static boolean isBlank(String s) { return s == null || s.trim().isEmpty(); }
+}
@@ -0,0 +1,245 @@
+package com.studylife.servlet;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * /api/expenses for expense.html.
+ *
+ * POST {"userId":1,"expenses":[{"id":"...","type":"expense","name":"Lunch","category":"food",
+ * "amount":9.5,"date":"2025-03-14"}, ...]} upserts the whole batch in one transaction, keyed by the
+ * page's own record id, and keeps the totals read by {@link ExpenseSummaryServlet} current.
+ * GET ?userId=1[&amp;month=2025-03][&amp;limit=50][&amp;cursor=...] lists records newest first, a page at a time.
+ */
+public class ExpenseServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = Logger.getLogger(ExpenseServlet.class.getName());
+
+    static final int DEFAULT_PAGE = 50;
+    static final int MAX_PAGE = 200;
+    static final String METHODS = "GET, POST, OPTIONS";
+
+    private static final JsonRequestDecoder BODY = new JsonRequestDecoder(
+            Config.getInt("EXPENSE_BODY_MAX_BYTES", 256 * 1024), "userId", "expenses");
+
+    private final int maxBatch = Config.getInt("EXPENSE_BATCH_MAX", 500);
+
+    /** Overridable for tests; {@code null} when no database is configured. */
+    protected DataSource dataSource() {
+        return Db.dataSource();
+    }
+
+    @Override
+    protected void doOptions(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        JsonApi.addCors(resp, METHODS);
+        resp.setStatus(HttpServletResponse.SC_NO_CONTENT);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        JsonApi.addCors(response, METHODS);
+        response.setContentType("application/json;charset=UTF-8");
+
+        final String[] fields;
+        try {
+            fields = BODY.decode(request);
+        } catch (JsonRequestDecoder.DecodeException ex) {
+            JsonApi.writeJson(response, ex.tooLarge ? HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE
+                                                    : HttpServletResponse.SC_BAD_REQUEST,
+                    JsonApi.error(ex.tooLarge ? ex.getMessage() : "Malformed JSON"));
+            return;
+        }
+
+        final int userId;
+        try {
+            userId = Integer.parseInt(fields[0].trim());
+        } catch (NumberFormatException nfe) {
+            JsonApi.writeJson(response, HttpServletResponse.SC_BAD_REQUEST, JsonApi.fail("userId must be a number"));
+            return;
+        }
+
+        final List<ExpenseStore.Expense> batch;
+        try {
+            batch = parseBatch(fields[1]);
+        } catch (IllegalArgumentException bad) {
+            JsonApi.writeJson(response, HttpServletResponse.SC_BAD_REQUEST, JsonApi.fail(bad.getMessage()));
+            return;
+        }
+
+        final DataSource ds = dataSource();
+        if (ds == null) {
+            JsonApi.writeJson(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                    JsonApi.error("DB_URL/DB_USER/DB_PASS not set"));
+            return;
+        }
+
+        IoLane.db().dispatch(request, response, resp -> {
+            try {
+                ExpenseStore.UpsertResult r = new ExpenseStore(ds).upsert(userId, batch);
+                if (r.inserted + r.updated > 0) DashboardCache.shared().invalidate(userId);
+                JSONObject ok = new JSONObject()
+                        .put("status", "success")
+                        .put("inserted", r.inserted)
+                        .put("updated", r.updated)
+                        .put("unchanged", r.unchanged);
+                JsonApi.writeJson(resp, HttpServletResponse.SC_OK, ok.toString());
+            } catch (SQLException e) {
+                LOG.log(Level.WARNING, "[Expense] upsert failed for user " + userId, e);
+                JsonApi.writeJson(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, JsonApi.error("Database error"));
+            }
+        });
+    }
+
+    private List<ExpenseStore.Expense> parseBatch(String json) {
+        JSONArray arr;
+        try {
+            arr = new JSONArray(json);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("expenses must be an array");
+        }
+        if (arr.isEmpty()) throw new IllegalArgumentException("expenses is empty");
+        if (arr.length() > maxBatch) {
+            throw new IllegalArgumentException("at most " + maxBatch + " expenses per request");
+        }
+        List<ExpenseStore.Expense> out = new ArrayList<>(arr.length());
+        for (int i = 0; i < arr.length(); i++) {
+            JSONObject o = arr.optJSONObject(i);
+            if (o == null) throw new IllegalArgumentException("expenses[" + i + "] must be an object");
+            try {
+                out.add(parseExpense(o));
+            } catch (IllegalArgumentException bad) {
+                throw new IllegalArgumentException("expenses[" + i + "]: " + bad.getMessage());
+            }
+        }
+        return out;
+    }
+
+    private static ExpenseStore.Expense parseExpense(JSONObject o) {
+        String id = text(o, "id", 64);
+        String kind = o.optString("type").trim().toLowerCase(Locale.ROOT);
+        if (!ExpenseStore.INCOME.equals(kind) && !ExpenseStore.EXPENSE.equals(kind)) {
+            throw new IllegalArgumentException("type must be income or expense");
+        }
+        String name = text(o, "name", 255);
+        String category = o.optString("category").trim();
+        if (category.isEmpty()) category = name.length() > 100 ? name.substring(0, 100) : name;
+        if (category.length() > 100) throw new IllegalArgumentException("category is too long");
+
+        BigDecimal amount;
+        try {
+            amount = new BigDecimal(o.get("amount").toString());
+        } catch (JSONException | NumberFormatException e) {
+            throw new IllegalArgumentException("amount must be a number");
+        }
+        if (amount.signum() <= 0) throw new IllegalArgumentException("amount must be positive");
+        long cents;
+        try {
+            cents = amount.setScale(2, RoundingMode.HALF_UP).movePointRight(2).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("amount is too large");
+        }
+
+        LocalDate date;
+        try {
+            date = LocalDate.parse(o.optString("date").trim());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("date must be yyyy-MM-dd");
+        }
+        return new ExpenseStore.Expense(id, kind, name, category, cents, date);
+    }
+
+    private static String text(JSONObject o, String key, int maxLength) {
+        String v = o.optString(key).trim();
+        if (v.isEmpty()) throw new IllegalArgumentException(key + " is required");
+        if (v.length() > maxLength) throw new IllegalArgumentException(key + " is too long");
+        return v;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        JsonApi.addCors(response, METHODS);
+        response.setContentType("application/json;charset=UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+
+        final int userId;
+        final int limit;
+        final YearMonth month;
+        try {
+            userId = Integer.parseInt(param(request, "userId"));
+            String l = param(request, "limit");
+            limit = l.isEmpty() ? DEFAULT_PAGE : Math.max(1, Math.min(MAX_PAGE, Integer.parseInt(l)));
+            String m = param(request, "month");
+            month = m.isEmpty() ? null : YearMonth.parse(m);
+        } catch (NumberFormatException | DateTimeParseException bad) {
+            JsonApi.writeJson(response, HttpServletResponse.SC_BAD_REQUEST,
+                    JsonApi.fail("userId and limit must be numbers, month must be yyyy-MM"));
+            return;
+        }
+        String c = param(request, "cursor");
+        final String cursor = c.isEmpty() ? null : c;
+
+        final DataSource ds = dataSource();
+        if (ds == null) {
+            JsonApi.writeJson(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                    JsonApi.error("DB_URL/DB_USER/DB_PASS not set"));
+            return;
+        }
+
+        IoLane.db().dispatch(request, response, resp -> {
+            ExpenseStore.Page page;
+            try {
+                page = new ExpenseStore(ds).page(userId, month, cursor, limit);
+            } catch (IllegalArgumentException bad) {
+                JsonApi.writeJson(resp, HttpServletResponse.SC_BAD_REQUEST, JsonApi.fail("Bad cursor"));
+                return;
+            } catch (SQLException e) {
+                LOG.log(Level.WARNING, "[Expense] listing failed for user " + userId, e);
+                JsonApi.writeJson(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, JsonApi.error("Database error"));
+                return;
+            }
+
+            JSONArray items = new JSONArray();
+            for (ExpenseStore.Expense e : page.items) {
+                items.put(new JSONObject()
+                        .put("id", e.clientId)
+                        .put("type", e.kind)
+                        .put("name", e.name)
+                        .put("category", e.category)
+                        .put("amount", BigDecimal.valueOf(e.amountCents, 2))
+                        .put("date", e.spentOn.toString()));
+            }
+            JSONObject ok = new JSONObject()
+                    .put("status", "success")
+                    .put("expenses", items)
+                    .put("nextCursor", page.nextCursor == null ? JSONObject.NULL : page.nextCursor);
+            JsonApi.writeJson(resp, HttpServletResponse.SC_OK, ok.toString());
+        });
+    }
+
+    private static String param(HttpServletRequest req, String name) {
+        String v = req.getParameter(name);
+        return v == null ? "" : v.trim();
+    }
+}
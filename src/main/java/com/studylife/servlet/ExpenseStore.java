@@ -0,0 +1,403 @@
+package com.studylife.servlet;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * JDBC access behind {@code /api/expenses}.
+ *
+ * An upsert changes {@code expense_monthly_totals} and {@code expense_category_totals} in the same
+ * transaction by exactly the difference it makes: a new record adds its amount, an edited one takes
+ * the old amount out of its old month and category and adds the new one. A summary therefore reads
+ * one row per month and category and never scans {@code expenses}.
+ */
+final class ExpenseStore {
+
+    static final String INCOME = "income";
+    static final String EXPENSE = "expense";
+
+    /** Keeps each {@code IN (...)} lookup to a reasonable number of bind variables. */
+    private static final int LOOKUP_CHUNK = 100;
+
+    static final class Expense {
+        final String clientId;
+        final String kind;
+        final String name;
+        final String category;
+        final long amountCents;
+        final LocalDate spentOn;
+
+        Expense(String clientId, String kind, String name, String category, long amountCents, LocalDate spentOn) {
+            this.clientId = clientId;
+            this.kind = kind;
+            this.name = name;
+            this.category = category;
+            this.amountCents = amountCents;
+            this.spentOn = spentOn;
+        }
+
+        String month() { return YearMonth.from(spentOn).toString(); }
+
+        boolean sameAs(Expense o) {
+            return kind.equals(o.kind) && name.equals(o.name) && category.equals(o.category)
+                    && amountCents == o.amountCents && spentOn.equals(o.spentOn);
+        }
+    }
+
+    static final class UpsertResult {
+        final int inserted;
+        final int updated;
+        final int unchanged;
+
+        UpsertResult(int inserted, int updated, int unchanged) {
+            this.inserted = inserted;
+            this.updated = updated;
+            this.unchanged = unchanged;
+        }
+    }
+
+    static final class Page {
+        final List<Expense> items;
+        /** Pass back as {@code cursor} for the next page; {@code null} on the last page. */
+        final String nextCursor;
+
+        Page(List<Expense> items, String nextCursor) {
+            this.items = items;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    static final class Totals {
+        final long incomeCents;
+        final long expenseCents;
+        final int entries;
+        /** kind -> category -> cents, largest first. */
+        final Map<String, Map<String, Long>> byCategory;
+
+        Totals(long incomeCents, long expenseCents, int entries, Map<String, Map<String, Long>> byCategory) {
+            this.incomeCents = incomeCents;
+            this.expenseCents = expenseCents;
+            this.entries = entries;
+            this.byCategory = byCategory;
+        }
+    }
+
+    /** Running change to one totals row while a batch is applied. */
+    private static final class Delta {
+        final String month;
+        final String kind;
+        final String category;
+        long incomeCents;
+        long expenseCents;
+        int entries;
+
+        Delta(String month, String kind, String category) {
+            this.month = month;
+            this.kind = kind;
+            this.category = category;
+        }
+
+        boolean isZero() { return incomeCents == 0 && expenseCents == 0 && entries == 0; }
+    }
+
+    private final DataSource dataSource;
+
+    ExpenseStore(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Inserts or updates the batch for one user in one transaction. Records are matched on their
+     * client id; when the batch names the same id twice the later entry wins.
+     */
+    UpsertResult upsert(int userId, List<Expense> batch) throws SQLException {
+        Map<String, Expense> wanted = new LinkedHashMap<>();
+        for (Expense e : batch) wanted.put(e.clientId, e);
+
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                Map<String, Expense> existing = lockExisting(conn, userId, new ArrayList<>(wanted.keySet()));
+
+                // TreeMaps so concurrent batches touch totals rows in the same order and cannot deadlock.
+                Map<String, Delta> monthly = new TreeMap<>();
+                Map<String, Delta> categories = new TreeMap<>();
+                List<Expense> inserts = new ArrayList<>();
+                List<Expense> updates = new ArrayList<>();
+                int unchanged = 0;
+                for (Expense e : wanted.values()) {
+                    Expense old = existing.get(e.clientId);
+                    if (old == null) {
+                        inserts.add(e);
+                    } else if (old.sameAs(e)) {
+                        unchanged++;
+                        continue;
+                    } else {
+                        updates.add(e);
+                        account(monthly, categories, old, -1);
+                    }
+                    account(monthly, categories, e, 1);
+                }
+
+                insert(conn, userId, inserts);
+                update(conn, userId, updates);
+                applyMonthly(conn, userId, monthly.values());
+                applyCategories(conn, userId, categories.values());
+                conn.commit();
+                return new UpsertResult(inserts.size(), updates.size(), unchanged);
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    private static Map<String, Expense> lockExisting(Connection conn, int userId, List<String> ids)
+            throws SQLException {
+        Map<String, Expense> out = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += LOOKUP_CHUNK) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + LOOKUP_CHUNK));
+            String sql = "SELECT client_id, kind, name, category, amount_cents, spent_on FROM expenses " +
+                    "WHERE user_id = ? AND client_id IN (" + String.join(",", Collections.nCopies(chunk.size(), "?")) +
+                    ") FOR UPDATE";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setInt(1, userId);
+                for (int i = 0; i < chunk.size(); i++) ps.setString(i + 2, chunk.get(i));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Expense e = read(rs);
+                        out.put(e.clientId, e);
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    private static void account(Map<String, Delta> monthly, Map<String, Delta> categories, Expense e, int sign) {
+        Delta m = monthly.computeIfAbsent(e.month(), k -> new Delta(e.month(), null, null));
+        if (INCOME.equals(e.kind)) m.incomeCents += sign * e.amountCents;
+        else m.expenseCents += sign * e.amountCents;
+        m.entries += sign;
+
+        String key = e.month() + '\t' + e.kind + '\t' + e.category;
+        Delta c = categories.computeIfAbsent(key, k -> new Delta(e.month(), e.kind, e.category));
+        if (INCOME.equals(e.kind)) c.incomeCents += sign * e.amountCents;
+        else c.expenseCents += sign * e.amountCents;
+        c.entries += sign;
+    }
+
+    private static void insert(Connection conn, int userId, List<Expense> rows) throws SQLException {
+        if (rows.isEmpty()) return;
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO expenses (user_id, client_id, kind, name, category, amount_cents, spent_on) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (Expense e : rows) {
+                ps.setInt(1, userId);
+                ps.setString(2, e.clientId);
+                ps.setString(3, e.kind);
+                ps.setString(4, e.name);
+                ps.setString(5, e.category);
+                ps.setLong(6, e.amountCents);
+                ps.setDate(7, Date.valueOf(e.spentOn));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static void update(Connection conn, int userId, List<Expense> rows) throws SQLException {
+        if (rows.isEmpty()) return;
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE expenses SET kind = ?, name = ?, category = ?, amount_cents = ?, spent_on = ?, " +
+                "updated_at = CURRENT_TIMESTAMP WHERE user_id = ? AND client_id = ?")) {
+            for (Expense e : rows) {
+                ps.setString(1, e.kind);
+                ps.setString(2, e.name);
+                ps.setString(3, e.category);
+                ps.setLong(4, e.amountCents);
+                ps.setDate(5, Date.valueOf(e.spentOn));
+                ps.setInt(6, userId);
+                ps.setString(7, e.clientId);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static void applyMonthly(Connection conn, int userId, Iterable<Delta> deltas) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO expense_monthly_totals (user_id, ym, income_cents, expense_cents, entries) " +
+                "VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE " +
+                "income_cents = income_cents + VALUES(income_cents), " +
+                "expense_cents = expense_cents + VALUES(expense_cents), " +
+                "entries = entries + VALUES(entries)")) {
+            int n = 0;
+            for (Delta d : deltas) {
+                if (d.isZero()) continue;
+                ps.setInt(1, userId);
+                ps.setString(2, d.month);
+                ps.setLong(3, d.incomeCents);
+                ps.setLong(4, d.expenseCents);
+                ps.setInt(5, d.entries);
+                ps.addBatch();
+                n++;
+            }
+            if (n > 0) ps.executeBatch();
+        }
+    }
+
+    private static void applyCategories(Connection conn, int userId, Iterable<Delta> deltas) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO expense_category_totals (user_id, ym, kind, category, amount_cents, entries) " +
+                "VALUES (?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE " +
+                "amount_cents = amount_cents + VALUES(amount_cents), " +
+                "entries = entries + VALUES(entries)")) {
+            int n = 0;
+            for (Delta d : deltas) {
+                if (d.isZero()) continue;
+                ps.setInt(1, userId);
+                ps.setString(2, d.month);
+                ps.setString(3, d.kind);
+                ps.setString(4, d.category);
+                ps.setLong(5, d.incomeCents + d.expenseCents);   // a category row has one kind
+                ps.setInt(6, d.entries);
+                ps.addBatch();
+                n++;
+            }
+            if (n > 0) ps.executeBatch();
+        }
+    }
+
+    /**
+     * One page of a user's records, newest day first.
+     *
+     * @param month  only records in this month, or {@code null} for all
+     * @param cursor {@link Page#nextCursor} of the previous page, or {@code null} for the first
+     * @throws IllegalArgumentException when the cursor was not produced by this method
+     */
+    Page page(int userId, YearMonth month, String cursor, int limit) throws SQLException {
+        StringBuilder sql = new StringBuilder(
+                "SELECT id, client_id, kind, name, category, amount_cents, spent_on FROM expenses WHERE user_id = ?");
+        List<Object> args = new ArrayList<>();
+        args.add(userId);
+        if (month != null) {
+            sql.append(" AND spent_on BETWEEN ? AND ?");
+            args.add(Date.valueOf(month.atDay(1)));
+            args.add(Date.valueOf(month.atEndOfMonth()));
+        }
+        if (cursor != null) {
+            int dot = cursor.lastIndexOf('.');
+            if (dot <= 0) throw new IllegalArgumentException("Bad cursor");
+            Date day;
+            long id;
+            try {
+                day = Date.valueOf(LocalDate.parse(cursor.substring(0, dot)));
+                id = Long.parseLong(cursor.substring(dot + 1));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Bad cursor", e);
+            }
+            sql.append(" AND (spent_on < ? OR (spent_on = ? AND id < ?))");
+            args.add(day);
+            args.add(day);
+            args.add(id);
+        }
+        sql.append(" ORDER BY spent_on DESC, id DESC LIMIT ?");
+        args.add(limit + 1);
+
+        List<Expense> items = new ArrayList<>(limit);
+        String next = null;
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < args.size(); i++) ps.setObject(i + 1, args.get(i));
+            try (ResultSet rs = ps.executeQuery()) {
+                long lastId = 0;
+                while (rs.next()) {
+                    if (items.size() == limit) {
+                        Expense last = items.get(items.size() - 1);
+                        next = last.spentOn + "." + lastId;
+                        break;
+                    }
+                    lastId = rs.getLong("id");
+                    items.add(read(rs));
+                }
+            }
+        }
+        return new Page(items, next);
+    }
+
+    /** Totals for the months {@code from} to {@code to} inclusive, read from the running totals only. */
+    Totals totals(int userId, YearMonth from, YearMonth to) throws SQLException {
+        long income = 0;
+        long expense = 0;
+        int entries = 0;
+        Map<String, Map<String, Long>> byCategory = new LinkedHashMap<>();
+        byCategory.put(INCOME, new HashMap<>());
+        byCategory.put(EXPENSE, new HashMap<>());
+
+        try (Connection conn = dataSource.getConnection()) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT income_cents, expense_cents, entries FROM expense_monthly_totals " +
+                    "WHERE user_id = ? AND ym BETWEEN ? AND ?")) {
+                bindRange(ps, userId, from, to);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        income += rs.getLong(1);
+                        expense += rs.getLong(2);
+                        entries += rs.getInt(3);
+                    }
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT kind, category, amount_cents FROM expense_category_totals " +
+                    "WHERE user_id = ? AND ym BETWEEN ? AND ? AND entries > 0")) {
+                bindRange(ps, userId, from, to);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Map<String, Long> m = byCategory.get(rs.getString(1));
+                        if (m != null) m.merge(rs.getString(2), rs.getLong(3), Long::sum);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, Map<String, Long>> e : byCategory.entrySet()) e.setValue(largestFirst(e.getValue()));
+        return new Totals(income, expense, entries, byCategory);
+    }
+
+    private static void bindRange(PreparedStatement ps, int userId, YearMonth from, YearMonth to) throws SQLException {
+        ps.setInt(1, userId);
+        ps.setString(2, from.toString());
+        ps.setString(3, to.toString());
+    }
+
+    private static Map<String, Long> largestFirst(Map<String, Long> m) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(m.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        Map<String, Long> out = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> e : entries) out.put(e.getKey(), e.getValue());
+        return out;
+    }
+
+    private static Expense read(ResultSet rs) throws SQLException {
+        return new Expense(rs.getString("client_id"), rs.getString("kind"), rs.getString("name"),
+                rs.getString("category"), rs.getLong("amount_cents"),
+                Objects.requireNonNull(rs.getDate("spent_on")).toLocalDate());
+    }
+}
@@ -0,0 +1,115 @@
+package com.studylife.servlet;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * GET /api/expenses/summary?userId=1&amp;month=2025-03 (or &amp;year=2025) for the monthly and yearly
+ * stats buttons. Served from the running totals kept by {@link ExpenseStore}, never from a scan.
+ */
+public class ExpenseSummaryServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = Logger.getLogger(ExpenseSummaryServlet.class.getName());
+
+    /** Overridable for tests; {@code null} when no database is configured. */
+    protected DataSource dataSource() {
+        return Db.dataSource();
+    }
+
+    @Override
+    protected void doOptions(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        JsonApi.addCors(resp, ExpenseServlet.METHODS);
+        resp.setStatus(HttpServletResponse.SC_NO_CONTENT);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        JsonApi.addCors(response, ExpenseServlet.METHODS);
+        response.setContentType("application/json;charset=UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+
+        final int userId;
+        final YearMonth from;
+        final YearMonth to;
+        final String period;
+        try {
+            userId = Integer.parseInt(String.valueOf(request.getParameter("userId")).trim());
+            String month = request.getParameter("month");
+            String year = request.getParameter("year");
+            if (month != null && !month.trim().isEmpty()) {
+                from = to = YearMonth.parse(month.trim());
+                period = from.toString();
+            } else if (year != null && !year.trim().isEmpty()) {
+                Year y = Year.parse(year.trim());
+                from = y.atMonth(1);
+                to = y.atMonth(12);
+                period = y.toString();
+            } else {
+                throw new IllegalArgumentException();
+            }
+        } catch (IllegalArgumentException | DateTimeParseException bad) {
+            JsonApi.writeJson(response, HttpServletResponse.SC_BAD_REQUEST,
+                    JsonApi.fail("userId and either month (yyyy-MM) or year (yyyy) are required"));
+            return;
+        }
+
+        final DataSource ds = dataSource();
+        if (ds == null) {
+            JsonApi.writeJson(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                    JsonApi.error("DB_URL/DB_USER/DB_PASS not set"));
+            return;
+        }
+
+        IoLane.db().dispatch(request, response, resp -> {
+            ExpenseStore.Totals t;
+            try {
+                t = new ExpenseStore(ds).totals(userId, from, to);
+            } catch (SQLException e) {
+                LOG.log(Level.WARNING, "[Expense] summary failed for user " + userId, e);
+                JsonApi.writeJson(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                        JsonApi.error("Database error"));
+                return;
+            }
+
+            // Arrays rather than objects so the largest-first order survives.
+            JSONObject categories = new JSONObject();
+            for (Map.Entry<String, Map<String, Long>> kind : t.byCategory.entrySet()) {
+                JSONArray perCategory = new JSONArray();
+                for (Map.Entry<String, Long> c : kind.getValue().entrySet()) {
+                    perCategory.put(new JSONObject().put("category", c.getKey()).put("amount", money(c.getValue())));
+                }
+                categories.put(kind.getKey(), perCategory);
+            }
+            JSONObject ok = new JSONObject()
+                    .put("status", "success")
+                    .put("period", period)
+                    .put("income", money(t.incomeCents))
+                    .put("expense", money(t.expenseCents))
+                    .put("net", money(t.incomeCents - t.expenseCents))
+                    .put("entries", t.entries)
+                    .put("categories", categories);
+            JsonApi.writeJson(resp, HttpServletResponse.SC_OK, ok.toString());
+        });
+    }
+
+    private static BigDecimal money(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+}
@@ -0,0 +1,201 @@
+package com.studylife.servlet;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Resolves a request's country from its client address using a local {@link GeoIpTable}.
+ *
+ * The CSV named by {@code GEOIP_CSV} is loaded at first use and re-read whenever its modification
+ * time or size changes ({@code GEOIP_RELOAD_CHECK_MS}); the new table is swapped in atomically, and
+ * a file that fails to parse leaves the previous table in place. Without a file every lookup
+ * returns {@code null}.
+ *
+ * {@code X-Forwarded-For} is only believed when it arrives from an address in
+ * {@code GEOIP_TRUSTED_PROXIES} (IPs or CIDR blocks, default loopback); the client is the
+ * right-most entry that is not itself a trusted proxy.
+ */
+final class GeoIpResolver implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(GeoIpResolver.class.getName());
+
+    private static volatile GeoIpResolver shared;
+
+    /** An address block such as 10.0.0.0/8; a bare address is a /32 or /128. */
+    static final class Cidr {
+        private final byte[] network;
+        private final int prefix;
+
+        private Cidr(byte[] network, int prefix) {
+            this.network = network;
+            this.prefix = prefix;
+        }
+
+        static Cidr parse(String s) {
+            String[] parts = s.trim().split("/", 2);
+            InetAddress a = GeoIpTable.literal(parts[0]);
+            if (a == null) throw new IllegalArgumentException("not an IP or CIDR block: " + s);
+            int bits = a.getAddress().length * 8;
+            int prefix = parts.length == 2 ? Integer.parseInt(parts[1].trim()) : bits;
+            if (prefix < 0 || prefix > bits) throw new IllegalArgumentException("bad prefix: " + s);
+            return new Cidr(a.getAddress(), prefix);
+        }
+
+        boolean contains(InetAddress addr) {
+            byte[] a = addr.getAddress();
+            if (a.length != network.length) return false;
+            int full = prefix / 8;
+            for (int i = 0; i < full; i++) if (a[i] != network[i]) return false;
+            int rest = prefix % 8;
+            if (rest == 0) return true;
+            int mask = 0xFF00 >>> rest;
+            return (a[full] & mask) == (network[full] & mask);
+        }
+    }
+
+    private final Path file;
+    private final List<Cidr> trustedProxies;
+    private final ScheduledExecutorService watcher;
+    private volatile GeoIpTable table = GeoIpTable.EMPTY;
+    private volatile String loadedStamp;
+
+    GeoIpResolver(Path file, List<Cidr> trustedProxies, long reloadCheckMs) {
+        this.file = file;
+        this.trustedProxies = trustedProxies;
+        reloadIfChanged();
+        if (file != null && reloadCheckMs > 0) {
+            watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "geoip-reload");
+                t.setDaemon(true);
+                return t;
+            });
+            watcher.scheduleWithFixedDelay(this::reloadIfChanged, reloadCheckMs, reloadCheckMs, TimeUnit.MILLISECONDS);
+        } else {
+            watcher = null;
+        }
+    }
+
+    static GeoIpResolver shared() {
+        GeoIpResolver r = shared;
+        if (r == null) {
+            synchronized (GeoIpResolver.class) {
+                r = shared;
+                if (r == null) {
+                    String path = Config.get("GEOIP_CSV");
+                    r = new GeoIpResolver(
+                            path == null || path.trim().isEmpty() ? null : Paths.get(path.trim()),
+                            parseProxies(Config.get("GEOIP_TRUSTED_PROXIES", "127.0.0.1,::1")),
+                            Config.getLong("GEOIP_RELOAD_CHECK_MS", 30_000));
+                    shared = r;
+                }
+            }
+        }
+        return r;
+    }
+
+    static synchronized void shutdownShared() {
+        if (shared != null) {
+            shared.close();
+            shared = null;
+        }
+    }
+
+    static List<Cidr> parseProxies(String csv) {
+        List<Cidr> out = new ArrayList<>();
+        for (String s : csv.split(",")) {
+            if (s.trim().isEmpty()) continue;
+            try {
+                out.add(Cidr.parse(s));
+            } catch (IllegalArgumentException bad) {
+                LOG.warning("[GeoIP] ignoring trusted proxy entry: " + bad.getMessage());
+            }
+        }
+        return Collections.unmodifiableList(out);
+    }
+
+    /** @return {@code true} when a new table was loaded */
+    boolean reloadIfChanged() {
+        if (file == null) return false;
+        String stamp;
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            stamp = attrs.lastModifiedTime().toMillis() + ":" + attrs.size();
+        } catch (IOException missing) {
+            if (loadedStamp == null) LOG.warning("[GeoIP] " + file + " is not readable; countries will not be resolved");
+            loadedStamp = "missing";
+            return false;
+        }
+        if (stamp.equals(loadedStamp)) return false;
+        loadedStamp = stamp;   // a broken file is not retried until it changes again
+
+        long t0 = System.nanoTime();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            GeoIpTable next = GeoIpTable.parse(in);
+            table = next;
+            LOG.info(String.format("[GeoIP] loaded %d ranges from %s in %d ms",
+                    next.size(), file, (System.nanoTime() - t0) / 1_000_000));
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LOG.log(Level.WARNING, "[GeoIP] could not load " + file + ", keeping the previous table", e);
+            return false;
+        }
+    }
+
+    int ranges() {
+        return table.size();
+    }
+
+    String lookup(String ip) {
+        return table.lookup(ip);
+    }
+
+    /** ISO country code of the request's client, or {@code null}. */
+    String country(HttpServletRequest req) {
+        return table.lookup(clientAddress(req));
+    }
+
+    InetAddress clientAddress(HttpServletRequest req) {
+        InetAddress peer = GeoIpTable.literal(req.getRemoteAddr());
+        if (peer == null || !trusted(peer)) return peer;
+
+        List<String> hops = new ArrayList<>();
+        Enumeration<String> headers = req.getHeaders("X-Forwarded-For");
+        while (headers != null && headers.hasMoreElements()) {
+            for (String h : headers.nextElement().split(",")) hops.add(h);
+        }
+        InetAddress client = peer;
+        for (int i = hops.size() - 1; i >= 0; i--) {
+            InetAddress hop = GeoIpTable.literal(hops.get(i));
+            if (hop == null) break;   // garbage from the client side: stop at the last address we trust
+            client = hop;
+            if (!trusted(hop)) break;
+        }
+        return client;
+    }
+
+    private boolean trusted(InetAddress a) {
+        for (Cidr c : trustedProxies) if (c.contains(a)) return true;
+        return false;
+    }
+
+    @Override
+    public void close() {
+        if (watcher != null) watcher.shutdownNow();
+    }
+}
@@ -0,0 +1,230 @@
+package com.studylife.servlet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable IP-range to country table, loaded from a CSV of {@code start,end,country} rows
+ * (IPv4 or IPv6 literals, e.g. the db-ip "country lite" file; '#' comments and a header are skipped).
+ *
+ * Ranges are kept in parallel primitive arrays sorted by start address and found by binary search:
+ * a lookup allocates nothing and takes well under a microsecond even for a few hundred thousand
+ * ranges. IPv4 addresses are stored with the sign bit flipped and IPv6 halves likewise, so plain
+ * signed comparisons give unsigned address order.
+ */
+final class GeoIpTable {
+
+    private static final Pattern IPV4 = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
+
+    static final GeoIpTable EMPTY = new GeoIpTable(new int[0], new int[0], new short[0],
+            new long[0], new long[0], new long[0], new long[0], new short[0], new String[0]);
+
+    private final int[] v4Start;
+    private final int[] v4End;
+    private final short[] v4Country;
+    private final long[] v6StartHi;
+    private final long[] v6StartLo;
+    private final long[] v6EndHi;
+    private final long[] v6EndLo;
+    private final short[] v6Country;
+    private final String[] countries;
+
+    private GeoIpTable(int[] v4Start, int[] v4End, short[] v4Country,
+                       long[] v6StartHi, long[] v6StartLo, long[] v6EndHi, long[] v6EndLo, short[] v6Country,
+                       String[] countries) {
+        this.v4Start = v4Start;
+        this.v4End = v4End;
+        this.v4Country = v4Country;
+        this.v6StartHi = v6StartHi;
+        this.v6StartLo = v6StartLo;
+        this.v6EndHi = v6EndHi;
+        this.v6EndLo = v6EndLo;
+        this.v6Country = v6Country;
+        this.countries = countries;
+    }
+
+    /** A row while loading: addresses as flipped (hi, lo) pairs; IPv4 only uses lo. */
+    private static final class Range {
+        final long startHi, startLo, endHi, endLo;
+        final short country;
+
+        Range(long startHi, long startLo, long endHi, long endLo, short country) {
+            this.startHi = startHi;
+            this.startLo = startLo;
+            this.endHi = endHi;
+            this.endLo = endLo;
+            this.country = country;
+        }
+    }
+
+    private static final Comparator<Range> BY_START =
+            Comparator.<Range>comparingLong(r -> r.startHi).thenComparingLong(r -> r.startLo);
+
+    /** @throws IOException on a malformed row or overlapping ranges, so a bad file never replaces a good table */
+    static GeoIpTable parse(BufferedReader in) throws IOException {
+        List<Range> v4 = new ArrayList<>();
+        List<Range> v6 = new ArrayList<>();
+        Map<String, Short> codes = new HashMap<>();
+        List<String> countries = new ArrayList<>();
+
+        String line;
+        int lineNo = 0;
+        while ((line = in.readLine()) != null) {
+            lineNo++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] f = line.replace("\"", "").split(",");
+            if (f.length < 3) throw new IOException("line " + lineNo + ": expected start,end,country");
+            InetAddress start = literal(f[0]);
+            InetAddress end = literal(f[1]);
+            if (start == null || end == null) {
+                if (lineNo == 1) continue;   // header
+                throw new IOException("line " + lineNo + ": bad address");
+            }
+            if (start.getClass() != end.getClass()) throw new IOException("line " + lineNo + ": mixed address families");
+
+            String code = f[2].trim().toUpperCase(Locale.ROOT);
+            if (code.isEmpty()) continue;
+            Short idx = codes.get(code);
+            if (idx == null) {
+                if (countries.size() == Short.MAX_VALUE) throw new IOException("too many distinct countries");
+                idx = (short) countries.size();
+                codes.put(code, idx);
+                countries.add(code);
+            }
+
+            long[] s = key(start.getAddress());
+            long[] e = key(end.getAddress());
+            if (e[0] < s[0] || (e[0] == s[0] && e[1] < s[1])) throw new IOException("line " + lineNo + ": end before start");
+            (start instanceof Inet4Address ? v4 : v6).add(new Range(s[0], s[1], e[0], e[1], idx));
+        }
+
+        v4.sort(BY_START);
+        v6.sort(BY_START);
+        checkDisjoint(v4);
+        checkDisjoint(v6);
+
+        int n4 = v4.size();
+        int[] v4Start = new int[n4];
+        int[] v4End = new int[n4];
+        short[] v4Country = new short[n4];
+        for (int i = 0; i < n4; i++) {
+            Range r = v4.get(i);
+            v4Start[i] = (int) r.startLo;
+            v4End[i] = (int) r.endLo;
+            v4Country[i] = r.country;
+        }
+        int n6 = v6.size();
+        long[] sHi = new long[n6], sLo = new long[n6], eHi = new long[n6], eLo = new long[n6];
+        short[] v6Country = new short[n6];
+        for (int i = 0; i < n6; i++) {
+            Range r = v6.get(i);
+            sHi[i] = r.startHi;
+            sLo[i] = r.startLo;
+            eHi[i] = r.endHi;
+            eLo[i] = r.endLo;
+            v6Country[i] = r.country;
+        }
+        return new GeoIpTable(v4Start, v4End, v4Country, sHi, sLo, eHi, eLo, v6Country,
+                countries.toArray(new String[0]));
+    }
+
+    private static void checkDisjoint(List<Range> sorted) throws IOException {
+        for (int i = 1; i < sorted.size(); i++) {
+            Range prev = sorted.get(i - 1);
+            Range cur = sorted.get(i);
+            if (cur.startHi < prev.endHi || (cur.startHi == prev.endHi && cur.startLo <= prev.endLo)) {
+                throw new IOException("overlapping ranges near entry " + i);
+            }
+        }
+    }
+
+    /** Parses an IP literal without ever falling back to a DNS lookup; {@code null} if it is not one. */
+    static InetAddress literal(String s) {
+        if (s == null) return null;
+        s = s.trim();
+        try {
+            if (IPV4.matcher(s).matches()) {
+                String[] parts = s.split("\\.");
+                byte[] a = new byte[4];
+                for (int i = 0; i < 4; i++) {
+                    int octet = Integer.parseInt(parts[i]);
+                    if (octet > 255) return null;
+                    a[i] = (byte) octet;
+                }
+                return InetAddress.getByAddress(a);
+            }
+            if (s.indexOf(':') < 0) return null;
+            if (!s.startsWith("[")) s = "[" + s + "]";   // brackets make the JDK reject, not resolve, a bad literal
+            return InetAddress.getByName(s);
+        } catch (UnknownHostException | SecurityException e) {
+            return null;
+        }
+    }
+
+    /** (hi, lo) with sign bits flipped; a 4-byte address fills the low 32 bits of lo. */
+    private static long[] key(byte[] a) {
+        if (a.length == 4) {
+            long v = ((a[0] & 0xFFL) << 24) | ((a[1] & 0xFFL) << 16) | ((a[2] & 0xFFL) << 8) | (a[3] & 0xFFL);
+            return new long[]{0, (int) v ^ Integer.MIN_VALUE};
+        }
+        long hi = 0;
+        long lo = 0;
+        for (int i = 0; i < 8; i++) hi = (hi << 8) | (a[i] & 0xFF);
+        for (int i = 8; i < 16; i++) lo = (lo << 8) | (a[i] & 0xFF);
+        return new long[]{hi ^ Long.MIN_VALUE, lo ^ Long.MIN_VALUE};
+    }
+
+    /** ISO code for {@code addr}, or {@code null} when no range covers it. */
+    String lookup(InetAddress addr) {
+        if (addr == null) return null;
+        byte[] a = addr.getAddress();
+        if (a.length == 4) {
+            int k = (((a[0] & 0xFF) << 24) | ((a[1] & 0xFF) << 16) | ((a[2] & 0xFF) << 8) | (a[3] & 0xFF)) ^ Integer.MIN_VALUE;
+            int i = Arrays.binarySearch(v4Start, k);
+            if (i < 0) i = -i - 2;   // last range starting before k
+            return i >= 0 && k <= v4End[i] ? countries[v4Country[i]] : null;
+        }
+        long hi = 0;
+        long lo = 0;
+        for (int i = 0; i < 8; i++) hi = (hi << 8) | (a[i] & 0xFF);
+        for (int i = 8; i < 16; i++) lo = (lo << 8) | (a[i] & 0xFF);
+        hi ^= Long.MIN_VALUE;
+        lo ^= Long.MIN_VALUE;
+
+        int low = 0;
+        int high = v6StartHi.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (v6StartHi[mid] < hi || (v6StartHi[mid] == hi && v6StartLo[mid] <= lo)) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (found < 0) return null;
+        boolean inside = hi < v6EndHi[found] || (hi == v6EndHi[found] && lo <= v6EndLo[found]);
+        return inside ? countries[v6Country[found]] : null;
+    }
+
+    String lookup(String ip) {
+        return lookup(literal(ip));
+    }
+
+    int size() {
+        return v4Start.length + v6StartHi.length;
+    }
+}
@@ -0,0 +1,85 @@
+package com.studylife.servlet;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe HyperLogLog distinct counter over long ids, precision 12 (4096 one-byte registers,
+ * about 1.6% standard error). Registers are packed eight to a word and only ever raised with CAS,
+ * so concurrent {@link #add} and {@link #merge} calls never lose updates and merging is idempotent.
+ */
+final class HyperLogLog {
+
+    static final int P = 12;
+    static final int M = 1 << P;
+
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / M);
+
+    private final AtomicLongArray lanes = new AtomicLongArray(M / 8);
+
+    /** @return {@code true} when a register changed. */
+    boolean add(long id) {
+        long h = mix64(id);
+        int index = (int) (h >>> (64 - P));
+        int rank = Long.numberOfLeadingZeros((h << P) | (1L << (P - 1))) + 1;
+        return raise(index, rank);
+    }
+
+    void merge(HyperLogLog other) {
+        for (int i = 0; i < M; i++) raise(i, other.register(i));
+    }
+
+    long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < M; i++) {
+            int r = register(i);
+            sum += 1.0 / (1L << r);
+            if (r == 0) zeros++;
+        }
+        double e = ALPHA * M * M / sum;
+        if (e <= 2.5 * M && zeros > 0) e = M * Math.log((double) M / zeros);   // linear counting for small sets
+        return Math.round(e);
+    }
+
+    byte[] toBytes() {
+        byte[] out = new byte[M];
+        for (int i = 0; i < M; i++) out[i] = (byte) register(i);
+        return out;
+    }
+
+    static HyperLogLog fromBytes(byte[] registers) {
+        if (registers == null || registers.length != M) {
+            throw new IllegalArgumentException("expected " + M + " registers");
+        }
+        HyperLogLog h = new HyperLogLog();
+        for (int i = 0; i < M; i++) h.raise(i, registers[i] & 0xFF);
+        return h;
+    }
+
+    private int register(int index) {
+        return (int) (lanes.get(index >>> 3) >>> ((index & 7) << 3)) & 0xFF;
+    }
+
+    private boolean raise(int index, int rank) {
+        int w = index >>> 3;
+        int shift = (index & 7) << 3;
+        long cur;
+        long next;
+        do {
+            cur = lanes.get(w);
+            if (((cur >>> shift) & 0xFF) >= rank) return false;
+            next = (cur & ~(0xFFL << shift)) | ((long) rank << shift);
+        } while (!lanes.compareAndSet(w, cur, next));
+        return true;
+    }
+
+    /** murmur3 finaliser; sequential ids need full avalanche before their bits are split. */
+    private static long mix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
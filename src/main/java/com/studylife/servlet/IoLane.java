@@ -0,0 +1,200 @@
+package com.studylife.servlet;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded executor dedicated to one blocking dependency (MySQL, SMTP).
+ *
+ * Servlets hand their blocking work to a lane through {@link #dispatch}: the container thread is
+ * released via {@link AsyncContext}, a full queue answers 503 immediately and work that outlives
+ * the lane timeout answers 503 without waiting for it. A slow database therefore fills only the
+ * database lane and never the connector's thread pool.
+ */
+final class IoLane {
+
+    private static final Logger LOG = Logger.getLogger(IoLane.class.getName());
+
+    private static final byte[] BUSY = "{\"status\":\"error\",\"message\":\"Server busy, retry later\"}"
+            .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TIMEOUT = "{\"status\":\"error\",\"message\":\"Request timed out\"}"
+            .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FAILED = "{\"status\":\"error\",\"message\":\"server error\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    /** Blocking part of a request; writes its result to the response it is given. */
+    @FunctionalInterface
+    interface Handler {
+        void handle(HttpServletResponse response) throws IOException, ServletException;
+    }
+
+    private static volatile IoLane db;
+    private static volatile IoLane mail;
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMs;
+
+    IoLane(String name, int threads, int queueCapacity, long timeoutMs) {
+        final AtomicInteger seq = new AtomicInteger();
+        this.name = name;
+        this.timeoutMs = timeoutMs;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                r -> {
+                    Thread t = new Thread(r, name + "-lane-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    static IoLane db() {
+        IoLane l = db;
+        if (l == null) {
+            synchronized (IoLane.class) {
+                if (db == null) {
+                    db = new IoLane("db",
+                            Config.getInt("DB_LANE_THREADS", Config.getInt("DB_POOL_MAX_SIZE", 10)),
+                            Config.getInt("DB_LANE_QUEUE", 200),
+                            Config.getLong("DB_LANE_TIMEOUT_MS", 10000));
+                }
+                l = db;
+            }
+        }
+        return l;
+    }
+
+    static IoLane mail() {
+        IoLane l = mail;
+        if (l == null) {
+            synchronized (IoLane.class) {
+                if (mail == null) {
+                    mail = new IoLane("mail",
+                            Config.getInt("MAIL_LANE_THREADS", 4),
+                            Config.getInt("MAIL_LANE_QUEUE", 1000),
+                            Config.getLong("MAIL_LANE_TIMEOUT_MS", 30000));
+                }
+                l = mail;
+            }
+        }
+        return l;
+    }
+
+    static synchronized void shutdownAll() {
+        if (db != null) db.shutdown();
+        if (mail != null) mail.shutdown();
+        db = null;
+        mail = null;
+    }
+
+    String name() { return name; }
+
+    long timeoutMs() { return timeoutMs; }
+
+    int queued() { return executor.getQueue().size(); }
+
+    int active() { return executor.getActiveCount(); }
+
+    /** Background work that is not tied to a request; throws {@link RejectedExecutionException} when full. */
+    void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Runs {@code handler} on this lane. Without async support (unit tests, old containers) the
+     * handler simply runs on the calling thread.
+     */
+    void dispatch(HttpServletRequest request, HttpServletResponse response, Handler handler)
+            throws IOException, ServletException {
+        if (!request.isAsyncSupported()) {
+            handler.handle(response);
+            return;
+        }
+
+        final AsyncContext ac = request.startAsync(request, response);
+        ac.setTimeout(timeoutMs);
+        final AtomicBoolean answered = new AtomicBoolean(false);
+
+        ac.addListener(new AsyncListener() {
+            @Override public void onTimeout(AsyncEvent event) {
+                if (answered.compareAndSet(false, true)) {
+                    LOG.warning("[" + name + "] request exceeded " + timeoutMs + "ms lane timeout");
+                    respond(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, TIMEOUT);
+                    ac.complete();
+                }
+            }
+            @Override public void onError(AsyncEvent event) {
+                if (answered.compareAndSet(false, true)) ac.complete();
+            }
+            @Override public void onComplete(AsyncEvent event) { /* nothing to release */ }
+            @Override public void onStartAsync(AsyncEvent event) { /* not re-dispatched */ }
+        });
+
+        try {
+            executor.execute(() -> {
+                // Timed out while queued: the client already has its 503, so don't do the work.
+                if (answered.get()) return;
+                BufferedResponse buffered = new BufferedResponse(response);
+                boolean ok = true;
+                try {
+                    handler.handle(buffered);
+                } catch (Exception | Error e) {
+                    ok = false;
+                    LOG.log(Level.SEVERE, "[" + name + "] request handler failed", e);
+                }
+                if (!answered.compareAndSet(false, true)) return; // timed out: response already sent
+                try {
+                    if (ok) {
+                        buffered.commitTo(response);
+                    } else {
+                        respond(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, FAILED);
+                    }
+                } catch (IOException e) {
+                    LOG.log(Level.FINE, "[" + name + "] client went away", e);
+                } finally {
+                    ac.complete();
+                }
+            });
+        } catch (RejectedExecutionException full) {
+            if (answered.compareAndSet(false, true)) {
+                respond(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, BUSY);
+                ac.complete();
+            }
+        }
+    }
+
+    private static void respond(HttpServletResponse resp, int status, byte[] body) {
+        try {
+            resp.setStatus(status);
+            if (status == HttpServletResponse.SC_SERVICE_UNAVAILABLE) resp.setHeader("Retry-After", "1");
+            resp.setContentType("application/json;charset=UTF-8");
+            resp.setContentLength(body.length);
+            resp.getOutputStream().write(body);
+        } catch (IOException | IllegalStateException e) {
+            LOG.log(Level.FINE, "could not write lane response", e);
+        }
+    }
+
+    void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) executor.shutdownNow();
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
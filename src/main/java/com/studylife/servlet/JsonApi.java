@@ -0,0 +1,40 @@
+package com.studylife.servlet;
+
+import org.json.JSONObject;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * CORS headers and the {@code {"status":...,"message":...}} replies shared by the JSON
+ * endpoints (expenses, todos, moods, dashboard, login statistics, reminder admin).
+ */
+final class JsonApi {
+
+    private JsonApi() {
+    }
+
+    /** {@code methods} is what the endpoint answers, e.g. "GET, OPTIONS". */
+    static void addCors(HttpServletResponse resp, String methods) {
+        resp.setHeader("Access-Control-Allow-Origin", "*");
+        resp.setHeader("Access-Control-Allow-Methods", methods);
+        resp.setHeader("Access-Control-Allow-Headers", "Content-Type, Authorization");
+        resp.setHeader("Access-Control-Max-Age", "3600");
+    }
+
+    /** A server-side failure. */
+    static String error(String msg) {
+        return new JSONObject().put("status", "error").put("message", msg).toString();
+    }
+
+    /** A request the client has to fix. */
+    static String fail(String msg) {
+        return new JSONObject().put("status", "fail").put("message", msg).toString();
+    }
+
+    static void writeJson(HttpServletResponse resp, int status, String json) throws IOException {
+        resp.setStatus(status);
+        try (PrintWriter w = resp.getWriter()) { w.write(json); }
+    }
+}
@@ -0,0 +1,276 @@
+package com.studylife.servlet;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Pulls a fixed set of top-level fields out of a JSON object request body.
+ *
+ * The body is read as bytes from {@link HttpServletRequest#getInputStream()} into a buffer capped at
+ * REQUEST_MAX_BYTES (a larger Content-Length is refused before reading). Only the wanted values are
+ * decoded into Strings; everything else is skipped in place, so no JSON tree is ever built.
+ * Missing fields come back as {@code ""}; numbers and booleans come back as their literal text,
+ * matching what {@code JSONObject.optString} used to return. A wanted field holding an object or
+ * array comes back as its JSON text, for the endpoint to parse further.
+ */
+final class JsonRequestDecoder {
+
+    static final int DEFAULT_MAX_BYTES = 16 * 1024;
+
+    /** Body could not be used: {@link #tooLarge} selects 413 over 400. */
+    static final class DecodeException extends Exception {
+        private static final long serialVersionUID = 1L;
+        final boolean tooLarge;
+
+        DecodeException(String msg, boolean tooLarge) {
+            super(msg);
+            this.tooLarge = tooLarge;
+        }
+    }
+
+    private final byte[][] names;
+    private final int maxBytes;
+
+    /** Decoder for one endpoint's schema; create once and reuse, it holds no per-request state. */
+    JsonRequestDecoder(String... fields) {
+        this(Config.getInt("REQUEST_MAX_BYTES", DEFAULT_MAX_BYTES), fields);
+    }
+
+    JsonRequestDecoder(int maxBytes, String... fields) {
+        this.maxBytes = Math.max(2, maxBytes);
+        this.names = new byte[fields.length][];
+        for (int i = 0; i < fields.length; i++) names[i] = fields[i].getBytes(StandardCharsets.UTF_8);
+    }
+
+    String[] decode(HttpServletRequest request) throws IOException, DecodeException {
+        long declared = request.getContentLengthLong();
+        if (declared > maxBytes) throw new DecodeException("Request body too large", true);
+        try (InputStream in = request.getInputStream()) {
+            return decode(in, declared > 0 ? (int) declared : 512);
+        }
+    }
+
+    String[] decode(InputStream in, int sizeHint) throws IOException, DecodeException {
+        byte[] buf = new byte[Math.min(maxBytes + 1, Math.max(64, sizeHint))];
+        int len = 0;
+        for (int n; (n = in.read(buf, len, buf.length - len)) != -1; ) {
+            len += n;
+            if (len > maxBytes) throw new DecodeException("Request body too large", true);
+            if (len == buf.length) buf = Arrays.copyOf(buf, Math.min(maxBytes + 1, buf.length * 2));
+        }
+        return new Parser(buf, len).parseObject();
+    }
+
+    private final class Parser {
+        private final byte[] b;
+        private final int end;
+        private int pos;
+        private final String[] out = new String[names.length];
+
+        Parser(byte[] b, int end) {
+            this.b = b;
+            this.end = end;
+        }
+
+        String[] parseObject() throws DecodeException {
+            skipWs();
+            expect('{');
+            skipWs();
+            if (peek() == '}') {
+                pos++;
+            } else {
+                while (true) {
+                    skipWs();
+                    int field = readKey();
+                    skipWs();
+                    expect(':');
+                    skipWs();
+                    if (field >= 0) out[field] = readScalar();
+                    else skipValue(0);
+                    skipWs();
+                    int c = next();
+                    if (c == '}') break;
+                    if (c != ',') throw malformed();
+                }
+            }
+            skipWs();
+            if (pos != end) throw malformed();
+            for (int i = 0; i < out.length; i++) if (out[i] == null) out[i] = "";
+            return out;
+        }
+
+        /** Reads a key and returns the index of the wanted field it names, or -1. */
+        private int readKey() throws DecodeException {
+            if (peek() != '"') throw malformed();
+            int start = pos + 1;
+            boolean escaped = scanString();
+            int keyEnd = pos - 1;
+            if (escaped) {
+                byte[] key = decodeString(start, keyEnd).getBytes(StandardCharsets.UTF_8);
+                for (int i = 0; i < names.length; i++) if (Arrays.equals(names[i], key)) return i;
+                return -1;
+            }
+            for (int i = 0; i < names.length; i++) {
+                if (Arrays.equals(names[i], 0, names[i].length, b, start, keyEnd)) return i;
+            }
+            return -1;
+        }
+
+        private String readScalar() throws DecodeException {
+            int c = peek();
+            if (c == '"') {
+                int start = pos + 1;
+                boolean escaped = scanString();
+                return escaped ? decodeString(start, pos - 1)
+                               : new String(b, start, pos - 1 - start, StandardCharsets.UTF_8);
+            }
+            if (c == '{' || c == '[') {
+                int start = pos;
+                skipValue(0);
+                return new String(b, start, pos - start, StandardCharsets.UTF_8);
+            }
+            int start = pos;
+            skipLiteral();
+            String lit = new String(b, start, pos - start, StandardCharsets.US_ASCII);
+            return "null".equals(lit) ? "" : lit;
+        }
+
+        private void skipValue(int depth) throws DecodeException {
+            if (depth > 64) throw malformed();
+            int c = peek();
+            if (c == '"') {
+                scanString();
+            } else if (c == '{' || c == '[') {
+                int close = c == '{' ? '}' : ']';
+                pos++;
+                skipWs();
+                if (peek() == close) {
+                    pos++;
+                    return;
+                }
+                while (true) {
+                    skipWs();
+                    if (close == '}') {
+                        if (peek() != '"') throw malformed();
+                        scanString();
+                        skipWs();
+                        expect(':');
+                        skipWs();
+                    }
+                    skipValue(depth + 1);
+                    skipWs();
+                    int n = next();
+                    if (n == close) return;
+                    if (n != ',') throw malformed();
+                }
+            } else {
+                skipLiteral();
+            }
+        }
+
+        private void skipLiteral() throws DecodeException {
+            int start = pos;
+            while (pos < end) {
+                int c = b[pos];
+                if ((c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || c == '-' || c == '+' || c == '.' || c == 'E') {
+                    pos++;
+                } else {
+                    break;
+                }
+            }
+            if (pos == start) throw malformed();
+        }
+
+        /** Advances past a string starting at the opening quote; returns whether it contains escapes. */
+        private boolean scanString() throws DecodeException {
+            pos++;
+            boolean escaped = false;
+            while (pos < end) {
+                int c = b[pos] & 0xff;
+                if (c == '"') {
+                    pos++;
+                    return escaped;
+                }
+                if (c < 0x20) throw malformed();
+                if (c == '\\') {
+                    escaped = true;
+                    pos++;
+                }
+                pos++;
+            }
+            throw malformed();
+        }
+
+        private String decodeString(int from, int to) throws DecodeException {
+            StringBuilder sb = new StringBuilder(to - from);
+            int run = from;
+            int i = from;
+            while (i < to) {
+                if (b[i] != '\\') {
+                    i++;
+                    continue;
+                }
+                sb.append(new String(b, run, i - run, StandardCharsets.UTF_8));
+                if (i + 1 >= to) throw malformed();
+                int e = b[i + 1];
+                i += 2;
+                switch (e) {
+                    case '"': sb.append('"'); break;
+                    case '\\': sb.append('\\'); break;
+                    case '/': sb.append('/'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'u':
+                        if (i + 4 > to) throw malformed();
+                        int cp = 0;
+                        for (int k = 0; k < 4; k++) {
+                            int d = Character.digit(b[i + k], 16);
+                            if (d < 0) throw malformed();
+                            cp = (cp << 4) | d;
+                        }
+                        sb.append((char) cp);
+                        i += 4;
+                        break;
+                    default:
+                        throw malformed();
+                }
+                run = i;
+            }
+            sb.append(new String(b, run, to - run, StandardCharsets.UTF_8));
+            return sb.toString();
+        }
+
+        private void skipWs() {
+            while (pos < end) {
+                byte c = b[pos];
+                if (c == ' ' || c == '\n' || c == '\r' || c == '\t') pos++;
+                else break;
+            }
+        }
+
+        private int peek() throws DecodeException {
+            if (pos >= end) throw malformed();
+            return b[pos];
+        }
+
+        private int next() throws DecodeException {
+            int c = peek();
+            pos++;
+            return c;
+        }
+
+        private void expect(char c) throws DecodeException {
+            if (next() != c) throw malformed();
+        }
+
+        private DecodeException malformed() {
+            return new DecodeException("Malformed JSON", false);
+        }
+    }
+}
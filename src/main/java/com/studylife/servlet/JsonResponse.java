@@ -0,0 +1,160 @@
+package com.studylife.servlet;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes small JSON responses without building a JSONObject tree or an intermediate String.
+ *
+ * Replies that never change ("Invalid JSON", "Database error", ...) are encoded once with
+ * {@link #message} and sent with {@link #send}. Replies of a fixed shape with a few variable
+ * fields go through {@link #object}, which escapes the values straight into UTF-8 bytes. Either
+ * way the body leaves in one write with Content-Length set; the caller still sets the content
+ * type and any other headers.
+ *
+ * Escaping follows org.json: quote, backslash and control characters, "&lt;/", and U+2028/U+2029,
+ * so the output parses the same as JSONObject.toString() would have produced.
+ */
+final class JsonResponse {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] buf = new byte[128];
+    private int len;
+    private boolean first = true;
+
+    private JsonResponse() {
+        buf[len++] = '{';
+    }
+
+    /** {@code {"status":status,"message":message}}, encoded once. */
+    static byte[] message(String status, String message) {
+        return object().field("status", status).field("message", message).bytes();
+    }
+
+    /** Sends a pre-encoded body. */
+    static void send(HttpServletResponse resp, int status, byte[] body) throws IOException {
+        resp.setStatus(status);
+        write(resp, body, body.length);
+    }
+
+    /** Starts a JSON object; add fields and finish with {@link #send(HttpServletResponse, int)}. */
+    static JsonResponse object() {
+        return new JsonResponse();
+    }
+
+    JsonResponse field(String name, String value) {
+        name(name);
+        if (value == null) {
+            ascii("null");
+        } else {
+            ensure(value.length() * 3 + 2);
+            buf[len++] = '"';
+            escape(value);
+            buf[len++] = '"';
+        }
+        return this;
+    }
+
+    JsonResponse field(String name, long value) {
+        name(name);
+        ascii(Long.toString(value));
+        return this;
+    }
+
+    void send(HttpServletResponse resp, int status) throws IOException {
+        close();
+        resp.setStatus(status);
+        write(resp, buf, len);
+    }
+
+    /** The finished object as UTF-8; the writer is done afterwards. */
+    byte[] bytes() {
+        close();
+        return Arrays.copyOf(buf, len);
+    }
+
+    private static void write(HttpServletResponse resp, byte[] body, int length) throws IOException {
+        resp.setContentLength(length);
+        ServletOutputStream out = resp.getOutputStream();
+        out.write(body, 0, length);
+        out.flush();
+    }
+
+    private void close() {
+        ensure(1);
+        buf[len++] = '}';
+    }
+
+    private void name(String name) {
+        ensure(name.length() * 3 + 4);
+        if (!first) buf[len++] = ',';
+        first = false;
+        buf[len++] = '"';
+        escape(name);
+        buf[len++] = '"';
+        buf[len++] = ':';
+    }
+
+    private void ascii(String s) {
+        ensure(s.length());
+        for (int i = 0; i < s.length(); i++) buf[len++] = (byte) s.charAt(i);
+    }
+
+    /**
+     * Appends {@code s} escaped and UTF-8 encoded. The caller has reserved 3 bytes per char and the
+     * closing quote; the escapes reserve again for whatever is left.
+     */
+    private void escape(String s) {
+        char prev = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\' && !(c == '/' && prev == '<')) {
+                buf[len++] = (byte) c;
+            } else if (c == '"' || c == '\\' || c == '/') {
+                ensure(3 + (s.length() - i) * 3);
+                buf[len++] = '\\';
+                buf[len++] = (byte) c;
+            } else if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                ensure(7 + (s.length() - i) * 3);
+                switch (c) {
+                    case '\b': buf[len++] = '\\'; buf[len++] = 'b'; break;
+                    case '\t': buf[len++] = '\\'; buf[len++] = 't'; break;
+                    case '\n': buf[len++] = '\\'; buf[len++] = 'n'; break;
+                    case '\f': buf[len++] = '\\'; buf[len++] = 'f'; break;
+                    case '\r': buf[len++] = '\\'; buf[len++] = 'r'; break;
+                    default:
+                        buf[len++] = '\\';
+                        buf[len++] = 'u';
+                        buf[len++] = HEX[c >>> 12];
+                        buf[len++] = HEX[(c >>> 8) & 0xF];
+                        buf[len++] = HEX[(c >>> 4) & 0xF];
+                        buf[len++] = HEX[c & 0xF];
+                }
+            } else if (c < 0x800) {
+                buf[len++] = (byte) (0xC0 | (c >>> 6));
+                buf[len++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf[len++] = (byte) (0xF0 | (cp >>> 18));
+                buf[len++] = (byte) (0x80 | ((cp >>> 12) & 0x3F));
+                buf[len++] = (byte) (0x80 | ((cp >>> 6) & 0x3F));
+                buf[len++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buf[len++] = '?';   // unpaired surrogate, as String.getBytes(UTF_8) does
+            } else {
+                buf[len++] = (byte) (0xE0 | (c >>> 12));
+                buf[len++] = (byte) (0x80 | ((c >>> 6) & 0x3F));
+                buf[len++] = (byte) (0x80 | (c & 0x3F));
+            }
+            prev = c;
+        }
+    }
+
+    private void ensure(int extra) {
+        if (len + extra > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + extra));
+    }
+}
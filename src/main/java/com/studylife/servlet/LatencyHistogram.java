@@ -0,0 +1,99 @@
+package com.studylife.servlet;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear latency histogram in microseconds, in the style of HdrHistogram: exact below 64 µs,
+ * then 32 sub-buckets per power of two, so any recorded value is off by at most about 3%.
+ * Values above an hour are clamped.
+ *
+ * Recording is a few shifts and one atomic add, so it is safe from many threads at once; reading
+ * while writers are active gives a view that may be a few values behind. {@link LatencyRecorder}
+ * swaps two of these so that readers always see a quiescent one.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS;
+    static final long MAX_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    private static final int BUCKETS = index(MAX_MICROS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    static int index(long micros) {
+        if (micros < 2 * SUB) return (int) Math.max(0, micros);
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BITS;
+        return shift * SUB + (int) (micros >>> shift);
+    }
+
+    /** Smallest value that lands in bucket {@code i}. */
+    static long lowerBound(int i) {
+        if (i < 2 * SUB) return i;
+        int shift = i / SUB - 1;
+        return (long) (i % SUB + SUB) << shift;
+    }
+
+    /** Largest value that lands in bucket {@code i}. */
+    static long upperBound(int i) {
+        if (i < 2 * SUB) return i;
+        int shift = i / SUB - 1;
+        return ((long) (i % SUB + SUB + 1) << shift) - 1;
+    }
+
+    void recordNanos(long nanos) {
+        recordMicros(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    void recordMicros(long micros) {
+        counts.incrementAndGet(index(Math.min(micros, MAX_MICROS)));
+    }
+
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = other.counts.get(i);
+            if (c != 0) counts.addAndGet(i, c);
+        }
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+    }
+
+    long count() {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) n += counts.get(i);
+        return n;
+    }
+
+    /** Sum of the recorded values, each taken at the middle of its bucket. */
+    long sumMicros() {
+        long sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = counts.get(i);
+            if (c != 0) sum += c * ((lowerBound(i) + upperBound(i)) / 2);
+        }
+        return sum;
+    }
+
+    /** Values at most {@code micros}, to the histogram's precision. */
+    long countAtOrBelow(long micros) {
+        long n = 0;
+        for (int i = 0; i < BUCKETS && lowerBound(i) <= micros; i++) n += counts.get(i);
+        return n;
+    }
+
+    /** Value at quantile {@code q} (0..1), reported as the top of its bucket; 0 when empty. */
+    long percentileMicros(double q) {
+        long total = count();
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return upperBound(i);
+        }
+        return MAX_MICROS;
+    }
+}
@@ -0,0 +1,61 @@
+package com.studylife.servlet;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free recording into a {@link LatencyHistogram} with interval swapping, as HdrHistogram's
+ * Recorder does it: writers record into the active histogram, and {@link #interval()} swaps in a
+ * fresh one and waits, without blocking writers, until every write that started on the old one has
+ * finished. The returned histogram then holds exactly the values recorded since the previous call.
+ *
+ * The wait uses a writer/reader phaser: a writer bumps a start counter, records, and bumps the end
+ * counter of the phase it started in. The reader flips the phase and waits for the old phase's end
+ * count to catch up with its start count. Writers never wait for anything.
+ */
+final class LatencyRecorder {
+
+    private final AtomicLong startEpoch = new AtomicLong();
+    private final AtomicLong evenEnd = new AtomicLong();
+    private final AtomicLong oddEnd = new AtomicLong(Long.MIN_VALUE);
+
+    private volatile LatencyHistogram active = new LatencyHistogram();
+    private LatencyHistogram inactive = new LatencyHistogram();
+
+    /** Everything returned by {@link #interval()} so far. */
+    private final LatencyHistogram total = new LatencyHistogram();
+
+    void recordNanos(long nanos) {
+        long epoch = startEpoch.getAndIncrement();
+        try {
+            active.recordNanos(nanos);
+        } finally {
+            (epoch < 0 ? oddEnd : evenEnd).getAndIncrement();
+        }
+    }
+
+    /**
+     * Values recorded since the previous call. The histogram stays valid until the next call, and
+     * is also added to {@link #total()}.
+     */
+    synchronized LatencyHistogram interval() {
+        inactive.reset();
+        LatencyHistogram done = active;
+        active = inactive;
+        inactive = done;
+
+        boolean nextOdd = startEpoch.get() >= 0;
+        long nextStart = nextOdd ? Long.MIN_VALUE : 0;
+        (nextOdd ? oddEnd : evenEnd).set(nextStart);
+        long startedBeforeFlip = startEpoch.getAndSet(nextStart);
+        AtomicLong previousEnd = nextOdd ? evenEnd : oddEnd;
+        while (previousEnd.get() != startedBeforeFlip) Thread.yield();
+
+        total.add(done);
+        return done;
+    }
+
+    /** Everything up to the last {@link #interval()}; values recorded since then are not in it yet. */
+    LatencyHistogram total() {
+        return total;
+    }
+}
@@ -0,0 +1,202 @@
+package com.studylife.servlet;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Write-behind pipeline for {@code user_login_locations}.
+ *
+ * Request threads only enqueue; a single flusher thread groups queued rows into one JDBC batch
+ * once {@code maxBatch} rows are waiting or {@code maxDelayMs} has passed since the oldest one.
+ * With {@code rewriteBatchedStatements=true} on the MySQL URL the batch goes out as one multi-row INSERT.
+ *
+ * Offers hold the read side of {@link #closing} and {@link #close} takes the write side to set
+ * {@code closed}, so once the flusher sees it every accepted row is already in the queue.
+ */
+final class LocationBatchWriter implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(LocationBatchWriter.class.getName());
+
+    static final String INSERT_SQL = "INSERT INTO user_login_locations (user_id, country_id) VALUES (?, ?)";
+
+    static final class Row {
+        final int userId;
+        final String country;
+
+        Row(int userId, String country) {
+            this.userId = userId;
+            this.country = country;
+        }
+    }
+
+    private final Supplier<DataSource> dataSource;
+    private final BlockingQueue<Row> queue;
+    private final int maxBatch;
+    private final long maxDelayMs;
+    private final long closeTimeoutMs;
+    private final Thread flusher;
+    private final ReadWriteLock closing = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    LocationBatchWriter(Supplier<DataSource> dataSource, int capacity, int maxBatch, long maxDelayMs, long closeTimeoutMs) {
+        this.dataSource = dataSource;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxDelayMs = Math.max(1, maxDelayMs);
+        this.closeTimeoutMs = Math.max(0, closeTimeoutMs);
+        this.flusher = new Thread(this::runFlusher, "location-write-behind");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    static LocationBatchWriter fromConfig(Supplier<DataSource> dataSource) {
+        return new LocationBatchWriter(dataSource,
+                Config.getInt("LOCATION_QUEUE_CAPACITY", 10000),
+                Config.getInt("LOCATION_BATCH_SIZE", 200),
+                Config.getLong("LOCATION_BATCH_DELAY_MS", 200),
+                Config.getLong("LOCATION_FLUSH_TIMEOUT_MS", 10000));
+    }
+
+    /** Enqueues a row without blocking; {@code false} means the queue is full and the caller must shed load. */
+    boolean offer(int userId, String country) {
+        closing.readLock().lock();
+        try {
+            if (closed || !queue.offer(new Row(userId, country))) {
+                rejected.increment();
+                return false;
+            }
+        } finally {
+            closing.readLock().unlock();
+        }
+        accepted.increment();
+        return true;
+    }
+
+    int pending() { return queue.size(); }
+
+    long written() { return written.sum(); }
+
+    long failed() { return failed.sum(); }
+
+    long rejected() { return rejected.sum(); }
+
+    private void runFlusher() {
+        List<Row> batch = new ArrayList<>(maxBatch);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Row first = queue.poll(maxDelayMs, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+                while (batch.size() < maxBatch) {
+                    queue.drainTo(batch, maxBatch - batch.size());
+                    long left = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatch || left <= 0 || closed) break;
+                    Row next = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                // close() timed out: write what we already hold and stop
+                flush(batch);
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    void flush(List<Row> rows) {
+        if (rows.isEmpty()) return;
+        try {
+            writeBatch(rows);
+            written.add(rows.size());
+            batches.increment();
+            for (Row r : rows) LoginStats.shared().record(r.userId, r.country);
+        } catch (SQLException batchFailure) {
+            LOG.log(Level.WARNING, "[Location] batch of " + rows.size() + " failed, retrying row by row", batchFailure);
+            for (Row r : rows) {
+                try {
+                    writeBatch(List.of(r));
+                    written.increment();
+                    LoginStats.shared().record(r.userId, r.country);
+                } catch (SQLException rowFailure) {
+                    failed.increment();
+                    LOG.log(Level.SEVERE, "[Location] dropped row user=" + r.userId, rowFailure);
+                }
+            }
+        }
+    }
+
+    private void writeBatch(List<Row> rows) throws SQLException {
+        DataSource ds = dataSource.get();
+        if (ds == null) throw new SQLException("No DataSource configured");
+
+        CountryDictionary countries = CountryDictionary.of(ds);
+        int[] countryIds = new int[rows.size()];
+        for (int i = 0; i < countryIds.length; i++) countryIds[i] = countries.idFor(rows.get(i).country);
+
+        try (Connection conn = ds.getConnection()) {
+            boolean auto = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(INSERT_SQL)) {
+                for (int i = 0; i < countryIds.length; i++) {
+                    ps.setInt(1, rows.get(i).userId);
+                    ps.setInt(2, countryIds[i]);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(auto);
+            }
+        }
+    }
+
+    /** Stops accepting rows and waits for everything already queued to be written. */
+    @Override
+    public void close() {
+        closing.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closing.writeLock().unlock();
+        }
+        try {
+            flusher.join(closeTimeoutMs);
+            if (flusher.isAlive()) {
+                flusher.interrupt();
+                flusher.join(1000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOG.info(String.format("[Location] write-behind closed: accepted=%d written=%d failed=%d rejected=%d batches=%d left=%d",
+                accepted.sum(), written.sum(), failed.sum(), rejected.sum(), batches.sum(), queue.size()));
+    }
+}
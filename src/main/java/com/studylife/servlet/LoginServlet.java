@@ -1,20 +1,26 @@
 package com.studylife.servlet;
 
-import org.json.JSONObject;
-import org.json.JSONException;
-
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.ServletException;
-import java.io.BufferedReader;
+import javax.sql.DataSource;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.sql.*;
-import java.util.stream.Collectors;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class LoginServlet extends HttpServlet {
     private static final long serialVersionUID = 1L;
+    private static final Logger LOG = Logger.getLogger(LoginServlet.class.getName());
+    private static final JsonRequestDecoder BODY = new JsonRequestDecoder("username", "password");
+
+    private static final byte[] INVALID_JSON = JsonResponse.message("error", "Invalid JSON");
+    private static final byte[] TOO_LARGE    = JsonResponse.message("error", "Request body too large");
+    private static final byte[] EMPTY        = JsonResponse.message("error", "Username or password empty.");
+    private static final byte[] BUSY         = JsonResponse.message("error", "Server busy, retry later.");
+    private static final byte[] INVALID      = JsonResponse.message("fail", "Invalid credentials.");
 
     private void setCors(HttpServletResponse resp) {
         resp.setHeader("Access-Control-Allow-Origin", "*");
@@ -36,39 +42,47 @@ public class LoginServlet extends HttpServlet {
         response.setCharacterEncoding("UTF-8");
         response.setContentType("application/json;charset=UTF-8");
 
-        // 读取请求体
-        final String body;
-        try (BufferedReader br = request.getReader()) {
-            body = br.lines().collect(Collectors.joining());
-        }
-
-        final JSONObject result = new JSONObject();
-
-       
-        final JSONObject json;
+        final String[] fields;
         try {
-            json = new JSONObject(body);
-        } catch (JSONException ex) {
-           
-            result.put("status", "error").put("message", "Invalid JSON");
-            writeJson(response, HttpServletResponse.SC_BAD_REQUEST, result.toString());
+            fields = BODY.decode(request);
+        } catch (JsonRequestDecoder.DecodeException ex) {
+            if (ex.tooLarge) {
+                JsonResponse.send(response, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, TOO_LARGE);
+            } else {
+                JsonResponse.send(response, HttpServletResponse.SC_BAD_REQUEST, INVALID_JSON);
+            }
             return;
         }
 
-        final String username = json.optString("username", "").trim();
-        final String password = json.optString("password", "").trim();
+        final String username = fields[0].trim();
+        final String password = fields[1].trim();
 
         if (username.isEmpty() || password.isEmpty()) {
-            result.put("status", "error").put("message", "Username or password empty.");
-            writeJson(response, HttpServletResponse.SC_BAD_REQUEST, result.toString());
+            JsonResponse.send(response, HttpServletResponse.SC_BAD_REQUEST, EMPTY);
+            return;
+        }
+
+        long wait = RateLimiter.byUsername().tryAcquire(username.toLowerCase(Locale.ROOT));
+        if (wait > 0) {
+            RateLimitFilter.reject(response, wait);
             return;
         }
 
+        // 数据库查询和 BCrypt 校验都在 db 线程池里执行，不占用容器线程
+        IoLane.db().dispatch(request, response, resp -> handleLogin(resp, username, password));
+    }
+
+    private void handleLogin(HttpServletResponse response, String username, String password)
+            throws IOException {
         Integer userId = null;
 
         
         try {
             userId = authenticateFromDb(username, password);
+        } catch (PasswordHasher.SaturatedException busy) {
+            response.setHeader("Retry-After", "1");
+            JsonResponse.send(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, BUSY);
+            return;
         } catch (Exception ignored) {
             userId = null;
         }
@@ -79,48 +93,68 @@ public class LoginServlet extends HttpServlet {
         }
 
         if (userId != null) {
-            JSONObject ok = new JSONObject()
-                    .put("status", "success")
-                    .put("userId", userId)
-                    .put("username", username);
-            writeJson(response, HttpServletResponse.SC_OK, ok.toString());
+            JsonResponse.object()
+                    .field("status", "success")
+                    .field("userId", userId)
+                    .field("username", username)
+                    .send(response, HttpServletResponse.SC_OK);
         } else {
-            JSONObject fail = new JSONObject()
-                    .put("status", "fail")
-                    .put("message", "Invalid credentials.");
-            writeJson(response, HttpServletResponse.SC_UNAUTHORIZED, fail.toString());
+            JsonResponse.send(response, HttpServletResponse.SC_UNAUTHORIZED, INVALID);
         }
     }
 
-    
-    private Integer authenticateFromDb(String username, String password) throws Exception {
-        
-        String url  = System.getenv("DB_URL");
-        String user = System.getenv("DB_USER");
-        String pass = System.getenv("DB_PASS");
-
-        if (url == null || user == null || pass == null) {
+    /** The user's id when {@code password} matches, {@code null} otherwise. Package-private for the JMH benchmark. */
+    Integer authenticateFromDb(String username, String password) throws Exception {
+        DataSource ds = Db.dataSource();
+        if (ds == null) {
             return null;
         }
 
-        
-        Class.forName("com.mysql.cj.jdbc.Driver");
-
-        String sql = "SELECT id FROM users WHERE username = ? AND password = ?";
+        String sql = "SELECT id, password FROM users WHERE username = ?";
 
-        try (Connection conn = DriverManager.getConnection(url, user, pass);
+        int id;
+        String stored;
+        try (Connection conn = ds.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
             ps.setString(1, username);
-            ps.setString(2, password);
 
             try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("id");
+                if (!rs.next()) {
+                    return null;
                 }
+                id = rs.getInt("id");
+                stored = rs.getString("password");
             }
+        }
+
+        // BCrypt runs after the connection is back in the pool.
+        PasswordHasher hasher = PasswordHasher.shared();
+        PasswordHasher.Verification v = hasher.verify(password, stored);
+        if (!v.matches) {
             return null;
         }
+        if (v.needsRehash) {
+            rehash(ds, hasher, id, stored, password);
+        }
+        return id;
+    }
+
+    /** Upgrades a plaintext or low-cost hash after a successful login; a failure only skips the upgrade. */
+    private void rehash(DataSource ds, PasswordHasher hasher, int id, String oldValue, String password) {
+        String sql = "UPDATE users SET password = ? WHERE id = ? AND password = ?";
+        try {
+            String hash = hasher.hash(password);
+            try (Connection conn = ds.getConnection();
+                 PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, hash);
+                ps.setInt(2, id);
+                ps.setString(3, oldValue);
+                ps.executeUpdate();
+            }
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "[Login] password rehash skipped for user " + id, e);
+        }
     }
 
    
@@ -129,12 +163,4 @@ public class LoginServlet extends HttpServlet {
         if ("456".equals(username) && "456".equals(password)) return 3;
         return null;
     }
-
-    private void writeJson(HttpServletResponse resp, int status, String body) throws IOException {
-        resp.setStatus(status);
-        try (PrintWriter pw = resp.getWriter()) {
-            pw.write(body);
-            pw.flush();
-        }
-    }
 }
@@ -0,0 +1,289 @@
+package com.studylife.servlet;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Login counts and distinct users per day and country, fed by the location insert path.
+ *
+ * Each (day, country) cell holds a {@link LongAdder} and a {@link HyperLogLog}, so recording a login
+ * never takes a lock. A background task merges the cells into {@code login_stats_daily}: counts are
+ * added as deltas, sketches are merged register by register, which is idempotent and therefore safe
+ * to repeat after a failed commit or from several app instances. Queries combine the checkpointed
+ * rows with whatever has not been written yet, so they never scan {@code user_login_locations}.
+ *
+ * Memory is bounded by {@code maxKeys} cells of 4 KiB; countries beyond that for a day are counted
+ * under {@link #OTHER}. Cells older than yesterday are dropped once they are fully checkpointed.
+ */
+final class LoginStats implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(LoginStats.class.getName());
+    private static final ZoneId ZONE_ID = ZoneId.of("Europe/Dublin");
+
+    static final String OTHER = "(other)";
+
+    private static volatile LoginStats shared;
+
+    static final class Summary {
+        final long logins;
+        final long uniqueUsers;
+
+        Summary(long logins, long uniqueUsers) {
+            this.logins = logins;
+            this.uniqueUsers = uniqueUsers;
+        }
+    }
+
+    static final class Report {
+        final Summary total;
+        final Map<String, Summary> byCountry;
+
+        Report(Summary total, Map<String, Summary> byCountry) {
+            this.total = total;
+            this.byCountry = byCountry;
+        }
+    }
+
+    private static final class Key implements Comparable<Key> {
+        final LocalDate day;
+        final String country;
+
+        Key(LocalDate day, String country) {
+            this.day = day;
+            this.country = country;
+        }
+
+        @Override public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return day.equals(k.day) && country.equals(k.country);
+        }
+
+        @Override public int hashCode() { return Objects.hash(day, country); }
+
+        @Override public int compareTo(Key o) {
+            int c = day.compareTo(o.day);
+            return c != 0 ? c : country.compareTo(o.country);
+        }
+    }
+
+    private static final class Cell {
+        final LongAdder logins = new LongAdder();
+        final HyperLogLog users = new HyperLogLog();
+        /** Logins already added to the table; only the checkpoint thread writes it. */
+        volatile long checkpointed;
+    }
+
+    private final Supplier<DataSource> dataSource;
+    private final Supplier<LocalDate> today;
+    private final int maxKeys;
+    private final ConcurrentHashMap<Key, Cell> cells = new ConcurrentHashMap<>();
+    private final Object checkpointLock = new Object();
+    private final ScheduledExecutorService checkpointer;
+
+    LoginStats(Supplier<DataSource> dataSource, Supplier<LocalDate> today, int maxKeys, long checkpointMs) {
+        this.dataSource = dataSource;
+        this.today = today;
+        this.maxKeys = Math.max(1, maxKeys);
+        if (checkpointMs > 0) {
+            checkpointer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "login-stats-checkpoint");
+                t.setDaemon(true);
+                return t;
+            });
+            checkpointer.scheduleWithFixedDelay(this::checkpointQuietly, checkpointMs, checkpointMs, TimeUnit.MILLISECONDS);
+        } else {
+            checkpointer = null;
+        }
+    }
+
+    static LoginStats shared() {
+        LoginStats s = shared;
+        if (s == null) {
+            synchronized (LoginStats.class) {
+                s = shared;
+                if (s == null) {
+                    s = new LoginStats(Db::dataSource, () -> LocalDate.now(ZONE_ID),
+                            Config.getInt("LOGIN_STATS_MAX_KEYS", 1024),
+                            Config.getLong("LOGIN_STATS_CHECKPOINT_MS", 60_000));
+                    shared = s;
+                }
+            }
+        }
+        return s;
+    }
+
+    /** Writes what is pending and stops the checkpoint task. */
+    static synchronized void shutdownShared() {
+        if (shared != null) {
+            shared.close();
+            shared = null;
+        }
+    }
+
+    void record(int userId, String country) {
+        record(userId, country, today.get());
+    }
+
+    void record(int userId, String country, LocalDate day) {
+        Cell cell = cell(day, CountryDictionary.canonical(country));
+        cell.users.add(userId);
+        cell.logins.increment();   // after the sketch, so a checkpoint that sees the count also sees the user
+    }
+
+    private Cell cell(LocalDate day, String country) {
+        Key key = new Key(day, country);
+        Cell c = cells.get(key);
+        if (c != null) return c;
+        if (cells.size() >= maxKeys) key = new Key(day, OTHER);
+        return cells.computeIfAbsent(key, k -> new Cell());
+    }
+
+    int cells() { return cells.size(); }
+
+    /** Merges every cell with unwritten logins into the table in one transaction. */
+    void checkpoint() throws SQLException {
+        DataSource ds = dataSource.get();
+        if (ds == null) return;
+
+        synchronized (checkpointLock) {
+            // Rows are locked in key order so concurrent instances cannot deadlock each other.
+            Map<Key, Cell> dirty = new TreeMap<>();
+            cells.forEach((k, c) -> { if (c.logins.sum() != c.checkpointed) dirty.put(k, c); });
+            Map<Key, Long> written = new HashMap<>();
+            try (Connection conn = ds.getConnection()) {
+                boolean auto = conn.getAutoCommit();
+                conn.setAutoCommit(false);
+                try (PreparedStatement ensure = conn.prepareStatement(
+                             "INSERT INTO login_stats_daily (stat_day, country, logins, sketch) VALUES (?, ?, 0, ?) " +
+                             "ON DUPLICATE KEY UPDATE logins = logins");
+                     PreparedStatement lock = conn.prepareStatement(
+                             "SELECT sketch FROM login_stats_daily WHERE stat_day = ? AND country = ? FOR UPDATE");
+                     PreparedStatement update = conn.prepareStatement(
+                             "UPDATE login_stats_daily SET logins = logins + ?, sketch = ?, updated_at = CURRENT_TIMESTAMP " +
+                             "WHERE stat_day = ? AND country = ?")) {
+                    for (Map.Entry<Key, Cell> e : dirty.entrySet()) {
+                        Key k = e.getKey();
+                        Cell c = e.getValue();
+                        long total = c.logins.sum();
+
+                        HyperLogLog merged = new HyperLogLog();
+                        merged.merge(c.users);
+                        ensure.setDate(1, Date.valueOf(k.day));
+                        ensure.setString(2, k.country);
+                        ensure.setBytes(3, merged.toBytes());
+                        ensure.executeUpdate();
+                        lock.setDate(1, Date.valueOf(k.day));
+                        lock.setString(2, k.country);
+                        try (ResultSet rs = lock.executeQuery()) {
+                            if (rs.next()) merged.merge(HyperLogLog.fromBytes(rs.getBytes(1)));
+                        }
+                        update.setLong(1, total - c.checkpointed);
+                        update.setBytes(2, merged.toBytes());
+                        update.setDate(3, Date.valueOf(k.day));
+                        update.setString(4, k.country);
+                        update.executeUpdate();
+                        written.put(k, total);
+                    }
+                    conn.commit();
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(auto);
+                }
+            }
+            for (Map.Entry<Key, Long> w : written.entrySet()) dirty.get(w.getKey()).checkpointed = w.getValue();
+
+            LocalDate keepFrom = today.get().minusDays(1);
+            cells.entrySet().removeIf(e -> e.getKey().day.isBefore(keepFrom)
+                    && e.getValue().logins.sum() == e.getValue().checkpointed);
+        }
+    }
+
+    private void checkpointQuietly() {
+        try {
+            checkpoint();
+        } catch (SQLException | RuntimeException e) {
+            LOG.log(Level.WARNING, "[LoginStats] checkpoint failed, will retry", e);
+        }
+    }
+
+    /**
+     * Logins and estimated distinct users per country over {@code from..to}, and overall.
+     * A user seen on several days of the range is counted once.
+     */
+    Report query(LocalDate from, LocalDate to) throws SQLException {
+        Map<String, long[]> logins = new HashMap<>();
+        Map<String, HyperLogLog> users = new HashMap<>();
+        DataSource ds = dataSource.get();
+
+        synchronized (checkpointLock) {   // a checkpoint in between would count pending logins twice or not at all
+            if (ds != null) {
+                try (Connection conn = ds.getConnection();
+                     PreparedStatement ps = conn.prepareStatement(
+                             "SELECT country, logins, sketch FROM login_stats_daily WHERE stat_day BETWEEN ? AND ?")) {
+                    ps.setDate(1, Date.valueOf(from));
+                    ps.setDate(2, Date.valueOf(to));
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            String country = rs.getString(1);
+                            logins.computeIfAbsent(country, k -> new long[1])[0] += rs.getLong(2);
+                            users.computeIfAbsent(country, k -> new HyperLogLog()).merge(HyperLogLog.fromBytes(rs.getBytes(3)));
+                        }
+                    }
+                }
+            }
+            for (Map.Entry<Key, Cell> e : cells.entrySet()) {
+                Key k = e.getKey();
+                if (k.day.isBefore(from) || k.day.isAfter(to)) continue;
+                Cell c = e.getValue();
+                long pending = ds == null ? c.logins.sum() : c.logins.sum() - c.checkpointed;
+                logins.computeIfAbsent(k.country, x -> new long[1])[0] += pending;
+                users.computeIfAbsent(k.country, x -> new HyperLogLog()).merge(c.users);
+            }
+        }
+
+        Map<String, Summary> byCountry = new HashMap<>();
+        HyperLogLog all = new HyperLogLog();
+        long allLogins = 0;
+        for (Map.Entry<String, long[]> e : logins.entrySet()) {
+            HyperLogLog u = users.get(e.getKey());
+            byCountry.put(e.getKey(), new Summary(e.getValue()[0], u.estimate()));
+            all.merge(u);
+            allLogins += e.getValue()[0];
+        }
+        return new Report(new Summary(allLogins, all.estimate()), byCountry);
+    }
+
+    @Override
+    public void close() {
+        if (checkpointer != null) {
+            checkpointer.shutdown();
+            try {
+                checkpointer.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        checkpointQuietly();
+    }
+}
@@ -0,0 +1,109 @@
+package com.studylife.servlet;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * GET /api/stats/logins[?from=2025-03-01][&amp;to=2025-03-31] (both default to today).
+ *
+ * Returns {"logins":N, "uniqueUsers":U, "countries":[{"country","logins","uniqueUsers"}, ...]},
+ * busiest country first. Answered from {@link LoginStats}; unique users are HyperLogLog estimates
+ * (about 1.6% error) and count a user once across the whole range.
+ */
+public class LoginStatsServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = Logger.getLogger(LoginStatsServlet.class.getName());
+    private static final ZoneId ZONE_ID = ZoneId.of("Europe/Dublin");
+
+    static final int MAX_DAYS = 366;
+
+    /** Overridable for tests. */
+    protected LoginStats stats() {
+        return LoginStats.shared();
+    }
+
+    /** Overridable for tests. */
+    protected LocalDate today() {
+        return LocalDate.now(ZONE_ID);
+    }
+
+    @Override
+    protected void doOptions(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        JsonApi.addCors(resp, "GET, OPTIONS");
+        resp.setStatus(HttpServletResponse.SC_NO_CONTENT);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        JsonApi.addCors(response, "GET, OPTIONS");
+        response.setContentType("application/json;charset=UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+
+        final LocalDate from;
+        final LocalDate to;
+        try {
+            String f = request.getParameter("from");
+            String t = request.getParameter("to");
+            to = t == null || t.trim().isEmpty() ? today() : LocalDate.parse(t.trim());
+            from = f == null || f.trim().isEmpty() ? to : LocalDate.parse(f.trim());
+        } catch (DateTimeParseException bad) {
+            JsonApi.writeJson(response, HttpServletResponse.SC_BAD_REQUEST,
+                    JsonApi.fail("from and to must be yyyy-MM-dd"));
+            return;
+        }
+        if (from.isAfter(to) || ChronoUnit.DAYS.between(from, to) >= MAX_DAYS) {
+            JsonApi.writeJson(response, HttpServletResponse.SC_BAD_REQUEST,
+                    JsonApi.fail("range must be 1 to " + MAX_DAYS + " days"));
+            return;
+        }
+
+        final LoginStats stats = stats();
+        IoLane.db().dispatch(request, response, resp -> {
+            LoginStats.Report r;
+            try {
+                r = stats.query(from, to);
+            } catch (SQLException e) {
+                LOG.log(Level.WARNING, "[LoginStats] query failed", e);
+                JsonApi.writeJson(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                        JsonApi.error("Database error"));
+                return;
+            }
+
+            List<Map.Entry<String, LoginStats.Summary>> rows = new ArrayList<>(r.byCountry.entrySet());
+            rows.sort((a, b) -> Long.compare(b.getValue().logins, a.getValue().logins));
+            JSONArray countries = new JSONArray();
+            for (Map.Entry<String, LoginStats.Summary> e : rows) {
+                countries.put(new JSONObject()
+                        .put("country", e.getKey())
+                        .put("logins", e.getValue().logins)
+                        .put("uniqueUsers", e.getValue().uniqueUsers));
+            }
+            JSONObject ok = new JSONObject()
+                    .put("status", "success")
+                    .put("from", from.toString())
+                    .put("to", to.toString())
+                    .put("logins", r.total.logins)
+                    .put("uniqueUsers", r.total.uniqueUsers)
+                    .put("countries", countries);
+            JsonApi.writeJson(resp, HttpServletResponse.SC_OK, ok.toString());
+        });
+    }
+}
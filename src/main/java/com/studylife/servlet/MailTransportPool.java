@@ -0,0 +1,327 @@
+package com.studylife.servlet;
+
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded pool of connected, authenticated SMTP {@link Transport}s sharing one {@link Session}.
+ *
+ * The session is built once from a {@link Settings} snapshot. A borrowed connection that has been
+ * idle longer than {@code idleTimeoutMs} or has carried {@code maxMessages} messages is closed and
+ * replaced; any other idle connection is checked with {@link Transport#isConnected()}, which sends
+ * an SMTP NOOP. A send that fails on a reused connection is retried once on a fresh one.
+ * {@link #sendBatch} pushes several messages through one connection back to back.
+ */
+final class MailTransportPool implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(MailTransportPool.class.getName());
+
+    /** SMTP settings read once; MAIL_* system properties win over the SMTP_* environment variables. */
+    static final class Settings {
+        final String host;
+        final int port;
+        final boolean starttls;
+        final boolean ssl;
+        final boolean debug;
+        final String username;
+        final String password;
+        final String from;
+
+        Settings(String host, int port, boolean starttls, boolean ssl, boolean debug,
+                 String username, String password, String from) {
+            this.host = host;
+            this.port = port;
+            this.starttls = starttls;
+            this.ssl = ssl;
+            this.debug = debug;
+            this.username = username;
+            this.password = password;
+            this.from = from;
+        }
+
+        static Settings fromConfig() throws MessagingException {
+            String host      = prop("MAIL_SMTP_HOST", "SMTP_HOST", "smtp.gmail.com");
+            String port      = prop("MAIL_SMTP_PORT", "SMTP_PORT", "587");
+            boolean starttls = propBool("MAIL_STARTTLS", "SMTP_STARTTLS", true);
+            boolean ssl      = propBool("MAIL_SSL",      "SMTP_SSL", false);
+            boolean debug    = propBool("MAIL_DEBUG",    "SMTP_DEBUG", false);
+
+            String username  = prop("MAIL_USERNAME", "SMTP_USER", "");
+            String password  = prop("MAIL_PASSWORD", "SMTP_PASS", "");
+            String fromCfg   = prop("MAIL_FROM",     "SMTP_FROM",
+                    !isBlank(username) ? username : "noreply@example.com");
+
+            if (isBlank(username) || isBlank(password)) {
+                throw new MessagingException(
+                    "SMTP auth required: set MAIL_USERNAME/SMTP_USER and MAIL_PASSWORD/SMTP_PASS (use Gmail App Password if using Gmail).");
+            }
+
+            // Gmail rewrites any other From to the account address anyway.
+            String from = "smtp.gmail.com".equalsIgnoreCase(host) || isBlank(fromCfg) ? username : fromCfg;
+
+            int portNo;
+            try {
+                portNo = Integer.parseInt(port);
+            } catch (NumberFormatException e) {
+                throw new MessagingException("Invalid SMTP port: " + port);
+            }
+            return new Settings(host, portNo, starttls, ssl, debug, username, password, from);
+        }
+
+        /** The relay host alone, without the credential checks of {@link #fromConfig()}. */
+        static String configuredHost() {
+            return prop("MAIL_SMTP_HOST", "SMTP_HOST", "smtp.gmail.com");
+        }
+
+        Properties toProperties() {
+            Properties props = new Properties();
+            props.put("mail.smtp.host", host);
+            props.put("mail.smtp.port", String.valueOf(port));
+            props.put("mail.smtp.auth", "true");
+
+            props.put("mail.smtp.starttls.enable", String.valueOf(starttls));
+            if (starttls) {
+                props.put("mail.smtp.starttls.required", "true");
+            }
+            if (ssl) {
+                props.put("mail.smtp.ssl.enable", "true");
+                props.put("mail.smtp.starttls.enable", "false");
+            }
+
+            props.put("mail.smtp.connectiontimeout", "10000");
+            props.put("mail.smtp.timeout", "15000");
+            props.put("mail.smtp.writetimeout", "15000");
+            props.put("mail.smtp.ssl.protocols", "TLSv1.2 TLSv1.3");
+            props.put("mail.smtp.ssl.trust", host);
+            props.put("mail.smtp.auth.mechanisms", "LOGIN PLAIN");
+            return props;
+        }
+
+        private static String prop(String sysKey, String envKey, String defVal) {
+            String v = System.getProperty(sysKey);
+            if (v == null || v.trim().isEmpty()) v = System.getenv(envKey);
+            return (v == null || v.trim().isEmpty()) ? defVal : v.trim();
+        }
+
+        private static boolean propBool(String sysKey, String envKey, boolean defVal) {
+            String v = prop(sysKey, envKey, defVal ? "true" : "false");
+            return "1".equalsIgnoreCase(v) || "true".equalsIgnoreCase(v) || "yes".equalsIgnoreCase(v);
+        }
+
+        private static boolean isBlank(String s) { return s == null || s.trim().isEmpty(); }
+    }
+
+    private static final class Pooled {
+        final Transport transport;
+        int sent;
+        long lastUsedNanos = System.nanoTime();
+
+        Pooled(Transport transport) { this.transport = transport; }
+    }
+
+    private final Settings settings;
+    private final Session session;
+    private final InternetAddress from;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<Pooled> idle = new LinkedBlockingDeque<>();
+    private final int maxMessages;
+    private final long idleTimeoutNanos;
+    private final long borrowTimeoutMs;
+    private volatile boolean closed;
+
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong recycled = new AtomicLong();
+    private final AtomicLong broken = new AtomicLong();
+
+    MailTransportPool(Settings settings, int maxSize, int maxMessages, long idleTimeoutMs, long borrowTimeoutMs)
+            throws AddressException {
+        this.settings = settings;
+        this.session = Session.getInstance(settings.toProperties());
+        this.session.setDebug(settings.debug);
+        this.from = new InternetAddress(settings.from);
+        this.permits = new Semaphore(Math.max(1, maxSize), true);
+        this.maxMessages = Math.max(1, maxMessages);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, idleTimeoutMs));
+        this.borrowTimeoutMs = borrowTimeoutMs;
+    }
+
+    static MailTransportPool fromConfig() throws MessagingException {
+        return new MailTransportPool(Settings.fromConfig(),
+                Config.getInt("MAIL_POOL_SIZE", Config.getInt("MAIL_LANE_THREADS", 4)),
+                Config.getInt("MAIL_POOL_MAX_MESSAGES", 100),
+                Config.getLong("MAIL_POOL_IDLE_MS", 60_000),
+                Config.getLong("MAIL_POOL_TIMEOUT_MS", 30_000));
+    }
+
+    Session session() { return session; }
+
+    InternetAddress from() { return from; }
+
+    long opened() { return opened.get(); }
+
+    long recycled() { return recycled.get(); }
+
+    int idleCount() { return idle.size(); }
+
+    void send(MimeMessage message) throws MessagingException {
+        MessagingException failure = sendBatch(Collections.singletonList(message))[0];
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Sends the messages one after another over a single borrowed connection.
+     *
+     * @return one entry per message: {@code null} when it was accepted, otherwise why it was not
+     * @throws MessagingException only when no connection could be borrowed at all
+     */
+    MessagingException[] sendBatch(List<MimeMessage> batch) throws MessagingException {
+        if (closed) throw new MessagingException("SMTP pool is closed");
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted waiting for an SMTP connection", e);
+        }
+        if (!acquired) throw new MessagingException("SMTP pool exhausted after " + borrowTimeoutMs + "ms");
+
+        MessagingException[] result = new MessagingException[batch.size()];
+        Pooled c = null;
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                MimeMessage message = batch.get(i);
+                try {
+                    message.saveChanges();
+                } catch (MessagingException bad) {
+                    result[i] = bad;
+                    continue;
+                }
+                if (c == null) {
+                    try {
+                        c = borrow();
+                    } catch (MessagingException down) {
+                        Arrays.fill(result, i, result.length, down);
+                        break;
+                    }
+                }
+
+                boolean reused = c.sent > 0;
+                try {
+                    transmit(c, message);
+                } catch (SendFailedException rejected) {
+                    // The server refused the addresses; the connection itself is fine.
+                    result[i] = rejected;
+                } catch (MessagingException e) {
+                    discard(c);
+                    c = null;
+                    if (!reused) {
+                        result[i] = e;
+                        continue;
+                    }
+                    // The server may have dropped the connection after our NOOP: one more try on a new one.
+                    LOG.log(Level.FINE, "[Mail] send failed on a reused connection, retrying on a new one", e);
+                    try {
+                        c = open();
+                        transmit(c, message);
+                    } catch (SendFailedException rejected) {
+                        result[i] = rejected;
+                    } catch (MessagingException again) {
+                        if (c != null) discard(c);
+                        c = null;
+                        result[i] = again;
+                    }
+                }
+
+                if (c != null && c.sent >= maxMessages) {
+                    recycled.incrementAndGet();
+                    quietClose(c);
+                    c = null;
+                }
+            }
+        } finally {
+            if (c != null) giveBack(c);
+            permits.release();
+        }
+        return result;
+    }
+
+    private void transmit(Pooled c, MimeMessage message) throws MessagingException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            c.transport.sendMessage(message, message.getAllRecipients());
+            ok = true;
+        } finally {
+            Metrics.shared().recordSmtpSend(ok, System.nanoTime() - start);
+        }
+        c.sent++;
+        messages.incrementAndGet();
+    }
+
+    private Pooled borrow() throws MessagingException {
+        for (Pooled c; (c = idle.pollFirst()) != null; ) {
+            if (System.nanoTime() - c.lastUsedNanos > idleTimeoutNanos || c.sent >= maxMessages) {
+                recycled.incrementAndGet();
+                quietClose(c);
+                continue;
+            }
+            if (c.transport.isConnected()) return c;  // NOOP round trip
+            broken.incrementAndGet();
+            quietClose(c);
+        }
+        return open();
+    }
+
+    private Pooled open() throws MessagingException {
+        Transport t = session.getTransport("smtp");
+        t.connect(settings.host, settings.port, settings.username, settings.password);
+        opened.incrementAndGet();
+        return new Pooled(t);
+    }
+
+    private void giveBack(Pooled c) {
+        c.lastUsedNanos = System.nanoTime();
+        if (closed) {
+            quietClose(c);
+        } else {
+            idle.offerFirst(c);
+        }
+    }
+
+    private void discard(Pooled c) {
+        broken.incrementAndGet();
+        quietClose(c);
+    }
+
+    private static void quietClose(Pooled c) {
+        try {
+            c.transport.close();
+        } catch (MessagingException ignored) {
+            // already gone
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Pooled c; (c = idle.pollFirst()) != null; ) quietClose(c);
+        LOG.info(String.format("[Mail] closed pool host=%s opened=%d messages=%d recycled=%d broken=%d",
+                settings.host, opened.get(), messages.get(), recycled.get(), broken.get()));
+    }
+}
@@ -0,0 +1,281 @@
+package com.studylife.servlet;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Latency histograms for requests, JDBC, SMTP and reminder delivery, exported in the Prometheus text format by
+ * {@link MetricsServlet} together with the counters other components already keep.
+ *
+ * Each series (metric family plus label values) has a {@link LatencyRecorder}, so recording is
+ * lock-free. A scrape swaps every recorder's interval out and adds it to the series' running
+ * total; the totals are exported as Prometheus histograms. The intervals also collect into a
+ * window of METRICS_WINDOW_SECONDS (default 60), closed by the first scrape after it has run its
+ * length; the last closed window is exported as the {@code *_recent_seconds} summary
+ * (p50/p99/p99.9/max, until the first window closes the one still open). Every scraper therefore
+ * sees the same quantiles however many there are and however often they scrape.
+ *
+ * Label values come from bounded sets (servlet mappings, status codes, statement kinds, the
+ * standard HTTP methods with everything else as OTHER), so the number of series stays small
+ * without a cap.
+ */
+final class Metrics {
+
+    static final String HTTP = "studylife_http_request_duration_seconds";
+    static final String DB_ACQUIRE = "studylife_db_connection_acquire_seconds";
+    static final String DB_QUERY = "studylife_db_query_seconds";
+    static final String SMTP_SEND = "studylife_smtp_send_seconds";
+    static final String REMINDER_LAG = "studylife_reminder_fire_lag_seconds";
+    static final String REMINDER_DELIVERY = "studylife_reminder_delivery_seconds";
+    static final String REMINDER_SHAPED_DELAY = "studylife_reminder_shaped_delay_seconds";
+    static final String REMINDER_FORCED = "studylife_reminder_shaping_forced_total";
+
+    private static final Map<String, String> HELP = new TreeMap<>();
+
+    static {
+        HELP.put(HTTP, "Time from the request entering the filter chain until the response completed.");
+        HELP.put(DB_ACQUIRE, "Time spent waiting for a pooled JDBC connection.");
+        HELP.put(DB_QUERY, "Time spent in JDBC execute calls on pooled connections.");
+        HELP.put(SMTP_SEND, "Time spent sending one message to the SMTP relay.");
+        HELP.put(REMINDER_LAG, "How long after its target time the scheduler fired a reminder.");
+        HELP.put(REMINDER_DELIVERY, "Time from a reminder firing until its delivery succeeded or failed.");
+        HELP.put(REMINDER_SHAPED_DELAY, "Time a due reminder waited in the dispatcher for a batch and a relay token.");
+    }
+
+    /** Prometheus bucket boundaries, in seconds and in microseconds. */
+    private static final String[] LE = {"0.0005", "0.001", "0.0025", "0.005", "0.01", "0.025", "0.05",
+            "0.1", "0.25", "0.5", "1", "2.5", "5", "10", "30"};
+    private static final long[] LE_MICROS = new long[LE.length];
+
+    static {
+        for (int i = 0; i < LE.length; i++) LE_MICROS[i] = Math.round(Double.parseDouble(LE[i]) * 1_000_000);
+    }
+
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999, 1.0};
+
+    private static volatile Metrics shared;
+
+    private static final class Series {
+        final String family;
+        /** Rendered label pairs without braces, e.g. {@code kind="query"}; may be empty. */
+        final String labels;
+        final LatencyRecorder recorder = new LatencyRecorder();
+        /** Intervals since the current window opened. */
+        LatencyHistogram window = new LatencyHistogram();
+        /** The last closed window, once {@link #closed} is set. */
+        LatencyHistogram lastWindow = new LatencyHistogram();
+        boolean closed;
+
+        Series(String family, String labels) {
+            this.family = family;
+            this.labels = labels;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Series> series = new ConcurrentHashMap<>();
+    private final LatencyRecorder dbAcquire = recorder(DB_ACQUIRE);
+    private final LongAdder reminderForced = new LongAdder();
+    private final LongSupplier clock;
+    private final long windowNanos;
+    private long windowStart;
+
+    Metrics() {
+        this(System::nanoTime, TimeUnit.SECONDS.toNanos(Math.max(1, Config.getLong("METRICS_WINDOW_SECONDS", 60))));
+    }
+
+    /** @param clock nanosecond time source for the quantile window */
+    Metrics(LongSupplier clock, long windowNanos) {
+        this.clock = clock;
+        this.windowNanos = windowNanos;
+        this.windowStart = clock.getAsLong();
+    }
+
+    static Metrics shared() {
+        Metrics m = shared;
+        if (m == null) {
+            synchronized (Metrics.class) {
+                m = shared;
+                if (m == null) {
+                    m = new Metrics();
+                    shared = m;
+                }
+            }
+        }
+        return m;
+    }
+
+    static synchronized void resetShared() {
+        shared = null;
+    }
+
+    /** @param labelPairs label names and values, alternating */
+    LatencyRecorder recorder(String family, String... labelPairs) {
+        StringBuilder labels = new StringBuilder();
+        for (int i = 0; i + 1 < labelPairs.length; i += 2) {
+            if (labels.length() > 0) labels.append(',');
+            labels.append(labelPairs[i]).append("=\"").append(escape(labelPairs[i + 1])).append('"');
+        }
+        String l = labels.toString();
+        return series.computeIfAbsent(family + '{' + l + '}', k -> new Series(family, l)).recorder;
+    }
+
+    void recordRequest(String endpoint, String method, int status, long nanos) {
+        recorder(HTTP, "endpoint", endpoint, "method", method(method), "status", String.valueOf(status))
+                .recordNanos(nanos);
+    }
+
+    /** The method as a label value: the client picks it, so anything non-standard becomes OTHER. */
+    static String method(String method) {
+        if (method == null) return "OTHER";
+        switch (method) {
+            case "GET":
+            case "POST":
+            case "PUT":
+            case "DELETE":
+            case "OPTIONS":
+            case "HEAD":
+                return method;
+            default:
+                return "OTHER";
+        }
+    }
+
+    void recordDbAcquire(long nanos) {
+        dbAcquire.recordNanos(nanos);
+    }
+
+    void recordDbQuery(String kind, long nanos) {
+        recorder(DB_QUERY, "kind", kind).recordNanos(nanos);
+    }
+
+    void recordSmtpSend(boolean ok, long nanos) {
+        recorder(SMTP_SEND, "result", ok ? "ok" : "error").recordNanos(nanos);
+    }
+
+    void recordReminderLag(long nanos) {
+        recorder(REMINDER_LAG).recordNanos(nanos);
+    }
+
+    void recordReminderDelivery(boolean ok, long nanos) {
+        recorder(REMINDER_DELIVERY, "result", ok ? "ok" : "error").recordNanos(nanos);
+    }
+
+    void recordReminderShapedDelay(long nanos) {
+        recorder(REMINDER_SHAPED_DELAY).recordNanos(nanos);
+    }
+
+    void recordReminderForced() {
+        reminderForced.increment();
+    }
+
+    /** The whole exposition, histograms first and then the other components' counters. */
+    synchronized String scrape() {
+        Map<String, Map<String, Series>> byFamily = new TreeMap<>();
+        series.forEach((k, s) -> byFamily.computeIfAbsent(s.family, f -> new TreeMap<>()).put(s.labels, s));
+
+        long now = clock.getAsLong();
+        boolean closeWindow = now - windowStart >= windowNanos;
+        if (closeWindow) windowStart = now;
+
+        StringBuilder out = new StringBuilder(4096);
+        for (Map.Entry<String, Map<String, Series>> f : byFamily.entrySet()) {
+            String family = f.getKey();
+            String summary = family.replaceAll("_seconds$", "") + "_recent_seconds";
+            StringBuilder quantiles = new StringBuilder();
+
+            header(out, family, HELP.getOrDefault(family, family), "histogram");
+            for (Series s : f.getValue().values()) {
+                s.window.add(s.recorder.interval());
+                if (closeWindow) {
+                    LatencyHistogram done = s.window;
+                    s.window = s.lastWindow;
+                    s.window.reset();
+                    s.lastWindow = done;
+                    s.closed = true;
+                }
+                LatencyHistogram recent = s.closed ? s.lastWindow : s.window;
+                LatencyHistogram total = s.recorder.total();
+                String sep = s.labels.isEmpty() ? "" : ",";
+                for (int i = 0; i < LE.length; i++) {
+                    sample(out, family + "_bucket", s.labels + sep + "le=\"" + LE[i] + "\"", total.countAtOrBelow(LE_MICROS[i]));
+                }
+                long count = total.count();
+                sample(out, family + "_bucket", s.labels + sep + "le=\"+Inf\"", count);
+                sample(out, family + "_sum", s.labels, seconds(total.sumMicros()));
+                sample(out, family + "_count", s.labels, count);
+
+                for (double q : QUANTILES) {
+                    sample(quantiles, summary, s.labels + sep + "quantile=\"" + q + "\"",
+                            seconds(recent.percentileMicros(q)));
+                }
+                sample(quantiles, summary + "_sum", s.labels, seconds(total.sumMicros()));
+                sample(quantiles, summary + "_count", s.labels, count);
+            }
+            header(out, summary, "Quantiles of " + family + " over the last window; sum and count are totals.",
+                    "summary");
+            out.append(quantiles);
+        }
+
+        header(out, REMINDER_FORCED, "Reminders sent without a relay token after waiting their full spread.", "counter");
+        sample(out, REMINDER_FORCED, "", reminderForced.sum());
+        components(out);
+        return out.toString();
+    }
+
+    private static void components(StringBuilder out) {
+        DashboardCache cache = DashboardCache.shared();
+        header(out, "studylife_dashboard_cache_requests_total", "Dashboard cache lookups by result.", "counter");
+        sample(out, "studylife_dashboard_cache_requests_total", "result=\"hit\"", cache.hits());
+        sample(out, "studylife_dashboard_cache_requests_total", "result=\"miss\"", cache.misses());
+        header(out, "studylife_dashboard_cache_invalidations_total", "Dashboard cache entries dropped by writes.", "counter");
+        sample(out, "studylife_dashboard_cache_invalidations_total", "", cache.invalidations());
+
+        header(out, "studylife_rate_limit_decisions_total", "Login and registration rate limiter decisions.", "counter");
+        rateLimiter(out, "ip", RateLimiter.byIp());
+        rateLimiter(out, "username", RateLimiter.byUsername());
+
+        header(out, "studylife_reminders_pending", "Reminders accepted and not yet delivered or failed.", "gauge");
+        sample(out, "studylife_reminders_pending", "", ReminderMonitor.shared().pending());
+
+        header(out, "studylife_db_pool_connections", "Connections per pool and state.", "gauge");
+        StringBuilder timeouts = new StringBuilder();
+        for (ConnectionPool p : Db.pools()) {
+            ConnectionPool.Stats st = p.stats();
+            String pool = "pool=\"" + escape(st.name) + "\"";
+            sample(out, "studylife_db_pool_connections", pool + ",state=\"active\"", st.active);
+            sample(out, "studylife_db_pool_connections", pool + ",state=\"idle\"", st.idle);
+            sample(timeouts, "studylife_db_pool_timeouts_total", pool, st.timeouts);
+        }
+        header(out, "studylife_db_pool_timeouts_total", "Borrows that gave up waiting for a connection.", "counter");
+        out.append(timeouts);
+    }
+
+    private static void rateLimiter(StringBuilder out, String limit, RateLimiter r) {
+        sample(out, "studylife_rate_limit_decisions_total", "limit=\"" + limit + "\",result=\"allowed\"", r.allowed());
+        sample(out, "studylife_rate_limit_decisions_total", "limit=\"" + limit + "\",result=\"rejected\"", r.rejected());
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, Object value) {
+        out.append(name);
+        if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long micros) {
+        return String.format(Locale.ROOT, "%.6f", micros / 1e6);
+    }
+
+    static String escape(String v) {
+        return v.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,82 @@
+package com.studylife.servlet;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletMapping;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Records every API request's latency in {@link Metrics}, by endpoint, method and status.
+ *
+ * Requests handed to an {@link IoLane} finish after {@code doFilter} returns, so for those the
+ * time is taken when the async context completes. The endpoint is the servlet mapping pattern
+ * ("/api/login"), never the raw path, and non-standard methods are recorded as OTHER, so unknown
+ * URLs and made-up methods cannot create new series.
+ * METRICS_ENABLED=false turns the filter off.
+ */
+public class MetricsFilter implements Filter {
+
+    private boolean enabled = true;
+
+    /** Overridable for tests. */
+    protected Metrics metrics() {
+        return Metrics.shared();
+    }
+
+    @Override
+    public void init(FilterConfig config) {
+        enabled = Config.getBool("METRICS_ENABLED", true);
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse resp, FilterChain chain)
+            throws IOException, ServletException {
+        if (!enabled) {
+            chain.doFilter(req, resp);
+            return;
+        }
+        final HttpServletRequest request = (HttpServletRequest) req;
+        final HttpServletResponse response = (HttpServletResponse) resp;
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            chain.doFilter(req, resp);
+            failed = false;
+        } finally {
+            if (!failed && request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override public void onComplete(AsyncEvent event) { record(request, response.getStatus(), start); }
+                    @Override public void onTimeout(AsyncEvent event) { /* IoLane answers and completes */ }
+                    @Override public void onError(AsyncEvent event) { /* followed by onComplete */ }
+                    @Override public void onStartAsync(AsyncEvent event) { /* not re-dispatched */ }
+                });
+            } else {
+                // An exception escaping the chain becomes a 500 from the container.
+                record(request, failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus(), start);
+            }
+        }
+    }
+
+    private void record(HttpServletRequest request, int status, long start) {
+        metrics().recordRequest(endpoint(request), request.getMethod(), status, System.nanoTime() - start);
+    }
+
+    static String endpoint(HttpServletRequest request) {
+        HttpServletMapping mapping = request.getHttpServletMapping();
+        String pattern = mapping == null ? null : mapping.getPattern();
+        return pattern == null || pattern.isEmpty() ? "unmapped" : pattern;
+    }
+
+    @Override
+    public void destroy() {
+        // nothing to release
+    }
+}
@@ -0,0 +1,55 @@
+package com.studylife.servlet;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * GET /api/metrics: {@link Metrics} in the Prometheus text exposition format (version 0.0.4).
+ *
+ * When METRICS_TOKEN is set the scraper must send {@code Authorization: Bearer <token>};
+ * otherwise the endpoint is open, like the rest of the API.
+ */
+public class MetricsServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /** Overridable for tests. */
+    protected Metrics metrics() {
+        return Metrics.shared();
+    }
+
+    /** Overridable for tests. */
+    protected String token() {
+        return Config.get("METRICS_TOKEN");
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        response.setHeader("Cache-Control", "no-store");
+        String token = token();
+        if (token != null && !authorized(request.getHeader("Authorization"), token)) {
+            response.setHeader("WWW-Authenticate", "Bearer");
+            response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+        response.setContentType(CONTENT_TYPE);
+        response.setStatus(HttpServletResponse.SC_OK);
+        try (PrintWriter out = response.getWriter()) {
+            out.print(metrics().scrape());
+        }
+    }
+
+    static boolean authorized(String header, String token) {
+        if (header == null || !header.startsWith("Bearer ")) return false;
+        byte[] sent = header.substring("Bearer ".length()).trim().getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(sent, token.getBytes(StandardCharsets.UTF_8));
+    }
+}
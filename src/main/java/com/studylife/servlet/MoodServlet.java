@@ -0,0 +1,178 @@
+package com.studylife.servlet;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * /api/moods for mood.html.
+ *
+ * GET ?userId=1&amp;year=2025 returns the year as {@code days}, one digit per day ('0' = no entry,
+ * otherwise an index into {@code legend}), together with its statistics.
+ * POST {"userId":1,"date":"2025-03-14","mood":"😊"} sets one day; an empty mood clears it.
+ * Both are answered from the packed {@link MoodYear} row, so the cost does not grow with the
+ * number of entries.
+ */
+public class MoodServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = Logger.getLogger(MoodServlet.class.getName());
+    private static final ZoneId ZONE_ID = ZoneId.of("Europe/Dublin");
+    private static final JsonRequestDecoder BODY = new JsonRequestDecoder("userId", "date", "mood");
+
+    /** Overridable for tests; {@code null} when no database is configured. */
+    protected DataSource dataSource() {
+        return Db.dataSource();
+    }
+
+    /** Overridable for tests. */
+    protected LocalDate today() {
+        return LocalDate.now(ZONE_ID);
+    }
+
+    @Override
+    protected void doOptions(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        JsonApi.addCors(resp, "GET, POST, OPTIONS");
+        resp.setStatus(HttpServletResponse.SC_NO_CONTENT);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        JsonApi.addCors(response, "GET, POST, OPTIONS");
+        response.setContentType("application/json;charset=UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+
+        final int userId;
+        final int year;
+        try {
+            userId = Integer.parseInt(String.valueOf(request.getParameter("userId")).trim());
+            String y = request.getParameter("year");
+            year = y == null || y.trim().isEmpty() ? today().getYear() : Integer.parseInt(y.trim());
+        } catch (NumberFormatException bad) {
+            JsonApi.writeJson(response, HttpServletResponse.SC_BAD_REQUEST,
+                    JsonApi.fail("userId and year must be numbers"));
+            return;
+        }
+        if (year < 1970 || year > 9999) {
+            JsonApi.writeJson(response, HttpServletResponse.SC_BAD_REQUEST,
+                    JsonApi.fail("year out of range"));
+            return;
+        }
+
+        final DataSource ds = dataSource();
+        if (ds == null) {
+            JsonApi.writeJson(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                    JsonApi.error("DB_URL/DB_USER/DB_PASS not set"));
+            return;
+        }
+
+        IoLane.db().dispatch(request, response, resp -> {
+            MoodYear y;
+            try {
+                y = new MoodStore(ds).load(userId, year);
+            } catch (SQLException e) {
+                LOG.log(Level.WARNING, "[Mood] load failed for user " + userId, e);
+                JsonApi.writeJson(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                        JsonApi.error("Database error"));
+                return;
+            }
+            JSONObject ok = new JSONObject()
+                    .put("status", "success")
+                    .put("year", year)
+                    .put("days", y.digits())
+                    .put("legend", new JSONArray(MoodYear.EMOJI))
+                    .put("stats", stats(y, today()));
+            JsonApi.writeJson(resp, HttpServletResponse.SC_OK, ok.toString());
+        });
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        JsonApi.addCors(response, "GET, POST, OPTIONS");
+        response.setContentType("application/json;charset=UTF-8");
+
+        final String[] fields;
+        try {
+            fields = BODY.decode(request);
+        } catch (JsonRequestDecoder.DecodeException ex) {
+            JsonApi.writeJson(response, ex.tooLarge ? HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE
+                                                    : HttpServletResponse.SC_BAD_REQUEST,
+                    JsonApi.error(ex.tooLarge ? ex.getMessage() : "Malformed JSON"));
+            return;
+        }
+
+        final int userId;
+        final LocalDate date;
+        try {
+            userId = Integer.parseInt(fields[0].trim());
+            date = LocalDate.parse(fields[1].trim());
+        } catch (NumberFormatException | DateTimeParseException bad) {
+            JsonApi.writeJson(response, HttpServletResponse.SC_BAD_REQUEST,
+                    JsonApi.fail("userId and date (yyyy-MM-dd) are required"));
+            return;
+        }
+        final int code = MoodYear.code(fields[2]);
+        if (code < 0) {
+            JsonApi.writeJson(response, HttpServletResponse.SC_BAD_REQUEST, JsonApi.fail("unknown mood"));
+            return;
+        }
+
+        final DataSource ds = dataSource();
+        if (ds == null) {
+            JsonApi.writeJson(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                    JsonApi.error("DB_URL/DB_USER/DB_PASS not set"));
+            return;
+        }
+
+        IoLane.db().dispatch(request, response, resp -> {
+            MoodYear y;
+            try {
+                y = new MoodStore(ds).set(userId, date, code);
+                DashboardCache.shared().invalidate(userId);
+            } catch (SQLException e) {
+                LOG.log(Level.WARNING, "[Mood] update failed for user " + userId, e);
+                JsonApi.writeJson(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                        JsonApi.error("Database error"));
+                return;
+            }
+            JSONObject ok = new JSONObject()
+                    .put("status", "success")
+                    .put("date", date.toString())
+                    .put("mood", MoodYear.EMOJI[code])
+                    .put("stats", stats(y, today()));
+            JsonApi.writeJson(resp, HttpServletResponse.SC_OK, ok.toString());
+        });
+    }
+
+    /** Year statistics as shown by mood.html and the dashboard. */
+    static JSONObject stats(MoodYear y, LocalDate today) {
+        int[] counts = y.distribution();
+        int[] runs = y.longestRuns();
+        JSONObject distribution = new JSONObject();
+        JSONObject longestRuns = new JSONObject();
+        for (int c = 1; c <= MoodYear.MOODS; c++) {
+            distribution.put(MoodYear.NAMES[c], counts[c]);
+            longestRuns.put(MoodYear.NAMES[c], runs[c]);
+        }
+        return new JSONObject()
+                .put("recorded", y.days() - counts[MoodYear.NONE])
+                .put("distribution", distribution)
+                .put("longestRuns", longestRuns)
+                .put("longestStreak", y.longestStreak())
+                .put("currentStreak", y.currentStreak(today));
+    }
+}
@@ -0,0 +1,75 @@
+package com.studylife.servlet;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/** JDBC access to {@code mood_years}: one fixed-size {@link MoodYear} row per user and year. */
+final class MoodStore {
+
+    private final DataSource dataSource;
+
+    MoodStore(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /** The user's year; an empty one when nothing has been recorded. */
+    MoodYear load(int userId, int year) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT days FROM mood_years WHERE user_id = ? AND yr = ?")) {
+            ps.setInt(1, userId);
+            ps.setInt(2, year);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? new MoodYear(year, rs.getBytes(1)) : new MoodYear(year);
+            }
+        }
+    }
+
+    /** Sets one day (code {@link MoodYear#NONE} clears it) and returns the year as stored. */
+    MoodYear set(int userId, LocalDate date, int code) throws SQLException {
+        int year = date.getYear();
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "INSERT INTO mood_years (user_id, yr, days) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE days = days")) {
+                    ps.setInt(1, userId);
+                    ps.setInt(2, year);
+                    ps.setBytes(3, new byte[MoodYear.BYTES]);
+                    ps.executeUpdate();
+                }
+                MoodYear y;
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT days FROM mood_years WHERE user_id = ? AND yr = ? FOR UPDATE")) {
+                    ps.setInt(1, userId);
+                    ps.setInt(2, year);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (!rs.next()) throw new SQLException("mood_years row missing for user " + userId);
+                        y = new MoodYear(year, rs.getBytes(1));
+                    }
+                }
+                if (y.get(date) != code) {
+                    y.set(date, code);
+                    try (PreparedStatement ps = conn.prepareStatement(
+                            "UPDATE mood_years SET days = ?, updated_at = CURRENT_TIMESTAMP WHERE user_id = ? AND yr = ?")) {
+                        ps.setBytes(1, y.bytes());
+                        ps.setInt(2, userId);
+                        ps.setInt(3, year);
+                        ps.executeUpdate();
+                    }
+                }
+                conn.commit();
+                return y;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.studylife.servlet;
+
+import java.time.LocalDate;
+
+/**
+ * One user's moods for one calendar year, packed 3 bits per day.
+ *
+ * Day {@code d} (0 = 1 January) lives in bits {@code [3d, 3d + 3)} of the little-endian bit string,
+ * so 366 days take {@value #BYTES} bytes whatever is recorded. Code 0 means no entry; 1-5 are the
+ * moods offered by mood.html. Reads, single-day writes and the statistics all work on the packed
+ * bytes directly.
+ */
+final class MoodYear {
+
+    static final int BITS = 3;
+    static final int DAYS = 366;
+    static final int BYTES = (DAYS * BITS + 7) / 8;   // 138
+
+    static final int NONE = 0;
+    /** Index = mood code. */
+    static final String[] EMOJI = {"", "😊", "😐", "😢", "😠", "😴"};
+    static final String[] NAMES = {"", "happy", "neutral", "sad", "angry", "tired"};
+    static final int MOODS = EMOJI.length - 1;
+
+    private final int year;
+    private final byte[] packed;
+
+    MoodYear(int year) {
+        this(year, new byte[BYTES]);
+    }
+
+    MoodYear(int year, byte[] packed) {
+        if (packed.length != BYTES) throw new IllegalArgumentException("expected " + BYTES + " bytes, got " + packed.length);
+        this.year = year;
+        this.packed = packed;
+    }
+
+    int year() { return year; }
+
+    /** The packed form; the caller must not modify it. */
+    byte[] bytes() { return packed; }
+
+    int days() { return LocalDate.of(year, 12, 31).getDayOfYear(); }
+
+    /** Mood code for an emoji or name from the page, {@link #NONE} for empty, -1 when unknown. */
+    static int code(String mood) {
+        if (mood == null || mood.trim().isEmpty()) return NONE;
+        String m = mood.trim();
+        for (int i = 1; i < EMOJI.length; i++) {
+            if (EMOJI[i].equals(m) || NAMES[i].equalsIgnoreCase(m)) return i;
+        }
+        return -1;
+    }
+
+    int get(LocalDate date) {
+        return get(index(date));
+    }
+
+    void set(LocalDate date, int code) {
+        if (code < 0 || code > MOODS) throw new IllegalArgumentException("bad mood code " + code);
+        int bit = index(date) * BITS;
+        int i = bit >>> 3;
+        int shift = bit & 7;
+        int word = (packed[i] & 0xff) | (packed[i + 1] & 0xff) << 8;
+        word = (word & ~(7 << shift)) | code << shift;
+        packed[i] = (byte) word;
+        packed[i + 1] = (byte) (word >>> 8);
+    }
+
+    /** A code can straddle two bytes; {@link #BYTES} leaves room for the byte after the last day. */
+    private int get(int day) {
+        int bit = day * BITS;
+        int i = bit >>> 3;
+        int word = (packed[i] & 0xff) | (packed[i + 1] & 0xff) << 8;
+        return (word >>> (bit & 7)) & 7;
+    }
+
+    private int index(LocalDate date) {
+        if (date.getYear() != year) throw new IllegalArgumentException(date + " is not in " + year);
+        return date.getDayOfYear() - 1;
+    }
+
+    /** One character per day of the year, '0' for no entry, otherwise the mood code. */
+    String digits() {
+        int n = days();
+        char[] out = new char[n];
+        for (int d = 0; d < n; d++) out[d] = (char) ('0' + get(d));
+        return new String(out);
+    }
+
+    /** Days per mood code; index 0 counts the days without an entry. */
+    int[] distribution() {
+        int[] counts = new int[MOODS + 1];
+        int n = days();
+        for (int d = 0; d < n; d++) counts[get(d)]++;
+        return counts;
+    }
+
+    /** Longest run of consecutive days that have any mood recorded. */
+    int longestStreak() {
+        int best = 0;
+        int run = 0;
+        int n = days();
+        for (int d = 0; d < n; d++) {
+            run = get(d) == NONE ? 0 : run + 1;
+            best = Math.max(best, run);
+        }
+        return best;
+    }
+
+    /** Longest run of consecutive days with the same mood, per mood code. */
+    int[] longestRuns() {
+        int[] best = new int[MOODS + 1];
+        int prev = NONE;
+        int run = 0;
+        int n = days();
+        for (int d = 0; d < n; d++) {
+            int c = get(d);
+            run = c != NONE && c == prev ? run + 1 : 1;
+            if (c != NONE) best[c] = Math.max(best[c], run);
+            prev = c;
+        }
+        return best;
+    }
+
+    /**
+     * Consecutive recorded days ending on {@code asOf}, or on the day before when {@code asOf} has no
+     * entry yet. {@code asOf} past the end of the year counts from 31 December.
+     */
+    int currentStreak(LocalDate asOf) {
+        if (asOf.getYear() < year) return 0;
+        int d = asOf.getYear() > year ? days() - 1 : asOf.getDayOfYear() - 1;
+        if (get(d) == NONE) d--;
+        int run = 0;
+        for (; d >= 0 && get(d) != NONE; d--) run++;
+        return run;
+    }
+}
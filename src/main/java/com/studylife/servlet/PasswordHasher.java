@@ -0,0 +1,206 @@
+package com.studylife.servlet;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * BCrypt hashing and verification on a dedicated, CPU-sized executor.
+ *
+ * Request threads never run BCrypt themselves: work is queued on a bounded queue and a full queue
+ * (or a wait longer than the configured timeout) surfaces as {@link SaturatedException} so the
+ * servlet can answer 503 instead of piling up. The cost factor is calibrated once at startup so a
+ * verification takes roughly BCRYPT_TARGET_MS on this machine.
+ */
+final class PasswordHasher {
+
+    private static final Logger LOG = Logger.getLogger(PasswordHasher.class.getName());
+
+    /** The only revision jbcrypt 0.4 accepts; $2b$ and $2y$ hashes are rewritten to it. */
+    private static final String BCRYPT_PREFIX = "$2a$";
+
+    private static volatile PasswordHasher shared;
+
+    /** Thrown when the hashing executor cannot take or finish the work in time. */
+    static final class SaturatedException extends Exception {
+        private static final long serialVersionUID = 1L;
+        SaturatedException(String msg, Throwable cause) { super(msg, cause); }
+    }
+
+    static final class Verification {
+        final boolean matches;
+        final boolean needsRehash;
+
+        Verification(boolean matches, boolean needsRehash) {
+            this.matches = matches;
+            this.needsRehash = needsRehash;
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMs;
+    private final int cost;
+
+    PasswordHasher(int threads, int queueCapacity, long timeoutMs, int cost) {
+        final AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                r -> {
+                    Thread t = new Thread(r, "bcrypt-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.timeoutMs = timeoutMs;
+        this.cost = cost;
+    }
+
+    static PasswordHasher shared() {
+        PasswordHasher h = shared;
+        if (h == null) {
+            synchronized (PasswordHasher.class) {
+                h = shared;
+                if (h == null) {
+                    h = fromConfig();
+                    shared = h;
+                }
+            }
+        }
+        return h;
+    }
+
+    static synchronized void shutdownShared() {
+        if (shared != null) {
+            shared.executor.shutdown();
+            shared = null;
+        }
+    }
+
+    private static PasswordHasher fromConfig() {
+        int threads = Config.getInt("BCRYPT_THREADS", Runtime.getRuntime().availableProcessors());
+        int queue = Config.getInt("BCRYPT_QUEUE", threads * 16);
+        long timeoutMs = Config.getLong("BCRYPT_TIMEOUT_MS", 5000);
+
+        int fixedCost = Config.getInt("BCRYPT_COST", -1);
+        int cost = fixedCost > 0
+                ? clampCost(fixedCost)
+                : calibrate(Config.getLong("BCRYPT_TARGET_MS", 250),
+                            Config.getInt("BCRYPT_MIN_COST", 10),
+                            Config.getInt("BCRYPT_MAX_COST", 14));
+
+        LOG.info(String.format("[BCrypt] cost=%d threads=%d queue=%d", cost, threads, queue));
+        return new PasswordHasher(Math.max(1, threads), queue, timeoutMs, cost);
+    }
+
+    /**
+     * Picks the largest cost whose verify time stays at or below {@code targetMs}.
+     * Each cost step doubles the work, so one measurement at {@code minCost} is enough.
+     */
+    static int calibrate(long targetMs, int minCost, int maxCost) {
+        minCost = clampCost(minCost);
+        maxCost = clampCost(Math.max(minCost, maxCost));
+        String salt = BCrypt.gensalt(minCost);
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long t0 = System.nanoTime();
+            BCrypt.hashpw("calibration", salt);
+            best = Math.min(best, System.nanoTime() - t0);
+        }
+        double ms = Math.max(best / 1_000_000.0, 0.001);
+
+        int cost = minCost;
+        while (cost < maxCost && ms * 2 <= targetMs) {
+            ms *= 2;
+            cost++;
+        }
+        return cost;
+    }
+
+    private static int clampCost(int c) {
+        return Math.max(4, Math.min(31, c));
+    }
+
+    int cost() { return cost; }
+
+    String hash(String raw) throws SaturatedException {
+        return call(() -> BCrypt.hashpw(raw, BCrypt.gensalt(cost)));
+    }
+
+    /**
+     * Checks {@code raw} against what is stored for the user. Legacy plaintext rows and hashes with a
+     * lower cost than the current one match as usual but are flagged for rehashing.
+     *
+     * Only values that do not look like a bcrypt hash of any revision are compared as plaintext.
+     * $2b$ and $2y$ hash the same way as $2a$ and are checked as such; $2x$ (crypt_blowfish's
+     * buggy revision) cannot be checked by jbcrypt and never matches.
+     */
+    Verification verify(String raw, String stored) throws SaturatedException {
+        if (stored == null || stored.isEmpty()) return new Verification(false, false);
+
+        char revision = bcryptRevision(stored);
+        if (revision == 0) {
+            boolean ok = MessageDigest.isEqual(
+                    raw.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+            return new Verification(ok, ok);
+        }
+
+        if (revision == 'x') {
+            LOG.warning("[BCrypt] $2x$ hashes are not supported; the user has to reset the password");
+            return new Verification(false, false);
+        }
+        String hash = revision == 'a' ? stored : BCRYPT_PREFIX + stored.substring(BCRYPT_PREFIX.length());
+        boolean ok = call(() -> {
+            try {
+                return BCrypt.checkpw(raw, hash);
+            } catch (IllegalArgumentException malformed) {
+                return false;
+            }
+        });
+        return new Verification(ok, ok && costOf(stored) < cost);
+    }
+
+    /** The revision letter of a {@code $2?$} bcrypt hash, or 0 when {@code s} is not one. */
+    static char bcryptRevision(String s) {
+        if (s.length() < 4 || s.charAt(0) != '$' || s.charAt(1) != '2' || s.charAt(3) != '$') return 0;
+        char r = s.charAt(2);
+        return r == 'a' || r == 'b' || r == 'x' || r == 'y' ? r : 0;
+    }
+
+    static int costOf(String hash) {
+        try {
+            return Integer.parseInt(hash.substring(4, 6));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private <T> T call(Callable<T> work) throws SaturatedException {
+        final Future<T> f;
+        try {
+            f = executor.submit(work);
+        } catch (RejectedExecutionException full) {
+            throw new SaturatedException("Password hashing queue is full", full);
+        }
+        try {
+            return f.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException slow) {
+            f.cancel(true);
+            throw new SaturatedException("Password hashing took longer than " + timeoutMs + "ms", slow);
+        } catch (InterruptedException e) {
+            f.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new SaturatedException("Interrupted while hashing", e);
+        } catch (ExecutionException e) {
+            Throwable c = e.getCause();
+            if (c instanceof RuntimeException) throw (RuntimeException) c;
+            throw new IllegalStateException(c);
+        }
+    }
+
+    int queued() { return executor.getQueue().size(); }
+}
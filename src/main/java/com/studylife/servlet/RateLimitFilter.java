@@ -0,0 +1,78 @@
+package com.studylife.servlet;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-client-address limit on /api/login and /api/register, applied before the request body is
+ * read. The username limit needs the body, so {@link LoginServlet} and {@link RegisterServlet}
+ * apply it right after decoding, still ahead of any database or BCrypt work, with the same
+ * precomputed 429 response.
+ *
+ * The client address honours X-Forwarded-For from GEOIP_TRUSTED_PROXIES, like {@link GeoIpResolver}.
+ * RATE_LIMIT_ENABLED=false turns the filter off.
+ */
+public class RateLimitFilter implements Filter {
+
+    private static final byte[] TOO_MANY =
+            "{\"status\":\"error\",\"message\":\"Too many attempts, please wait and try again.\"}"
+                    .getBytes(StandardCharsets.UTF_8);
+
+    private boolean enabled = true;
+
+    /** Overridable for tests. */
+    protected RateLimiter limiter() {
+        return RateLimiter.byIp();
+    }
+
+    @Override
+    public void init(FilterConfig config) {
+        enabled = Config.getBool("RATE_LIMIT_ENABLED", true);
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse resp, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        if (!enabled || !"POST".equals(request.getMethod())) {
+            chain.doFilter(req, resp);
+            return;
+        }
+        InetAddress client = GeoIpResolver.shared().clientAddress(request);
+        String key = client != null ? client.getHostAddress() : String.valueOf(request.getRemoteAddr());
+        long wait = limiter().tryAcquire(key);
+        if (wait > 0) {
+            reject((HttpServletResponse) resp, wait);
+            return;
+        }
+        chain.doFilter(req, resp);
+    }
+
+    /** Writes the shared 429 response; {@code waitNanos} becomes Retry-After in whole seconds. */
+    static void reject(HttpServletResponse resp, long waitNanos) throws IOException {
+        resp.setStatus(429);
+        resp.setHeader("Access-Control-Allow-Origin", "*");
+        resp.setHeader("Retry-After", String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L))));
+        resp.setContentType("application/json;charset=UTF-8");
+        resp.setContentLength(TOO_MANY.length);
+        ServletOutputStream out = resp.getOutputStream();
+        out.write(TOO_MANY);
+        out.flush();
+    }
+
+    @Override
+    public void destroy() {
+        RateLimiter.resetShared();
+    }
+}
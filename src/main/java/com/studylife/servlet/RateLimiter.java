@@ -0,0 +1,111 @@
+package com.studylife.servlet;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * One {@link TokenBucket} per key (client IP, username) in a concurrent map. Acquiring is a map
+ * lookup plus a CAS; nothing is locked.
+ *
+ * Memory is bounded by {@code maxKeys}. A bucket that has refilled completely is indistinguishable
+ * from a new one, so once the map is full, a sweep (at most one per second) drops those without
+ * changing anyone's budget. If every bucket is still busy, for instance during a spread-out attack,
+ * new keys share one overflow bucket instead of growing the map.
+ */
+final class RateLimiter {
+
+    static final String OVERFLOW = "*";
+
+    private static volatile RateLimiter byIp;
+    private static volatile RateLimiter byUsername;
+
+    private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final int perMinute;
+    private final int burst;
+    private final int maxKeys;
+    private final LongSupplier clock;
+    private final AtomicLong lastSweep = new AtomicLong(Long.MIN_VALUE);
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    RateLimiter(int perMinute, int burst, int maxKeys, LongSupplier clock) {
+        this.perMinute = Math.max(1, perMinute);
+        this.burst = Math.max(1, burst);
+        this.maxKeys = Math.max(1, maxKeys);
+        this.clock = clock;
+    }
+
+    /** Login and registration attempts per client address (RATE_LIMIT_IP_PER_MINUTE / _BURST). */
+    static RateLimiter byIp() {
+        RateLimiter r = byIp;
+        if (r == null) {
+            synchronized (RateLimiter.class) {
+                r = byIp;
+                if (r == null) {
+                    r = new RateLimiter(Config.getInt("RATE_LIMIT_IP_PER_MINUTE", 30),
+                            Config.getInt("RATE_LIMIT_IP_BURST", 10),
+                            Config.getInt("RATE_LIMIT_MAX_KEYS", 100_000), System::nanoTime);
+                    byIp = r;
+                }
+            }
+        }
+        return r;
+    }
+
+    /** Attempts per username, whatever address they come from (RATE_LIMIT_USER_PER_MINUTE / _BURST). */
+    static RateLimiter byUsername() {
+        RateLimiter r = byUsername;
+        if (r == null) {
+            synchronized (RateLimiter.class) {
+                r = byUsername;
+                if (r == null) {
+                    r = new RateLimiter(Config.getInt("RATE_LIMIT_USER_PER_MINUTE", 10),
+                            Config.getInt("RATE_LIMIT_USER_BURST", 5),
+                            Config.getInt("RATE_LIMIT_MAX_KEYS", 100_000), System::nanoTime);
+                    byUsername = r;
+                }
+            }
+        }
+        return r;
+    }
+
+    static synchronized void resetShared() {
+        byIp = null;
+        byUsername = null;
+    }
+
+    /** @return 0 when the attempt may proceed, otherwise nanoseconds until it would */
+    long tryAcquire(String key) {
+        long wait = bucket(key).tryAcquire();
+        if (wait == 0) allowed.increment(); else rejected.increment();
+        return wait;
+    }
+
+    private TokenBucket bucket(String key) {
+        TokenBucket b = buckets.get(key);
+        if (b != null) return b;
+        if (buckets.size() >= maxKeys) {
+            sweep();
+            if (buckets.size() >= maxKeys) key = OVERFLOW;
+        }
+        return buckets.computeIfAbsent(key, k -> new TokenBucket(perMinute, burst, clock));
+    }
+
+    private void sweep() {
+        long now = clock.getAsLong();
+        long last = lastSweep.get();
+        if (last != Long.MIN_VALUE && now - last < TimeUnit.SECONDS.toNanos(1)) return;
+        if (!lastSweep.compareAndSet(last, now)) return;   // another thread is sweeping
+        buckets.forEach((k, b) -> { if (b.isFull()) buckets.remove(k, b); });
+    }
+
+    int size() { return buckets.size(); }
+
+    long allowed() { return allowed.sum(); }
+
+    long rejected() { return rejected.sum(); }
+}
@@ -1,18 +1,26 @@
 package com.studylife.servlet;
 
-import org.json.JSONObject;
-
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedReader;
+import javax.sql.DataSource;
 import java.io.IOException;
 import java.sql.*;
-import java.util.stream.Collectors;
+import java.util.Locale;
 
 public class RegisterServlet extends HttpServlet {
     private static final long serialVersionUID = 1L;
+    private static final JsonRequestDecoder BODY = new JsonRequestDecoder("username", "password");
+
+    private static final byte[] INVALID_JSON = JsonResponse.message("error", "Invalid JSON");
+    private static final byte[] TOO_LARGE    = JsonResponse.message("error", "Request body too large");
+    private static final byte[] EMPTY        = JsonResponse.message("fail", "Username or password empty.");
+    private static final byte[] NO_DB_CONFIG =
+            JsonResponse.message("error", "Database configuration is missing (DB_URL/DB_USER/DB_PASS).");
+    private static final byte[] TAKEN        = JsonResponse.message("fail", "Username already exists.");
+    private static final byte[] BUSY         = JsonResponse.message("error", "Server busy, retry later.");
+    private static final byte[] SUCCESS      = JsonResponse.object().field("status", "success").bytes();
 
     private void setCors(HttpServletResponse resp) {
         resp.setHeader("Access-Control-Allow-Origin", "*");
@@ -33,76 +41,80 @@ public class RegisterServlet extends HttpServlet {
         setCors(response);
         response.setContentType("application/json;charset=UTF-8");
 
-        String body;
-        try (BufferedReader br = request.getReader()) {
-            body = br.lines().collect(Collectors.joining());
+        final String[] fields;
+        try {
+            fields = BODY.decode(request);
+        } catch (JsonRequestDecoder.DecodeException ex) {
+            if (ex.tooLarge) {
+                JsonResponse.send(response, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, TOO_LARGE);
+            } else {
+                JsonResponse.send(response, HttpServletResponse.SC_BAD_REQUEST, INVALID_JSON);
+            }
+            return;
         }
 
-        JSONObject result = new JSONObject();
+        final String username = fields[0].trim();
+        final String password = fields[1].trim();
+        if (username.isEmpty() || password.isEmpty()) {
+            JsonResponse.send(response, HttpServletResponse.SC_OK, EMPTY);
+            return;
+        }
 
-        try {
-            JSONObject json = new JSONObject(body);
-            String username = json.optString("username", "").trim();
-            String password = json.optString("password", "").trim();
+        long wait = RateLimiter.byUsername().tryAcquire(username.toLowerCase(Locale.ROOT));
+        if (wait > 0) {
+            RateLimitFilter.reject(response, wait);
+            return;
+        }
+
+        IoLane.db().dispatch(request, response, resp -> handleRegister(resp, username, password));
+    }
 
-            if (username.isEmpty() || password.isEmpty()) {
-                result.put("status", "fail").put("message", "Username or password empty.");
-                response.getWriter().write(result.toString());
+    private void handleRegister(HttpServletResponse response, String username, String password)
+            throws IOException {
+        try {
+            final DataSource ds = Db.dataSource();
+            if (ds == null) {
+                JsonResponse.send(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, NO_DB_CONFIG);
                 return;
             }
 
-          
-            final String url    = System.getenv("DB_URL");
-            final String dbUser = System.getenv("DB_USER");
-            final String dbPass = System.getenv("DB_PASS");
-
-            if (isBlank(url) || isBlank(dbUser) || isBlank(dbPass)) {
-                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-                result.put("status", "error")
-                      .put("message", "Database configuration is missing (DB_URL/DB_USER/DB_PASS).");
-                response.getWriter().write(result.toString());
+            // Names we already know are taken fail fast, before any hashing or SQL.
+            // Everything else goes straight to the INSERT; the unique index on username decides.
+            final UsernameIndex index = UsernameIndex.shared();
+            if (index.isKnownTaken(username)) {
+                JsonResponse.send(response, HttpServletResponse.SC_OK, TAKEN);
                 return;
             }
 
-            
-            Class.forName("com.mysql.cj.jdbc.Driver");
-
-          
-            String checkSql = "SELECT id FROM users WHERE username = ?";
-
-            try (Connection conn = DriverManager.getConnection(url, dbUser, dbPass)) {
-                try (PreparedStatement check = conn.prepareStatement(checkSql)) {
-                    check.setString(1, username);
-                    try (ResultSet rs = check.executeQuery()) {
-                        if (rs.next()) {
-                            result.put("status", "fail").put("message", "Username already exists.");
-                            response.getWriter().write(result.toString());
-                            return;
-                        }
-                    }
-                }
+            // Hash before borrowing a pooled connection: BCrypt is the slow part of this request.
+            String hash = PasswordHasher.shared().hash(password);
 
-                
-                String insertSql = "INSERT INTO users(username, password) VALUES(?, ?)";
-                try (PreparedStatement ins = conn.prepareStatement(insertSql)) {
-                    ins.setString(1, username);
-                    ins.setString(2, password);
-                    ins.executeUpdate();
-                }
-
-                result.put("status", "success");
-            }
+            insertUser(ds, username, hash);
+            index.add(username);
+        } catch (PasswordHasher.SaturatedException busy) {
+            response.setHeader("Retry-After", "1");
+            JsonResponse.send(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, BUSY);
+            return;
         } catch (SQLIntegrityConstraintViolationException dup) {
-            result.put("status", "fail").put("message", "Username already exists.");
+            UsernameIndex.shared().add(username);
+            JsonResponse.send(response, HttpServletResponse.SC_OK, TAKEN);
+            return;
         } catch (Exception e) {
-            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            result.put("status", "error").put("message", e.getMessage());
+            JsonResponse error = JsonResponse.object().field("status", "error");
+            if (e.getMessage() != null) error.field("message", e.getMessage());
+            error.send(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            return;
         }
-
-        response.getWriter().write(result.toString());
+        JsonResponse.send(response, HttpServletResponse.SC_OK, SUCCESS);
     }
 
-    private static boolean isBlank(String s) {
-        return s == null || s.trim().isEmpty();
+    /** Package-private for the JMH benchmark. */
+    static void insertUser(DataSource ds, String username, String hash) throws SQLException {
+        try (Connection conn = ds.getConnection();
+             PreparedStatement ins = conn.prepareStatement("INSERT INTO users(username, password) VALUES(?, ?)")) {
+            ins.setString(1, username);
+            ins.setString(2, hash);
+            ins.executeUpdate();
+        }
     }
 }
@@ -0,0 +1,144 @@
+package com.studylife.servlet;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /api/admin/reminders[?limit=20]: the next {@code limit} pending reminders (at most
+ * {@link #MAX_LIMIT}) and, per hour of target time, how many are pending, fired, delivered and
+ * failed with p50/p99/max fire lag and delivery time in milliseconds. Answered from
+ * {@link ReminderMonitor}.
+ *
+ * Requires {@code Authorization: Bearer <ADMIN_TOKEN>}; without ADMIN_TOKEN the endpoint is off.
+ * Addresses are shown with the local part masked.
+ */
+public class ReminderAdminServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    private static final ZoneId ZONE_ID = ZoneId.of("Europe/Dublin");
+    private static final DateTimeFormatter TS_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter HOUR_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:00");
+
+    static final int DEFAULT_LIMIT = 20;
+    static final int MAX_LIMIT = 200;
+
+    /** Overridable for tests. */
+    protected ReminderMonitor monitor() {
+        return ReminderMonitor.shared();
+    }
+
+    /** Overridable for tests. */
+    protected String token() {
+        return Config.get("ADMIN_TOKEN");
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        response.setContentType("application/json;charset=UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+
+        String token = token();
+        if (token == null || token.isEmpty()) {
+            JsonApi.writeJson(response, HttpServletResponse.SC_FORBIDDEN,
+                    JsonApi.error("admin endpoint disabled"));
+            return;
+        }
+        if (!MetricsServlet.authorized(request.getHeader("Authorization"), token)) {
+            response.setHeader("WWW-Authenticate", "Bearer");
+            JsonApi.writeJson(response, HttpServletResponse.SC_UNAUTHORIZED,
+                    JsonApi.error("unauthorized"));
+            return;
+        }
+
+        int limit = DEFAULT_LIMIT;
+        String l = request.getParameter("limit");
+        if (l != null && !l.trim().isEmpty()) {
+            try {
+                limit = Integer.parseInt(l.trim());
+            } catch (NumberFormatException bad) {
+                limit = -1;
+            }
+            if (limit < 1 || limit > MAX_LIMIT) {
+                JsonApi.writeJson(response, HttpServletResponse.SC_BAD_REQUEST,
+                        JsonApi.fail("limit must be 1 to " + MAX_LIMIT));
+                return;
+            }
+        }
+
+        ReminderMonitor m = monitor();
+        JSONArray next = new JSONArray();
+        for (ReminderMonitor.Pending p : m.next(limit)) {
+            JSONObject o = new JSONObject()
+                    .put("id", p.id)
+                    .put("to", maskEmail(p.to))
+                    .put("due", format(TS_FMT, p.dueMillis))
+                    .put("fired", p.fired());
+            if (p.fired()) o.put("firedAt", format(TS_FMT, p.firedMillis()));
+            next.put(o);
+        }
+
+        Map<Long, JSONObject> byHour = new TreeMap<>();
+        for (ReminderMonitor.Hour h : m.hours()) {
+            hour(byHour, h.hour)
+                    .put("fired", h.fired.sum())
+                    .put("delivered", h.delivered.sum())
+                    .put("failed", h.failed.sum())
+                    .put("lagMs", quantiles(h.lag))
+                    .put("deliveryMs", quantiles(h.delivery));
+        }
+        for (Map.Entry<Long, Integer> e : m.pendingByHour().entrySet()) {
+            hour(byHour, e.getKey()).put("pending", e.getValue());
+        }
+
+        JSONObject ok = new JSONObject()
+                .put("status", "success")
+                .put("pending", m.pending())
+                .put("next", next)
+                .put("hours", new JSONArray(byHour.values()));
+        JsonApi.writeJson(response, HttpServletResponse.SC_OK, ok.toString());
+    }
+
+    private static JSONObject hour(Map<Long, JSONObject> byHour, long hour) {
+        return byHour.computeIfAbsent(hour, k -> new JSONObject()
+                .put("hour", format(HOUR_FMT, k * ReminderMonitor.HOUR_MS))
+                .put("pending", 0)
+                .put("fired", 0)
+                .put("delivered", 0)
+                .put("failed", 0));
+    }
+
+    private static JSONObject quantiles(LatencyHistogram h) {
+        return new JSONObject()
+                .put("p50", millis(h.percentileMicros(0.5)))
+                .put("p99", millis(h.percentileMicros(0.99)))
+                .put("max", millis(h.percentileMicros(1.0)));
+    }
+
+    private static long millis(long micros) {
+        return TimeUnit.MICROSECONDS.toMillis(micros);
+    }
+
+    private static String format(DateTimeFormatter f, long epochMillis) {
+        return f.format(Instant.ofEpochMilli(epochMillis).atZone(ZONE_ID));
+    }
+
+    /** {@code alice@example.com} becomes {@code a***@example.com}. */
+    static String maskEmail(String email) {
+        int at = email.indexOf('@');
+        if (at <= 0) return "***";
+        return email.charAt(0) + "***" + email.substring(at);
+    }
+}
@@ -0,0 +1,354 @@
+package com.studylife.servlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stage between the reminder scheduler and the {@link SendReminderServlet.BatchEmailSender}.
+ *
+ * Due reminders are queued by {@link #offer}. The "reminder-dispatcher" thread starts a batch
+ * with the first queued reminder and adds whatever else arrives within {@code windowMs}, up to
+ * {@code maxBatch}. Each batch is then sent over one SMTP connection on the delivery executor.
+ * At most {@code parallelism} batches (so connections) are in flight at once. Every reminder's
+ * callback receives its own outcome, and every batch produces a {@link BatchReport}.
+ *
+ * Reminders picked in {@code HH:mm} pile up on the full minute, so delivery can be shaped by a
+ * {@link TokenBucket} for the SMTP relay. The queue is ordered by target time, so the most overdue
+ * reminder always goes next. A reminder waits for a token at most {@code maxSpreadMs} after it was
+ * offered; after that it is sent regardless and counted as forced. The spread counts from the offer
+ * rather than the target, so a retry or a reminder replayed from the journal, whose target is long
+ * past, is shaped like any other instead of bursting out while the relay is throttling. How long
+ * each reminder waited here is recorded as the shaped delay; it and the forced count are exported
+ * through {@link Metrics}.
+ */
+final class ReminderDispatcher implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(ReminderDispatcher.class.getName());
+
+    /** Outcome of one batch. */
+    static final class BatchReport {
+        final int size;
+        final int delivered;
+        final int failed;
+        final long elapsedMs;
+        /** Largest shaped delay in the batch: how long a reminder waited between offer and send. */
+        final long maxDelayMs;
+
+        BatchReport(int size, int delivered, int failed, long elapsedMs, long maxDelayMs) {
+            this.size = size;
+            this.delivered = delivered;
+            this.failed = failed;
+            this.elapsedMs = elapsedMs;
+            this.maxDelayMs = maxDelayMs;
+        }
+    }
+
+    private static final class Item {
+        final SendReminderServlet.Mail mail;
+        final long dueMillis;
+        final long offeredMillis = System.currentTimeMillis();
+        final long seq;
+        final Consumer<Exception> done;
+        long delayMs;
+
+        Item(SendReminderServlet.Mail mail, long dueMillis, long seq, Consumer<Exception> done) {
+            this.mail = mail;
+            this.dueMillis = dueMillis;
+            this.seq = seq;
+            this.done = done;
+        }
+    }
+
+    /** Most overdue first; reminders with the same target keep their arrival order. */
+    private static final Comparator<Item> MOST_OVERDUE =
+            Comparator.<Item>comparingLong(it -> it.dueMillis).thenComparingLong(it -> it.seq);
+
+    private final SendReminderServlet.BatchEmailSender sender;
+    private final Executor delivery;
+    private final PriorityBlockingQueue<Item> queue = new PriorityBlockingQueue<>(64, MOST_OVERDUE);
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong seq = new AtomicLong();
+    private final int capacity;
+    private final Semaphore inFlight;
+    private final long windowMs;
+    private final int maxBatch;
+    private final TokenBucket bucket;
+    private final long maxSpreadMs;
+    private final Consumer<BatchReport> reports;
+    private final Thread worker;
+    private volatile boolean closed;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final LongAdder delayCount = new LongAdder();
+    private final LongAdder delayTotalMs = new LongAdder();
+    private final AtomicLong delayMaxMs = new AtomicLong();
+    private final LongAdder forced = new LongAdder();
+
+    ReminderDispatcher(SendReminderServlet.BatchEmailSender sender, Executor delivery, int capacity,
+                       long windowMs, int maxBatch, int parallelism, Consumer<BatchReport> reports) {
+        this(sender, delivery, capacity, windowMs, maxBatch, parallelism, null, 0, reports);
+    }
+
+    /**
+     * @param bucket      rate limit for the SMTP relay, or {@code null} to send as fast as batches form
+     * @param maxSpreadMs how long after it was offered a reminder may be held back for a token
+     */
+    ReminderDispatcher(SendReminderServlet.BatchEmailSender sender, Executor delivery, int capacity,
+                       long windowMs, int maxBatch, int parallelism,
+                       TokenBucket bucket, long maxSpreadMs, Consumer<BatchReport> reports) {
+        this.sender = sender;
+        this.delivery = delivery;
+        this.capacity = Math.max(1, capacity);
+        this.windowMs = Math.max(0, windowMs);
+        this.maxBatch = Math.max(1, maxBatch);
+        this.inFlight = new Semaphore(Math.max(1, parallelism));
+        this.bucket = bucket;
+        this.maxSpreadMs = Math.max(0, maxSpreadMs);
+        this.reports = reports;
+        this.worker = new Thread(this::run, "reminder-dispatcher");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * A dispatcher without a queue, window or shaping: each offered reminder is handed to
+     * {@code delivery} straight away and sent on its own, and a full executor makes {@link #offer}
+     * return {@code false} like a full queue. With a direct executor the send happens inside
+     * {@code offer}, which is what tests and benchmarks that drive the servlet synchronously want.
+     */
+    static ReminderDispatcher unbatched(SendReminderServlet.EmailSender sender, Executor delivery) {
+        return new ReminderDispatcher(batch -> {
+            SendReminderServlet.Mail m = batch.get(0);
+            try {
+                sender.send(m.to, m.subject, m.body);
+                return new Exception[1];
+            } catch (Exception e) {
+                return new Exception[]{e};
+            }
+        }, delivery);
+    }
+
+    private ReminderDispatcher(SendReminderServlet.BatchEmailSender sender, Executor delivery) {
+        this.sender = sender;
+        this.delivery = delivery;
+        this.capacity = Integer.MAX_VALUE;
+        this.windowMs = 0;
+        this.maxBatch = 1;
+        this.inFlight = new Semaphore(Integer.MAX_VALUE);
+        this.bucket = null;
+        this.maxSpreadMs = 0;
+        this.reports = r -> { };
+        this.worker = null;
+    }
+
+    static ReminderDispatcher fromConfig(SendReminderServlet.BatchEmailSender sender, Executor delivery) {
+        return new ReminderDispatcher(sender, delivery,
+                Config.getInt("REMINDER_DISPATCH_QUEUE", 10_000),
+                Config.getLong("REMINDER_BATCH_WINDOW_MS", 250),
+                Config.getInt("REMINDER_BATCH_SIZE", 50),
+                Config.getInt("REMINDER_BATCH_PARALLELISM", 2),
+                Config.getBool("REMINDER_SHAPING_ENABLED", true)
+                        ? TokenBucket.forHost(MailTransportPool.Settings.configuredHost()) : null,
+                Config.getLong("REMINDER_MAX_SPREAD_MS", 60_000),
+                ReminderDispatcher::log);
+    }
+
+    private static void log(BatchReport r) {
+        Level level = r.failed == 0 ? Level.INFO : Level.WARNING;
+        LOG.log(level, String.format("[Reminder] batch size=%d delivered=%d failed=%d in %d ms, max delay %d ms",
+                r.size, r.delivered, r.failed, r.elapsedMs, r.maxDelayMs));
+    }
+
+    /** Queues a reminder due now; see {@link #offer(SendReminderServlet.Mail, long, Consumer)}. */
+    boolean offer(SendReminderServlet.Mail mail, Consumer<Exception> done) {
+        return offer(mail, System.currentTimeMillis(), done);
+    }
+
+    /**
+     * Queues a due reminder with its target time in epoch millis; {@code false} when the queue is
+     * full or the dispatcher is closed.
+     */
+    boolean offer(SendReminderServlet.Mail mail, long dueMillis, Consumer<Exception> done) {
+        if (closed) return false;
+        if (worker == null) {
+            Item it = new Item(mail, dueMillis, seq.incrementAndGet(), done);
+            try {
+                delivery.execute(() -> {
+                    inFlight.acquireUninterruptibly();
+                    send(List.of(it));
+                });
+            } catch (RejectedExecutionException full) {
+                return false;
+            }
+            return true;
+        }
+        if (queued.incrementAndGet() > capacity) {
+            queued.decrementAndGet();
+            return false;
+        }
+        queue.add(new Item(mail, dueMillis, seq.incrementAndGet(), done));
+        return true;
+    }
+
+    int queued() { return queued.get(); }
+
+    long batches() { return batches.get(); }
+
+    long delivered() { return delivered.get(); }
+
+    long failed() { return failed.get(); }
+
+    /** Reminders that have left the queue, i.e. the sample count behind the delay figures. */
+    long delayCount() { return delayCount.sum(); }
+
+    long delayTotalMs() { return delayTotalMs.sum(); }
+
+    long delayMaxMs() { return delayMaxMs.get(); }
+
+    /** Reminders sent without a token because they had waited {@code maxSpreadMs}. */
+    long forced() { return forced.sum(); }
+
+    private void run() {
+        List<Item> batch = new ArrayList<>(maxBatch);
+        try {
+            while (!closed) {
+                Item first = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                long wait = admit(first);
+                if (wait > 0) {
+                    // Throttled: put it back so that whatever is most overdue after the wait goes first.
+                    queue.add(first);
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                    continue;
+                }
+                take(first, batch);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMs);
+                while (batch.size() < maxBatch) {
+                    Item next = queue.poll();
+                    if (next == null) {
+                        long left = deadline - System.nanoTime();
+                        if (left <= 0) break;
+                        next = queue.poll(left, TimeUnit.NANOSECONDS);
+                        if (next == null) break;
+                    }
+                    if (admit(next) > 0) {
+                        queue.add(next);
+                        break;
+                    }
+                    take(next, batch);
+                }
+
+                inFlight.acquire();
+                final List<Item> ready = new ArrayList<>(batch);
+                batch.clear();
+                try {
+                    delivery.execute(() -> send(ready));
+                } catch (RejectedExecutionException full) {
+                    send(ready);  // delivery pool saturated: push back by sending on this thread
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Takes a token for the reminder, or lets it through without one once it has used up its
+     * spread. Returns 0 when it may go, otherwise how many nanoseconds to wait before asking again.
+     */
+    private long admit(Item it) {
+        if (bucket == null) return 0;
+        long wait = bucket.tryAcquire();
+        if (wait == 0) return 0;
+        long spreadLeftMs = it.offeredMillis + maxSpreadMs - System.currentTimeMillis();
+        if (spreadLeftMs <= 0) {
+            bucket.acquireForced();
+            forced.increment();
+            Metrics.shared().recordReminderForced();
+            return 0;
+        }
+        return Math.min(wait, TimeUnit.MILLISECONDS.toNanos(spreadLeftMs));
+    }
+
+    private void take(Item it, List<Item> batch) {
+        queued.decrementAndGet();
+        it.delayMs = Math.max(0, System.currentTimeMillis() - it.offeredMillis);
+        Metrics.shared().recordReminderShapedDelay(TimeUnit.MILLISECONDS.toNanos(it.delayMs));
+        delayCount.increment();
+        delayTotalMs.add(it.delayMs);
+        delayMaxMs.accumulateAndGet(it.delayMs, Math::max);
+        batch.add(it);
+    }
+
+    private void send(List<Item> items) {
+        long t0 = System.nanoTime();
+        Exception[] outcome;
+        try {
+            List<SendReminderServlet.Mail> mails = new ArrayList<>(items.size());
+            for (Item it : items) mails.add(it.mail);
+            outcome = sender.sendBatch(mails);
+        } catch (Exception e) {
+            outcome = new Exception[items.size()];
+            Arrays.fill(outcome, e);
+        } finally {
+            inFlight.release();
+        }
+
+        int ok = 0;
+        long maxDelay = 0;
+        for (int i = 0; i < items.size(); i++) {
+            if (i >= outcome.length || outcome[i] == null) ok++;
+            maxDelay = Math.max(maxDelay, items.get(i).delayMs);
+        }
+        batches.incrementAndGet();
+        delivered.addAndGet(ok);
+        failed.addAndGet(items.size() - ok);
+        reports.accept(new BatchReport(items.size(), ok, items.size() - ok,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0), maxDelay));
+
+        for (int i = 0; i < items.size(); i++) {
+            try {
+                items.get(i).done.accept(i < outcome.length ? outcome[i] : null);
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "[Reminder] delivery callback failed", e);
+            }
+        }
+    }
+
+    /**
+     * Stops taking reminders. Anything still queued is left unsent; with the journal enabled it is
+     * sent again after the restart.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (worker == null) return;
+        worker.interrupt();
+        try {
+            worker.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) LOG.warning("[Reminder] dispatcher closed with " + queue.size() + " reminders queued");
+        if (delayCount.sum() > 0) {
+            LOG.info(String.format("[Reminder] shaped delay avg=%d ms max=%d ms over %d reminders, %d forced",
+                    delayTotalMs.sum() / delayCount.sum(), delayMaxMs.get(), delayCount.sum(), forced.sum()));
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package com.studylife.servlet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped log of accepted reminders.
+ *
+ * Every reminder is written as an ADD record before the POST is answered and a DONE record
+ * (tombstone) once the mail server has accepted it; a reminder whose delivery failed keeps no
+ * tombstone. On startup the log is replayed and the
+ * reminders that have an ADD but no DONE are scheduled again.
+ *
+ * Writers copy their record into the mapping and then wait for the "reminder-journal" thread,
+ * which forces the mapping to disk at most every REMINDER_JOURNAL_FSYNC_MS. Concurrent requests
+ * therefore share one fsync. {@link #addAsync} does not wait at all: the sync thread completes its
+ * future after the fsync, so a request thread can be released in the meantime. The same thread
+ * rewrites the file with only the live entries once tombstoned records outnumber them.
+ *
+ * Record layout: {@code int len | byte type | long id | payload | int crc32}, followed by a zero
+ * int so a replay stops cleanly after the last complete record.
+ *
+ * The journal holds an exclusive lock on a ".lock" file next to it while open, so a second
+ * instance (another servlet, another webapp, another JVM) fails to open instead of replaying and
+ * appending to the same file. The lock sits on its own file because compaction replaces the log.
+ */
+final class ReminderJournal implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger(ReminderJournal.class.getName());
+
+    static final String FILE_NAME = "studylife-reminders.journal";
+
+    private static final int MAGIC = 0x534C524A; // "SLRJ"
+    private static final int HEADER = 4;
+    private static final byte ADD = 1;
+    private static final byte DONE = 2;
+    private static final int COMPACT_MIN_DEAD = 256;
+
+    /** A reminder that was accepted and has not been delivered yet. */
+    static final class Entry {
+        final long id;
+        final long dueMillis;
+        final String to;
+        final String subject;
+        final String body;
+
+        Entry(long id, long dueMillis, String to, String subject, String body) {
+            this.id = id;
+            this.dueMillis = dueMillis;
+            this.to = to;
+            this.subject = subject;
+            this.body = body;
+        }
+    }
+
+    /** An {@link #addAsync} caller waiting for its record to be forced. */
+    private static final class Waiter {
+        final long seq;
+        final long id;
+        final CompletableFuture<Long> durable = new CompletableFuture<>();
+
+        Waiter(long seq, long id) {
+            this.seq = seq;
+            this.id = id;
+        }
+    }
+
+    private final Path file;
+    private final int initialBytes;
+    private final long fsyncMs;
+    private final Thread syncer;
+    private final FileChannel lockChannel;
+
+    // All guarded by this.
+    private FileChannel channel;
+    private MappedByteBuffer buf;
+    private final Map<Long, Entry> live = new LinkedHashMap<>();
+    private long nextId = 1;
+    private int position;
+    private int dead;
+    private long appendSeq;
+    private long durableSeq;
+    private boolean compactRequested;
+    private boolean closed;
+    /** In sequence order, since records are appended in that order. */
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+    ReminderJournal(Path file, int initialBytes, long fsyncMs) throws IOException {
+        this.file = file;
+        this.initialBytes = Math.max(4096, initialBytes);
+        this.fsyncMs = Math.max(0, fsyncMs);
+        this.lockChannel = lock(file);
+        try {
+            open();
+        } catch (IOException | RuntimeException e) {
+            lockChannel.close();
+            throw e;
+        }
+        this.syncer = new Thread(this::syncLoop, "reminder-journal");
+        this.syncer.setDaemon(true);
+        this.syncer.start();
+    }
+
+    /** The journal described by REMINDER_JOURNAL_*, or {@code null} when it is switched off. */
+    static ReminderJournal fromConfig() throws IOException {
+        if (!Config.getBool("REMINDER_JOURNAL_ENABLED", true)) return null;
+        String dir = Config.get("REMINDER_JOURNAL_DIR");
+        if (dir == null) {
+            String base = System.getProperty("catalina.base");
+            dir = base != null ? Paths.get(base, "work").toString() : System.getProperty("java.io.tmpdir");
+        }
+        Path path = Files.createDirectories(Paths.get(dir)).resolve(FILE_NAME);
+        return new ReminderJournal(path,
+                Config.getInt("REMINDER_JOURNAL_INITIAL_BYTES", 1 << 20),
+                Config.getLong("REMINDER_JOURNAL_FSYNC_MS", 10));
+    }
+
+    /** Takes the exclusive lock for {@code file}; the lock lives as long as the returned channel. */
+    private static FileChannel lock(Path file) throws IOException {
+        Path lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        FileChannel ch = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = ch.tryLock();
+        } catch (OverlappingFileLockException heldInThisJvm) {
+            lock = null;
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+        if (lock == null) {
+            ch.close();
+            throw new IOException("Reminder journal " + file + " is already open in another instance");
+        }
+        return ch;
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean fresh = channel.size() == 0;
+        buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), initialBytes));
+        if (fresh) {
+            buf.putInt(0, MAGIC);
+        } else if (buf.getInt(0) != MAGIC) {
+            channel.close();
+            throw new IOException("Not a reminder journal: " + file);
+        }
+        replay();
+    }
+
+    private void replay() {
+        int pos = HEADER;
+        int records = 0;
+        while (pos + 8 <= buf.capacity()) {
+            int len = buf.getInt(pos);
+            if (len < 9 || (long) pos + 8 + len > buf.capacity()) break;
+            if (crc(buf, pos + 4, len) != buf.getInt(pos + 4 + len)) {
+                LOG.warning("[Journal] ignoring torn record at offset " + pos + " in " + file);
+                break;
+            }
+            ByteBuffer r = buf.duplicate();
+            r.position(pos + 4);
+            byte type = r.get();
+            long id = r.getLong();
+            if (type == ADD) {
+                long due = r.getLong();
+                live.put(id, new Entry(id, due, readString(r), readString(r), readString(r)));
+            } else if (live.remove(id) != null) {
+                dead += 2;
+            }
+            nextId = Math.max(nextId, id + 1);
+            pos += 8 + len;
+            records++;
+        }
+        position = pos;
+        if (pos + 4 <= buf.capacity()) buf.putInt(pos, 0);
+        if (records > 0) {
+            LOG.info(String.format("[Journal] replayed %d records, %d reminders pending", records, live.size()));
+        }
+    }
+
+    /** Live entries in the order they were accepted. */
+    synchronized List<Entry> pending() {
+        return new ArrayList<>(live.values());
+    }
+
+    synchronized int size() {
+        return live.size();
+    }
+
+    /** Size in bytes of the records currently in the file. */
+    synchronized int usedBytes() {
+        return position;
+    }
+
+    /** Appends an ADD record and returns once it is on disk. */
+    long add(long dueMillis, String to, String subject, String body) throws IOException {
+        long id;
+        long seq;
+        synchronized (this) {
+            if (closed) throw new IOException("Reminder journal is closed");
+            id = nextId++;
+            append(ADD, id, dueMillis, to, subject, body);
+            live.put(id, new Entry(id, dueMillis, to, subject, body));
+            seq = appendSeq;
+            notifyAll();
+        }
+        awaitDurable(seq);
+        return id;
+    }
+
+    /**
+     * Appends an ADD record without waiting for it. The future completes with the id on the sync
+     * thread once the record is on disk, or exceptionally if the journal closes first; callbacks
+     * attached to it must not block.
+     */
+    CompletableFuture<Long> addAsync(long dueMillis, String to, String subject, String body) throws IOException {
+        synchronized (this) {
+            if (closed) throw new IOException("Reminder journal is closed");
+            long id = nextId++;
+            append(ADD, id, dueMillis, to, subject, body);
+            live.put(id, new Entry(id, dueMillis, to, subject, body));
+            Waiter w = new Waiter(appendSeq, id);
+            waiters.add(w);
+            notifyAll();
+            return w.durable;
+        }
+    }
+
+    /** Removes the waiters whose records are durable; complete them outside the lock. */
+    private List<Waiter> durableWaiters() {
+        List<Waiter> ready = new ArrayList<>();
+        while (!waiters.isEmpty() && waiters.peek().seq <= durableSeq) ready.add(waiters.poll());
+        return ready;
+    }
+
+    private static void complete(List<Waiter> ready) {
+        for (Waiter w : ready) w.durable.complete(w.id);
+    }
+
+    /**
+     * Tombstones a reminder that has been delivered. This does not wait for the
+     * fsync: after a crash the reminder is at worst sent once more.
+     */
+    synchronized void markDone(long id) {
+        if (closed || live.remove(id) == null) return;
+        try {
+            append(DONE, id, 0, null, null, null);
+            dead += 2;
+            if (dead >= COMPACT_MIN_DEAD && dead > live.size()) compactRequested = true;
+            notifyAll();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "[Journal] could not tombstone reminder " + id, e);
+        }
+    }
+
+    private void awaitDurable(long seq) throws IOException {
+        synchronized (this) {
+            while (durableSeq < seq) {
+                if (closed && !syncer.isAlive()) throw new IOException("Reminder journal closed before sync");
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for reminder journal sync");
+                }
+            }
+        }
+    }
+
+    private void append(byte type, long id, long due, String to, String subject, String body) throws IOException {
+        byte[][] strings = type == ADD
+                ? new byte[][]{utf8(to), utf8(subject), utf8(body)}
+                : new byte[0][];
+        int len = 1 + 8 + (type == ADD ? 8 : 0);
+        for (byte[] s : strings) len += 4 + s.length;
+
+        ensureCapacity(8 + len + 4);
+        position = writeRecord(buf, position, len, type, id, due, strings);
+        buf.putInt(position, 0);
+        appendSeq++;
+    }
+
+    private static int writeRecord(ByteBuffer dst, int pos, int len, byte type, long id, long due, byte[][] strings) {
+        ByteBuffer w = dst.duplicate();
+        w.position(pos);
+        w.putInt(len).put(type).putLong(id);
+        if (type == ADD) w.putLong(due);
+        for (byte[] s : strings) w.putInt(s.length).put(s);
+        w.putInt(crc(dst, pos + 4, len));
+        return w.position();
+    }
+
+    private void ensureCapacity(int need) throws IOException {
+        if ((long) position + need <= buf.capacity()) return;
+        if (dead > 0) compactLocked();
+        if ((long) position + need <= buf.capacity()) return;
+
+        long size = Math.max((long) buf.capacity() * 2, (long) position + need);
+        if (size > Integer.MAX_VALUE) throw new IOException("Reminder journal is full");
+        buf.force();
+        buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /** Rewrites the file with only the live entries and swaps it in; leaves everything durable. */
+    private void compactLocked() throws IOException {
+        int len = HEADER + 4;
+        List<byte[][]> encoded = new ArrayList<>(live.size());
+        for (Entry e : live.values()) {
+            byte[][] s = {utf8(e.to), utf8(e.subject), utf8(e.body)};
+            encoded.add(s);
+            len += 8 + 17 + 12 + s[0].length + s[1].length + s[2].length;
+        }
+        int capacity = Math.max(initialBytes, len * 2);
+        ByteBuffer out = ByteBuffer.allocate(capacity);
+        out.putInt(0, MAGIC);
+        int pos = HEADER;
+        int i = 0;
+        for (Entry e : live.values()) {
+            byte[][] s = encoded.get(i++);
+            pos = writeRecord(out, pos, 17 + 12 + s[0].length + s[1].length + s[2].length, ADD, e.id, e.dueMillis, s);
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            out.limit(capacity).position(0);
+            while (out.hasRemaining()) ch.write(out);
+            ch.force(true);
+        }
+        buf.force();
+        channel.close();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        LOG.fine(String.format("[Journal] compacted %d bytes to %d (%d live)", position, pos, live.size()));
+        position = pos;
+        dead = 0;
+        durableSeq = appendSeq;
+        notifyAll();
+    }
+
+    private void syncLoop() {
+        try {
+            while (true) {
+                boolean compact;
+                synchronized (this) {
+                    while (!closed && durableSeq == appendSeq && !compactRequested) wait();
+                    if (closed) return;
+                    compact = compactRequested;
+                }
+                if (!compact && fsyncMs > 0) Thread.sleep(fsyncMs);  // let concurrent writers join this fsync
+
+                MappedByteBuffer target = null;
+                long seq = 0;
+                List<Waiter> ready = null;
+                synchronized (this) {
+                    if (closed) return;
+                    if (compactRequested) {
+                        compactRequested = false;
+                        try {
+                            compactLocked();
+                            ready = durableWaiters();
+                        } catch (IOException e) {
+                            LOG.log(Level.WARNING, "[Journal] compaction failed, keeping the current file", e);
+                        }
+                    }
+                    if (ready == null) {
+                        target = buf;
+                        seq = appendSeq;
+                    }
+                }
+                if (target != null) {
+                    target.force();
+                    synchronized (this) {
+                        if (seq > durableSeq) durableSeq = seq;
+                        notifyAll();
+                        ready = durableWaiters();
+                    }
+                }
+                complete(ready);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            notifyAll();
+        }
+        try {
+            syncer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Waiter> ready;
+        synchronized (this) {
+            try {
+                buf.force();
+                durableSeq = appendSeq;
+                notifyAll();
+            } finally {
+                ready = durableWaiters();
+                for (Waiter w : waiters) {
+                    w.durable.completeExceptionally(new IOException("Reminder journal closed before sync"));
+                }
+                waiters.clear();
+                try {
+                    channel.close();
+                } finally {
+                    lockChannel.close();
+                }
+            }
+        }
+        complete(ready);
+    }
+
+    private static byte[] utf8(String s) {
+        return s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String readString(ByteBuffer r) {
+        byte[] b = new byte[r.getInt()];
+        r.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static int crc(ByteBuffer src, int pos, int len) {
+        ByteBuffer slice = src.duplicate();
+        slice.limit(pos + len).position(pos);
+        CRC32 crc = new CRC32();
+        crc.update(slice);
+        return (int) crc.getValue();
+    }
+}
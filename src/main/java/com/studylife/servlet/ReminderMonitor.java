@@ -0,0 +1,217 @@
+package com.studylife.servlet;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * What happens to reminders after {@link SendReminderServlet} has accepted them: how many are
+ * still pending, how late the scheduler fired them, how long delivery took and whether it worked.
+ *
+ * Pending reminders are indexed by target time in a skip list, so the next N due are read off its
+ * head; the timing wheel keeps no order and is never looked into. A reminder stays pending until
+ * its delivery outcome is known, so one that has fired but is still waiting for a batch or a
+ * delivery thread is listed as fired.
+ *
+ * Outcomes are kept per hour of target time for the last {@link #HOURS} hours, each hour with its
+ * own fire lag and delivery histograms. The shared monitor also records into the {@link Metrics}
+ * histograms, so Prometheus sees the same values without the hourly split.
+ */
+final class ReminderMonitor {
+
+    static final int HOURS = 48;
+    static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+
+    private static volatile ReminderMonitor shared;
+
+    /** A reminder that was accepted and whose delivery outcome is not known yet. */
+    static final class Pending {
+        /** Journal id, 0 when the journal is off. */
+        final long id;
+        final String to;
+        final long dueMillis;
+        private final long seq;
+        private volatile long firedMillis;
+        private volatile long firedNanos;
+
+        Pending(long id, String to, long dueMillis, long seq) {
+            this.id = id;
+            this.to = to;
+            this.dueMillis = dueMillis;
+            this.seq = seq;
+        }
+
+        boolean fired() {
+            return firedMillis != 0;
+        }
+
+        long firedMillis() {
+            return firedMillis;
+        }
+    }
+
+    /** Outcomes of the reminders due in one hour. */
+    static final class Hour {
+        /** Epoch millis / {@link #HOUR_MS} of the target time. */
+        final long hour;
+        final LongAdder fired = new LongAdder();
+        final LongAdder delivered = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        /** Actual minus target firing time. */
+        final LatencyHistogram lag = new LatencyHistogram();
+        /** From firing until the outcome, including any wait for a batch or a delivery thread. */
+        final LatencyHistogram delivery = new LatencyHistogram();
+
+        Hour(long hour) {
+            this.hour = hour;
+        }
+    }
+
+    private static final Comparator<Pending> BY_DUE =
+            Comparator.<Pending>comparingLong(p -> p.dueMillis).thenComparingLong(p -> p.seq);
+
+    private final ConcurrentSkipListSet<Pending> pending = new ConcurrentSkipListSet<>(BY_DUE);
+    /** Size of {@link #pending}, whose own size() walks the list. */
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final ConcurrentHashMap<Long, Integer> pendingByHour = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<Hour> hours = new AtomicReferenceArray<>(HOURS);
+    private final AtomicLong seq = new AtomicLong();
+    private final Supplier<Metrics> metrics;
+
+    ReminderMonitor() {
+        this(null);
+    }
+
+    /** @param metrics where lag and delivery times are exported as well; may be {@code null} */
+    ReminderMonitor(Supplier<Metrics> metrics) {
+        this.metrics = metrics;
+    }
+
+    static ReminderMonitor shared() {
+        ReminderMonitor m = shared;
+        if (m == null) {
+            synchronized (ReminderMonitor.class) {
+                m = shared;
+                if (m == null) {
+                    m = new ReminderMonitor(Metrics::shared);
+                    shared = m;
+                }
+            }
+        }
+        return m;
+    }
+
+    static synchronized void resetShared() {
+        shared = null;
+    }
+
+    Pending accepted(long id, String to, long dueMillis) {
+        Pending p = new Pending(id, to, dueMillis, seq.incrementAndGet());
+        pending.add(p);
+        pendingCount.incrementAndGet();
+        pendingByHour.merge(dueMillis / HOUR_MS, 1, Integer::sum);
+        return p;
+    }
+
+    /** The scheduler has handed the reminder over for delivery. */
+    void fired(Pending p) {
+        fired(p, System.currentTimeMillis());
+    }
+
+    void fired(Pending p, long nowMillis) {
+        p.firedNanos = System.nanoTime();
+        p.firedMillis = nowMillis;
+        long lagMs = Math.max(0, nowMillis - p.dueMillis);
+        Hour h = hour(p.dueMillis / HOUR_MS);
+        if (h != null) {
+            h.fired.increment();
+            h.lag.recordMicros(TimeUnit.MILLISECONDS.toMicros(lagMs));
+        }
+        if (metrics != null) metrics.get().recordReminderLag(TimeUnit.MILLISECONDS.toNanos(lagMs));
+    }
+
+    /** The delivery outcome is known; the reminder is no longer pending. */
+    void finished(Pending p, boolean ok) {
+        if (!forget(p)) return;   // dropped by forget() or clear() in the meantime
+        long hourKey = p.dueMillis / HOUR_MS;
+
+        long nanos = p.fired() ? System.nanoTime() - p.firedNanos : 0;
+        Hour h = hour(hourKey);
+        if (h != null) {
+            (ok ? h.delivered : h.failed).increment();
+            h.delivery.recordNanos(nanos);
+        }
+        if (metrics != null) metrics.get().recordReminderDelivery(ok, nanos);
+    }
+
+    int pending() {
+        return pendingCount.get();
+    }
+
+    /** Up to {@code limit} pending reminders, earliest target first. */
+    List<Pending> next(int limit) {
+        List<Pending> out = new ArrayList<>(Math.min(limit, 64));
+        Iterator<Pending> it = pending.iterator();
+        while (out.size() < limit && it.hasNext()) out.add(it.next());
+        return out;
+    }
+
+    /** Pending reminders per hour of target time, earliest hour first. */
+    Map<Long, Integer> pendingByHour() {
+        return new TreeMap<>(pendingByHour);
+    }
+
+    /** Outcomes of the hours kept, earliest first. */
+    List<Hour> hours() {
+        List<Hour> out = new ArrayList<>(HOURS);
+        for (int i = 0; i < HOURS; i++) {
+            Hour h = hours.get(i);
+            if (h != null) out.add(h);
+        }
+        out.sort(Comparator.comparingLong(h -> h.hour));
+        return out;
+    }
+
+    /**
+     * Stops tracking {@code p} without recording an outcome, e.g. when the servlet that accepted it
+     * goes away and the journal keeps it. {@code false} when it was no longer pending.
+     */
+    boolean forget(Pending p) {
+        if (!pending.remove(p)) return false;
+        pendingCount.decrementAndGet();
+        pendingByHour.computeIfPresent(p.dueMillis / HOUR_MS, (k, n) -> n == 1 ? null : n - 1);
+        return true;
+    }
+
+    /** Forgets every pending reminder. */
+    void clear() {
+        Pending p;
+        while ((p = pending.pollFirst()) != null) {
+            pendingCount.decrementAndGet();
+            pendingByHour.computeIfPresent(p.dueMillis / HOUR_MS, (k, n) -> n == 1 ? null : n - 1);
+        }
+    }
+
+    /** The slot for {@code hourKey}, or {@code null} when that hour has already been overwritten. */
+    private Hour hour(long hourKey) {
+        int slot = (int) Math.floorMod(hourKey, (long) HOURS);
+        while (true) {
+            Hour h = hours.get(slot);
+            if (h != null && h.hour == hourKey) return h;
+            if (h != null && h.hour > hourKey) return null;
+            Hour fresh = new Hour(hourKey);
+            if (hours.compareAndSet(slot, h, fresh)) return fresh;
+        }
+    }
+}
@@ -1,24 +1,57 @@
 package com.studylife.servlet;
 
-import org.json.JSONObject;
-
+import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedReader;
+import javax.sql.DataSource;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.nio.charset.StandardCharsets;
 import java.sql.*;
 
-@WebServlet(name = "SaveCountryServlet", urlPatterns = {"/api/save-country"})
+@WebServlet(name = "SaveCountryServlet", urlPatterns = {"/api/save-country"}, asyncSupported = true)
 public class SaveCountryServlet extends HttpServlet {
 
 
-    protected static final String ENV_DB_URL  = "DB_URL";
-    protected static final String ENV_DB_USER = "DB_USER";
-    protected static final String ENV_DB_PASS = "DB_PASS";
+    protected static final String ENV_DB_URL  = Db.ENV_DB_URL;
+    protected static final String ENV_DB_USER = Db.ENV_DB_USER;
+    protected static final String ENV_DB_PASS = Db.ENV_DB_PASS;
+
+    /** Set LOCATION_WRITE_BEHIND=true to queue inserts and answer 202 instead of waiting for MySQL. */
+    protected static final String ENV_WRITE_BEHIND = "LOCATION_WRITE_BEHIND";
+
+    private static final JsonRequestDecoder BODY = new JsonRequestDecoder("userId", "country");
+
+    private static final byte[] INVALID_BODY   = JsonResponse.message("error", "Invalid request body");
+    private static final byte[] TOO_LARGE      = JsonResponse.message("error", "Request body too large");
+    private static final byte[] MALFORMED      = JsonResponse.message("error", "Malformed JSON");
+    private static final byte[] REQUIRED       = JsonResponse.message("fail", "userId and country are required");
+    private static final byte[] NOT_A_NUMBER   = JsonResponse.message("fail", "userId must be a number");
+    private static final byte[] NO_DB_CONFIG   = JsonResponse.message("error", "DB_URL/DB_USER/DB_PASS not set");
+    private static final byte[] BUSY           = JsonResponse.message("error", "Server busy, retry later");
+    private static final byte[] DUPLICATE      = JsonResponse.message("fail", "Duplicate record");
+    private static final byte[] DATABASE_ERROR = JsonResponse.message("error", "Database error");
+
+    private transient LocationBatchWriter writeBehind;
+
+    @Override
+    public void init() {
+        if (Config.getBool(ENV_WRITE_BEHIND, false)) {
+            writeBehind = LocationBatchWriter.fromConfig(() -> {
+                DbConf c = getDbConf();
+                return Db.dataSource(c.url, c.user, c.pass);
+            });
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (writeBehind != null) {
+            writeBehind.close();
+            writeBehind = null;
+        }
+        super.destroy();
+    }
 
     @Override
     protected void doOptions(HttpServletRequest req, HttpServletResponse resp) throws IOException {
@@ -27,35 +60,32 @@ public class SaveCountryServlet extends HttpServlet {
     }
 
     @Override
-    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
         addCorsHeaders(response);
-        request.setCharacterEncoding(StandardCharsets.UTF_8.name());
         response.setContentType("application/json; charset=UTF-8");
 
-        final String body;
-        try (BufferedReader r = request.getReader()) {
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = r.readLine()) != null) sb.append(line);
-            body = sb.toString();
+        final String[] fields;
+        try {
+            fields = BODY.decode(request);
         } catch (IOException ioe) {
-            writeJson(response, HttpServletResponse.SC_BAD_REQUEST, error("Invalid request body"));
+            JsonResponse.send(response, HttpServletResponse.SC_BAD_REQUEST, INVALID_BODY);
             return;
-        }
-
-        final JSONObject json;
-        try {
-            json = new JSONObject(body);
-        } catch (Exception ex) {
-            writeJson(response, HttpServletResponse.SC_BAD_REQUEST, error("Malformed JSON"));
+        } catch (JsonRequestDecoder.DecodeException ex) {
+            if (ex.tooLarge) {
+                JsonResponse.send(response, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, TOO_LARGE);
+            } else {
+                JsonResponse.send(response, HttpServletResponse.SC_BAD_REQUEST, MALFORMED);
+            }
             return;
         }
 
-        final String userIdStr = json.optString("userId", "").trim();
-        final String country   = json.optString("country", "").trim();
+        final String userIdStr = fields[0].trim();
+        String sent = fields[1].trim();
+        // A country in the body overrides the one resolved from the client address.
+        final String country = isBlank(sent) ? nullToEmpty(geoIp().country(request)) : sent;
         if (isBlank(userIdStr) || isBlank(country)) {
-            writeJson(response, HttpServletResponse.SC_BAD_REQUEST,
-                    fail("userId and country are required"));
+            JsonResponse.send(response, HttpServletResponse.SC_BAD_REQUEST, REQUIRED);
             return;
         }
 
@@ -63,49 +93,76 @@ public class SaveCountryServlet extends HttpServlet {
         try {
             userId = Integer.parseInt(userIdStr);
         } catch (NumberFormatException nfe) {
-            writeJson(response, HttpServletResponse.SC_BAD_REQUEST, fail("userId must be a number"));
+            JsonResponse.send(response, HttpServletResponse.SC_BAD_REQUEST, NOT_A_NUMBER);
             return;
         }
 
         final DbConf conf = getDbConf();
-        if (conf.hasBlank()) {
-            writeJson(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
-                    error("DB_URL/DB_USER/DB_PASS not set"));
+        if (conf.hasBlank() && !Db.hasContainerDataSource()) {
+            JsonResponse.send(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, NO_DB_CONFIG);
+            return;
+        }
+
+        if (writeBehind != null) {
+            if (writeBehind.offer(userId, country)) {
+                JsonResponse.object()
+                        .field("status", "accepted")
+                        .field("userId", userId)
+                        .field("country", country)
+                        .send(response, HttpServletResponse.SC_ACCEPTED);
+            } else {
+                response.setHeader("Retry-After", "1");
+                JsonResponse.send(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, BUSY);
+            }
             return;
         }
 
+        IoLane.db().dispatch(request, response, resp -> insertAndRespond(resp, userId, country, conf));
+    }
+
+    private void insertAndRespond(HttpServletResponse response, int userId, String country, DbConf conf)
+            throws IOException {
         try {
             long id = insertLocation(userId, country, conf);
-            JSONObject ok = new JSONObject()
-                    .put("status", "success")
-                    .put("id", id)
-                    .put("userId", userId)
-                    .put("country", country);
-            writeJson(response, HttpServletResponse.SC_OK, ok.toString());
+            LoginStats.shared().record(userId, country);
+            JsonResponse.object()
+                    .field("status", "success")
+                    .field("id", id)
+                    .field("userId", userId)
+                    .field("country", country)
+                    .send(response, HttpServletResponse.SC_OK);
         } catch (SQLIntegrityConstraintViolationException dup) {
-            writeJson(response, HttpServletResponse.SC_BAD_REQUEST, fail("Duplicate record"));
+            JsonResponse.send(response, HttpServletResponse.SC_BAD_REQUEST, DUPLICATE);
         } catch (Exception e) {
-            writeJson(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, error("Database error"));
+            JsonResponse.send(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, DATABASE_ERROR);
         }
     }
 
+    /** Overridable for tests. */
+    protected GeoIpResolver geoIp() {
+        return GeoIpResolver.shared();
+    }
+
     protected DbConf getDbConf() {
         return new DbConf(
-                System.getenv(ENV_DB_URL),
-                System.getenv(ENV_DB_USER),
-                System.getenv(ENV_DB_PASS)
+                Config.get(ENV_DB_URL),
+                Config.get(ENV_DB_USER),
+                Config.get(ENV_DB_PASS)
         );
     }
 
 
     protected long insertLocation(int userId, String country, DbConf conf) throws Exception {
-        Class.forName("com.mysql.cj.jdbc.Driver");
-        String sql = "INSERT INTO user_login_locations (user_id, country) VALUES (?, ?)";
+        String sql = "INSERT INTO user_login_locations (user_id, country_id) VALUES (?, ?)";
 
-        try (Connection conn = DriverManager.getConnection(conf.url, conf.user, conf.pass);
+        DataSource ds = Db.dataSource(conf.url, conf.user, conf.pass);
+        if (ds == null) throw new SQLException("No DataSource configured");
+
+        int countryId = CountryDictionary.of(ds).idFor(country);
+        try (Connection conn = ds.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             ps.setInt(1, userId);
-            ps.setString(2, country);
+            ps.setInt(2, countryId);
             ps.executeUpdate();
             try (ResultSet rs = ps.getGeneratedKeys()) {
                 if (rs.next()) return rs.getLong(1);
@@ -131,16 +188,5 @@ public class SaveCountryServlet extends HttpServlet {
 
     protected static boolean isBlank(String s) { return s == null || s.trim().isEmpty(); }
 
-    protected static String error(String msg) {
-        return new JSONObject().put("status", "error").put("message", msg).toString();
-    }
-
-    protected static String fail(String msg) {
-        return new JSONObject().put("status", "fail").put("message", msg).toString();
-    }
-
-    protected static void writeJson(HttpServletResponse resp, int status, String json) throws IOException {
-        resp.setStatus(status);
-        try (PrintWriter w = resp.getWriter()) { w.write(json); }
-    }
+    private static String nullToEmpty(String s) { return s == null ? "" : s; }
 }
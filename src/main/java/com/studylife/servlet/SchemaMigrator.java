@@ -0,0 +1,257 @@
+package com.studylife.servlet;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Applies the versioned scripts under {@code db/migration} in order and records each one in
+ * {@code schema_version}. Scripts are listed in {@link #SCRIPTS} because a WAR's classpath cannot be
+ * listed portably; add new files at the end and never edit one that has shipped.
+ *
+ * MySQL commits DDL implicitly, so a script can stop halfway with part of it applied. To make such a
+ * script safe to run again, and to cope with databases that already had some of these changes made
+ * by hand, {@code CREATE [UNIQUE] INDEX} and {@code ALTER TABLE ... ADD COLUMN} are skipped when
+ * the index or column already exists (checked through the JDBC metadata, i.e. INFORMATION_SCHEMA on
+ * MySQL). Before a unique index is created the existing rows are checked for duplicates, and the
+ * failure names them instead of surfacing a bare constraint error.
+ *
+ * A failed migration fails deployment: the scripts run in order and stop at the first failure, and
+ * the servlets assume every script has been applied (e.g. {@code country_id} from V7, the unique
+ * username index from V2), so starting on a partial schema would break writes or accept duplicate
+ * users. Fix the cause and redeploy; the scripts already applied are not run again.
+ */
+final class SchemaMigrator {
+
+    private static final Logger LOG = Logger.getLogger(SchemaMigrator.class.getName());
+
+    static final String LOCATION = "db/migration/";
+
+    static final String[] SCRIPTS = {
+            "V1__baseline.sql",
+            "V2__indexes_and_timestamps.sql",
+            "V3__expenses.sql",
+            "V4__todos.sql",
+            "V5__mood_years.sql",
+            "V6__login_stats.sql",
+            "V7__countries.sql",
+    };
+
+    private static final Pattern CREATE_INDEX = Pattern.compile(
+            "(?is)CREATE\\s+(UNIQUE\\s+)?INDEX\\s+(\\w+)\\s+ON\\s+(\\w+)\\s*\\(([^)]*)\\).*");
+    private static final Pattern ADD_COLUMN = Pattern.compile(
+            "(?is)ALTER\\s+TABLE\\s+(\\w+)\\s+ADD\\s+(?:COLUMN\\s+)?(\\w+)\\s.*");
+
+    private final DataSource dataSource;
+
+    SchemaMigrator(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /** Runs the migrations at startup when a database is configured and DB_MIGRATE is not false. */
+    static void migrateIfConfigured() {
+        if (!Config.getBool("DB_MIGRATE", true)) return;
+        DataSource ds = Db.dataSource();
+        if (ds == null) {
+            LOG.info("[Schema] no database configured, skipping migrations");
+            return;
+        }
+        try {
+            new SchemaMigrator(ds).migrate();
+        } catch (SQLException | IOException e) {
+            LOG.log(Level.SEVERE, "[Schema] migration failed, refusing to start on a partial schema", e);
+            throw new IllegalStateException("Database migration failed", e);
+        }
+    }
+
+    /** @return number of scripts applied by this call */
+    int migrate() throws SQLException, IOException {
+        try (Connection conn = dataSource.getConnection()) {
+            ensureVersionTable(conn);
+            Map<Integer, Long> applied = appliedVersions(conn);
+
+            int count = 0;
+            for (String script : SCRIPTS) {
+                int version = versionOf(script);
+                String sql = load(script);
+                long checksum = checksum(sql);
+
+                Long known = applied.get(version);
+                if (known != null) {
+                    if (known != checksum) {
+                        LOG.warning("[Schema] " + script + " changed after it was applied (checksum mismatch)");
+                    }
+                    continue;
+                }
+
+                long t0 = System.nanoTime();
+                try (Statement st = conn.createStatement()) {
+                    for (String stmt : split(sql)) {
+                        if (needed(conn, script, stmt)) st.execute(stmt);
+                    }
+                }
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "INSERT INTO schema_version (version, script, checksum) VALUES (?, ?, ?)")) {
+                    ps.setInt(1, version);
+                    ps.setString(2, script);
+                    ps.setLong(3, checksum);
+                    ps.executeUpdate();
+                }
+                count++;
+                LOG.info(String.format("[Schema] applied %s in %d ms", script, (System.nanoTime() - t0) / 1_000_000));
+            }
+            return count;
+        }
+    }
+
+    /**
+     * {@code false} for an index or column that is already there. Throws when a unique index would
+     * fail on existing duplicates.
+     */
+    private static boolean needed(Connection conn, String script, String stmt) throws SQLException {
+        Matcher idx = CREATE_INDEX.matcher(stmt);
+        if (idx.matches()) {
+            String name = idx.group(2);
+            String table = idx.group(3);
+            if (indexExists(conn, table, name)) {
+                LOG.info("[Schema] " + script + ": index " + name + " already exists, skipped");
+                return false;
+            }
+            if (idx.group(1) != null) checkNoDuplicates(conn, script, name, table, idx.group(4));
+            return true;
+        }
+        Matcher col = ADD_COLUMN.matcher(stmt);
+        if (col.matches() && !isKeyword(col.group(2)) && columnExists(conn, col.group(1), col.group(2))) {
+            LOG.info("[Schema] " + script + ": column " + col.group(1) + "." + col.group(2) + " already exists, skipped");
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean isKeyword(String word) {
+        switch (word.toUpperCase(Locale.ROOT)) {
+            case "INDEX": case "KEY": case "UNIQUE": case "PRIMARY": case "CONSTRAINT": case "FOREIGN":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean indexExists(Connection conn, String table, String index) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getIndexInfo(conn.getCatalog(), null, table, false, true)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean columnExists(Connection conn, String table, String column) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getColumns(conn.getCatalog(), null, table, null)) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("COLUMN_NAME"))) return true;
+            }
+        }
+        return false;
+    }
+
+    private static void checkNoDuplicates(Connection conn, String script, String index, String table, String columns)
+            throws SQLException {
+        String cols = columns.trim();
+        // Rows with a NULL in the key never collide in a unique index.
+        String notNull = String.join(" IS NOT NULL AND ", cols.split("\\s*,\\s*")) + " IS NOT NULL";
+        List<String> dupes = new ArrayList<>();
+        try (Statement st = conn.createStatement()) {
+            st.setMaxRows(5);
+            try (ResultSet rs = st.executeQuery("SELECT " + cols + ", COUNT(*) FROM " + table +
+                    " WHERE " + notNull + " GROUP BY " + cols + " HAVING COUNT(*) > 1")) {
+                int n = rs.getMetaData().getColumnCount();
+                while (rs.next()) {
+                    StringBuilder key = new StringBuilder("(");
+                    for (int i = 1; i < n; i++) {
+                        if (i > 1) key.append(", ");
+                        key.append('\'').append(rs.getString(i)).append('\'');
+                    }
+                    dupes.add(key.append(") x").append(rs.getLong(n)).toString());
+                }
+            }
+        }
+        if (!dupes.isEmpty()) {
+            throw new SQLException(String.format("%s: cannot create unique index %s, %s has duplicate (%s): %s%s."
+                            + " Resolve them and restart.", script, index, table, cols, String.join(", ", dupes),
+                    dupes.size() == 5 ? " and possibly more" : ""));
+        }
+    }
+
+    private static void ensureVersionTable(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version INT PRIMARY KEY, " +
+                    "script VARCHAR(200) NOT NULL, " +
+                    "checksum BIGINT NOT NULL, " +
+                    "installed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+        }
+    }
+
+    private static Map<Integer, Long> appliedVersions(Connection conn) throws SQLException {
+        Map<Integer, Long> out = new HashMap<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (rs.next()) out.put(rs.getInt(1), rs.getLong(2));
+        }
+        return out;
+    }
+
+    static int versionOf(String script) {
+        int sep = script.indexOf("__");
+        if (!script.startsWith("V") || sep < 2) throw new IllegalArgumentException("Bad migration name: " + script);
+        return Integer.parseInt(script.substring(1, sep));
+    }
+
+    private static String load(String script) throws IOException {
+        try (InputStream in = SchemaMigrator.class.getClassLoader().getResourceAsStream(LOCATION + script)) {
+            if (in == null) throw new IOException("Migration script not found: " + LOCATION + script);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static long checksum(String sql) {
+        CRC32 crc = new CRC32();
+        crc.update(sql.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    /** Splits on semicolons that end a line; full-line {@code --} comments are dropped. */
+    static List<String> split(String sql) {
+        List<String> out = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        for (String line : sql.split("\r?\n")) {
+            String t = line.trim();
+            if (t.isEmpty() || t.startsWith("--")) continue;
+            cur.append(line).append('\n');
+            if (t.endsWith(";")) {
+                String stmt = cur.toString().trim();
+                out.add(stmt.substring(0, stmt.length() - 1));
+                cur.setLength(0);
+            }
+        }
+        if (cur.toString().trim().length() > 0) out.add(cur.toString().trim());
+        return out;
+    }
+}
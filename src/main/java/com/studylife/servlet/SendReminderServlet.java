@@ -2,18 +2,26 @@ package com.studylife.servlet;
 
 import org.json.JSONObject;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
-import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.*;
 import java.io.*;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-@WebServlet("/SendReminderServlet")
+/**
+ * POST /api/send-reminder (also /SendReminderServlet for the reminder page), mapped in web.xml
+ * only: a second, annotation-registered instance would open the same journal.
+ */
 public class SendReminderServlet extends HttpServlet {
 
     private static final Logger LOG = Logger.getLogger(SendReminderServlet.class.getName());
@@ -21,30 +29,77 @@ public class SendReminderServlet extends HttpServlet {
     private static final DateTimeFormatter DATE_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm");
     private static final DateTimeFormatter TS_FMT   = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final JsonRequestDecoder BODY = new JsonRequestDecoder("email", "date", "time", "message");
 
     private final ScheduledExecutorService scheduler;
-    private final EmailSender sender;
+    private final ReminderDispatcher dispatcher;
+    private ReminderJournal journal;
+    private boolean journalFromConfig;
+    private final ReminderMonitor monitor;
+    /** What this instance added to {@link #monitor}, which may be shared with other instances. */
+    private final Set<ReminderMonitor.Pending> accepted = ConcurrentHashMap.newKeySet();
 
     public SendReminderServlet() {
-        this(Executors.newScheduledThreadPool(5), EmailUtil::sendEmail);
+        // The wheel thread only hands due reminders over; reminders due together are batched
+        // onto shared SMTP connections and the SMTP waits happen on the mail lane.
+        this(TimingWheelScheduler.fromConfig(Runnable::run),
+             ReminderDispatcher.fromConfig(EmailUtil::sendBatch, IoLane.mail()::execute),
+             null, ReminderMonitor.shared());
+        this.journalFromConfig = true;
     }
 
-    SendReminderServlet(ScheduledExecutorService scheduler, EmailSender sender) {
+    SendReminderServlet(ScheduledExecutorService scheduler, ReminderDispatcher dispatcher, ReminderJournal journal) {
+        this(scheduler, dispatcher, journal, new ReminderMonitor());
+    }
+
+    SendReminderServlet(ScheduledExecutorService scheduler, ReminderDispatcher dispatcher, ReminderJournal journal,
+                        ReminderMonitor monitor) {
         this.scheduler = scheduler;
-        this.sender = sender;
+        this.dispatcher = dispatcher;
+        this.journal = journal;
+        this.monitor = monitor;
+    }
+
+    /** Opens the journal and reschedules every reminder that was accepted but not yet sent. */
+    @Override
+    public void init() throws ServletException {
+        if (journal == null && journalFromConfig) {
+            try {
+                journal = ReminderJournal.fromConfig();
+            } catch (IOException e) {
+                throw new ServletException("Cannot open reminder journal", e);
+            }
+        }
+        if (journal == null) return;
+
+        List<ReminderJournal.Entry> pending = journal.pending();
+        for (ReminderJournal.Entry e : pending) {
+            schedule(e.id, e.to, e.subject, e.body, e.dueMillis);
+        }
+        if (!pending.isEmpty()) {
+            LOG.info(String.format("[Reminder] restored %d pending reminders from journal", pending.size()));
+        }
+    }
+
+    ReminderMonitor monitor() {
+        return monitor;
     }
 
     protected String getEnv(String key) {
-        return System.getenv(key);
+        return Config.get(key);
     }
 
     private int minLeadMinutes() {
-        String v = getEnv("REMINDER_MIN_LEAD_MINUTES");
-        if (v == null || v.trim().isEmpty()) return 5;
+        return envInt("REMINDER_MIN_LEAD_MINUTES", 5);
+    }
+
+    private int envInt(String key, int def) {
+        String v = getEnv(key);
+        if (v == null || v.trim().isEmpty()) return def;
         try {
             return Math.max(0, Integer.parseInt(v.trim()));
         } catch (NumberFormatException ignore) {
-            return 5;
+            return def;
         }
     }
 
@@ -59,25 +114,27 @@ public class SendReminderServlet extends HttpServlet {
             throws ServletException, IOException {
 
         addCors(response);
-        request.setCharacterEncoding("UTF-8");
         response.setContentType("application/json;charset=UTF-8");
 
-        String body = readBody(request);
-
-        try (PrintWriter out = response.getWriter()) {
-            JSONObject json;
-            try {
-                json = new JSONObject(body);
-            } catch (org.json.JSONException je) {
-                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                out.print("{\"status\":\"error\",\"message\":\"invalid json\"}");
-                return;
+        String[] fields;
+        try {
+            fields = BODY.decode(request);
+        } catch (JsonRequestDecoder.DecodeException ex) {
+            response.setStatus(ex.tooLarge ? HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE
+                                           : HttpServletResponse.SC_BAD_REQUEST);
+            try (PrintWriter out = response.getWriter()) {
+                out.print(ex.tooLarge ? "{\"status\":\"error\",\"message\":\"request body too large\"}"
+                                      : "{\"status\":\"error\",\"message\":\"invalid json\"}");
             }
+            return;
+        }
 
-            String email   = json.optString("email", "").trim();
-            String dateStr = json.optString("date", "").trim();
-            String timeStr = json.optString("time", "").trim();
-            String message = json.optString("message", "").trim();
+        try {
+            PrintWriter out = response.getWriter();
+            String email   = fields[0].trim();
+            String dateStr = fields[1].trim();
+            String timeStr = fields[2].trim();
+            String message = fields[3].trim();
 
             if (email.isEmpty() || dateStr.isEmpty() || timeStr.isEmpty() || message.isEmpty()) {
                 response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
@@ -107,27 +164,48 @@ public class SendReminderServlet extends HttpServlet {
                 return;
             }
 
-            long delayMillis = Duration.between(nowZ, targetZ).toMillis();
-
             final String subject = "Reminder Alert";
             final String fullMsg = "⏰ Reminder at " + dateStr + " " + timeStr + ":\n\n" + message;
+            final long dueMillis = targetZ.toInstant().toEpochMilli();
 
-            scheduler.schedule(() -> {
-                try {
-                    sender.send(email, subject, fullMsg);
-                    LOG.info(String.format("[Reminder] SENT -> %s at %s", email, TS_FMT.format(targetZ)));
-                } catch (Exception e) {
-                    LOG.log(Level.SEVERE,
-                            String.format("[Reminder] FAILED -> %s at %s", email, TS_FMT.format(targetZ)), e);
-                }
-            }, delayMillis, TimeUnit.MILLISECONDS);
-
-            JSONObject res = new JSONObject()
+            final String scheduled = new JSONObject()
                     .put("status", "scheduled")
                     .put("scheduledFor", TS_FMT.format(targetZ))
-                    .put("now", TS_FMT.format(nowZ));
-            response.setStatus(HttpServletResponse.SC_OK);
-            out.print(res.toString());
+                    .put("now", TS_FMT.format(nowZ))
+                    .toString();
+
+            // 先写入本地日志（fsync 之后才返回 200），重启后可以从日志恢复
+            if (journal == null) {
+                schedule(0, email, subject, fullMsg, dueMillis);
+                answer(response, HttpServletResponse.SC_OK, scheduled);
+                return;
+            }
+            CompletableFuture<Long> durable = journal.addAsync(dueMillis, email, subject, fullMsg);
+            if (!request.isAsyncSupported()) {
+                Throwable failure = null;
+                long journalId = 0;
+                try {
+                    journalId = durable.get();
+                } catch (ExecutionException e) {
+                    failure = e.getCause();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failure = e;
+                }
+                whenDurable(response, journalId, failure, email, subject, fullMsg, dueMillis, scheduled);
+                return;
+            }
+            // The fsync is shared with other requests and can take REMINDER_JOURNAL_FSYNC_MS plus a
+            // disk flush; the container thread is released and the sync thread answers instead.
+            AsyncContext ac = request.startAsync(request, response);
+            durable.whenComplete((journalId, failure) -> {
+                try {
+                    whenDurable(response, journalId == null ? 0 : journalId, failure,
+                            email, subject, fullMsg, dueMillis, scheduled);
+                } finally {
+                    ac.complete();
+                }
+            });
 
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Unhandled error while scheduling reminder", e);
@@ -138,6 +216,96 @@ public class SendReminderServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Schedules a reminder whose journal record is on disk and answers 200, or answers 500 when
+     * the record could not be written. Runs on the journal's sync thread for async requests; the
+     * body is small enough to sit in the response buffer, so it never waits on the client.
+     */
+    private void whenDurable(HttpServletResponse response, long journalId, Throwable failure, String email,
+                             String subject, String body, long dueMillis, String scheduled) {
+        if (failure != null) {
+            LOG.log(Level.SEVERE, "Could not journal reminder", failure);
+            answer(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                    "{\"status\":\"error\",\"message\":\"server error\"}");
+            return;
+        }
+        schedule(journalId, email, subject, body, dueMillis);
+        answer(response, HttpServletResponse.SC_OK, scheduled);
+    }
+
+    private static void answer(HttpServletResponse response, int status, String json) {
+        try {
+            response.setStatus(status);
+            response.getWriter().print(json);
+        } catch (IOException | IllegalStateException e) {
+            LOG.log(Level.FINE, "[Reminder] could not write response", e);
+        }
+    }
+
+    private void schedule(long journalId, String email, String subject, String body, long dueMillis) {
+        final ZonedDateTime targetZ = Instant.ofEpochMilli(dueMillis).atZone(ZONE_ID);
+        final ReminderJournal j = journal;
+        final ReminderMonitor m = monitor;
+        final ReminderMonitor.Pending tracked = m.accepted(journalId, email, dueMillis);
+        accepted.add(tracked);
+        // A failed attempt is retried with a doubling delay; after the last one the entry stays in
+        // the journal, so the reminder is tried again on the next start rather than lost.
+        final int maxAttempts = Math.max(1, envInt("REMINDER_SEND_ATTEMPTS", 3));
+        final long retryDelayMs = envInt("REMINDER_RETRY_DELAY_MS", 60_000);
+        final AtomicInteger attempts = new AtomicInteger();
+        final Runnable[] deliver = new Runnable[1];
+        Consumer<Exception> done = failure -> {
+            if (failure == null) {
+                accepted.remove(tracked);
+                m.finished(tracked, true);
+                LOG.info(String.format("[Reminder] SENT -> %s at %s", email, TS_FMT.format(targetZ)));
+                if (j != null && journalId > 0) j.markDone(journalId);
+                return;
+            }
+            int attempt = attempts.incrementAndGet();
+            if (attempt < maxAttempts) {
+                long delay = retryDelayMs << Math.min(attempt - 1, 10);
+                LOG.log(Level.WARNING, String.format("[Reminder] attempt %d failed -> %s at %s, retrying in %d ms",
+                        attempt, email, TS_FMT.format(targetZ), delay), failure);
+                retryLater(deliver[0], delay);
+                return;
+            }
+            accepted.remove(tracked);
+            m.finished(tracked, false);
+            LOG.log(Level.SEVERE, String.format("[Reminder] FAILED -> %s at %s after %d attempts%s", email,
+                    TS_FMT.format(targetZ), attempt, j != null && journalId > 0 ? ", kept in journal" : ""), failure);
+        };
+
+        Mail mail = new Mail(email, subject, body);
+        deliver[0] = () -> dispatch(mail, dueMillis, done);
+        Runnable due = () -> {
+            m.fired(tracked);
+            deliver[0].run();
+        };
+        long delayMillis = Math.max(0, dueMillis - System.currentTimeMillis());
+        scheduler.schedule(due, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a due reminder for batched delivery, retrying a second later while the queue is full.
+     * The target time goes along so the dispatcher can send the most overdue reminders first.
+     */
+    private void dispatch(Mail mail, long dueMillis, Consumer<Exception> done) {
+        if (!dispatcher.offer(mail, dueMillis, done)) retryLater(() -> dispatch(mail, dueMillis, done));
+    }
+
+    private void retryLater(Runnable task) {
+        retryLater(task, 1000);
+    }
+
+    private void retryLater(Runnable task, long delayMs) {
+        try {
+            scheduler.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException shuttingDown) {
+            LOG.severe("[Reminder] DROPPED: could not reschedule during shutdown");
+        }
+    }
+
     @Override
     public void destroy() {
         scheduler.shutdown();
@@ -149,6 +317,18 @@ public class SendReminderServlet extends HttpServlet {
             scheduler.shutdownNow();
             Thread.currentThread().interrupt();
         }
+        dispatcher.close();
+        // Only this instance's reminders: the shared monitor may be tracking another instance's too.
+        for (ReminderMonitor.Pending p : accepted) monitor.forget(p);
+        accepted.clear();
+        // Reminders dropped by shutdownNow() are still in the journal and come back on the next init().
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "[Reminder] could not close journal", e);
+            }
+        }
         super.destroy();
     }
 
@@ -158,17 +338,34 @@ public class SendReminderServlet extends HttpServlet {
         resp.setHeader("Access-Control-Allow-Headers", "Content-Type, Authorization");
     }
 
-    private static String readBody(HttpServletRequest req) throws IOException {
-        StringBuilder sb = new StringBuilder();
-        try (BufferedReader r = req.getReader()) {
-            String line;
-            while ((line = r.readLine()) != null) sb.append(line);
+    @FunctionalInterface
+    interface EmailSender {
+        void send(String to, String subject, String body) throws Exception;
+    }
+
+    /** One outgoing reminder e-mail. */
+    static final class Mail {
+        final String to;
+        final String subject;
+        final String body;
+
+        Mail(String to, String subject, String body) {
+            this.to = to;
+            this.subject = subject;
+            this.body = body;
         }
-        return sb.toString();
     }
 
+    /** A sender that can push several messages through one SMTP conversation. */
     @FunctionalInterface
-    interface EmailSender {
-        void send(String to, String subject, String body) throws Exception;
+    interface BatchEmailSender extends EmailSender {
+        /** Returns one entry per mail, in order: {@code null} when delivered, otherwise the failure. */
+        Exception[] sendBatch(List<Mail> batch) throws Exception;
+
+        @Override
+        default void send(String to, String subject, String body) throws Exception {
+            Exception failure = sendBatch(Collections.singletonList(new Mail(to, subject, body)))[0];
+            if (failure != null) throw failure;
+        }
     }
 }
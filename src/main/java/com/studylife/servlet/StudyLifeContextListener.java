@@ -0,0 +1,32 @@
+package com.studylife.servlet;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.sql.DataSource;
+
+/**
+ * Application start/stop hooks for resources shared between servlets.
+ */
+public class StudyLifeContextListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        // Pools are created lazily on first use so a missing DB config does not block deployment.
+        SchemaMigrator.migrateIfConfigured();
+        DataSource ds = Db.dataSource();
+        UsernameIndex.shared().warmAsync(ds);
+        if (ds != null) CountryDictionary.of(ds).warmAsync();
+        // BCrypt cost calibration takes a few hundred ms; pay it here rather than on the first login.
+        PasswordHasher.shared();
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        IoLane.shutdownAll();
+        LoginStats.shutdownShared();
+        GeoIpResolver.shutdownShared();
+        EmailUtil.shutdownPool();
+        PasswordHasher.shutdownShared();
+        Db.shutdown();
+    }
+}
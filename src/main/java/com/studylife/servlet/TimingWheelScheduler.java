@@ -0,0 +1,372 @@
+package com.studylife.servlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hierarchical hashed timing wheel behind the {@link ScheduledExecutorService} interface.
+ *
+ * Time is cut into ticks of {@code tickMs}. Level 0 has one slot per tick, and every further level
+ * has slots that are {@code 2^wheelBits} times wider. A task goes into the coarsest slot that
+ * still separates it from "now" and moves down one level each time the wheel below wraps. Insert
+ * and cancel are O(1) whatever the number of pending tasks, compared with O(log n) for the heap in
+ * {@link java.util.concurrent.ScheduledThreadPoolExecutor}.
+ *
+ * Only the single "timing-wheel" thread touches the wheel. Callers publish new and cancelled tasks
+ * through lock-free queues that the thread drains once per tick, and expired tasks are run on the
+ * {@code expiry} executor. Tasks fire up to one tick late and never early.
+ */
+final class TimingWheelScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+
+    private static final Logger LOG = Logger.getLogger(TimingWheelScheduler.class.getName());
+
+    private static final int RUNNING = 0;
+    private static final int SHUTDOWN = 1;
+    private static final int STOP = 2;
+
+    private final long tickNanos;
+    private final int bits;
+    private final int mask;
+    private final Bucket[][] wheel;
+    private final Executor expiry;
+    private final long startNanos;
+    private final Thread worker;
+
+    private final Queue<Task<?>> incoming = new ConcurrentLinkedQueue<>();
+    private final Queue<Task<?>> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger state = new AtomicInteger(RUNNING);
+    private final AtomicInteger pending = new AtomicInteger();
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    /** Ticks elapsed since {@link #startNanos}; only the worker reads or writes it. */
+    private long currentTick;
+
+    /**
+     * @param tickMs    resolution; tasks may fire up to this much after their deadline
+     * @param wheelBits log2 of the slots per level
+     * @param levels    number of levels; the top level holds tasks beyond its span and re-places them
+     * @param expiry    runs expired tasks; {@code Runnable::run} keeps them on the wheel thread
+     */
+    TimingWheelScheduler(long tickMs, int wheelBits, int levels, Executor expiry) {
+        if (tickMs <= 0 || wheelBits < 1 || wheelBits > 16 || levels < 1 || (long) wheelBits * levels > 62) {
+            throw new IllegalArgumentException("bad wheel geometry");
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        this.bits = wheelBits;
+        this.mask = (1 << wheelBits) - 1;
+        this.expiry = expiry;
+        this.wheel = new Bucket[levels][1 << wheelBits];
+        for (Bucket[] level : wheel) {
+            for (int i = 0; i < level.length; i++) level[i] = new Bucket();
+        }
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::run, "timing-wheel");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /** 100 ms ticks and four levels of 256 slots, which covers about 13 years. */
+    static TimingWheelScheduler fromConfig(Executor expiry) {
+        return new TimingWheelScheduler(
+                Config.getLong("REMINDER_WHEEL_TICK_MS", 100),
+                Config.getInt("REMINDER_WHEEL_BITS", 8),
+                4,
+                expiry);
+    }
+
+    /** Tasks scheduled and not yet run or cancelled. */
+    int pending() {
+        return pending.get();
+    }
+
+    // ---------------------------------------------------------------- ScheduledExecutorService
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        if (command == null || unit == null) throw new NullPointerException();
+        return enqueue(new Task<Void>(Executors.callable(command, null), deadline(delay, unit), 0));
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        if (callable == null || unit == null) throw new NullPointerException();
+        return enqueue(new Task<>(callable, deadline(delay, unit), 0));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        if (command == null || unit == null) throw new NullPointerException();
+        if (period <= 0) throw new IllegalArgumentException("period must be positive");
+        return enqueue(new Task<Void>(Executors.callable(command, null), deadline(initialDelay, unit), unit.toNanos(period)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        if (command == null || unit == null) throw new NullPointerException();
+        if (delay <= 0) throw new IllegalArgumentException("delay must be positive");
+        return enqueue(new Task<Void>(Executors.callable(command, null), deadline(initialDelay, unit), -unit.toNanos(delay)));
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        schedule(command, 0, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void shutdown() {
+        state.compareAndSet(RUNNING, SHUTDOWN);
+        LockSupport.unpark(worker);
+    }
+
+    /** Stops the wheel and returns the tasks that never ran. */
+    @Override
+    public List<Runnable> shutdownNow() {
+        state.set(STOP);
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Runnable> left = new ArrayList<>();
+        for (Bucket[] level : wheel) {
+            for (Bucket b : level) b.drainTo(left);
+        }
+        for (Task<?> t; (t = incoming.poll()) != null; ) if (!t.isCancelled()) left.add(t);
+        pending.set(0);
+        return left;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return state.get() != RUNNING;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    // ---------------------------------------------------------------- internals
+
+    private long deadline(long delay, TimeUnit unit) {
+        return System.nanoTime() + Math.max(0, unit.toNanos(delay));
+    }
+
+    private <V> Task<V> enqueue(Task<V> task) {
+        if (isShutdown()) throw new RejectedExecutionException("timing wheel is shut down");
+        pending.incrementAndGet();
+        incoming.add(task);
+        return task;
+    }
+
+    private void run() {
+        try {
+            while (state.get() != STOP) {
+                long wake = startNanos + (currentTick + 1) * tickNanos;
+                for (long now; (now = System.nanoTime()) < wake; ) {
+                    LockSupport.parkNanos(this, wake - now);
+                    if (state.get() == STOP) return;
+                }
+                for (Task<?> t; (t = cancelled.poll()) != null; ) {
+                    if (t.bucket != null) t.bucket.remove(t);
+                }
+                for (Task<?> t; (t = incoming.poll()) != null; ) {
+                    if (!t.isCancelled()) place(t);
+                }
+                currentTick++;
+                advance();
+                if (state.get() == SHUTDOWN && pending.get() == 0) return;
+            }
+        } catch (Throwable t) {
+            LOG.log(Level.SEVERE, "[Wheel] ticker died", t);
+        } finally {
+            terminated.countDown();
+        }
+    }
+
+    /** Moves every level whose lower wheel just wrapped down one step, then expires level 0. */
+    private void advance() {
+        for (int level = wheel.length - 1; level >= 1; level--) {
+            int shift = bits * level;
+            if ((currentTick & ((1L << shift) - 1)) != 0) continue;
+            Task<?> t = wheel[level][(int) ((currentTick >>> shift) & mask)].detachAll();
+            while (t != null) {
+                Task<?> next = t.next;
+                t.next = null;
+                place(t);
+                t = next;
+            }
+        }
+
+        Task<?> t = wheel[0][(int) (currentTick & mask)].detachAll();
+        while (t != null) {
+            Task<?> next = t.next;
+            t.next = null;
+            fire(t);
+            t = next;
+        }
+    }
+
+    private void place(Task<?> t) {
+        long due = t.deadlineTick(startNanos, tickNanos);
+        long delta = due - currentTick;
+        if (delta <= 0) {
+            fire(t);
+            return;
+        }
+        int top = wheel.length - 1;
+        for (int level = 0; level <= top; level++) {
+            if (level == top || delta < (1L << (bits * (level + 1)))) {
+                long slotTick = level == top && delta >= (1L << (bits * (top + 1)))
+                        ? currentTick - (1L << (bits * top))   // beyond the horizon: park in the slot visited last
+                        : due;
+                wheel[level][(int) ((slotTick >>> (bits * level)) & mask)].add(t);
+                return;
+            }
+        }
+    }
+
+    private void fire(Task<?> t) {
+        if (t.isCancelled()) return;
+        try {
+            expiry.execute(t);
+        } catch (RejectedExecutionException full) {
+            t.run();
+        }
+    }
+
+    /** Re-queues a periodic task after a successful run; periodic tasks end at shutdown. */
+    private void reschedule(Task<?> t) {
+        if (isShutdown()) {
+            t.cancel(false);
+            return;
+        }
+        incoming.add(t);
+    }
+
+    private final class Task<V> extends FutureTask<V> implements RunnableScheduledFuture<V> {
+        /** 0 = one-shot, &gt; 0 = fixed rate, &lt; 0 = fixed delay (nanos). */
+        private final long period;
+        private volatile long deadlineNanos;
+
+        // Owned by the wheel thread.
+        Bucket bucket;
+        Task<?> prev;
+        Task<?> next;
+
+        Task(Callable<V> callable, long deadlineNanos, long period) {
+            super(callable);
+            this.deadlineNanos = deadlineNanos;
+            this.period = period;
+        }
+
+        long deadlineTick(long start, long tick) {
+            long offset = deadlineNanos - start;
+            return offset <= 0 ? 0 : (offset + tick - 1) / tick;
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return period != 0;
+        }
+
+        @Override
+        public void run() {
+            if (!isPeriodic()) {
+                super.run();
+            } else if (runAndReset()) {
+                deadlineNanos = period > 0 ? deadlineNanos + period : System.nanoTime() - period;
+                reschedule(this);
+            }
+        }
+
+        /** Called exactly once when the task completes, fails or is cancelled. */
+        @Override
+        protected void done() {
+            pending.decrementAndGet();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean done = super.cancel(mayInterruptIfRunning);
+            if (done) cancelled.add(this);
+            return done;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), o.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+
+    /** Intrusive doubly linked list so a cancelled task is unlinked without a search. */
+    private static final class Bucket {
+        private Task<?> head;
+        private Task<?> tail;
+
+        void add(Task<?> t) {
+            t.bucket = this;
+            t.prev = tail;
+            t.next = null;
+            if (tail == null) head = t;
+            else tail.next = t;
+            tail = t;
+        }
+
+        void remove(Task<?> t) {
+            if (t.bucket != this) return;
+            if (t.prev == null) head = t.next;
+            else t.prev.next = t.next;
+            if (t.next == null) tail = t.prev;
+            else t.next.prev = t.prev;
+            t.prev = t.next = null;
+            t.bucket = null;
+        }
+
+        /** Empties the bucket and returns its tasks as a singly linked chain through {@code next}. */
+        Task<?> detachAll() {
+            Task<?> first = head;
+            for (Task<?> t = first; t != null; t = t.next) {
+                t.bucket = null;
+                t.prev = null;
+            }
+            head = tail = null;
+            return first;
+        }
+
+        void drainTo(List<Runnable> out) {
+            for (Task<?> t = detachAll(); t != null; t = t.next) {
+                if (!t.isCancelled()) out.add(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.studylife.servlet;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JDBC access behind {@code /api/todos/sync}.
+ *
+ * Each user has a counter in {@code todo_versions}. Every incoming change takes the next value and
+ * stores it on the todo row, so "what changed since version N" is a range read on
+ * {@code (user_id, version)}. The work per sync follows the number of changes, not the size of
+ * the list.
+ */
+final class TodoStore {
+
+    static final String TODO = "todo";
+    static final String PROGRESS = "progress";
+    static final String DONE = "done";
+
+    static final class Todo {
+        final String clientId;
+        final LocalDate dueOn;
+        final String text;
+        final String status;
+        final boolean deleted;
+        /** Assigned by the store; ignored on the way in. */
+        final long version;
+
+        Todo(String clientId, LocalDate dueOn, String text, String status, boolean deleted, long version) {
+            this.clientId = clientId;
+            this.dueOn = dueOn;
+            this.text = text;
+            this.status = status;
+            this.deleted = deleted;
+            this.version = version;
+        }
+    }
+
+    static final class SyncResult {
+        /** Version the client should send next time. */
+        final long token;
+        final List<Todo> changes;
+        /** More changes are waiting; sync again with {@link #token} right away. */
+        final boolean hasMore;
+
+        SyncResult(long token, List<Todo> changes, boolean hasMore) {
+            this.token = token;
+            this.changes = changes;
+            this.hasMore = hasMore;
+        }
+    }
+
+    /** Today's todos by status, plus every todo not yet done whatever its date. */
+    static final class Counts {
+        final int todo;
+        final int progress;
+        final int done;
+        final int open;
+
+        Counts(int todo, int progress, int done, int open) {
+            this.todo = todo;
+            this.progress = progress;
+            this.done = done;
+            this.open = open;
+        }
+    }
+
+    private final DataSource dataSource;
+
+    TodoStore(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Applies the client's changes and returns what other devices changed since {@code since}.
+     *
+     * The changes written by this call are not sent back. When two devices edit the same todo, the
+     * change that syncs last wins. A first sync ({@code since == 0}) gets no tombstones. At most
+     * {@code limit} changes are returned; the rest follow on the next call.
+     */
+    SyncResult sync(int userId, long since, List<Todo> incoming, int limit) throws SQLException {
+        Map<String, Todo> wanted = new LinkedHashMap<>();
+        for (Todo t : incoming) wanted.put(t.clientId, t);
+
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                long before = lockCounter(conn, userId);
+                // A token from the future means the server lost data; start the client over.
+                if (since > before) since = 0;
+                long after = before + wanted.size();
+                if (!wanted.isEmpty()) {
+                    write(conn, userId, before, wanted.values());
+                    try (PreparedStatement ps = conn.prepareStatement(
+                            "UPDATE todo_versions SET version = ? WHERE user_id = ?")) {
+                        ps.setLong(1, after);
+                        ps.setInt(2, userId);
+                        ps.executeUpdate();
+                    }
+                }
+
+                List<Todo> changes = new ArrayList<>();
+                boolean hasMore = false;
+                if (since < before) {
+                    try (PreparedStatement ps = conn.prepareStatement(
+                            "SELECT client_id, due_on, text, status, deleted, version FROM todos " +
+                            "WHERE user_id = ? AND version > ? AND version <= ?" +
+                            (since == 0 ? " AND deleted = FALSE" : "") +
+                            " ORDER BY version LIMIT ?")) {
+                        ps.setInt(1, userId);
+                        ps.setLong(2, since);
+                        ps.setLong(3, before);
+                        ps.setInt(4, limit + 1);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                if (changes.size() == limit) {
+                                    hasMore = true;
+                                    break;
+                                }
+                                changes.add(new Todo(rs.getString(1), rs.getDate(2).toLocalDate(), rs.getString(3),
+                                        rs.getString(4), rs.getBoolean(5), rs.getLong(6)));
+                            }
+                        }
+                    }
+                }
+                conn.commit();
+
+                // A cut-short page resumes after its last row; the client's own writes come back then
+                // too, which is harmless because applying them again changes nothing.
+                long token = hasMore ? changes.get(changes.size() - 1).version : after;
+                return new SyncResult(token, changes, hasMore);
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    Counts counts(int userId, LocalDate day) throws SQLException {
+        int todo = 0;
+        int progress = 0;
+        int done = 0;
+        int open = 0;
+        try (Connection conn = dataSource.getConnection()) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT status, COUNT(*) FROM todos WHERE user_id = ? AND due_on = ? AND deleted = FALSE GROUP BY status")) {
+                ps.setInt(1, userId);
+                ps.setDate(2, Date.valueOf(day));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        String status = rs.getString(1);
+                        if (TODO.equals(status)) todo = rs.getInt(2);
+                        else if (PROGRESS.equals(status)) progress = rs.getInt(2);
+                        else if (DONE.equals(status)) done = rs.getInt(2);
+                    }
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT COUNT(*) FROM todos WHERE user_id = ? AND deleted = FALSE AND status <> ?")) {
+                ps.setInt(1, userId);
+                ps.setString(2, DONE);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) open = rs.getInt(1);
+                }
+            }
+        }
+        return new Counts(todo, progress, done, open);
+    }
+
+    /** Creates the user's counter on first use and locks it for the rest of the transaction. */
+    private static long lockCounter(Connection conn, int userId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO todo_versions (user_id, version) VALUES (?, 0) ON DUPLICATE KEY UPDATE version = version")) {
+            ps.setInt(1, userId);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT version FROM todo_versions WHERE user_id = ? FOR UPDATE")) {
+            ps.setInt(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) throw new SQLException("todo_versions row missing for user " + userId);
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    private static void write(Connection conn, int userId, long before, Iterable<Todo> todos) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO todos (user_id, client_id, due_on, text, status, deleted, version) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE " +
+                "due_on = VALUES(due_on), text = VALUES(text), status = VALUES(status), " +
+                "deleted = VALUES(deleted), version = VALUES(version), updated_at = CURRENT_TIMESTAMP")) {
+            long v = before;
+            for (Todo t : todos) {
+                ps.setInt(1, userId);
+                ps.setString(2, t.clientId);
+                ps.setDate(3, Date.valueOf(t.dueOn));
+                ps.setString(4, t.text);
+                ps.setString(5, t.status);
+                ps.setBoolean(6, t.deleted);
+                ps.setLong(7, ++v);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+}
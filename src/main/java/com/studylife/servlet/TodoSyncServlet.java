@@ -0,0 +1,181 @@
+package com.studylife.servlet;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * POST /api/todos/sync for todo.html.
+ *
+ * Request: {"userId":1, "token":42, "changes":[{"id":"...","date":"2025-03-03","text":"...",
+ * "status":"todo|progress|done","deleted":false}, ...]}. Send only the todos touched since the last
+ * sync; {@code token} is the value the previous response returned, or 0 on a new device.
+ * Response: {"token":57, "changes":[...], "hasMore":false}. It carries only what other devices
+ * changed after {@code token}; while {@code hasMore} is true, sync again with the new token.
+ */
+public class TodoSyncServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = Logger.getLogger(TodoSyncServlet.class.getName());
+
+    private static final JsonRequestDecoder BODY = new JsonRequestDecoder(
+            Config.getInt("TODO_SYNC_MAX_BYTES", 256 * 1024), "userId", "token", "changes");
+
+    private final int maxChanges = Config.getInt("TODO_SYNC_MAX_CHANGES", 500);
+    private final int pageSize = Config.getInt("TODO_SYNC_PAGE", 500);
+
+    /** Overridable for tests; {@code null} when no database is configured. */
+    protected DataSource dataSource() {
+        return Db.dataSource();
+    }
+
+    @Override
+    protected void doOptions(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        JsonApi.addCors(resp, "POST, OPTIONS");
+        resp.setStatus(HttpServletResponse.SC_NO_CONTENT);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        JsonApi.addCors(response, "POST, OPTIONS");
+        response.setContentType("application/json;charset=UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+
+        final String[] fields;
+        try {
+            fields = BODY.decode(request);
+        } catch (JsonRequestDecoder.DecodeException ex) {
+            JsonApi.writeJson(response, ex.tooLarge ? HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE
+                                                    : HttpServletResponse.SC_BAD_REQUEST,
+                    JsonApi.error(ex.tooLarge ? ex.getMessage() : "Malformed JSON"));
+            return;
+        }
+
+        final int userId;
+        final long token;
+        try {
+            userId = Integer.parseInt(fields[0].trim());
+            token = fields[1].trim().isEmpty() ? 0 : Long.parseLong(fields[1].trim());
+        } catch (NumberFormatException nfe) {
+            JsonApi.writeJson(response, HttpServletResponse.SC_BAD_REQUEST,
+                    JsonApi.fail("userId and token must be numbers"));
+            return;
+        }
+        if (token < 0) {
+            JsonApi.writeJson(response, HttpServletResponse.SC_BAD_REQUEST,
+                    JsonApi.fail("token must not be negative"));
+            return;
+        }
+
+        final List<TodoStore.Todo> changes;
+        try {
+            changes = parseChanges(fields[2]);
+        } catch (IllegalArgumentException bad) {
+            JsonApi.writeJson(response, HttpServletResponse.SC_BAD_REQUEST,
+                    JsonApi.fail(bad.getMessage()));
+            return;
+        }
+
+        final DataSource ds = dataSource();
+        if (ds == null) {
+            JsonApi.writeJson(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                    JsonApi.error("DB_URL/DB_USER/DB_PASS not set"));
+            return;
+        }
+
+        IoLane.db().dispatch(request, response, resp -> {
+            TodoStore.SyncResult r;
+            try {
+                r = new TodoStore(ds).sync(userId, token, changes, pageSize);
+                if (!changes.isEmpty()) DashboardCache.shared().invalidate(userId);
+            } catch (SQLException e) {
+                LOG.log(Level.WARNING, "[Todo] sync failed for user " + userId, e);
+                JsonApi.writeJson(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                        JsonApi.error("Database error"));
+                return;
+            }
+
+            JSONArray out = new JSONArray();
+            for (TodoStore.Todo t : r.changes) {
+                JSONObject o = new JSONObject().put("id", t.clientId).put("version", t.version);
+                if (t.deleted) {
+                    o.put("deleted", true);
+                } else {
+                    o.put("date", t.dueOn.toString()).put("text", t.text).put("status", t.status);
+                }
+                out.put(o);
+            }
+            JSONObject ok = new JSONObject()
+                    .put("status", "success")
+                    .put("token", r.token)
+                    .put("changes", out)
+                    .put("hasMore", r.hasMore);
+            JsonApi.writeJson(resp, HttpServletResponse.SC_OK, ok.toString());
+        });
+    }
+
+    private List<TodoStore.Todo> parseChanges(String json) {
+        if (json.trim().isEmpty()) return Collections.emptyList();
+        JSONArray arr;
+        try {
+            arr = new JSONArray(json);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("changes must be an array");
+        }
+        if (arr.length() > maxChanges) {
+            throw new IllegalArgumentException("at most " + maxChanges + " changes per request");
+        }
+        List<TodoStore.Todo> out = new ArrayList<>(arr.length());
+        for (int i = 0; i < arr.length(); i++) {
+            JSONObject o = arr.optJSONObject(i);
+            if (o == null) throw new IllegalArgumentException("changes[" + i + "] must be an object");
+            try {
+                out.add(parseTodo(o));
+            } catch (IllegalArgumentException bad) {
+                throw new IllegalArgumentException("changes[" + i + "]: " + bad.getMessage());
+            }
+        }
+        return out;
+    }
+
+    private static TodoStore.Todo parseTodo(JSONObject o) {
+        String id = o.optString("id").trim();
+        if (id.isEmpty() || id.length() > 64) throw new IllegalArgumentException("id is required (max 64)");
+        boolean deleted = o.optBoolean("deleted", false);
+
+        LocalDate date;
+        try {
+            date = LocalDate.parse(o.optString("date").trim());
+        } catch (DateTimeParseException e) {
+            if (!deleted) throw new IllegalArgumentException("date must be yyyy-MM-dd");
+            date = LocalDate.of(1970, 1, 1);   // a tombstone needs no real date
+        }
+
+        String text = o.optString("text").trim();
+        if (text.length() > 500) throw new IllegalArgumentException("text is too long");
+        if (text.isEmpty() && !deleted) throw new IllegalArgumentException("text is required");
+
+        String status = o.optString("status", TodoStore.TODO).trim().toLowerCase(Locale.ROOT);
+        if (!TodoStore.TODO.equals(status) && !TodoStore.PROGRESS.equals(status) && !TodoStore.DONE.equals(status)) {
+            throw new IllegalArgumentException("status must be todo, progress or done");
+        }
+        return new TodoStore.Todo(id, date, text, status, deleted, 0);
+    }
+}
@@ -0,0 +1,77 @@
+package com.studylife.servlet;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free token bucket: {@code burst} tokens, refilled at {@code perMinute} tokens a minute.
+ *
+ * The whole state is one "theoretical arrival time" in {@link System#nanoTime()} units, moved
+ * forward by one token interval per acquisition with a CAS. A token is available while that
+ * time is at most {@code burst} intervals ahead of now; a forced acquisition may push it further,
+ * which simply makes the following callers wait longer.
+ */
+final class TokenBucket {
+
+    private static final ConcurrentMap<String, TokenBucket> BY_HOST = new ConcurrentHashMap<>();
+
+    private final long intervalNanos;
+    private final long capacityNanos;
+    private final LongSupplier clock;
+    private final AtomicLong tat;
+
+    TokenBucket(int perMinute, int burst) {
+        this(perMinute, burst, System::nanoTime);
+    }
+
+    TokenBucket(int perMinute, int burst, LongSupplier clock) {
+        this.intervalNanos = TimeUnit.MINUTES.toNanos(1) / Math.max(1, perMinute);
+        this.capacityNanos = intervalNanos * Math.max(1, burst);
+        this.clock = clock;
+        this.tat = new AtomicLong(clock.getAsLong());
+    }
+
+    /**
+     * Shared bucket for one SMTP relay, so every sender talking to that host draws from the same
+     * budget. Rate and burst come from MAIL_RATE_PER_MINUTE and MAIL_RATE_BURST.
+     */
+    static TokenBucket forHost(String host) {
+        return BY_HOST.computeIfAbsent(host.toLowerCase(Locale.ROOT), h -> new TokenBucket(
+                Config.getInt("MAIL_RATE_PER_MINUTE", 300),
+                Config.getInt("MAIL_RATE_BURST", 20)));
+    }
+
+    /** Takes a token if one is available; otherwise returns how many nanoseconds until one is. */
+    long tryAcquire() {
+        for (;;) {
+            long now = clock.getAsLong();
+            long current = tat.get();
+            long next = Math.max(current, now) + intervalNanos;
+            long over = next - now - capacityNanos;
+            if (over > 0) return over;
+            if (tat.compareAndSet(current, next)) return 0;
+        }
+    }
+
+    /** Takes a token even when the bucket is empty, borrowing against the refill. */
+    void acquireForced() {
+        long now = clock.getAsLong();
+        tat.accumulateAndGet(now, (current, n) -> Math.max(current, n) + intervalNanos);
+    }
+
+    /** A full bucket behaves exactly like a new one, so it can be dropped from a cache and recreated later. */
+    boolean isFull() {
+        return tat.get() <= clock.getAsLong();
+    }
+
+    /** Whole tokens currently available. */
+    int available() {
+        long now = clock.getAsLong();
+        long used = Math.max(0, tat.get() - now);
+        return (int) Math.max(0, (capacityNanos - used) / intervalNanos);
+    }
+}
@@ -0,0 +1,82 @@
+package com.studylife.servlet;
+
+import org.json.JSONObject;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * GET /api/username-available?username=... for the sign-up form.
+ * Most answers come from {@link UsernameIndex} without a database round trip.
+ */
+public class UsernameAvailableServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    private static final int MAX_USERNAME_LENGTH = 255;
+
+    private void setCors(HttpServletResponse resp) {
+        resp.setHeader("Access-Control-Allow-Origin", "*");
+        resp.setHeader("Access-Control-Allow-Methods", "GET, OPTIONS");
+        resp.setHeader("Access-Control-Allow-Headers", "Content-Type, Authorization");
+        resp.setHeader("Access-Control-Max-Age", "3600");
+    }
+
+    @Override
+    protected void doOptions(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        setCors(resp);
+        resp.setStatus(HttpServletResponse.SC_NO_CONTENT);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        setCors(response);
+        response.setCharacterEncoding("UTF-8");
+        response.setContentType("application/json;charset=UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+
+        String username = request.getParameter("username");
+        final String name = username == null ? "" : username.trim();
+        if (name.isEmpty() || name.length() > MAX_USERNAME_LENGTH) {
+            writeJson(response, HttpServletResponse.SC_BAD_REQUEST,
+                    new JSONObject().put("status", "fail").put("message", "username is required").toString());
+            return;
+        }
+
+        // Most names are settled from memory on the container thread; only the rest hop to the db lane.
+        UsernameIndex.Availability cached = UsernameIndex.shared().checkInMemory(name);
+        if (cached != null) {
+            writeAvailability(response, name, cached);
+            return;
+        }
+        IoLane.db().dispatch(request, response,
+                resp -> writeAvailability(resp, name, UsernameIndex.shared().check(name, Db.dataSource())));
+    }
+
+    private void writeAvailability(HttpServletResponse response, String username, UsernameIndex.Availability a)
+            throws IOException {
+        if (a == UsernameIndex.Availability.UNKNOWN) {
+            writeJson(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                    new JSONObject().put("status", "error").put("message", "Availability unknown").toString());
+            return;
+        }
+
+        JSONObject ok = new JSONObject()
+                .put("status", "success")
+                .put("username", username)
+                .put("available", a == UsernameIndex.Availability.AVAILABLE);
+        writeJson(response, HttpServletResponse.SC_OK, ok.toString());
+    }
+
+    private void writeJson(HttpServletResponse resp, int status, String body) throws IOException {
+        resp.setStatus(status);
+        try (PrintWriter pw = resp.getWriter()) {
+            pw.write(body);
+            pw.flush();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.studylife.servlet;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * In-memory view of which usernames are taken.
+ *
+ * A Bloom filter answers "definitely free" without touching MySQL; a bounded LRU set remembers
+ * names known to be taken. Only Bloom hits that are not in the LRU set fall through to a query.
+ * Until the startup warm-up from {@code users} has finished every lookup goes to the database.
+ * Names are compared lower-cased because the MySQL collation on {@code users.username} is case-insensitive.
+ */
+final class UsernameIndex {
+
+    private static final Logger LOG = Logger.getLogger(UsernameIndex.class.getName());
+
+    enum Availability { AVAILABLE, TAKEN, UNKNOWN }
+
+    private static volatile UsernameIndex shared;
+
+    private final BloomFilter bloom;
+    private final Map<String, Boolean> taken;
+    private volatile boolean ready;
+
+    UsernameIndex(long expected, double fpp, int cacheSize) {
+        this.bloom = new BloomFilter(expected, fpp);
+        final int max = Math.max(16, cacheSize);
+        this.taken = new LinkedHashMap<String, Boolean>(1024, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override protected boolean removeEldestEntry(Map.Entry<String, Boolean> e) { return size() > max; }
+        };
+    }
+
+    static UsernameIndex shared() {
+        UsernameIndex idx = shared;
+        if (idx == null) {
+            synchronized (UsernameIndex.class) {
+                idx = shared;
+                if (idx == null) {
+                    idx = new UsernameIndex(
+                            Config.getLong("USERNAME_BLOOM_EXPECTED", 1_000_000),
+                            0.01,
+                            Config.getInt("USERNAME_CACHE_SIZE", 100_000));
+                    shared = idx;
+                }
+            }
+        }
+        return idx;
+    }
+
+    static synchronized void resetShared() {
+        shared = null;
+    }
+
+    static String normalize(String username) {
+        return username.trim().toLowerCase(Locale.ROOT);
+    }
+
+    boolean isReady() { return ready; }
+
+    /** Records a name that exists in {@code users} (after a successful insert or a duplicate-key error). */
+    void add(String username) {
+        String key = normalize(username);
+        bloom.put(key);
+        synchronized (taken) {
+            taken.put(key, Boolean.TRUE);
+        }
+    }
+
+    /** Cheap check that never queries the database. */
+    boolean isKnownTaken(String username) {
+        return checkInMemory(username) == Availability.TAKEN;
+    }
+
+    /** Answer from memory alone, or {@code null} when only the database can tell. */
+    Availability checkInMemory(String username) {
+        if (!ready) return null;
+        String key = normalize(username);
+        if (!bloom.mightContain(key)) return Availability.AVAILABLE;
+        synchronized (taken) {
+            if (taken.get(key) != null) return Availability.TAKEN;
+        }
+        return null;
+    }
+
+    Availability check(String username, DataSource ds) {
+        Availability cached = checkInMemory(username);
+        if (cached != null) return cached;
+        if (ds == null) return Availability.UNKNOWN;
+
+        try (Connection conn = ds.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM users WHERE username = ?")) {
+            ps.setString(1, username.trim());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    add(username);
+                    return Availability.TAKEN;
+                }
+                return Availability.AVAILABLE;
+            }
+        } catch (SQLException e) {
+            LOG.log(Level.WARNING, "[Username] availability lookup failed", e);
+            return Availability.UNKNOWN;
+        }
+    }
+
+    /** Loads every existing username; the index only starts answering from memory once this completes. */
+    int warm(DataSource ds) throws SQLException {
+        int n = 0;
+        try (Connection conn = ds.getConnection();
+             Statement st = conn.createStatement()) {
+            st.setFetchSize(1000);
+            try (ResultSet rs = st.executeQuery("SELECT username FROM users")) {
+                while (rs.next()) {
+                    add(rs.getString(1));
+                    n++;
+                }
+            }
+        }
+        ready = true;
+        return n;
+    }
+
+    void warmAsync(DataSource ds) {
+        if (ds == null) return;
+        Thread t = new Thread(() -> {
+            long t0 = System.nanoTime();
+            try {
+                int n = warm(ds);
+                LOG.info(String.format("[Username] index warmed with %d names in %d ms",
+                        n, (System.nanoTime() - t0) / 1_000_000));
+            } catch (SQLException e) {
+                LOG.log(Level.WARNING, "[Username] warm-up failed, availability checks will query MySQL", e);
+            }
+        }, "username-index-warmup");
+        t.setDaemon(true);
+        t.start();
+    }
+}
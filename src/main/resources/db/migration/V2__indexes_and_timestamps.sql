@@ -0,0 +1,9 @@
+-- Login and registration look users up by username.
+CREATE UNIQUE INDEX ux_users_username ON users (username);
+
+ALTER TABLE users ADD COLUMN created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP;
+
+-- Location history is always read per user, newest first.
+ALTER TABLE user_login_locations ADD COLUMN created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP;
+
+CREATE INDEX ix_login_locations_user_created ON user_login_locations (user_id, created_at);
@@ -0,0 +1,38 @@
+-- Income/expense records moved off the browser's localStorage.
+-- client_id is the id the page generated, so re-sending a record updates it instead of duplicating it.
+CREATE TABLE IF NOT EXISTS expenses (
+    id           BIGINT AUTO_INCREMENT PRIMARY KEY,
+    user_id      INT NOT NULL,
+    client_id    VARCHAR(64) NOT NULL,
+    kind         VARCHAR(10) NOT NULL,
+    name         VARCHAR(255) NOT NULL,
+    category     VARCHAR(100) NOT NULL,
+    amount_cents BIGINT NOT NULL,
+    spent_on     DATE NOT NULL,
+    updated_at   TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE UNIQUE INDEX ux_expenses_user_client ON expenses (user_id, client_id);
+
+-- Listing is per user, newest day first, with (spent_on, id) as the page cursor.
+CREATE INDEX ix_expenses_user_spent ON expenses (user_id, spent_on, id);
+
+-- Totals kept up to date by every write, so summaries never scan expenses.
+CREATE TABLE IF NOT EXISTS expense_monthly_totals (
+    user_id       INT NOT NULL,
+    ym            CHAR(7) NOT NULL,
+    income_cents  BIGINT NOT NULL DEFAULT 0,
+    expense_cents BIGINT NOT NULL DEFAULT 0,
+    entries       INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (user_id, ym)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE IF NOT EXISTS expense_category_totals (
+    user_id      INT NOT NULL,
+    ym           CHAR(7) NOT NULL,
+    kind         VARCHAR(10) NOT NULL,
+    category     VARCHAR(100) NOT NULL,
+    amount_cents BIGINT NOT NULL DEFAULT 0,
+    entries      INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (user_id, ym, kind, category)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
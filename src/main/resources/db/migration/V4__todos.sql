@@ -0,0 +1,21 @@
+-- Todos synced from todo.html. Every change gets the next value of the user's counter in
+-- todo_versions, and a client asks for everything above the last version it has seen.
+-- Deleted todos stay as tombstones so other devices learn about the delete.
+CREATE TABLE IF NOT EXISTS todos (
+    user_id    INT NOT NULL,
+    client_id  VARCHAR(64) NOT NULL,
+    due_on     DATE NOT NULL,
+    text       VARCHAR(500) NOT NULL,
+    status     VARCHAR(12) NOT NULL,
+    deleted    BOOLEAN NOT NULL DEFAULT FALSE,
+    version    BIGINT NOT NULL,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (user_id, client_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE UNIQUE INDEX ux_todos_user_version ON todos (user_id, version);
+
+CREATE TABLE IF NOT EXISTS todo_versions (
+    user_id INT PRIMARY KEY,
+    version BIGINT NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
@@ -0,0 +1,9 @@
+-- One row per user and year for mood.html: 366 days x 3 bits packed into 138 bytes
+-- (see MoodYear). A year view is a single primary-key read of a fixed-size value.
+CREATE TABLE IF NOT EXISTS mood_years (
+    user_id    INT NOT NULL,
+    yr         SMALLINT NOT NULL,
+    days       VARBINARY(138) NOT NULL,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (user_id, yr)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
@@ -0,0 +1,10 @@
+-- Checkpointed login statistics per day and country (see LoginStats). `sketch` holds the
+-- HyperLogLog registers of the users seen, so distinct counts never scan user_login_locations.
+CREATE TABLE IF NOT EXISTS login_stats_daily (
+    stat_day   DATE NOT NULL,
+    country    VARCHAR(100) NOT NULL,
+    logins     BIGINT NOT NULL DEFAULT 0,
+    sketch     VARBINARY(4096) NOT NULL,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (stat_day, country)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
@@ -0,0 +1,17 @@
+-- Login locations reference a country by a 2-byte id instead of repeating client-supplied text
+-- (see CountryDictionary). Id 1 is reserved for values that cannot be added to the dictionary.
+CREATE TABLE IF NOT EXISTS countries (
+    id       SMALLINT AUTO_INCREMENT PRIMARY KEY,
+    iso2     CHAR(2) NULL,
+    name     VARCHAR(100) NOT NULL,
+    name_key VARCHAR(100) NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE UNIQUE INDEX ux_countries_name_key ON countries (name_key);
+
+INSERT IGNORE INTO countries (id, iso2, name, name_key) VALUES (1, NULL, 'Unknown', 'unknown');
+
+-- New rows carry only country_id; older rows are moved over by CountryDictionary.backfill().
+ALTER TABLE user_login_locations ADD COLUMN country_id SMALLINT NULL;
+
+ALTER TABLE user_login_locations MODIFY country VARCHAR(100) NULL;
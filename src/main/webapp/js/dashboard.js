@@ -217,6 +217,21 @@ function getWeather(lat, lng, isFallback) {
 // Save user country to backend
 
 function getLocationAndSendToBackend(userId) {
+  // The server resolves the country from our IP address; only ask the browser when it cannot.
+  fetch("api/save-country", {
+    method: "POST",
+    headers: { "Content-Type": "application/json" },
+    body: JSON.stringify({ userId: userId })
+  })
+    .then(res => {
+      if (res.status === 400) sendGeolocatedCountry(userId);
+      return res.text();
+    })
+    .then(text => console.log("Country saved:", text))
+    .catch(err => console.error("Error saving country:", err));
+}
+
+function sendGeolocatedCountry(userId) {
   if (!navigator.geolocation || !isSecureContextForGeo()) return;
 
   navigator.geolocation.getCurrentPosition(
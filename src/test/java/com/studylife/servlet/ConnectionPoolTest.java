@@ -0,0 +1,121 @@
+package com.studylife.servlet;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+
+public class ConnectionPoolTest {
+
+    private static final String URL = "jdbc:h2:mem:pool_test;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    private ConnectionPool pool;
+
+    private ConnectionPool newPool(int max, long timeoutMs, long leakMs) {
+        pool = new ConnectionPool("test", URL, "sa", "x",
+                new ConnectionPool.Settings(max, timeoutMs, 1, leakMs, 600000));
+        return pool;
+    }
+
+    @After
+    public void tearDown() {
+        if (pool != null) pool.close();
+    }
+
+    @Test
+    public void closedHandle_returnsPhysicalConnectionForReuse() throws Exception {
+        newPool(2, 1000, 0);
+
+        try (Connection c = pool.getConnection(); Statement st = c.createStatement()) {
+            st.execute("SELECT 1");
+        }
+        try (Connection c = pool.getConnection()) {
+            assertFalse(c.isClosed());
+        }
+
+        ConnectionPool.Stats s = pool.stats();
+        assertEquals(1, s.created);
+        assertEquals(2, s.borrows);
+        assertEquals(0, s.active);
+        assertEquals(1, s.idle);
+    }
+
+    @Test
+    public void exhaustedPool_timesOut() throws Exception {
+        newPool(1, 50, 0);
+
+        try (Connection held = pool.getConnection()) {
+            assertNotNull(held);
+            try {
+                pool.getConnection();
+                fail("expected timeout");
+            } catch (SQLTransientConnectionException expected) {
+                assertTrue(expected.getMessage().contains("exhausted"));
+            }
+        }
+        assertEquals(1, pool.stats().timeouts);
+        assertTrue(pool.stats().waitNanosMax >= 0);
+    }
+
+    @Test
+    public void brokenIdleConnection_isReplacedOnBorrow() throws Exception {
+        newPool(1, 1000, 0);
+
+        Connection c = pool.getConnection();
+        c.unwrap(Connection.class).close(); // kill the physical connection behind the pool's back
+        c.close();
+
+        try (Connection fresh = pool.getConnection(); Statement st = fresh.createStatement()) {
+            st.execute("SELECT 1");
+        }
+        assertEquals(2, pool.stats().created);
+    }
+
+    @Test
+    public void handle_rejectsUseAfterClose() throws Exception {
+        newPool(1, 1000, 0);
+        Connection c = pool.getConnection();
+        c.close();
+        c.close(); // idempotent
+        assertTrue(c.isClosed());
+        try {
+            c.createStatement();
+            fail("expected SQLException");
+        } catch (SQLException expected) {
+            // ok
+        }
+    }
+
+    @Test
+    public void heldConnection_isReportedAsLeak() throws Exception {
+        newPool(1, 1000, 1);
+        try (Connection c = pool.getConnection()) {
+            Thread.sleep(5);
+            pool.runHousekeeping();
+            pool.runHousekeeping();
+            assertEquals(1, pool.stats().leaks);
+        }
+    }
+
+    @Test
+    public void close_stopsTheHousekeeperThread() throws Exception {
+        newPool(1, 1000, 0);
+        assertTrue(housekeeperRunning());
+        pool.close();
+        long deadline = System.currentTimeMillis() + 2000;
+        while (housekeeperRunning() && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertFalse(housekeeperRunning());
+    }
+
+    private static boolean housekeeperRunning() {
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().equals("db-pool-housekeeper-test") && t.isAlive()) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,119 @@
+package com.studylife.servlet;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CountryDictionaryTest {
+
+    private JdbcDataSource h2;
+
+    @Before
+    public void setUp() throws Exception {
+        h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:countries_" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE");
+        h2.setUser("sa");
+        new SchemaMigrator(h2).migrate();
+    }
+
+    private int count(String sql) throws Exception {
+        try (Connection c = h2.getConnection(); Statement st = c.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void spellingVariantsShareOneCanonicalName() {
+        assertEquals("Ireland", CountryDictionary.canonical("IE"));
+        assertEquals("Ireland", CountryDictionary.canonical(" irl "));
+        assertEquals("Ireland", CountryDictionary.canonical("Éire / Ireland"));
+        assertEquals("Ireland", CountryDictionary.canonical("IRELAND"));
+        assertEquals("China", CountryDictionary.canonical("中国"));
+        assertEquals("Germany", CountryDictionary.canonical("Deutschland"));
+        assertEquals("United Kingdom", CountryDictionary.canonical("UK"));
+        assertEquals("Atlantis Isle", CountryDictionary.canonical("  Atlantis \t Isle "));
+    }
+
+    @Test
+    public void knownCountriesGetOneIdAndAreServedFromMemory() throws Exception {
+        CountryDictionary d = new CountryDictionary(h2, 10);
+        int ie = d.idFor("Ireland");
+        assertEquals(ie, d.idFor("ie"));
+        assertEquals(ie, d.idFor("IRL"));
+        assertNotEquals(ie, d.idFor("FR"));
+        assertEquals("Ireland", d.name(ie));
+        assertEquals(3, count("SELECT COUNT(*) FROM countries"));   // Unknown, Ireland, France
+        assertEquals(1, count("SELECT COUNT(*) FROM countries WHERE iso2 = 'IE'"));
+
+        CountryDictionary restarted = new CountryDictionary(h2, 10);
+        assertEquals(3, restarted.warm());
+        assertEquals(ie, restarted.idFor("Ireland"));
+    }
+
+    @Test
+    public void customNamesAreCapped() throws Exception {
+        CountryDictionary d = new CountryDictionary(h2, 2);
+        int a = d.idFor("Somewhere");
+        int b = d.idFor("Elsewhere");
+        assertNotEquals(CountryDictionary.UNKNOWN, a);
+        assertNotEquals(CountryDictionary.UNKNOWN, b);
+        assertEquals(CountryDictionary.UNKNOWN, d.idFor("Nowhere"));
+        assertNotEquals("real countries are not capped", CountryDictionary.UNKNOWN, d.idFor("Japan"));
+        assertEquals(a, d.idFor("somewhere"));
+        try {
+            d.idFor("  ");
+            fail("blank country must be rejected");
+        } catch (SQLIntegrityConstraintViolationException expected) {
+            // like the NOT NULL column it replaces
+        }
+    }
+
+    @Test
+    public void repeatedSpellingsDoNotTouchTheDatabase() throws Exception {
+        AtomicInteger connections = new AtomicInteger();
+        DataSource counting = (DataSource) java.lang.reflect.Proxy.newProxyInstance(
+                DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getConnection")) connections.incrementAndGet();
+                    return method.invoke(h2, args);
+                });
+        CountryDictionary d = new CountryDictionary(counting, 1);
+        int ie = d.idFor("Ireland");
+        d.idFor("Somewhere");
+        assertEquals(CountryDictionary.UNKNOWN, d.idFor("Junk 1"));
+        int seen = connections.get();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(ie, d.idFor("Ireland"));
+            assertEquals(CountryDictionary.UNKNOWN, d.idFor("Junk 1"));
+        }
+        assertEquals("known and unknown spellings are both remembered", seen, connections.get());
+    }
+
+    @Test
+    public void oldTextRowsAreBackfilled() throws Exception {
+        try (Connection c = h2.getConnection(); Statement st = c.createStatement()) {
+            st.execute("INSERT INTO user_login_locations (user_id, country) VALUES "
+                    + "(1, 'Ireland'), (2, 'IE'), (3, 'France'), (4, ''), (5, 'Junk 1'), (6, 'Junk 2')");
+        }
+        CountryDictionary d = new CountryDictionary(h2, 1);
+        assertEquals(6, d.backfill());
+        assertEquals(0, count("SELECT COUNT(*) FROM user_login_locations WHERE country_id IS NULL"));
+        assertEquals(0, count("SELECT COUNT(*) FROM user_login_locations WHERE user_id <= 3 AND country IS NOT NULL"));
+        assertEquals(1, count("SELECT COUNT(DISTINCT country_id) FROM user_login_locations WHERE user_id <= 2"));
+        assertEquals(CountryDictionary.UNKNOWN, count("SELECT country_id FROM user_login_locations WHERE user_id = 4"));
+        assertEquals("one custom entry fits under the cap", 0,
+                count("SELECT COUNT(*) FROM user_login_locations WHERE country_id <> 1 AND country IS NOT NULL"));
+        assertEquals("rows mapped to Unknown keep what the client sent", 2,
+                count("SELECT COUNT(*) FROM user_login_locations WHERE country_id = 1 AND country IS NOT NULL"));
+        assertEquals(0, d.backfill());
+    }
+}
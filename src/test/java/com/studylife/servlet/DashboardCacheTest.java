@@ -0,0 +1,57 @@
+package com.studylife.servlet;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.*;
+
+public class DashboardCacheTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 3, 3);
+
+    @Test
+    public void leastRecentlyReadUserIsEvictedFirst() {
+        DashboardCache cache = new DashboardCache(2, 60_000);
+        cache.put(1, DAY, "a", cache.generation(1));
+        cache.put(2, DAY, "b", cache.generation(2));
+        assertEquals("a", cache.get(1, DAY));
+        cache.put(3, DAY, "c", cache.generation(3));
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get(2, DAY));
+        assertEquals("a", cache.get(1, DAY));
+        assertEquals("c", cache.get(3, DAY));
+    }
+
+    @Test
+    public void entriesExpireAndDoNotOutliveTheirDay() throws Exception {
+        DashboardCache cache = new DashboardCache(10, 60_000);
+        cache.put(1, DAY, "a", cache.generation(1));
+        assertNull(cache.get(1, DAY.plusDays(1)));
+        assertNull("a mismatched day also drops the entry", cache.get(1, DAY));
+
+        DashboardCache shortLived = new DashboardCache(10, 1);
+        shortLived.put(1, DAY, "a", shortLived.generation(1));
+        Thread.sleep(5);
+        assertNull(shortLived.get(1, DAY));
+        assertEquals(0, shortLived.size());
+    }
+
+    @Test
+    public void loadThatRacedAnInvalidationIsNotStored() {
+        DashboardCache cache = new DashboardCache(10, 60_000);
+        cache.put(1, DAY, "old", cache.generation(1));
+
+        long before = cache.generation(1);
+        cache.invalidate(1);                       // a write commits while the load is running
+        cache.put(1, DAY, "stale", before);
+        assertNull(cache.get(1, DAY));
+
+        cache.put(1, DAY, "fresh", cache.generation(1));
+        assertEquals("fresh", cache.get(1, DAY));
+        assertEquals(1, cache.invalidations());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+}
@@ -0,0 +1,123 @@
+package com.studylife.servlet;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import testsupport.StubHttpServletRequest;
+import testsupport.StubHttpServletResponse;
+
+import javax.servlet.http.HttpServlet;
+import javax.sql.DataSource;
+import java.time.LocalDate;
+
+import static org.junit.Assert.*;
+
+public class DashboardServletTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2025, 3, 3);
+
+    private JdbcDataSource h2;
+    private DashboardServlet servlet;
+
+    @Before
+    public void setUp() throws Exception {
+        DashboardCache.resetShared();
+        h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:dashboard_" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE");
+        h2.setUser("sa");
+        new SchemaMigrator(h2).migrate();
+        servlet = new DashboardServlet() {
+            @Override protected DataSource dataSource() { return h2; }
+            @Override protected LocalDate today() { return TODAY; }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        DashboardCache.resetShared();
+    }
+
+    private StubHttpServletResponse load(int userId) throws Exception {
+        StubHttpServletRequest req = new StubHttpServletRequest("");
+        req.setMethod("GET");
+        req.setParameter("userId", String.valueOf(userId));
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        servlet.doGet(req, resp);
+        assertEquals(resp.getBody(), 200, resp.getStatus());
+        return resp;
+    }
+
+    private void post(HttpServlet target, JSONObject body) throws Exception {
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        target.service(new StubHttpServletRequest(body.toString()), resp);
+        assertEquals(resp.getBody(), 200, resp.getStatus());
+    }
+
+    private ExpenseServlet expenses() {
+        return new ExpenseServlet() { @Override protected DataSource dataSource() { return h2; } };
+    }
+
+    @Test
+    public void everyWidgetComesBackInOneResponse() throws Exception {
+        post(expenses(), new JSONObject().put("userId", 1).put("expenses", new JSONArray()
+                .put(new JSONObject().put("id", "e1").put("type", "expense").put("name", "Lunch")
+                        .put("category", "food").put("amount", 9.5).put("date", "2025-03-01"))
+                .put(new JSONObject().put("id", "e2").put("type", "income").put("name", "Grant")
+                        .put("amount", 200).put("date", "2025-03-02"))
+                .put(new JSONObject().put("id", "e3").put("type", "expense").put("name", "Rent")
+                        .put("amount", 50).put("date", "2025-02-27"))));
+        post(new TodoSyncServlet() { @Override protected DataSource dataSource() { return h2; } },
+                new JSONObject().put("userId", 1).put("token", 0).put("changes", new JSONArray()
+                        .put(new JSONObject().put("id", "t1").put("date", "2025-03-03").put("text", "Lab").put("status", "done"))
+                        .put(new JSONObject().put("id", "t2").put("date", "2025-03-03").put("text", "Read").put("status", "todo"))
+                        .put(new JSONObject().put("id", "t3").put("date", "2025-03-05").put("text", "Essay").put("status", "progress"))));
+        post(new MoodServlet() { @Override protected DataSource dataSource() { return h2; } },
+                new JSONObject().put("userId", 1).put("date", "2025-03-03").put("mood", "happy"));
+
+        JSONObject d = new JSONObject(load(1).getBody());
+        JSONObject ex = d.getJSONObject("expenses");
+        assertEquals("2025-03", ex.getString("month"));
+        assertEquals(200.0, ex.getDouble("income"), 0.001);
+        assertEquals(9.5, ex.getDouble("expense"), 0.001);
+        assertEquals("food", ex.getJSONArray("topCategories").getJSONObject(0).getString("category"));
+
+        JSONObject todos = d.getJSONObject("todos");
+        assertEquals(1, todos.getInt("todo"));
+        assertEquals(1, todos.getInt("done"));
+        assertEquals(0, todos.getInt("progress"));
+        assertEquals(2, todos.getInt("open"));
+
+        assertEquals("😊", d.getJSONObject("moods").getString("today"));
+        assertEquals(1, d.getJSONObject("moods").getJSONObject("stats").getInt("currentStreak"));
+    }
+
+    @Test
+    public void repeatLoadsAreServedFromCacheUntilAWrite() throws Exception {
+        assertEquals("MISS", load(2).getHeader("X-Cache"));
+        StubHttpServletResponse second = load(2);
+        assertEquals("HIT", second.getHeader("X-Cache"));
+        assertEquals("", new JSONObject(second.getBody()).getJSONObject("moods").getString("today"));
+
+        post(new MoodServlet() { @Override protected DataSource dataSource() { return h2; } },
+                new JSONObject().put("userId", 2).put("date", "2025-03-03").put("mood", "😴"));
+
+        StubHttpServletResponse after = load(2);
+        assertEquals("MISS", after.getHeader("X-Cache"));
+        assertEquals("😴", new JSONObject(after.getBody()).getJSONObject("moods").getString("today"));
+        assertEquals("HIT", load(2).getHeader("X-Cache"));
+    }
+
+    @Test
+    public void unchangedResubmissionKeepsTheCachedDashboard() throws Exception {
+        JSONObject batch = new JSONObject().put("userId", 3).put("expenses", new JSONArray()
+                .put(new JSONObject().put("id", "e1").put("type", "expense").put("name", "Bus")
+                        .put("amount", 2).put("date", "2025-03-03")));
+        post(expenses(), batch);
+        load(3);
+        post(expenses(), batch);
+        assertEquals("HIT", load(3).getHeader("X-Cache"));
+    }
+}
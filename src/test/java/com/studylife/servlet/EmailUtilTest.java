@@ -43,6 +43,7 @@ public class EmailUtilTest {
 
     @After
     public void stopSmtp() {
+        EmailUtil.shutdownPool();
         if (smtp != null) smtp.stop();
 
         String[] keys = {
@@ -0,0 +1,120 @@
+package com.studylife.servlet;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import testsupport.StubHttpServletRequest;
+import testsupport.StubHttpServletResponse;
+
+import javax.sql.DataSource;
+
+import static org.junit.Assert.*;
+
+public class ExpenseServletTest {
+
+    private JdbcDataSource h2;
+    private ExpenseServlet expenses;
+    private ExpenseSummaryServlet summary;
+
+    @Before
+    public void setUp() throws Exception {
+        h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:expense_api_" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE");
+        h2.setUser("sa");
+        new SchemaMigrator(h2).migrate();
+        expenses = new ExpenseServlet() {
+            @Override protected DataSource dataSource() { return h2; }
+        };
+        summary = new ExpenseSummaryServlet() {
+            @Override protected DataSource dataSource() { return h2; }
+        };
+    }
+
+    private StubHttpServletResponse post(String body) throws Exception {
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        expenses.doPost(new StubHttpServletRequest(body), resp);
+        return resp;
+    }
+
+    private static StubHttpServletRequest get(String... params) {
+        StubHttpServletRequest req = new StubHttpServletRequest("");
+        req.setMethod("GET");
+        for (int i = 0; i < params.length; i += 2) req.setParameter(params[i], params[i + 1]);
+        return req;
+    }
+
+    private static JSONObject record(String id, String type, String name, double amount, String date) {
+        return new JSONObject().put("id", id).put("type", type).put("name", name).put("amount", amount).put("date", date);
+    }
+
+    @Test
+    public void batchUpsert_thenSummaryAndListing() throws Exception {
+        JSONArray batch = new JSONArray()
+                .put(record("r1", "income", "Part-time job", 300, "2025-03-03"))
+                .put(record("r2", "expense", "Lunch", 9.5, "2025-03-03").put("category", "food"))
+                .put(record("r3", "expense", "Dinner", 12.25, "2025-03-04").put("category", "food"));
+        StubHttpServletResponse resp = post(new JSONObject().put("userId", 1).put("expenses", batch).toString());
+        assertEquals(200, resp.getStatus());
+        assertEquals(3, new JSONObject(resp.getBody()).getInt("inserted"));
+
+        StubHttpServletResponse s = new StubHttpServletResponse();
+        summary.doGet(get("userId", "1", "month", "2025-03"), s);
+        assertEquals(200, s.getStatus());
+        JSONObject sum = new JSONObject(s.getBody());
+        assertEquals(300.0, sum.getDouble("income"), 0.001);
+        assertEquals(21.75, sum.getDouble("expense"), 0.001);
+        assertEquals(278.25, sum.getDouble("net"), 0.001);
+        JSONObject food = sum.getJSONObject("categories").getJSONArray("expense").getJSONObject(0);
+        assertEquals("food", food.getString("category"));
+        assertEquals(21.75, food.getDouble("amount"), 0.001);
+
+        StubHttpServletResponse page1 = new StubHttpServletResponse();
+        expenses.doGet(get("userId", "1", "limit", "2"), page1);
+        JSONObject p1 = new JSONObject(page1.getBody());
+        assertEquals(2, p1.getJSONArray("expenses").length());
+        assertEquals("r3", p1.getJSONArray("expenses").getJSONObject(0).getString("id"));
+
+        StubHttpServletResponse page2 = new StubHttpServletResponse();
+        expenses.doGet(get("userId", "1", "limit", "2", "cursor", p1.getString("nextCursor")), page2);
+        JSONObject p2 = new JSONObject(page2.getBody());
+        assertEquals(1, p2.getJSONArray("expenses").length());
+        assertTrue(p2.isNull("nextCursor"));
+    }
+
+    @Test
+    public void invalidRecord_is400_andNamesTheEntry() throws Exception {
+        JSONArray batch = new JSONArray()
+                .put(record("ok", "expense", "Bus", 2, "2025-03-03"))
+                .put(record("bad", "expense", "Bus", -2, "2025-03-03"));
+        StubHttpServletResponse resp = post(new JSONObject().put("userId", 1).put("expenses", batch).toString());
+        assertEquals(400, resp.getStatus());
+        assertTrue(resp.getBody(), resp.getBody().contains("expenses[1]"));
+
+        StubHttpServletResponse s = new StubHttpServletResponse();
+        summary.doGet(get("userId", "1", "year", "2025"), s);
+        assertEquals("nothing from a rejected batch is stored", 0, new JSONObject(s.getBody()).getInt("entries"));
+    }
+
+    @Test
+    public void missingArrayOrUser_is400() throws Exception {
+        assertEquals(400, post("{\"userId\":1}").getStatus());
+        assertEquals(400, post("{\"userId\":\"x\",\"expenses\":[]}").getStatus());
+        assertEquals(400, post("{oops").getStatus());
+    }
+
+    @Test
+    public void summaryNeedsMonthOrYear() throws Exception {
+        StubHttpServletResponse s = new StubHttpServletResponse();
+        summary.doGet(get("userId", "1"), s);
+        assertEquals(400, s.getStatus());
+    }
+
+    @Test
+    public void badCursor_is400() throws Exception {
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        expenses.doGet(get("userId", "1", "cursor", "zzz"), resp);
+        assertEquals(400, resp.getStatus());
+    }
+}
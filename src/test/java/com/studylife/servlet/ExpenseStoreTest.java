@@ -0,0 +1,152 @@
+package com.studylife.servlet;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ExpenseStoreTest {
+
+    private JdbcDataSource h2;
+    private ExpenseStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:expenses_" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE");
+        h2.setUser("sa");
+        new SchemaMigrator(h2).migrate();
+        store = new ExpenseStore(h2);
+    }
+
+    private static ExpenseStore.Expense exp(String id, String kind, String category, long cents, String date) {
+        return new ExpenseStore.Expense(id, kind, category + " " + id, category, cents, LocalDate.parse(date));
+    }
+
+    @Test
+    public void insertsThenUpdates_andTotalsFollowEveryChange() throws Exception {
+        ExpenseStore.UpsertResult first = store.upsert(1, Arrays.asList(
+                exp("a", "expense", "food", 950, "2025-03-01"),
+                exp("b", "expense", "rent", 50_000, "2025-03-02"),
+                exp("c", "income", "job", 120_000, "2025-03-05")));
+        assertEquals(3, first.inserted);
+
+        ExpenseStore.Totals march = store.totals(1, YearMonth.of(2025, 3), YearMonth.of(2025, 3));
+        assertEquals(120_000, march.incomeCents);
+        assertEquals(50_950, march.expenseCents);
+        assertEquals(3, march.entries);
+        assertEquals(Arrays.asList("rent", "food"), new ArrayList<>(march.byCategory.get("expense").keySet()));
+
+        // "a" changes amount and moves to April; "b" is resent unchanged.
+        ExpenseStore.UpsertResult second = store.upsert(1, Arrays.asList(
+                exp("a", "expense", "food", 1_200, "2025-04-10"),
+                exp("b", "expense", "rent", 50_000, "2025-03-02")));
+        assertEquals(0, second.inserted);
+        assertEquals(1, second.updated);
+        assertEquals(1, second.unchanged);
+
+        march = store.totals(1, YearMonth.of(2025, 3), YearMonth.of(2025, 3));
+        assertEquals(50_000, march.expenseCents);
+        assertEquals(2, march.entries);
+        assertFalse(march.byCategory.get("expense").containsKey("food"));
+
+        ExpenseStore.Totals year = store.totals(1, YearMonth.of(2025, 1), YearMonth.of(2025, 12));
+        assertEquals(51_200, year.expenseCents);
+        assertEquals(120_000, year.incomeCents);
+        assertEquals(3, year.entries);
+    }
+
+    @Test
+    public void runningTotalsMatchAFullScan() throws Exception {
+        List<ExpenseStore.Expense> batch = new ArrayList<>();
+        String[] cats = {"food", "travel", "books"};
+        for (int i = 0; i < 300; i++) {
+            batch.add(exp("e" + i, i % 4 == 0 ? "income" : "expense", cats[i % 3], 100 + i,
+                    LocalDate.of(2025, 1 + i % 12, 1 + i % 28).toString()));
+        }
+        store.upsert(7, batch);
+        Collections.shuffle(batch);
+        List<ExpenseStore.Expense> edits = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            ExpenseStore.Expense e = batch.get(i);
+            edits.add(new ExpenseStore.Expense(e.clientId, "expense", e.name, cats[(i + 1) % 3],
+                    e.amountCents * 2, e.spentOn.plusMonths(1)));
+        }
+        store.upsert(7, edits);
+
+        try (Connection c = h2.getConnection(); Statement st = c.createStatement()) {
+            for (int m = 1; m <= 12; m++) {
+                YearMonth ym = YearMonth.of(2025, m);
+                ExpenseStore.Totals t = store.totals(7, ym, ym);
+                try (ResultSet rs = st.executeQuery(
+                        "SELECT COALESCE(SUM(CASE WHEN kind = 'income' THEN amount_cents END), 0), " +
+                        "COALESCE(SUM(CASE WHEN kind = 'expense' THEN amount_cents END), 0), COUNT(*) " +
+                        "FROM expenses WHERE user_id = 7 AND spent_on BETWEEN '" + ym.atDay(1) + "' AND '" +
+                        ym.atEndOfMonth() + "'")) {
+                    rs.next();
+                    assertEquals(ym.toString(), rs.getLong(1), t.incomeCents);
+                    assertEquals(ym.toString(), rs.getLong(2), t.expenseCents);
+                    assertEquals(ym.toString(), rs.getInt(3), t.entries);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void pagesWalkEveryRecordOnce_newestFirst() throws Exception {
+        List<ExpenseStore.Expense> batch = new ArrayList<>();
+        for (int i = 0; i < 23; i++) {
+            batch.add(exp("p" + i, "expense", "misc", 100, LocalDate.of(2025, 5, 1 + i % 5).toString()));
+        }
+        store.upsert(3, batch);
+        store.upsert(4, Collections.singletonList(exp("other", "expense", "misc", 1, "2025-05-03")));
+
+        Set<String> seen = new HashSet<>();
+        LocalDate previous = LocalDate.MAX;
+        String cursor = null;
+        int pages = 0;
+        do {
+            ExpenseStore.Page page = store.page(3, null, cursor, 10);
+            for (ExpenseStore.Expense e : page.items) {
+                assertTrue(seen.add(e.clientId));
+                assertFalse(e.spentOn.isAfter(previous));
+                previous = e.spentOn;
+            }
+            cursor = page.nextCursor;
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(23, seen.size());
+        assertEquals(3, pages);
+        assertEquals(0, store.page(3, YearMonth.of(2025, 6), null, 10).items.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void foreignCursorIsRejected() throws Exception {
+        store.page(1, null, "not-a-cursor", 10);
+    }
+
+    @Test
+    public void laterEntryForTheSameIdWinsWithinOneBatch() throws Exception {
+        store.upsert(2, Arrays.asList(
+                exp("x", "expense", "food", 100, "2025-02-01"),
+                exp("x", "expense", "food", 300, "2025-02-01")));
+
+        ExpenseStore.Totals feb = store.totals(2, YearMonth.of(2025, 2), YearMonth.of(2025, 2));
+        assertEquals(300, feb.expenseCents);
+        assertEquals(1, feb.entries);
+    }
+}
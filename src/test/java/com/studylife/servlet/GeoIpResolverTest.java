@@ -0,0 +1,77 @@
+package com.studylife.servlet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import testsupport.StubHttpServletRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.*;
+
+public class GeoIpResolverTest {
+
+    private Path csv;
+
+    @Before
+    public void setUp() throws Exception {
+        csv = Files.createTempFile("geoip", ".csv");
+        Files.write(csv, GeoIpTableTest.CSV.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(csv);
+    }
+
+    private GeoIpResolver resolver(String proxies) {
+        return new GeoIpResolver(csv, GeoIpResolver.parseProxies(proxies), 0);
+    }
+
+    private static StubHttpServletRequest from(String peer, String forwardedFor) {
+        StubHttpServletRequest req = new StubHttpServletRequest("");
+        req.setRemoteAddr(peer);
+        if (forwardedFor != null) req.setHeader("X-Forwarded-For", forwardedFor);
+        return req;
+    }
+
+    @Test
+    public void forwardedForIsOnlyBelievedFromTrustedProxies() {
+        GeoIpResolver r = resolver("127.0.0.1,10.0.0.0/8");
+        assertEquals("IE", r.country(from("5.1.1.1", null)));
+        assertEquals("spoofed header from an untrusted peer is ignored",
+                "IE", r.country(from("5.1.1.1", "1.0.0.1")));
+        assertEquals("AU", r.country(from("127.0.0.1", "1.0.0.1")));
+        assertEquals("right-most untrusted hop wins", "AU", r.country(from("10.1.2.3", "5.1.1.1, 1.0.0.1, 10.9.9.9")));
+        assertEquals("junk stops the walk", "IE", r.country(from("127.0.0.1", "nonsense, 5.1.1.1")));
+        assertNull(r.country(from("127.0.0.1", null)));
+    }
+
+    @Test
+    public void changedFileIsSwappedInAndBrokenOneIsIgnored() throws Exception {
+        GeoIpResolver r = resolver("");
+        assertEquals("AU", r.lookup("1.0.0.1"));
+        assertFalse(r.reloadIfChanged());
+
+        Files.write(csv, "1.0.0.0,1.0.0.255,NZ\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(System.currentTimeMillis() + 5_000));
+        assertTrue(r.reloadIfChanged());
+        assertEquals("NZ", r.lookup("1.0.0.1"));
+        assertEquals(1, r.ranges());
+
+        Files.write(csv, "1.0.0.0,oops,AU\n1.0.0.0,1.0.0.255,AU\n2.0.0.0,x,AU\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        assertFalse(r.reloadIfChanged());
+        assertEquals("NZ", r.lookup("1.0.0.1"));
+    }
+
+    @Test
+    public void withoutAFileNothingResolves() {
+        GeoIpResolver r = new GeoIpResolver(null, GeoIpResolver.parseProxies("127.0.0.1"), 0);
+        assertNull(r.country(from("5.1.1.1", null)));
+        assertEquals(0, r.ranges());
+    }
+}
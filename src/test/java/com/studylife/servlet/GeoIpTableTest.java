@@ -0,0 +1,76 @@
+package com.studylife.servlet;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class GeoIpTableTest {
+
+    static final String CSV = String.join("\n",
+            "ip_start,ip_end,country",
+            "# comment",
+            "1.0.0.0,1.0.0.255,AU",
+            "\"5.0.0.0\",\"5.255.255.255\",\"ie\"",
+            "128.0.0.0,128.0.0.10,US",
+            "255.255.255.0,255.255.255.255,ZZ",
+            "2001:db8::,2001:db8::ffff,DE",
+            "2a00::,2a00:ffff:ffff:ffff:ffff:ffff:ffff:ffff,FR");
+
+    private static GeoIpTable table(String csv) throws IOException {
+        return GeoIpTable.parse(new BufferedReader(new StringReader(csv)));
+    }
+
+    @Test
+    public void findsTheRangeIncludingItsEdges() throws Exception {
+        GeoIpTable t = table(CSV);
+        assertEquals(6, t.size());
+        assertEquals("AU", t.lookup("1.0.0.0"));
+        assertEquals("AU", t.lookup("1.0.0.255"));
+        assertNull(t.lookup("1.0.1.0"));
+        assertEquals("IE", t.lookup("5.100.2.3"));
+        assertNull("gap between ranges", t.lookup("100.0.0.1"));
+        assertEquals("addresses above 127.x compare unsigned", "US", t.lookup("128.0.0.10"));
+        assertEquals("ZZ", t.lookup("255.255.255.255"));
+        assertNull(t.lookup("0.0.0.1"));
+    }
+
+    @Test
+    public void ipv6AndMappedAddresses() throws Exception {
+        GeoIpTable t = table(CSV);
+        assertEquals("DE", t.lookup("2001:db8::1"));
+        assertEquals("DE", t.lookup("[2001:db8::ffff]"));
+        assertNull(t.lookup("2001:db8::1:0"));
+        assertEquals("FR", t.lookup("2a00:1450:4001::200e"));
+        assertEquals("IE", t.lookup("::ffff:5.1.1.1"));
+    }
+
+    @Test
+    public void nonLiteralsAreNeverResolved() {
+        assertNull(GeoIpTable.literal("localhost"));
+        assertNull(GeoIpTable.literal("999.1.1.1"));
+        assertNull(GeoIpTable.literal("not:an:address:zz"));
+        assertNull(GeoIpTable.literal(""));
+        assertNotNull(GeoIpTable.literal(" 10.0.0.1 "));
+    }
+
+    @Test
+    public void badFilesAreRejectedWhole() {
+        String[] bad = {
+                "1.0.0.0,1.0.0.255,AU\n1.0.0.200,1.0.1.0,NZ",   // overlap
+                "1.0.0.9,1.0.0.1,AU",                           // end before start
+                "1.0.0.0,1.0.0.255,AU\nfoo,bar,XX",              // junk after the header line
+                "1.0.0.0,2001:db8::,AU"};                       // mixed families
+        for (String csv : bad) {
+            try {
+                table(csv);
+                fail("accepted: " + csv);
+            } catch (IOException expected) {
+                // the caller keeps its previous table
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.studylife.servlet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HyperLogLogTest {
+
+    @Test
+    public void estimatesStayWithinAFewPercent() {
+        for (int n : new int[]{10, 1_000, 100_000}) {
+            HyperLogLog h = new HyperLogLog();
+            for (int i = 1; i <= n; i++) {
+                h.add(i);
+                h.add(i);   // repeats must not count
+            }
+            double error = Math.abs(h.estimate() - n) / (double) n;
+            assertTrue(n + " estimated as " + h.estimate(), error < 0.05);
+        }
+        assertEquals(0, new HyperLogLog().estimate());
+    }
+
+    @Test
+    public void mergeIsTheUnionAndCanBeRepeated() {
+        HyperLogLog a = new HyperLogLog();
+        HyperLogLog b = new HyperLogLog();
+        for (int i = 0; i < 20_000; i++) a.add(i);
+        for (int i = 10_000; i < 30_000; i++) b.add(i);
+
+        HyperLogLog union = new HyperLogLog();
+        union.merge(a);
+        union.merge(b);
+        long once = union.estimate();
+        union.merge(b);
+        assertEquals(once, union.estimate());
+        assertEquals(30_000, once, 30_000 * 0.05);
+    }
+
+    @Test
+    public void registersRoundTripThroughBytes() {
+        HyperLogLog h = new HyperLogLog();
+        for (int i = 0; i < 5_000; i++) h.add(i * 7L);
+        byte[] bytes = h.toBytes();
+        assertEquals(HyperLogLog.M, bytes.length);
+        assertEquals(h.estimate(), HyperLogLog.fromBytes(bytes).estimate());
+        assertArrayEquals(bytes, HyperLogLog.fromBytes(bytes).toBytes());
+    }
+
+    @Test
+    public void concurrentAddsLoseNothing() throws Exception {
+        HyperLogLog shared = new HyperLogLog();
+        HyperLogLog serial = new HyperLogLog();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int base = t * 25_000;
+            threads[t] = new Thread(() -> { for (int i = 0; i < 25_000; i++) shared.add(base + i); });
+            threads[t].start();
+        }
+        for (int i = 0; i < 100_000; i++) serial.add(i);
+        for (Thread t : threads) t.join();
+        assertArrayEquals(serial.toBytes(), shared.toBytes());
+    }
+}
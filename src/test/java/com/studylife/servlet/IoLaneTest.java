@@ -0,0 +1,147 @@
+package com.studylife.servlet;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import testsupport.StubHttpServletRequest;
+import testsupport.StubHttpServletResponse;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class IoLaneTest {
+
+    private IoLane lane;
+
+    @After
+    public void tearDown() {
+        if (lane != null) lane.shutdown();
+    }
+
+    private static HttpServletRequest asyncRequest(AsyncContext ac) {
+        HttpServletRequest req = mock(HttpServletRequest.class);
+        when(req.isAsyncSupported()).thenReturn(true);
+        when(req.startAsync(any(), any())).thenReturn(ac);
+        return req;
+    }
+
+    @Test
+    public void withoutAsyncSupport_runsInline() throws Exception {
+        lane = new IoLane("t", 1, 1, 1000);
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        Thread caller = Thread.currentThread();
+
+        lane.dispatch(new StubHttpServletRequest(""), resp, r -> {
+            assertSame(caller, Thread.currentThread());
+            r.setStatus(201);
+            r.getWriter().write("{\"ok\":true}");
+        });
+
+        assertEquals(201, resp.getStatus());
+        assertEquals("{\"ok\":true}", resp.getBody());
+    }
+
+    @Test
+    public void asyncRequest_runsOnLane_andCommitsBufferedResponse() throws Exception {
+        lane = new IoLane("t", 1, 1, 1000);
+        AsyncContext ac = mock(AsyncContext.class);
+        CountDownLatch completed = new CountDownLatch(1);
+        doAnswer(inv -> { completed.countDown(); return null; }).when(ac).complete();
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+
+        lane.dispatch(asyncRequest(ac), resp, r -> {
+            assertTrue(Thread.currentThread().getName().startsWith("t-lane-"));
+            r.setStatus(HttpServletResponse.SC_ACCEPTED);
+            r.getWriter().write("{\"status\":\"accepted\"}");
+        });
+
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+        verify(ac).setTimeout(1000);
+        assertEquals(202, resp.getStatus());
+        assertEquals("{\"status\":\"accepted\"}", resp.getBody());
+    }
+
+    @Test
+    public void fullLane_answers503Immediately() throws Exception {
+        lane = new IoLane("t", 1, 1, 1000);
+        CountDownLatch block = new CountDownLatch(1);
+        lane.execute(() -> { try { block.await(5, TimeUnit.SECONDS); } catch (InterruptedException ignored) { } });
+        lane.execute(() -> { });  // fills the single queue slot
+
+        AsyncContext ac = mock(AsyncContext.class);
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        try {
+            lane.dispatch(asyncRequest(ac), resp, r -> fail("must not run"));
+        } finally {
+            block.countDown();
+        }
+
+        verify(ac).complete();
+        assertEquals(503, resp.getStatus());
+        assertEquals("1", resp.getHeader("Retry-After"));
+        assertTrue(resp.getBody().contains("busy"));
+    }
+
+    @Test
+    public void timeout_answers503_andLateResultIsDiscarded() throws Exception {
+        lane = new IoLane("t", 1, 1, 50);
+        AsyncContext ac = mock(AsyncContext.class);
+        CountDownLatch handlerStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch handlerDone = new CountDownLatch(1);
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+
+        lane.dispatch(asyncRequest(ac), resp, r -> {
+            handlerStarted.countDown();
+            try { release.await(5, TimeUnit.SECONDS); } catch (InterruptedException ignored) { }
+            r.setStatus(200);
+            r.getWriter().write("late");
+            handlerDone.countDown();
+        });
+
+        ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+        verify(ac).addListener(listener.capture());
+        assertTrue(handlerStarted.await(5, TimeUnit.SECONDS));
+
+        listener.getValue().onTimeout(new AsyncEvent(ac));
+        release.countDown();
+        assertTrue(handlerDone.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+
+        verify(ac, times(1)).complete();
+        assertEquals(503, resp.getStatus());
+        assertFalse(resp.getBody().contains("late"));
+    }
+
+    @Test
+    public void timeoutWhileQueued_handlerNeverRuns() throws Exception {
+        lane = new IoLane("t", 1, 1, 50);
+        AsyncContext ac = mock(AsyncContext.class);
+        HttpServletRequest req = asyncRequest(ac);
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        AtomicBoolean ran = new AtomicBoolean(false);
+
+        CountDownLatch block = new CountDownLatch(1);
+        lane.execute(() -> { try { block.await(5, TimeUnit.SECONDS); } catch (InterruptedException ignored) { } });
+        lane.dispatch(req, resp, r -> ran.set(true));   // queued behind the blocker
+
+        ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+        verify(ac).addListener(listener.capture());
+        listener.getValue().onTimeout(new AsyncEvent(ac));
+        block.countDown();
+        lane.shutdown();   // lets the queued task run to completion
+
+        assertFalse(ran.get());
+        verify(ac, times(1)).complete();
+        assertEquals(503, resp.getStatus());
+    }
+}
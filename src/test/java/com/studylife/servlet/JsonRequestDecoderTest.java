@@ -0,0 +1,87 @@
+package com.studylife.servlet;
+
+import org.junit.Test;
+import testsupport.StubHttpServletRequest;
+import testsupport.StubHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class JsonRequestDecoderTest {
+
+    private static String[] decode(JsonRequestDecoder d, String body) throws Exception {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return d.decode(new ByteArrayInputStream(bytes), bytes.length);
+    }
+
+    @Test
+    public void extractsWantedFields_inDeclaredOrder() throws Exception {
+        JsonRequestDecoder d = new JsonRequestDecoder(1024, "username", "password");
+        String[] f = decode(d, " {\"password\":\"p\", \"username\" : \"alice\"} ");
+        assertArrayEquals(new String[]{"alice", "p"}, f);
+    }
+
+    @Test
+    public void missingFieldsAreEmpty_andUnknownValuesAreSkipped() throws Exception {
+        JsonRequestDecoder d = new JsonRequestDecoder(1024, "userId", "country");
+        String[] f = decode(d, "{\"extra\":{\"a\":[1,2,{\"b\":\"}\"}],\"c\":null},\"userId\":7,\"flag\":true}");
+        assertArrayEquals(new String[]{"7", ""}, f);
+    }
+
+    @Test
+    public void nestedValuesOfWantedFieldsComeBackAsJsonText() throws Exception {
+        JsonRequestDecoder d = new JsonRequestDecoder(1024, "userId", "expenses");
+        String[] f = decode(d, "{\"userId\":7,\"expenses\": [{\"amount\":1.5,\"name\":\"]\"}, []] }");
+        assertEquals("[{\"amount\":1.5,\"name\":\"]\"}, []]", f[1]);
+    }
+
+    @Test
+    public void decodesEscapesAndUtf8() throws Exception {
+        JsonRequestDecoder d = new JsonRequestDecoder(1024, "message", "country");
+        String[] f = decode(d, "{\"message\":\"line1\\nsaid \\\"hi\\\" \\u00e9\",\"country\":\"中国\"}");
+        assertEquals("line1\nsaid \"hi\" é", f[0]);
+        assertEquals("中国", f[1]);
+    }
+
+    @Test
+    public void nullValueIsEmpty() throws Exception {
+        JsonRequestDecoder d = new JsonRequestDecoder(1024, "email");
+        assertEquals("", decode(d, "{\"email\":null}")[0]);
+    }
+
+    @Test
+    public void malformedBodiesAreRejected() {
+        JsonRequestDecoder d = new JsonRequestDecoder(1024, "a");
+        for (String bad : new String[]{"", "{bad-json", "[1]", "{\"a\":\"x\"", "{\"a\":1}}", "{\"a\" 1}", "{\"a\":\"\\q\"}"}) {
+            try {
+                decode(d, bad);
+                fail("accepted: " + bad);
+            } catch (JsonRequestDecoder.DecodeException e) {
+                assertFalse(e.tooLarge);
+            } catch (Exception e) {
+                fail(e.toString());
+            }
+        }
+    }
+
+    @Test
+    public void oversizeBodyIsRejectedWhileReading() throws Exception {
+        JsonRequestDecoder d = new JsonRequestDecoder(32, "a");
+        try {
+            decode(d, "{\"a\":\"" + "x".repeat(100) + "\"}");
+            fail("expected too large");
+        } catch (JsonRequestDecoder.DecodeException e) {
+            assertTrue(e.tooLarge);
+        }
+    }
+
+    @Test
+    public void loginAnswers413ForOversizeBody() throws Exception {
+        String big = "{\"username\":\"" + "x".repeat(JsonRequestDecoder.DEFAULT_MAX_BYTES) + "\",\"password\":\"p\"}";
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        new LoginServlet().doPost(new StubHttpServletRequest(big), resp);
+        assertEquals(413, resp.getStatus());
+    }
+}
@@ -0,0 +1,58 @@
+package com.studylife.servlet;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import testsupport.StubHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class JsonResponseTest {
+
+    @Test
+    public void escapesLikeOrgJson() {
+        String[] values = {"plain", "Éire 中国 😀", "quote \" backslash \\ slash / </script>",
+                "ctl \b\t\n\f\r \u0001 \u001f", "sep \u2028 \u2029", "", "\ud800 lone"};
+        for (String v : values) {
+            byte[] bytes = JsonResponse.object().field("status", "success").field("userId", 42).field("country", v).bytes();
+            JSONObject parsed = new JSONObject(new String(bytes, StandardCharsets.UTF_8));
+            String tree = new JSONObject().put("status", "success").put("userId", 42).put("country", v).toString();
+            JSONObject expected = new JSONObject(new String(tree.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+            assertTrue(v + " -> " + parsed, expected.similar(parsed));
+            assertFalse(new String(bytes, StandardCharsets.UTF_8).contains("</"));
+        }
+    }
+
+    @Test
+    public void constantMessageIsEncodedOnce() {
+        byte[] body = JsonResponse.message("fail", "userId and country are required");
+        assertEquals("{\"status\":\"fail\",\"message\":\"userId and country are required\"}",
+                new String(body, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void sendSetsStatusAndContentLength() throws Exception {
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        JsonResponse.object().field("status", "success").field("username", "Zoë").send(resp, 200);
+        assertEquals(200, resp.getStatus());
+        assertEquals("{\"status\":\"success\",\"username\":\"Zoë\"}", resp.getBody());
+        assertEquals(resp.getBody().getBytes(StandardCharsets.UTF_8).length, resp.getContentLength());
+
+        StubHttpServletResponse constant = new StubHttpServletResponse();
+        byte[] body = JsonResponse.message("error", "Database error");
+        JsonResponse.send(constant, 500, body);
+        assertEquals(500, constant.getStatus());
+        assertEquals(body.length, constant.getContentLength());
+        assertEquals("Database error", new JSONObject(constant.getBody()).getString("message"));
+    }
+
+    @Test
+    public void longValuesGrowTheBuffer() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; i++) sb.append("\"é\n");
+        String v = sb.toString();
+        byte[] bytes = JsonResponse.object().field("message", v).bytes();
+        assertEquals(v, new JSONObject(new String(bytes, StandardCharsets.UTF_8)).getString("message"));
+    }
+}
@@ -0,0 +1,48 @@
+package com.studylife.servlet;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsAreContiguousAndWithinThreePercent() {
+        long expectedLower = 0;
+        for (int i = 0; i <= LatencyHistogram.index(LatencyHistogram.MAX_MICROS); i++) {
+            long lo = LatencyHistogram.lowerBound(i);
+            long hi = LatencyHistogram.upperBound(i);
+            assertEquals("bucket " + i, expectedLower, lo);
+            assertEquals(i, LatencyHistogram.index(lo));
+            assertEquals(i, LatencyHistogram.index(hi));
+            assertTrue("bucket " + i + " too wide", hi - lo <= Math.max(0, lo / 32));
+            expectedLower = hi + 1;
+        }
+    }
+
+    @Test
+    public void percentilesComeFromTheRecordedDistribution() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int ms = 1; ms <= 1000; ms++) h.recordNanos(TimeUnit.MILLISECONDS.toNanos(ms));
+
+        assertEquals(1000, h.count());
+        assertEquals(500_000, h.percentileMicros(0.5), 500_000 * 0.04);
+        assertEquals(990_000, h.percentileMicros(0.99), 990_000 * 0.04);
+        assertEquals(1_000_000, h.percentileMicros(1.0), 1_000_000 * 0.04);
+        assertEquals(100, h.countAtOrBelow(100_000), 3);
+        assertEquals(500_500_000L, h.sumMicros(), 500_500_000L * 0.02);
+    }
+
+    @Test
+    public void hugeAndNegativeValuesAreClamped() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.recordNanos(TimeUnit.DAYS.toNanos(3));
+        h.recordMicros(-5);
+
+        assertEquals(2, h.count());
+        assertEquals(0, h.percentileMicros(0.5));
+        assertTrue(h.percentileMicros(1.0) >= LatencyHistogram.MAX_MICROS);
+    }
+}
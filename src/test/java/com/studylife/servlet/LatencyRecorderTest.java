@@ -0,0 +1,53 @@
+package com.studylife.servlet;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class LatencyRecorderTest {
+
+    @Test
+    public void intervalHoldsWhatWasRecordedSinceTheLastOne() {
+        LatencyRecorder r = new LatencyRecorder();
+        r.recordNanos(1_000);
+        r.recordNanos(2_000);
+        assertEquals(2, r.interval().count());
+
+        r.recordNanos(3_000);
+        LatencyHistogram second = r.interval();
+        assertEquals(1, second.count());
+        assertEquals(3, second.percentileMicros(1.0));
+        assertEquals(3, r.total().count());
+        assertEquals(0, r.interval().count());
+    }
+
+    @Test
+    public void noValueIsLostWhileWritersRaceTheSwaps() throws Exception {
+        LatencyRecorder r = new LatencyRecorder();
+        int writers = 4;
+        int perWriter = 200_000;
+        AtomicBoolean done = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            Thread t = new Thread(() -> {
+                for (int i = 0; i < perWriter; i++) r.recordNanos(1_000L * (i % 500));
+            });
+            threads.add(t);
+            t.start();
+        }
+        Thread reader = new Thread(() -> {
+            while (!done.get()) r.interval();
+        });
+        reader.start();
+        for (Thread t : threads) t.join();
+        done.set(true);
+        reader.join();
+        r.interval();
+
+        assertEquals((long) writers * perWriter, r.total().count());
+    }
+}
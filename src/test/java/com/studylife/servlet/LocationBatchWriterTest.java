@@ -0,0 +1,121 @@
+package com.studylife.servlet;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LocationBatchWriterTest {
+
+    private JdbcDataSource h2;
+
+    @Before
+    public void setUp() throws Exception {
+        h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:loc_batch_" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE");
+        h2.setUser("sa");
+        new SchemaMigrator(h2).migrate();
+    }
+
+    private int rowCount() throws Exception {
+        try (Connection c = h2.getConnection(); Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM user_login_locations")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void close_flushesEverythingQueued() throws Exception {
+        LocationBatchWriter w = new LocationBatchWriter(() -> h2, 1000, 50, 10000, 5000);
+        for (int i = 0; i < 120; i++) assertTrue(w.offer(i, "IE"));
+        w.close();
+
+        assertEquals(120, rowCount());
+        assertEquals(120, w.written());
+        assertEquals(0, w.pending());
+        assertFalse("closed writer must reject", w.offer(1, "IE"));
+    }
+
+    @Test
+    public void rowsAcceptedWhileClosing_areAllWritten() throws Exception {
+        for (int round = 0; round < 5; round++) {
+            LocationBatchWriter w = new LocationBatchWriter(() -> h2, 10_000, 200, 1, 5000);
+            AtomicInteger accepted = new AtomicInteger();
+            CountDownLatch started = new CountDownLatch(4);
+            Thread[] offerers = new Thread[4];
+            for (int t = 0; t < offerers.length; t++) {
+                offerers[t] = new Thread(() -> {
+                    started.countDown();
+                    for (int i = 0; i < 500; i++) {
+                        if (!w.offer(i, "IE")) return;
+                        accepted.incrementAndGet();
+                    }
+                });
+                offerers[t].start();
+            }
+            started.await();
+            w.close();
+            for (Thread t : offerers) t.join();
+
+            assertEquals(0, w.pending());
+            assertEquals(accepted.get(), w.written());
+        }
+    }
+
+    @Test
+    public void partialBatch_isFlushedAfterDelay() throws Exception {
+        LocationBatchWriter w = new LocationBatchWriter(() -> h2, 100, 50, 20, 5000);
+        try {
+            w.offer(1, "CN");
+            long deadline = System.currentTimeMillis() + 5000;
+            while (w.written() < 1 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+            assertEquals(1, rowCount());
+        } finally {
+            w.close();
+        }
+    }
+
+    @Test
+    public void fullQueue_rejects() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        DataSource slow = (DataSource) java.lang.reflect.Proxy.newProxyInstance(
+                DataSource.class.getClassLoader(), new Class[]{DataSource.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getConnection")) release.await(5, TimeUnit.SECONDS);
+                    return method.invoke(h2, args);
+                });
+
+        LocationBatchWriter w = new LocationBatchWriter(() -> slow, 2, 1, 1, 5000);
+        try {
+            int accepted = 0;
+            for (int i = 0; i < 10; i++) if (w.offer(i, "IE")) accepted++;
+            assertTrue("queue of 2 plus one in-flight row", accepted <= 3);
+            assertTrue(w.rejected() >= 7);
+        } finally {
+            release.countDown();
+            w.close();
+        }
+    }
+
+    @Test
+    public void badRow_isDroppedWithoutLosingTheRestOfTheBatch() throws Exception {
+        LocationBatchWriter w = new LocationBatchWriter(() -> h2, 100, 100, 10000, 5000);
+        w.offer(1, "IE");
+        w.offer(2, null); // no country: rejected like a NOT NULL violation
+        w.offer(3, "FR");
+        w.close();
+
+        assertEquals(2, rowCount());
+        assertEquals(1, w.failed());
+    }
+}
@@ -2,13 +2,20 @@ package com.studylife.servlet;
 
 import org.json.JSONObject;
 import org.junit.Test;
+import testsupport.StubHttpServletRequest;
 
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.PrintWriter;
-import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -18,13 +25,21 @@ public class LoginServletTest {
     private static HttpServletResponse mockRespWithBody(StringWriter out) throws Exception {
         HttpServletResponse resp = mock(HttpServletResponse.class);
         when(resp.getWriter()).thenReturn(new PrintWriter(out, true));
+        when(resp.getOutputStream()).thenReturn(new ServletOutputStream() {
+            private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            @Override public boolean isReady() { return true; }
+            @Override public void setWriteListener(WriteListener l) { }
+            @Override public void write(int b) { bytes.write(b); }
+            @Override public void flush() {
+                out.write(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+                bytes.reset();
+            }
+        });
         return resp;
     }
 
     private static HttpServletRequest reqWithJson(JSONObject obj) throws Exception {
-        HttpServletRequest req = mock(HttpServletRequest.class);
-        when(req.getReader()).thenReturn(new BufferedReader(new StringReader(obj.toString())));
-        return req;
+        return new StubHttpServletRequest(obj.toString());
     }
 
     @Test
@@ -44,8 +59,7 @@ public class LoginServletTest {
 
     @Test
     public void badJson_returns400() throws Exception {
-        HttpServletRequest req = mock(HttpServletRequest.class);
-        when(req.getReader()).thenReturn(new BufferedReader(new StringReader("{bad-json")));
+        HttpServletRequest req = new StubHttpServletRequest("{bad-json");
 
         StringWriter out = new StringWriter();
         HttpServletResponse resp = mockRespWithBody(out);
@@ -131,4 +145,45 @@ public class LoginServletTest {
         assertEquals(3, obj.getInt("userId"));
         assertEquals("456", obj.getString("username"));
     }
+
+    @Test
+    public void legacyPlaintextPassword_logsIn_andIsRehashed() throws Exception {
+        final String url = "jdbc:h2:mem:login_rehash;MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=false";
+        try (Connection c = DriverManager.getConnection(url, "sa", "x");
+             Statement st = c.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS users (" +
+                    "id INT AUTO_INCREMENT PRIMARY KEY," +
+                    "username VARCHAR(255) NOT NULL UNIQUE," +
+                    "password VARCHAR(255) NOT NULL)");
+            st.execute("INSERT INTO users(username, password) VALUES('legacy','plain-pw')");
+        }
+
+        System.setProperty("DB_URL", url);
+        System.setProperty("DB_USER", "sa");
+        System.setProperty("DB_PASS", "x");
+        try {
+            StringWriter out = new StringWriter();
+            HttpServletResponse resp = mockRespWithBody(out);
+            new LoginServlet().doPost(reqWithJson(new JSONObject().put("username", "legacy").put("password", "plain-pw")), resp);
+
+            verify(resp).setStatus(HttpServletResponse.SC_OK);
+            assertEquals("legacy", new JSONObject(out.toString()).getString("username"));
+
+            try (Connection c = DriverManager.getConnection(url, "sa", "x");
+                 Statement st = c.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT password FROM users WHERE username='legacy'")) {
+                assertTrue(rs.next());
+                assertTrue("plaintext must be replaced by a bcrypt hash", rs.getString(1).startsWith("$2a$"));
+            }
+
+            StringWriter out2 = new StringWriter();
+            HttpServletResponse resp2 = mockRespWithBody(out2);
+            new LoginServlet().doPost(reqWithJson(new JSONObject().put("username", "legacy").put("password", "plain-pw")), resp2);
+            verify(resp2).setStatus(HttpServletResponse.SC_OK);
+        } finally {
+            System.clearProperty("DB_URL");
+            System.clearProperty("DB_USER");
+            System.clearProperty("DB_PASS");
+        }
+    }
 }
@@ -0,0 +1,102 @@
+package com.studylife.servlet;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+import static org.junit.Assert.*;
+
+public class LoginStatsTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 3, 3);
+
+    private JdbcDataSource h2;
+
+    @Before
+    public void setUp() throws Exception {
+        h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:login_stats_" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE");
+        h2.setUser("sa");
+        new SchemaMigrator(h2).migrate();
+    }
+
+    private LoginStats stats(LocalDate today) {
+        return new LoginStats(() -> h2, () -> today, 100, 0);
+    }
+
+    @Test
+    public void countsAndDistinctUsersPerCountry() throws Exception {
+        LoginStats s = stats(DAY);
+        for (int u = 1; u <= 300; u++) {
+            s.record(u, "Ireland", DAY);
+            s.record(u, "Ireland", DAY);
+        }
+        for (int u = 1; u <= 50; u++) s.record(u, " France ", DAY);
+
+        LoginStats.Report r = s.query(DAY, DAY);
+        assertEquals(600, r.byCountry.get("Ireland").logins);
+        assertEquals(300, r.byCountry.get("Ireland").uniqueUsers, 10);
+        assertEquals(50, r.byCountry.get("France").uniqueUsers, 2);
+        assertEquals(650, r.total.logins);
+        assertEquals("France users are also Irish users", 300, r.total.uniqueUsers, 10);
+    }
+
+    @Test
+    public void checkpointsAddDeltasAndSurviveARestart() throws Exception {
+        LoginStats first = stats(DAY);
+        for (int u = 1; u <= 100; u++) first.record(u, "Ireland", DAY);
+        first.checkpoint();
+        first.checkpoint();   // nothing new: must not add again
+        for (int u = 101; u <= 150; u++) first.record(u, "Ireland", DAY);
+        assertEquals("pending logins are included before the next checkpoint",
+                150, first.query(DAY, DAY).total.logins);
+        first.checkpoint();
+
+        try (Connection c = h2.getConnection(); Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*), SUM(logins) FROM login_stats_daily")) {
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1));
+            assertEquals(150, rs.getLong(2));
+        }
+
+        LoginStats second = stats(DAY);   // another instance, or this one after a restart
+        for (int u = 140; u <= 160; u++) second.record(u, "Ireland", DAY);
+        LoginStats.Summary ie = second.query(DAY, DAY).byCountry.get("Ireland");
+        assertEquals(171, ie.logins);
+        assertEquals(160, ie.uniqueUsers, 5);
+        second.checkpoint();
+        assertEquals(171, stats(DAY).query(DAY, DAY).total.logins);
+    }
+
+    @Test
+    public void usersSeenOnSeveralDaysCountOnceOverTheRange() throws Exception {
+        LoginStats s = stats(DAY);
+        for (int d = 0; d < 3; d++) {
+            for (int u = 1; u <= 200; u++) s.record(u, "Ireland", DAY.minusDays(d));
+        }
+        s.checkpoint();
+        LoginStats.Report r = s.query(DAY.minusDays(2), DAY);
+        assertEquals(600, r.total.logins);
+        assertEquals(200, r.total.uniqueUsers, 6);
+        assertEquals(200, s.query(DAY.minusDays(1), DAY.minusDays(1)).total.logins);
+    }
+
+    @Test
+    public void memoryIsBounded() throws Exception {
+        LoginStats s = new LoginStats(() -> h2, () -> DAY, 3, 0);
+        for (int i = 0; i < 10; i++) s.record(i, "country-" + i, DAY);
+        assertTrue(s.cells() <= 4);
+        assertEquals(10, s.query(DAY, DAY).total.logins);
+        assertNotNull(s.query(DAY, DAY).byCountry.get(LoginStats.OTHER));
+
+        s.record(1, "Ireland", DAY.minusDays(5));
+        s.checkpoint();
+        assertTrue("old, fully written days are dropped", s.cells() <= 4);
+        assertEquals(1, s.query(DAY.minusDays(5), DAY.minusDays(5)).total.logins);
+    }
+}
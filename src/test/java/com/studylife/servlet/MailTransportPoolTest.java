@@ -0,0 +1,108 @@
+package com.studylife.servlet;
+
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MailTransportPoolTest {
+
+    private GreenMail smtp;
+    private MailTransportPool pool;
+
+    private static final MailTransportPool.Settings SETTINGS = new MailTransportPool.Settings(
+            "localhost", 3025, false, false, false, "noreply@test.local", "dummy", "noreply@test.local");
+
+    @Before
+    public void startSmtp() {
+        smtp = new GreenMail(ServerSetupTest.SMTP);
+        smtp.start();
+        smtp.setUser("noreply@test.local", "noreply@test.local", "dummy");
+    }
+
+    @After
+    public void stop() {
+        if (pool != null) pool.close();
+        if (smtp != null) smtp.stop();
+    }
+
+    private MimeMessage message(String subject) throws MessagingException {
+        MimeMessage m = new MimeMessage(pool.session());
+        m.setFrom(pool.from());
+        m.setRecipients(Message.RecipientType.TO, InternetAddress.parse("user@test.local"));
+        m.setSubject(subject);
+        m.setText("body");
+        return m;
+    }
+
+    @Test
+    public void sequentialSends_reuseOneConnection() throws Exception {
+        pool = new MailTransportPool(SETTINGS, 2, 100, 60_000, 5_000);
+        for (int i = 0; i < 5; i++) pool.send(message("m" + i));
+
+        assertTrue(smtp.waitForIncomingEmail(5_000, 5));
+        assertEquals(1, pool.opened());
+        assertEquals(1, pool.idleCount());
+    }
+
+    @Test
+    public void batchGoesOverOneConnection_andReportsPerMessage() throws Exception {
+        pool = new MailTransportPool(SETTINGS, 2, 100, 60_000, 5_000);
+        List<MimeMessage> batch = new ArrayList<>();
+        for (int i = 0; i < 10; i++) batch.add(message("b" + i));
+
+        MessagingException[] result = pool.sendBatch(batch);
+
+        assertEquals(10, result.length);
+        for (MessagingException e : result) assertNull(e);
+        assertTrue(smtp.waitForIncomingEmail(5_000, 10));
+        assertEquals(1, pool.opened());
+    }
+
+    @Test
+    public void connectionIsRecycledAfterMaxMessages() throws Exception {
+        pool = new MailTransportPool(SETTINGS, 1, 2, 60_000, 5_000);
+        for (int i = 0; i < 5; i++) pool.send(message("m" + i));
+
+        assertTrue(smtp.waitForIncomingEmail(5_000, 5));
+        assertEquals(3, pool.opened());
+        assertTrue(pool.recycled() >= 2);
+    }
+
+    @Test
+    public void idleConnectionIsReplaced() throws Exception {
+        pool = new MailTransportPool(SETTINGS, 1, 100, 0, 5_000);
+        pool.send(message("a"));
+        Thread.sleep(5);
+        pool.send(message("b"));
+
+        assertTrue(smtp.waitForIncomingEmail(5_000, 2));
+        assertEquals(2, pool.opened());
+    }
+
+    @Test
+    public void deadConnectionIsDetected_andMessageStillDelivered() throws Exception {
+        pool = new MailTransportPool(SETTINGS, 1, 100, 60_000, 5_000);
+        pool.send(message("before restart"));
+
+        smtp.stop();
+        smtp = new GreenMail(ServerSetupTest.SMTP);
+        smtp.start();
+        smtp.setUser("noreply@test.local", "noreply@test.local", "dummy");
+
+        pool.send(message("after restart"));
+        assertTrue(smtp.waitForIncomingEmail(5_000, 1));
+        assertEquals("after restart", smtp.getReceivedMessages()[0].getSubject());
+        assertEquals(2, pool.opened());
+    }
+}
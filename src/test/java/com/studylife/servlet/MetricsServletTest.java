@@ -0,0 +1,161 @@
+package com.studylife.servlet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import testsupport.StubHttpServletRequest;
+import testsupport.StubHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletMapping;
+import javax.servlet.http.MappingMatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class MetricsServletTest {
+
+    private Metrics metrics;
+    private String token;
+
+    private final MetricsServlet servlet = new MetricsServlet() {
+        @Override protected Metrics metrics() { return metrics; }
+        @Override protected String token() { return token; }
+    };
+
+    private final MetricsFilter filter = new MetricsFilter() {
+        @Override protected Metrics metrics() { return metrics; }
+    };
+
+    @Before
+    public void setUp() {
+        metrics = new Metrics();
+    }
+
+    @After
+    public void tearDown() {
+        RateLimiter.resetShared();
+    }
+
+    private static StubHttpServletRequest mapped(String pattern) {
+        return new StubHttpServletRequest("{}") {
+            @Override public HttpServletMapping getHttpServletMapping() {
+                return new HttpServletMapping() {
+                    @Override public String getMatchValue() { return ""; }
+                    @Override public String getPattern() { return pattern; }
+                    @Override public String getServletName() { return "test"; }
+                    @Override public MappingMatch getMappingMatch() { return MappingMatch.EXACT; }
+                };
+            }
+        };
+    }
+
+    private String scrape() throws Exception {
+        StubHttpServletRequest req = new StubHttpServletRequest("");
+        req.setMethod("GET");
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        servlet.doGet(req, resp);
+        assertEquals(200, resp.getStatus());
+        assertEquals(MetricsServlet.CONTENT_TYPE, resp.getContentType());
+        return resp.getBody();
+    }
+
+    @Test
+    public void filteredRequestsAreExportedAsAHistogramPerEndpointAndStatus() throws Exception {
+        FilterChain ok = (req, resp) -> { };
+        FilterChain limited = (req, resp) -> ((StubHttpServletResponse) resp).setStatus(429);
+        filter.doFilter(mapped("/api/login"), new StubHttpServletResponse(), ok);
+        filter.doFilter(mapped("/api/login"), new StubHttpServletResponse(), ok);
+        filter.doFilter(mapped("/api/login"), new StubHttpServletResponse(), limited);
+        filter.doFilter(new StubHttpServletRequest("{}"), new StubHttpServletResponse(), ok);
+
+        String text = scrape();
+        assertTrue(text, text.contains("# TYPE studylife_http_request_duration_seconds histogram\n"));
+        assertTrue(text, text.contains(
+                "studylife_http_request_duration_seconds_count{endpoint=\"/api/login\",method=\"POST\",status=\"200\"} 2\n"));
+        assertTrue(text, text.contains(
+                "studylife_http_request_duration_seconds_bucket{endpoint=\"/api/login\",method=\"POST\",status=\"429\",le=\"+Inf\"} 1\n"));
+        assertTrue(text, text.contains("endpoint=\"unmapped\""));
+        assertTrue(text, text.contains("# TYPE studylife_http_request_duration_recent_seconds summary\n"));
+        assertTrue(text, text.contains("studylife_rate_limit_decisions_total{limit=\"ip\",result=\"allowed\"} 0\n"));
+    }
+
+    @Test
+    public void unknownMethodsShareOneSeries() throws Exception {
+        FilterChain ok = (req, resp) -> { };
+        for (String m : new String[] {"BREW", "PROPFIND", "get", "X".repeat(200)}) {
+            StubHttpServletRequest req = mapped("/api/login");
+            req.setMethod(m);
+            filter.doFilter(req, new StubHttpServletResponse(), ok);
+        }
+
+        String text = scrape();
+        assertTrue(text, text.contains(
+                "studylife_http_request_duration_seconds_count{endpoint=\"/api/login\",method=\"OTHER\",status=\"200\"} 4\n"));
+        assertFalse(text, text.contains("BREW"));
+        assertFalse(text, text.contains("method=\"get\""));
+    }
+
+    @Test
+    public void bucketsAreCumulativeAcrossScrapes() throws Exception {
+        metrics.recordDbQuery("query", TimeUnit.MICROSECONDS.toNanos(300));
+        scrape();
+        metrics.recordDbQuery("query", TimeUnit.MILLISECONDS.toNanos(40));
+
+        String text = scrape();
+        assertTrue(text, text.contains("studylife_db_query_seconds_bucket{kind=\"query\",le=\"0.0005\"} 1\n"));
+        assertTrue(text, text.contains("studylife_db_query_seconds_bucket{kind=\"query\",le=\"0.05\"} 2\n"));
+        assertTrue(text, text.contains("studylife_db_query_seconds_count{kind=\"query\"} 2\n"));
+        assertTrue(text, text.contains("studylife_db_query_recent_seconds_count{kind=\"query\"} 2\n"));
+    }
+
+    @Test
+    public void recentQuantilesComeFromTheLastClosedWindow_forEveryScraper() {
+        AtomicLong now = new AtomicLong();
+        long window = TimeUnit.SECONDS.toNanos(60);
+        Metrics m = new Metrics(now::get, window);
+        String p50 = "studylife_db_query_recent_seconds{kind=\"query\",quantile=\"0.5\"} ";
+
+        m.recordDbQuery("query", TimeUnit.MICROSECONDS.toNanos(300));
+        assertTrue(m.scrape().contains(p50 + "0.0003"));   // no window closed yet: the open one
+
+        now.addAndGet(window);
+        m.recordDbQuery("query", TimeUnit.MILLISECONDS.toNanos(40));
+        assertTrue(m.scrape().contains(p50 + "0.0003"));   // closes the first window, 40ms is in it too
+        m.recordDbQuery("query", TimeUnit.MILLISECONDS.toNanos(40));
+        m.recordDbQuery("query", TimeUnit.MILLISECONDS.toNanos(40));
+        // a second scraper in the same window sees the same closed window
+        assertTrue(m.scrape().contains(p50 + "0.0003"));
+
+        now.addAndGet(window);
+        assertTrue(m.scrape().contains(p50 + "0.04"));
+    }
+
+    @Test
+    public void tokenIsRequiredWhenConfigured() throws Exception {
+        token = "s3cret";
+        StubHttpServletRequest req = new StubHttpServletRequest("");
+        req.setMethod("GET");
+        StubHttpServletResponse denied = new StubHttpServletResponse();
+        servlet.doGet(req, denied);
+        assertEquals(401, denied.getStatus());
+
+        req.setHeader("Authorization", "Bearer s3cret");
+        StubHttpServletResponse allowed = new StubHttpServletResponse();
+        servlet.doGet(req, allowed);
+        assertEquals(200, allowed.getStatus());
+    }
+
+    @Test
+    public void anExceptionFromTheChainIsRecordedAs500() throws Exception {
+        FilterChain boom = (req, resp) -> { throw new IllegalStateException("boom"); };
+        try {
+            filter.doFilter(mapped("/api/moods"), new StubHttpServletResponse(), boom);
+            fail("expected the exception to propagate");
+        } catch (IllegalStateException expected) {
+            // rethrown to the container
+        }
+        assertTrue(scrape().contains("endpoint=\"/api/moods\",method=\"POST\",status=\"500\",le=\"+Inf\"} 1\n"));
+    }
+}
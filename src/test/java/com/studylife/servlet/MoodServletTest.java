@@ -0,0 +1,101 @@
+package com.studylife.servlet;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import testsupport.StubHttpServletRequest;
+import testsupport.StubHttpServletResponse;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+import static org.junit.Assert.*;
+
+public class MoodServletTest {
+
+    private JdbcDataSource h2;
+    private MoodServlet servlet;
+
+    @Before
+    public void setUp() throws Exception {
+        h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:moods_" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE");
+        h2.setUser("sa");
+        new SchemaMigrator(h2).migrate();
+        servlet = new MoodServlet() {
+            @Override protected DataSource dataSource() { return h2; }
+            @Override protected LocalDate today() { return LocalDate.of(2025, 3, 3); }
+        };
+    }
+
+    private JSONObject post(int userId, String date, String mood) throws Exception {
+        JSONObject body = new JSONObject().put("userId", userId).put("date", date).put("mood", mood);
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        servlet.doPost(new StubHttpServletRequest(body.toString()), resp);
+        assertEquals(resp.getBody(), 200, resp.getStatus());
+        return new JSONObject(resp.getBody());
+    }
+
+    private JSONObject year(int userId, String year) throws Exception {
+        StubHttpServletRequest req = new StubHttpServletRequest("");
+        req.setMethod("GET");
+        req.setParameter("userId", String.valueOf(userId));
+        req.setParameter("year", year);
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        servlet.doGet(req, resp);
+        assertEquals(resp.getBody(), 200, resp.getStatus());
+        return new JSONObject(resp.getBody());
+    }
+
+    @Test
+    public void dayUpdates_showUpInTheYearView() throws Exception {
+        post(1, "2025-03-01", "😊");
+        post(1, "2025-03-02", "happy");
+        JSONObject last = post(1, "2025-03-03", "😢");
+        assertEquals(3, last.getJSONObject("stats").getInt("currentStreak"));
+
+        JSONObject y = year(1, "2025");
+        String days = y.getString("days");
+        assertEquals(365, days.length());
+        assertEquals("113", days.substring(59, 62));   // 1-3 March are days 60-62
+        assertEquals("😢", y.getJSONArray("legend").getString(3));
+        JSONObject stats = y.getJSONObject("stats");
+        assertEquals(3, stats.getInt("recorded"));
+        assertEquals(2, stats.getJSONObject("distribution").getInt("happy"));
+        assertEquals(2, stats.getJSONObject("longestRuns").getInt("happy"));
+
+        post(1, "2025-03-02", "");
+        assertEquals("103", year(1, "2025").getString("days").substring(59, 62));
+    }
+
+    @Test
+    public void eachYearIsOneFixedSizeRow() throws Exception {
+        for (int d = 1; d <= 28; d++) post(2, String.format("2025-02-%02d", d), "neutral");
+        post(2, "2024-12-31", "tired");
+
+        try (Connection c = h2.getConnection(); Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*), MAX(LENGTH(days)) FROM mood_years WHERE user_id = 2")) {
+            rs.next();
+            assertEquals(2, rs.getInt(1));
+            assertEquals(MoodYear.BYTES, rs.getInt(2));
+        }
+        assertEquals('5', year(2, "2024").getString("days").charAt(365));
+    }
+
+    @Test
+    public void unknownYear_isEmpty_andBadInputIs400() throws Exception {
+        assertEquals(0, year(3, "2020").getJSONObject("stats").getInt("recorded"));
+
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        servlet.doPost(new StubHttpServletRequest("{\"userId\":1,\"date\":\"2025-03-01\",\"mood\":\"ecstatic\"}"), resp);
+        assertEquals(400, resp.getStatus());
+
+        resp = new StubHttpServletResponse();
+        servlet.doPost(new StubHttpServletRequest("{\"userId\":1,\"date\":\"03/01/2025\",\"mood\":\"happy\"}"), resp);
+        assertEquals(400, resp.getStatus());
+    }
+}
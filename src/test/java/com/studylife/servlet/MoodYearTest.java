@@ -0,0 +1,79 @@
+package com.studylife.servlet;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MoodYearTest {
+
+    @Test
+    public void everyDayRoundTrips_includingCodesThatStraddleBytes() {
+        MoodYear y = new MoodYear(2024);   // leap year: 366 days, the last one ends in byte 137
+        int[] expected = new int[366];
+        Random rnd = new Random(42);
+        for (int d = 0; d < 366; d++) {
+            expected[d] = rnd.nextInt(MoodYear.MOODS + 1);
+            y.set(LocalDate.ofYearDay(2024, d + 1), expected[d]);
+        }
+        for (int d = 0; d < 366; d++) {
+            assertEquals("day " + d, expected[d], y.get(LocalDate.ofYearDay(2024, d + 1)));
+        }
+        assertEquals(MoodYear.BYTES, y.bytes().length);
+        assertEquals(138, MoodYear.BYTES);
+    }
+
+    @Test
+    public void overwritingADayLeavesItsNeighboursAlone() {
+        MoodYear y = new MoodYear(2025);
+        LocalDate d = LocalDate.of(2025, 1, 3);   // bits 6..8, across the first byte boundary
+        y.set(d.minusDays(1), 5);
+        y.set(d, 3);
+        y.set(d.plusDays(1), 5);
+        y.set(d, 1);
+        assertEquals(5, y.get(d.minusDays(1)));
+        assertEquals(1, y.get(d));
+        assertEquals(5, y.get(d.plusDays(1)));
+
+        y.set(d, MoodYear.NONE);
+        assertEquals(MoodYear.NONE, y.get(d));
+        assertEquals("505", y.digits().substring(1, 4));
+    }
+
+    @Test
+    public void statisticsComeStraightFromThePackedDays() {
+        MoodYear y = new MoodYear(2025);
+        LocalDate jan1 = LocalDate.of(2025, 1, 1);
+        // happy x3, sad, gap, happy x2 on Jan 7-8
+        int[] codes = {1, 1, 1, 3, 0, 0, 1, 1};
+        for (int i = 0; i < codes.length; i++) y.set(jan1.plusDays(i), codes[i]);
+
+        int[] dist = y.distribution();
+        assertEquals(5, dist[1]);
+        assertEquals(1, dist[3]);
+        assertEquals(365 - 6, dist[MoodYear.NONE]);
+        assertEquals(4, y.longestStreak());
+        assertEquals(3, y.longestRuns()[1]);
+        assertEquals(1, y.longestRuns()[3]);
+
+        assertEquals(2, y.currentStreak(LocalDate.of(2025, 1, 8)));
+        assertEquals("today not logged yet still counts yesterday", 2, y.currentStreak(LocalDate.of(2025, 1, 9)));
+        assertEquals(0, y.currentStreak(LocalDate.of(2025, 1, 10)));
+        assertEquals(0, y.currentStreak(LocalDate.of(2024, 6, 1)));
+    }
+
+    @Test
+    public void moodsAreAcceptedAsEmojiOrName() {
+        assertEquals(1, MoodYear.code("😊"));
+        assertEquals(5, MoodYear.code("Tired"));
+        assertEquals(MoodYear.NONE, MoodYear.code(" "));
+        assertEquals(-1, MoodYear.code("ecstatic"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void dateFromAnotherYearIsRejected() {
+        new MoodYear(2025).set(LocalDate.of(2024, 12, 31), 1);
+    }
+}
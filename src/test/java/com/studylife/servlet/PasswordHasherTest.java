@@ -0,0 +1,81 @@
+package com.studylife.servlet;
+
+import org.junit.Test;
+import org.mindrot.jbcrypt.BCrypt;
+
+import static org.junit.Assert.*;
+
+public class PasswordHasherTest {
+
+    @Test
+    public void hash_thenVerify_roundTrips() throws Exception {
+        PasswordHasher h = new PasswordHasher(1, 4, 5000, 4);
+        String hash = h.hash("s3cret");
+
+        assertTrue(hash.startsWith("$2a$04$"));
+        assertTrue(h.verify("s3cret", hash).matches);
+        assertFalse(h.verify("s3cret", hash).needsRehash);
+        assertFalse(h.verify("wrong", hash).matches);
+    }
+
+    @Test
+    public void legacyPlaintext_matches_andNeedsRehash() throws Exception {
+        PasswordHasher h = new PasswordHasher(1, 4, 5000, 4);
+
+        PasswordHasher.Verification ok = h.verify("123", "123");
+        assertTrue(ok.matches);
+        assertTrue(ok.needsRehash);
+
+        PasswordHasher.Verification bad = h.verify("124", "123");
+        assertFalse(bad.matches);
+        assertFalse(bad.needsRehash);
+    }
+
+    @Test
+    public void otherBcryptRevisions_areNeverComparedAsPlaintext() throws Exception {
+        PasswordHasher h = new PasswordHasher(1, 4, 5000, 4);
+        String a = BCrypt.hashpw("pw", BCrypt.gensalt(4));
+        String b = "$2b$" + a.substring(4);
+        String y = "$2y$" + a.substring(4);
+        String x = "$2x$" + a.substring(4);
+
+        assertTrue(h.verify("pw", b).matches);
+        assertTrue(h.verify("pw", y).matches);
+        assertFalse(h.verify("wrong", y).matches);
+
+        assertFalse(h.verify("pw", x).matches);
+        assertFalse(h.verify(x, x).matches);
+        assertFalse(h.verify(y, y).matches);
+    }
+
+    @Test
+    public void lowerCostHash_needsRehash() throws Exception {
+        PasswordHasher h = new PasswordHasher(1, 4, 5000, 5);
+        String old = BCrypt.hashpw("pw", BCrypt.gensalt(4));
+
+        PasswordHasher.Verification v = h.verify("pw", old);
+        assertTrue(v.matches);
+        assertTrue(v.needsRehash);
+        assertEquals(4, PasswordHasher.costOf(old));
+    }
+
+    @Test
+    public void slowOrQueuedWork_isShed() {
+        PasswordHasher h = new PasswordHasher(1, 1, 1, 12);
+        try {
+            h.hash("pw");
+            fail("expected SaturatedException");
+        } catch (PasswordHasher.SaturatedException expected) {
+            // ok
+        }
+    }
+
+    @Test
+    public void calibrate_staysWithinBounds() {
+        int cost = PasswordHasher.calibrate(1, 4, 6);
+        assertEquals(4, cost);
+
+        int high = PasswordHasher.calibrate(60_000, 4, 6);
+        assertEquals(6, high);
+    }
+}
@@ -0,0 +1,81 @@
+package com.studylife.servlet;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+import testsupport.StubHttpServletRequest;
+import testsupport.StubHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class RateLimitFilterTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+    private final RateLimiter limiter = new RateLimiter(60, 2, 100, now::get);
+
+    private final RateLimitFilter filter = new RateLimitFilter() {
+        @Override protected RateLimiter limiter() { return limiter; }
+    };
+
+    @After
+    public void tearDown() {
+        RateLimiter.resetShared();
+    }
+
+    private static StubHttpServletRequest post(String addr) {
+        StubHttpServletRequest req = new StubHttpServletRequest("{}");
+        req.setMethod("POST");
+        req.setRemoteAddr(addr);
+        return req;
+    }
+
+    @Test
+    public void overTheLimit_returns429WithoutCallingTheServlet() throws Exception {
+        FilterChain chain = mock(FilterChain.class);
+        filter.doFilter(post("203.0.113.7"), new StubHttpServletResponse(), chain);
+        filter.doFilter(post("203.0.113.7"), new StubHttpServletResponse(), chain);
+
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        StubHttpServletRequest third = post("203.0.113.7");
+        filter.doFilter(third, resp, chain);
+
+        verify(chain, times(2)).doFilter(any(), any());
+        assertEquals(429, resp.getStatus());
+        assertEquals("1", resp.getHeader("Retry-After"));
+        assertEquals("error", new JSONObject(resp.getBody()).getString("status"));
+
+        StubHttpServletResponse other = new StubHttpServletResponse();
+        filter.doFilter(post("203.0.113.8"), other, chain);
+        verify(chain, times(3)).doFilter(any(), any());
+    }
+
+    @Test
+    public void preflightAndGetAreNotCounted() throws Exception {
+        FilterChain chain = mock(FilterChain.class);
+        for (int i = 0; i < 5; i++) {
+            StubHttpServletRequest req = post("203.0.113.7");
+            req.setMethod(i % 2 == 0 ? "OPTIONS" : "GET");
+            filter.doFilter(req, new StubHttpServletResponse(), chain);
+        }
+        verify(chain, times(5)).doFilter(any(), any());
+        assertEquals(0, limiter.allowed() + limiter.rejected());
+    }
+
+    @Test
+    public void repeatedLoginsForOneUsername_areRejectedBeforeThePasswordCheck() throws Exception {
+        JSONObject body = new JSONObject().put("username", "Alice").put("password", "wrong");
+        StubHttpServletResponse last = null;
+        for (int i = 0; i < 6; i++) {   // default username burst is 5
+            StubHttpServletRequest req = new StubHttpServletRequest(body.toString());
+            req.setMethod("POST");
+            last = new StubHttpServletResponse();
+            new LoginServlet().doPost(req, last);
+        }
+        assertEquals(429, last.getStatus());
+        assertNotNull(last.getHeader("Retry-After"));
+    }
+}
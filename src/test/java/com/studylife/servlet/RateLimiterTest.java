@@ -0,0 +1,51 @@
+package com.studylife.servlet;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+    @Test
+    public void eachKeyHasItsOwnBudget() {
+        RateLimiter limiter = new RateLimiter(60, 2, 100, now::get);
+
+        assertEquals(0, limiter.tryAcquire("10.0.0.1"));
+        assertEquals(0, limiter.tryAcquire("10.0.0.1"));
+        assertEquals(TimeUnit.SECONDS.toNanos(1), limiter.tryAcquire("10.0.0.1"));
+        assertEquals(0, limiter.tryAcquire("10.0.0.2"));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(0, limiter.tryAcquire("10.0.0.1"));
+        assertEquals(4, limiter.allowed());
+        assertEquals(1, limiter.rejected());
+    }
+
+    @Test
+    public void refilledBucketsAreSweptWhenTheMapIsFull() {
+        RateLimiter limiter = new RateLimiter(60, 1, 2, now::get);
+        limiter.tryAcquire("a");
+        limiter.tryAcquire("b");
+        assertEquals(2, limiter.size());
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        assertEquals(0, limiter.tryAcquire("c"));
+        assertEquals(1, limiter.size());
+    }
+
+    @Test
+    public void newKeysShareTheOverflowBucketWhileEveryBucketIsBusy() {
+        RateLimiter limiter = new RateLimiter(60, 1, 2, now::get);
+        limiter.tryAcquire("a");
+        limiter.tryAcquire("b");
+
+        assertEquals(0, limiter.tryAcquire("c"));
+        assertTrue("d draws from the same overflow bucket as c", limiter.tryAcquire("d") > 0);
+        assertEquals(3, limiter.size());
+    }
+}
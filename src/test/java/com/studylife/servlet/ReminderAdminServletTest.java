@@ -0,0 +1,79 @@
+package com.studylife.servlet;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import testsupport.StubHttpServletRequest;
+import testsupport.StubHttpServletResponse;
+
+import static org.junit.Assert.*;
+
+public class ReminderAdminServletTest {
+
+    private final ReminderMonitor monitor = new ReminderMonitor();
+    private String token = "s3cret";
+
+    private final ReminderAdminServlet servlet = new ReminderAdminServlet() {
+        @Override protected ReminderMonitor monitor() { return monitor; }
+        @Override protected String token() { return token; }
+    };
+
+    private StubHttpServletResponse get(String auth, String limit) throws Exception {
+        StubHttpServletRequest req = new StubHttpServletRequest("");
+        req.setMethod("GET");
+        if (auth != null) req.setHeader("Authorization", auth);
+        if (limit != null) req.setParameter("limit", limit);
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        servlet.doGet(req, resp);
+        return resp;
+    }
+
+    @Test
+    public void requiresTheAdminToken() throws Exception {
+        assertEquals(401, get(null, null).getStatus());
+        assertEquals(401, get("Bearer nope", null).getStatus());
+        assertEquals(200, get("Bearer s3cret", null).getStatus());
+
+        token = null;
+        assertEquals(403, get("Bearer s3cret", null).getStatus());
+    }
+
+    @Test
+    public void listsTheNextRemindersAndHourlyCounts() throws Exception {
+        long hour = 500_000L;
+        long base = hour * ReminderMonitor.HOUR_MS;
+        ReminderMonitor.Pending done = monitor.accepted(1, "first@test.local", base + 60_000);
+        monitor.accepted(2, "alice@test.local", base + 120_000);
+        monitor.accepted(3, "bob@test.local", base + 180_000);
+        monitor.fired(done, base + 61_000);
+        monitor.finished(done, true);
+
+        StubHttpServletResponse resp = get("Bearer s3cret", "1");
+        assertEquals(200, resp.getStatus());
+        JSONObject body = new JSONObject(resp.getBody());
+        assertEquals(2, body.getInt("pending"));
+
+        JSONArray next = body.getJSONArray("next");
+        assertEquals(1, next.length());
+        assertEquals(2, next.getJSONObject(0).getLong("id"));
+        assertEquals("a***@test.local", next.getJSONObject(0).getString("to"));
+        assertFalse(next.getJSONObject(0).getBoolean("fired"));
+
+        JSONArray hours = body.getJSONArray("hours");
+        assertEquals(1, hours.length());
+        JSONObject h = hours.getJSONObject(0);
+        assertEquals(2, h.getInt("pending"));
+        assertEquals(1, h.getInt("fired"));
+        assertEquals(1, h.getInt("delivered"));
+        assertEquals(0, h.getInt("failed"));
+        long lag = h.getJSONObject("lagMs").getLong("max");
+        assertTrue("lag " + lag, lag >= 1_000 && lag <= 1_050);
+    }
+
+    @Test
+    public void rejectsABadLimit() throws Exception {
+        assertEquals(400, get("Bearer s3cret", "0").getStatus());
+        assertEquals(400, get("Bearer s3cret", "abc").getStatus());
+        assertEquals(400, get("Bearer s3cret", String.valueOf(ReminderAdminServlet.MAX_LIMIT + 1)).getStatus());
+    }
+}
@@ -0,0 +1,211 @@
+package com.studylife.servlet;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ReminderDispatcherTest {
+
+    private ReminderDispatcher dispatcher;
+    private ExecutorService pool;
+
+    @After
+    public void tearDown() {
+        if (dispatcher != null) dispatcher.close();
+        if (pool != null) pool.shutdownNow();
+    }
+
+    private static SendReminderServlet.Mail mail(int i) {
+        return new SendReminderServlet.Mail("u" + i + "@test.local", "Reminder Alert", "m" + i);
+    }
+
+    @Test
+    public void remindersDueTogetherShareOneBatch() throws Exception {
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        List<ReminderDispatcher.BatchReport> reports = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(10);
+        dispatcher = new ReminderDispatcher(batch -> {
+            batchSizes.add(batch.size());
+            return new Exception[batch.size()];
+        }, Runnable::run, 100, 200, 50, 1, reports::add);
+
+        for (int i = 0; i < 10; i++) assertTrue(dispatcher.offer(mail(i), e -> done.countDown()));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(10), batchSizes);
+        assertEquals(1, reports.size());
+        assertEquals(10, reports.get(0).delivered);
+        assertEquals(0, reports.get(0).failed);
+    }
+
+    @Test
+    public void batchesAreCappedAtMaxBatch() throws Exception {
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(25);
+        dispatcher = new ReminderDispatcher(batch -> {
+            batchSizes.add(batch.size());
+            return new Exception[batch.size()];
+        }, Runnable::run, 100, 200, 10, 1, r -> { });
+
+        for (int i = 0; i < 25; i++) assertTrue(dispatcher.offer(mail(i), e -> done.countDown()));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int size : batchSizes) assertTrue(size <= 10);
+        assertEquals(25, batchSizes.stream().mapToInt(Integer::intValue).sum());
+        assertEquals(batchSizes.size(), dispatcher.batches());
+    }
+
+    @Test
+    public void eachReminderGetsItsOwnOutcome() throws Exception {
+        IllegalStateException bounce = new IllegalStateException("mailbox unavailable");
+        List<ReminderDispatcher.BatchReport> reports = new CopyOnWriteArrayList<>();
+        List<Exception> outcomes = Collections.synchronizedList(new ArrayList<>(Collections.nCopies(4, null)));
+        CountDownLatch done = new CountDownLatch(4);
+        dispatcher = new ReminderDispatcher(batch -> {
+            Exception[] r = new Exception[batch.size()];
+            for (int i = 0; i < batch.size(); i++) if (batch.get(i).to.startsWith("u2")) r[i] = bounce;
+            return r;
+        }, Runnable::run, 100, 200, 50, 1, reports::add);
+
+        for (int i = 0; i < 4; i++) {
+            final int n = i;
+            dispatcher.offer(mail(i), e -> { outcomes.set(n, e); done.countDown(); });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertNull(outcomes.get(0));
+        assertSame(bounce, outcomes.get(2));
+        assertEquals(1, dispatcher.failed());
+        assertEquals(3, dispatcher.delivered());
+        assertEquals(1, reports.get(0).failed);
+    }
+
+    @Test
+    public void wholeBatchFailsWhenSenderThrows() throws Exception {
+        CountDownLatch failed = new CountDownLatch(3);
+        dispatcher = new ReminderDispatcher(batch -> { throw new IllegalStateException("smtp down"); },
+                Runnable::run, 100, 100, 50, 1, r -> { });
+        for (int i = 0; i < 3; i++) dispatcher.offer(mail(i), e -> { if (e != null) failed.countDown(); });
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void parallelismBoundsBatchesInFlight() throws Exception {
+        pool = Executors.newFixedThreadPool(8);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxSeen = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(40);
+        dispatcher = new ReminderDispatcher(batch -> {
+            maxSeen.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            inFlight.decrementAndGet();
+            return new Exception[batch.size()];
+        }, pool, 100, 0, 2, 3, r -> { });
+
+        for (int i = 0; i < 40; i++) dispatcher.offer(mail(i), e -> done.countDown());
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue("max in flight " + maxSeen.get(), maxSeen.get() <= 3);
+        assertTrue(maxSeen.get() >= 2);
+    }
+
+    @Test
+    public void throttledRemindersGoMostOverdueFirst() throws Exception {
+        TokenBucket bucket = new TokenBucket(600, 1);   // one token every 100 ms
+        assertEquals(0, bucket.tryAcquire());           // start empty
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        dispatcher = new ReminderDispatcher(batch -> {
+            for (SendReminderServlet.Mail m : batch) order.add(m.body);
+            return new Exception[batch.size()];
+        }, Runnable::run, 100, 0, 1, 1, bucket, 60_000, r -> { });
+
+        long now = System.currentTimeMillis();
+        dispatcher.offer(new SendReminderServlet.Mail("a@test.local", "Reminder Alert", "1s late"), now - 1_000, e -> done.countDown());
+        dispatcher.offer(new SendReminderServlet.Mail("b@test.local", "Reminder Alert", "10s late"), now - 10_000, e -> done.countDown());
+        dispatcher.offer(new SendReminderServlet.Mail("c@test.local", "Reminder Alert", "5s late"), now - 5_000, e -> done.countDown());
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("10s late", "5s late", "1s late"), order);
+        assertEquals(0, dispatcher.forced());
+    }
+
+    @Test
+    public void remindersAreForcedOutOnceTheirSpreadIsUsedUp() throws Exception {
+        TokenBucket bucket = new TokenBucket(1, 1);     // one token a minute
+        assertEquals(0, bucket.tryAcquire());
+        List<ReminderDispatcher.BatchReport> reports = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        dispatcher = new ReminderDispatcher(batch -> new Exception[batch.size()],
+                Runnable::run, 100, 0, 50, 1, bucket, 200, reports::add);
+
+        long due = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) dispatcher.offer(mail(i), due, e -> done.countDown());
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(3, dispatcher.forced());
+        assertEquals(3, dispatcher.delayCount());
+        assertTrue("max delay " + dispatcher.delayMaxMs(), dispatcher.delayMaxMs() >= 200);
+        assertTrue(dispatcher.delayMaxMs() < 5_000);
+        assertEquals(dispatcher.delayMaxMs(), reports.stream().mapToLong(r -> r.maxDelayMs).max().getAsLong());
+    }
+
+    @Test
+    public void longOverdueRemindersGetTheirSpreadFromTheOffer() throws Exception {
+        Metrics.resetShared();
+        TokenBucket bucket = new TokenBucket(1, 1);     // one token a minute
+        assertEquals(0, bucket.tryAcquire());
+        List<Long> sentAt = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(2);
+        dispatcher = new ReminderDispatcher(batch -> {
+            sentAt.add(System.currentTimeMillis());
+            return new Exception[batch.size()];
+        }, Runnable::run, 100, 0, 50, 1, bucket, 300, r -> { });
+
+        // A retry and a journal replay: both targets are far past the spread.
+        long offered = System.currentTimeMillis();
+        dispatcher.offer(mail(1), offered - 60_000, e -> done.countDown());
+        dispatcher.offer(mail(2), offered - 3_600_000, e -> done.countDown());
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue("sent after " + (sentAt.get(0) - offered) + " ms", sentAt.get(0) - offered >= 300);
+        assertEquals(2, dispatcher.forced());
+        assertTrue(dispatcher.delayMaxMs() < 5_000);
+
+        String scrape = Metrics.shared().scrape();
+        assertTrue(scrape, scrape.contains(Metrics.REMINDER_FORCED + " 2\n"));
+        assertTrue(scrape, scrape.contains(Metrics.REMINDER_SHAPED_DELAY + "_count 2\n"));
+        Metrics.resetShared();
+    }
+
+    @Test
+    public void fullQueueRejectsOffers() {
+        TokenBucket bucket = new TokenBucket(1, 1);
+        assertEquals(0, bucket.tryAcquire());
+        dispatcher = new ReminderDispatcher(batch -> new Exception[batch.size()],
+                Runnable::run, 2, 0, 1, 1, bucket, 60_000, r -> { });
+        assertTrue(dispatcher.offer(mail(1), e -> { }));
+        assertTrue(dispatcher.offer(mail(2), e -> { }));
+        assertFalse(dispatcher.offer(mail(3), e -> { }));
+        assertEquals(2, dispatcher.queued());
+    }
+
+    @Test
+    public void closedDispatcherRejectsOffers() {
+        dispatcher = new ReminderDispatcher(batch -> new Exception[batch.size()], Runnable::run, 1, 0, 1, 1, r -> { });
+        dispatcher.close();
+        assertFalse(dispatcher.offer(mail(1), e -> { }));
+    }
+}
@@ -0,0 +1,157 @@
+package com.studylife.servlet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class ReminderJournalTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path file() throws Exception {
+        return tmp.getRoot().toPath().resolve(ReminderJournal.FILE_NAME);
+    }
+
+    @Test
+    public void replaysOnlyEntriesWithoutTombstone() throws Exception {
+        long a, b;
+        try (ReminderJournal j = new ReminderJournal(file(), 4096, 5)) {
+            a = j.add(1000L, "a@x", "Reminder Alert", "first ⏰");
+            b = j.add(2000L, "b@x", "Reminder Alert", "second");
+            j.markDone(a);
+        }
+
+        try (ReminderJournal j = new ReminderJournal(file(), 4096, 5)) {
+            List<ReminderJournal.Entry> pending = j.pending();
+            assertEquals(1, pending.size());
+            ReminderJournal.Entry e = pending.get(0);
+            assertEquals(b, e.id);
+            assertEquals(2000L, e.dueMillis);
+            assertEquals("b@x", e.to);
+            assertEquals("second", e.body);
+
+            long c = j.add(3000L, "c@x", "s", "third");
+            assertTrue("ids keep increasing across restarts", c > b);
+        }
+    }
+
+    @Test
+    public void tornTailIsIgnored() throws Exception {
+        int end;
+        try (ReminderJournal j = new ReminderJournal(file(), 4096, 0)) {
+            j.add(1000L, "a@x", "s", "kept");
+            end = j.usedBytes();
+            j.add(2000L, "b@x", "s", "torn");
+        }
+        // Flip a byte inside the second record so its checksum no longer matches.
+        try (FileChannel ch = FileChannel.open(file(), StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap(new byte[]{0x7f}), end + 20);
+        }
+
+        try (ReminderJournal j = new ReminderJournal(file(), 4096, 0)) {
+            assertEquals(1, j.size());
+            assertEquals("kept", j.pending().get(0).body);
+            assertEquals(end, j.usedBytes());
+            j.add(3000L, "c@x", "s", "after");
+        }
+        try (ReminderJournal j = new ReminderJournal(file(), 4096, 0)) {
+            assertEquals(2, j.size());
+        }
+    }
+
+    @Test
+    public void growsPastInitialMapping_andCompactsTombstones() throws Exception {
+        String body = "x".repeat(200);
+        try (ReminderJournal j = new ReminderJournal(file(), 4096, 0)) {
+            for (int i = 0; i < 400; i++) {
+                long id = j.add(i, "u@x", "s", body);
+                if (i % 10 != 0) j.markDone(id);
+            }
+            assertEquals(40, j.size());
+        }
+        try (ReminderJournal j = new ReminderJournal(file(), 4096, 0)) {
+            assertEquals(40, j.size());
+            assertTrue("tombstoned records were compacted away", j.usedBytes() < 400 * body.length() / 2);
+        }
+    }
+
+    @Test
+    public void concurrentWritersShareFsyncs() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try (ReminderJournal j = new ReminderJournal(file(), 4096, 5)) {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Long>> ids = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final int n = i;
+                ids.add(pool.submit(() -> {
+                    start.await();
+                    return j.add(n, "u@x", "s", "m" + n);
+                }));
+            }
+            start.countDown();
+            for (Future<Long> f : ids) assertTrue(f.get() > 0);
+        } finally {
+            pool.shutdownNow();
+        }
+        try (ReminderJournal j = new ReminderJournal(file(), 4096, 5)) {
+            assertEquals(200, j.size());
+        }
+    }
+
+    @Test
+    public void secondInstanceOnTheSameFileIsRefused() throws Exception {
+        try (ReminderJournal j = new ReminderJournal(file(), 4096, 0)) {
+            j.add(1000L, "a@x", "Reminder Alert", "only once");
+            try {
+                new ReminderJournal(file(), 4096, 0).close();
+                fail("second journal opened on a locked file");
+            } catch (IOException expected) {
+                assertTrue(expected.getMessage().contains("already open"));
+            }
+            assertEquals(1, j.size());
+        }
+        try (ReminderJournal j = new ReminderJournal(file(), 4096, 0)) {
+            assertEquals(1, j.size());   // the lock goes away with close()
+        }
+    }
+
+    @Test
+    public void addAsyncCompletesOnTheSyncThreadOnceDurable() throws Exception {
+        CompletableFuture<Long> first;
+        try (ReminderJournal j = new ReminderJournal(file(), 4096, 200)) {
+            first = j.addAsync(1000L, "a@x", "s", "async");
+            assertFalse("not before the fsync interval", first.isDone());
+            AtomicReference<String> thread = new AtomicReference<>();
+            assertTrue(first.thenApply(id -> {
+                thread.set(Thread.currentThread().getName());
+                return id;
+            }).get(5, TimeUnit.SECONDS) > 0);
+            assertEquals("reminder-journal", thread.get());
+
+            CompletableFuture<Long> second = j.addAsync(2000L, "b@x", "s", "closed before sync");
+            j.close();
+            assertTrue("close forces and completes what is pending", second.get(1, TimeUnit.SECONDS) > first.get());
+        }
+        try (ReminderJournal j = new ReminderJournal(file(), 4096, 0)) {
+            assertEquals(2, j.size());
+        }
+    }
+}
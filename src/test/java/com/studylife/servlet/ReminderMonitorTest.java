@@ -0,0 +1,117 @@
+package com.studylife.servlet;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ReminderMonitorTest {
+
+    private static final long H = ReminderMonitor.HOUR_MS;
+
+    @Test
+    public void nextListsEarliestTargetsFirst() {
+        ReminderMonitor m = new ReminderMonitor();
+        long base = 1_000 * H;
+        m.accepted(3, "c@x", base + 30_000);
+        m.accepted(1, "a@x", base + 10_000);
+        m.accepted(2, "b@x", base + 10_000);   // same target: order of acceptance
+        m.accepted(4, "d@x", base + 2 * H);
+
+        List<ReminderMonitor.Pending> next = m.next(3);
+        assertEquals(3, next.size());
+        assertEquals(1, next.get(0).id);
+        assertEquals(2, next.get(1).id);
+        assertEquals(3, next.get(2).id);
+        assertEquals(4, m.pending());
+
+        Map<Long, Integer> byHour = m.pendingByHour();
+        assertEquals(Integer.valueOf(3), byHour.get(1_000L));
+        assertEquals(Integer.valueOf(1), byHour.get(1_002L));
+    }
+
+    @Test
+    public void outcomesAreCountedPerTargetHour() {
+        Metrics metrics = new Metrics();
+        ReminderMonitor m = new ReminderMonitor(() -> metrics);
+        long base = 2_000 * H;
+
+        ReminderMonitor.Pending a = m.accepted(1, "a@x", base + 1_000);
+        ReminderMonitor.Pending b = m.accepted(2, "b@x", base + 2_000);
+        ReminderMonitor.Pending c = m.accepted(3, "c@x", base + H);
+        m.fired(a, base + 1_000 + 250);
+        m.fired(b, base + 2_000 + 4_000);
+        m.fired(c, base + H);
+        m.finished(a, true);
+        m.finished(b, false);
+        m.finished(c, true);
+        m.finished(c, true);   // a second outcome for the same reminder is ignored
+
+        assertEquals(0, m.pending());
+        assertTrue(m.pendingByHour().isEmpty());
+        List<ReminderMonitor.Hour> hours = m.hours();
+        assertEquals(2, hours.size());
+
+        ReminderMonitor.Hour first = hours.get(0);
+        assertEquals(2_000, first.hour);
+        assertEquals(2, first.fired.sum());
+        assertEquals(1, first.delivered.sum());
+        assertEquals(1, first.failed.sum());
+        assertEquals(2, first.delivery.count());
+        long maxLagMs = first.lag.percentileMicros(1.0) / 1000;
+        assertTrue("max lag " + maxLagMs, maxLagMs >= 4_000 && maxLagMs <= 4_200);
+        assertEquals(1, hours.get(1).delivered.sum());
+
+        String scrape = metrics.scrape();
+        assertTrue(scrape.contains(Metrics.REMINDER_LAG + "_count 3"));
+        assertTrue(scrape.contains(Metrics.REMINDER_DELIVERY + "_count{result=\"ok\"} 2"));
+        assertTrue(scrape.contains(Metrics.REMINDER_DELIVERY + "_count{result=\"error\"} 1"));
+    }
+
+    @Test
+    public void clearDropsPendingAndLateOutcomesAreIgnored() {
+        ReminderMonitor m = new ReminderMonitor();
+        ReminderMonitor.Pending a = m.accepted(1, "a@x", 5 * H);
+        m.accepted(2, "b@x", 6 * H);
+        m.clear();
+        assertEquals(0, m.pending());
+        assertTrue(m.next(10).isEmpty());
+        assertTrue(m.pendingByHour().isEmpty());
+
+        m.finished(a, true);
+        assertEquals(0, m.pending());
+        assertTrue(m.hours().isEmpty());
+    }
+
+    @Test
+    public void forgetDropsOneReminderWithoutAnOutcome() {
+        ReminderMonitor m = new ReminderMonitor();
+        ReminderMonitor.Pending a = m.accepted(1, "a@x", 5 * H);
+        ReminderMonitor.Pending b = m.accepted(2, "b@x", 5 * H);
+
+        assertTrue(m.forget(a));
+        assertFalse(m.forget(a));
+        assertEquals(1, m.pending());
+        assertSame(b, m.next(10).get(0));
+        assertEquals(Integer.valueOf(1), m.pendingByHour().get(5L));
+
+        m.finished(a, true);
+        assertTrue(m.hours().isEmpty());
+    }
+
+    @Test
+    public void oldHoursGiveWayToNewOnes() {
+        ReminderMonitor m = new ReminderMonitor();
+        ReminderMonitor.Pending old = m.accepted(1, "a@x", 10 * H);
+        ReminderMonitor.Pending recent = m.accepted(2, "b@x", (10 + ReminderMonitor.HOURS) * H);
+        m.fired(recent, recent.dueMillis);
+        m.fired(old, recent.dueMillis);   // same slot, already taken by a later hour
+
+        List<ReminderMonitor.Hour> hours = m.hours();
+        assertEquals(1, hours.size());
+        assertEquals(10 + ReminderMonitor.HOURS, hours.get(0).hour);
+        assertEquals(1, hours.get(0).fired.sum());
+    }
+}
@@ -1,12 +1,14 @@
 package com.studylife.servlet;
 
 import org.junit.Test;
+import testsupport.StubHttpServletRequest;
 import testsupport.StubHttpServletResponse;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedReader;
-import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.*;
 import java.util.Properties;
 import java.util.logging.Logger;
@@ -18,9 +20,7 @@ import static org.mockito.Mockito.*;
 public class SaveCountryServletTest {
 
     private static HttpServletRequest reqWithBody(String body) throws Exception {
-        HttpServletRequest req = mock(HttpServletRequest.class);
-        when(req.getReader()).thenReturn(new BufferedReader(new StringReader(body)));
-        return req;
+        return new StubHttpServletRequest(body);
     }
 
     private static StubHttpServletResponse stubResp() {
@@ -31,12 +31,17 @@ public class SaveCountryServletTest {
         long idToReturn = 42L;
         Exception toThrow = null;
         DbConf conf = new DbConf("jdbc:fake://x", "u", "p");
+        GeoIpResolver geo;
+        String insertedCountry;
 
         @Override protected DbConf getDbConf() { return conf; }
 
+        @Override protected GeoIpResolver geoIp() { return geo != null ? geo : super.geoIp(); }
+
         @Override
         protected long insertLocation(int userId, String country, DbConf conf) throws Exception {
             if (toThrow != null) throw toThrow;
+            insertedCountry = country;
             return idToReturn;
         }
     }
@@ -84,6 +89,30 @@ public class SaveCountryServletTest {
         assertTrue(resp.getBody().toLowerCase().contains("required"));
     }
 
+    @Test
+    public void missingCountry_isResolvedFromTheClientAddress() throws Exception {
+        Path csv = Files.createTempFile("geoip", ".csv");
+        try {
+            Files.write(csv, "5.0.0.0,5.255.255.255,IE\n".getBytes(StandardCharsets.UTF_8));
+            TestableServlet s = new TestableServlet();
+            s.geo = new GeoIpResolver(csv, GeoIpResolver.parseProxies("127.0.0.1"), 0);
+
+            StubHttpServletRequest req = new StubHttpServletRequest("{\"userId\":\"3\"}");
+            req.setHeader("X-Forwarded-For", "5.1.2.3");
+            StubHttpServletResponse resp = stubResp();
+            s.doPost(req, resp);
+            assertEquals(200, resp.getStatus());
+            assertEquals("IE", s.insertedCountry);
+
+            StubHttpServletRequest override = new StubHttpServletRequest("{\"userId\":\"3\",\"country\":\"France\"}");
+            override.setHeader("X-Forwarded-For", "5.1.2.3");
+            s.doPost(override, stubResp());
+            assertEquals("France", s.insertedCountry);
+        } finally {
+            Files.deleteIfExists(csv);
+        }
+    }
+
     @Test
     public void userIdNotNumber_returns400() throws Exception {
         TestableServlet s = new TestableServlet();
@@ -179,6 +208,27 @@ public class SaveCountryServletTest {
         }
     }
 
+    @Test
+    public void writeBehindMode_returns202_withoutTouchingDb() throws Exception {
+        System.setProperty(SaveCountryServlet.ENV_WRITE_BEHIND, "true");
+        TestableServlet s = new TestableServlet();
+        s.toThrow = new SQLException("insertLocation must not be called");
+        try {
+            s.init();
+            HttpServletRequest req = reqWithBody("{\"userId\":\"5\",\"country\":\"IE\"}");
+            StubHttpServletResponse resp = stubResp();
+
+            s.doPost(req, resp);
+
+            assertEquals(202, resp.getStatus());
+            assertTrue(resp.getBody().contains("\"accepted\""));
+            assertTrue(resp.getBody().contains("\"country\":\"IE\""));
+        } finally {
+            s.destroy();
+            System.clearProperty(SaveCountryServlet.ENV_WRITE_BEHIND);
+        }
+    }
+
 
     private static class FakeDriver implements Driver {
         private final long id;
@@ -227,6 +277,7 @@ public class SaveCountryServletTest {
                     if (name.equals("setInt") || name.equals("setString")) return null;
                     if (name.equals("executeUpdate")) return 1;
                     if (name.equals("getGeneratedKeys")) return resultSetProxy(generatedId);
+                    if (name.equals("executeQuery")) return resultSetProxy(generatedId);   // country lookup
                     if (name.equals("close")) return null;
                     Class<?> rt = method.getReturnType();
                     if (rt.equals(boolean.class)) return false;
@@ -0,0 +1,191 @@
+package com.studylife.servlet;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.*;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class SchemaMigratorTest {
+
+    private JdbcDataSource h2;
+
+    @Before
+    public void setUp() {
+        h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:migrate_" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE");
+        h2.setUser("sa");
+    }
+
+    @Test
+    public void migrate_appliesAllScripts_once() throws Exception {
+        SchemaMigrator m = new SchemaMigrator(h2);
+
+        assertEquals(SchemaMigrator.SCRIPTS.length, m.migrate());
+        assertEquals(0, m.migrate());
+
+        try (Connection c = h2.getConnection(); Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM schema_version")) {
+            rs.next();
+            assertEquals(SchemaMigrator.SCRIPTS.length, rs.getInt(1));
+        }
+    }
+
+    @Test
+    public void hotQueries_haveTheirIndexes() throws Exception {
+        new SchemaMigrator(h2).migrate();
+
+        try (Connection c = h2.getConnection()) {
+            Set<String> userIdx = indexColumns(c, "users", true);
+            assertTrue(userIdx.toString(), userIdx.contains("ux_users_username:username"));
+
+            Set<String> locIdx = indexColumns(c, "user_login_locations", false);
+            assertTrue(locIdx.toString(), locIdx.contains("ix_login_locations_user_created:user_id"));
+            assertTrue(locIdx.toString(), locIdx.contains("ix_login_locations_user_created:created_at"));
+        }
+    }
+
+    @Test
+    public void duplicateUsername_isRejectedByUniqueIndex() throws Exception {
+        new SchemaMigrator(h2).migrate();
+
+        try (Connection c = h2.getConnection(); Statement st = c.createStatement()) {
+            st.execute("INSERT INTO users (username, password) VALUES ('kate', 'x')");
+            try {
+                st.execute("INSERT INTO users (username, password) VALUES ('kate', 'y')");
+                fail("expected unique violation");
+            } catch (SQLIntegrityConstraintViolationException expected) {
+                // ok
+            }
+            st.execute("INSERT INTO user_login_locations (user_id, country) VALUES (1, 'IE')");
+            try (ResultSet rs = st.executeQuery("SELECT created_at FROM user_login_locations")) {
+                assertTrue(rs.next());
+                assertNotNull(rs.getTimestamp(1));
+            }
+        }
+    }
+
+    @Test
+    public void existingBaselineTables_areUpgradedInPlace() throws Exception {
+        try (Connection c = h2.getConnection(); Statement st = c.createStatement()) {
+            st.execute("CREATE TABLE users (id INT AUTO_INCREMENT PRIMARY KEY, " +
+                    "username VARCHAR(255) NOT NULL, password VARCHAR(255) NOT NULL)");
+            st.execute("INSERT INTO users (username, password) VALUES ('old', 'pw')");
+        }
+
+        new SchemaMigrator(h2).migrate();
+
+        try (Connection c = h2.getConnection(); Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT username, created_at FROM users")) {
+            assertTrue(rs.next());
+            assertEquals("old", rs.getString(1));
+            assertNotNull(rs.getTimestamp(2));
+        }
+    }
+
+    @Test
+    public void partlyAppliedV2_isSkippedStepByStep() throws Exception {
+        try (Connection c = h2.getConnection(); Statement st = c.createStatement()) {
+            st.execute("CREATE TABLE users (id INT AUTO_INCREMENT PRIMARY KEY, " +
+                    "username VARCHAR(255) NOT NULL, password VARCHAR(255) NOT NULL, " +
+                    "created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+            st.execute("CREATE UNIQUE INDEX ux_users_username ON users (username)");
+        }
+
+        assertEquals(SchemaMigrator.SCRIPTS.length, new SchemaMigrator(h2).migrate());
+
+        try (Connection c = h2.getConnection()) {
+            Set<String> locIdx = indexColumns(c, "user_login_locations", false);
+            assertTrue(locIdx.toString(), locIdx.contains("ix_login_locations_user_created:created_at"));
+        }
+    }
+
+    @Test
+    public void v7_canRunAgainAfterStoppingHalfway() throws Exception {
+        new SchemaMigrator(h2).migrate();
+        try (Connection c = h2.getConnection(); Statement st = c.createStatement()) {
+            // V7 got as far as its last statement before failing: everything applied but not recorded.
+            st.execute("DELETE FROM schema_version WHERE version = 7");
+        }
+
+        assertEquals(1, new SchemaMigrator(h2).migrate());
+        try (Connection c = h2.getConnection(); Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM countries WHERE id = 1")) {
+            rs.next();
+            assertEquals(1, rs.getInt(1));
+        }
+    }
+
+    @Test
+    public void duplicateUsernames_areReportedBeforeTheUniqueIndex() throws Exception {
+        try (Connection c = h2.getConnection(); Statement st = c.createStatement()) {
+            st.execute("CREATE TABLE users (id INT AUTO_INCREMENT PRIMARY KEY, " +
+                    "username VARCHAR(255) NOT NULL, password VARCHAR(255) NOT NULL)");
+            st.execute("INSERT INTO users (username, password) VALUES ('kate', 'a'), ('kate', 'b'), ('tom', 'c')");
+        }
+
+        try {
+            new SchemaMigrator(h2).migrate();
+            fail("expected the duplicate check to stop V2");
+        } catch (SQLException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("ux_users_username"));
+            assertTrue(e.getMessage(), e.getMessage().contains("('kate') x2"));
+            assertFalse(e.getMessage(), e.getMessage().contains("tom"));
+        }
+
+        try (Connection c = h2.getConnection(); Statement st = c.createStatement()) {
+            st.execute("DELETE FROM users WHERE password = 'b'");
+        }
+        assertEquals(SchemaMigrator.SCRIPTS.length - 1, new SchemaMigrator(h2).migrate());
+    }
+
+    @Test
+    public void failedMigration_stopsStartup() throws Exception {
+        String url = "jdbc:h2:mem:migrate_startup_" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE";
+        try (Connection c = DriverManager.getConnection(url, "sa", "x"); Statement st = c.createStatement()) {
+            st.execute("CREATE TABLE users (id INT AUTO_INCREMENT PRIMARY KEY, " +
+                    "username VARCHAR(255) NOT NULL, password VARCHAR(255) NOT NULL)");
+            st.execute("INSERT INTO users (username, password) VALUES ('kate', 'a'), ('kate', 'b')");
+        }
+        System.setProperty(Db.ENV_DB_URL, url);
+        System.setProperty(Db.ENV_DB_USER, "sa");
+        System.setProperty(Db.ENV_DB_PASS, "x");
+        try {
+            SchemaMigrator.migrateIfConfigured();
+            fail("expected startup to fail on V2");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getCause().getMessage(), expected.getCause().getMessage().contains("('kate') x2"));
+        } finally {
+            System.clearProperty(Db.ENV_DB_URL);
+            System.clearProperty(Db.ENV_DB_USER);
+            System.clearProperty(Db.ENV_DB_PASS);
+            Db.shutdown();
+        }
+    }
+
+    @Test
+    public void split_handlesCommentsAndMultiLineStatements() {
+        List<String> stmts = SchemaMigrator.split("-- c\nCREATE TABLE a (\n  x INT\n);\n\nDROP TABLE a;\n");
+        assertEquals(2, stmts.size());
+        assertTrue(stmts.get(0).startsWith("CREATE TABLE a ("));
+        assertEquals("DROP TABLE a", stmts.get(1));
+        assertEquals(12, SchemaMigrator.versionOf("V12__x.sql"));
+    }
+
+    private static Set<String> indexColumns(Connection c, String table, boolean unique) throws SQLException {
+        Set<String> out = new HashSet<>();
+        try (ResultSet rs = c.getMetaData().getIndexInfo(null, null, table, unique, false)) {
+            while (rs.next()) {
+                String idx = rs.getString("INDEX_NAME");
+                String col = rs.getString("COLUMN_NAME");
+                if (idx != null && col != null) out.add(idx.toLowerCase() + ":" + col.toLowerCase());
+            }
+        }
+        return out;
+    }
+}
@@ -1,22 +1,33 @@
 package com.studylife.servlet;
 
 import org.json.JSONObject;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import testsupport.StubHttpServletRequest;
 import testsupport.StubHttpServletResponse;
 
+import javax.servlet.AsyncContext;
+
+import java.nio.file.Path;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
 
 public class SendReminderServletTest {
 
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
     private static final ZoneId ZONE = ZoneId.of("Europe/Dublin");
     private static final DateTimeFormatter HM = DateTimeFormatter.ofPattern("HH:mm");
 
@@ -29,10 +40,15 @@ public class SendReminderServletTest {
         }
     }
 
+    /** Sends each reminder on its own, on the thread that fires it. */
+    static ReminderDispatcher direct(SendReminderServlet.EmailSender sender) {
+        return ReminderDispatcher.unbatched(sender, Runnable::run);
+    }
+
     static class TestableServlet extends SendReminderServlet {
         private final Map<String,String> env;
         TestableServlet(ScheduledExecutorService sch, EmailSender sender, Map<String,String> env) {
-            super(sch, sender);
+            super(sch, direct(sender), null);
             this.env = env;
         }
         @Override
@@ -43,7 +59,7 @@ public class SendReminderServletTest {
 
     @Test
     public void doOptions_should200_andCors() throws Exception {
-        SendReminderServlet s = new SendReminderServlet(new DirectScheduler(), (a,b,c)->{});
+        SendReminderServlet s = new SendReminderServlet(new DirectScheduler(), direct((a,b,c)->{}), null);
         StubHttpServletRequest req = new StubHttpServletRequest("");
         StubHttpServletResponse resp = new StubHttpServletResponse();
         s.doOptions(req, resp);
@@ -53,7 +69,7 @@ public class SendReminderServletTest {
 
     @Test
     public void invalidJson_should400() throws Exception {
-        SendReminderServlet s = new SendReminderServlet(new DirectScheduler(), (a,b,c)->{});
+        SendReminderServlet s = new SendReminderServlet(new DirectScheduler(), direct((a,b,c)->{}), null);
         StubHttpServletResponse resp = new StubHttpServletResponse();
         s.doPost(new StubHttpServletRequest("{oops"), resp);
         assertTrue(resp.getStatus() >= 400 && resp.getStatus() < 500);
@@ -62,7 +78,7 @@ public class SendReminderServletTest {
 
     @Test
     public void missingFields_should400() throws Exception {
-        SendReminderServlet s = new SendReminderServlet(new DirectScheduler(), (a,b,c)->{});
+        SendReminderServlet s = new SendReminderServlet(new DirectScheduler(), direct((a,b,c)->{}), null);
         JSONObject body = new JSONObject().put("email","a@b.com");
         StubHttpServletResponse resp = new StubHttpServletResponse();
         s.doPost(new StubHttpServletRequest(body.toString()), resp);
@@ -72,7 +88,7 @@ public class SendReminderServletTest {
 
     @Test
     public void invalidDateFormat_should400() throws Exception {
-        SendReminderServlet s = new SendReminderServlet(new DirectScheduler(), (a,b,c)->{});
+        SendReminderServlet s = new SendReminderServlet(new DirectScheduler(), direct((a,b,c)->{}), null);
         JSONObject body = new JSONObject()
                 .put("email","u@test.local")
                 .put("message","x")
@@ -136,6 +152,163 @@ public class SendReminderServletTest {
         assertTrue(containsAny(resp.getBody(), "scheduled"));
     }
 
+    @Test
+    public void journaledReminder_isRestoredAfterRestart() throws Exception {
+        Path file = tmp.newFolder().toPath().resolve(ReminderJournal.FILE_NAME);
+        ZonedDateTime tgt = ZonedDateTime.now(ZONE).plusMinutes(10).withSecond(0).withNano(0);
+        JSONObject body = new JSONObject()
+                .put("email", "u@test.local")
+                .put("message", "survive restart")
+                .put("date", tgt.toLocalDate().toString())
+                .put("time", tgt.toLocalTime().format(HM));
+
+        SendReminderServlet first = new SendReminderServlet(new ScheduledThreadPoolExecutor(1),
+                direct((a, b, c) -> fail("not due yet")), new ReminderJournal(file, 4096, 0));
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        first.doPost(new StubHttpServletRequest(body.toString()), resp);
+        assertEquals(200, resp.getStatus());
+        first.destroy();  // pending reminder is dropped by the scheduler but not by the journal
+
+        List<String> sent = new CopyOnWriteArrayList<>();
+        ReminderJournal journal = new ReminderJournal(file, 4096, 0);
+        SendReminderServlet second = new SendReminderServlet(new DirectScheduler(),
+                direct((to, sub, txt) -> sent.add(to + "|" + txt)), journal);
+        second.init();
+
+        assertEquals(1, sent.size());
+        assertTrue(sent.get(0).startsWith("u@test.local|"));
+        assertTrue(sent.get(0).contains("survive restart"));
+        assertEquals(0, journal.size());
+        second.destroy();
+    }
+
+    @Test
+    public void journaledPost_isAnsweredAfterTheFsync_offTheRequestThread() throws Exception {
+        Path file = tmp.newFolder().toPath().resolve(ReminderJournal.FILE_NAME);
+        ZonedDateTime tgt = ZonedDateTime.now(ZONE).plusMinutes(10).withSecond(0).withNano(0);
+        JSONObject body = new JSONObject()
+                .put("email", "u@test.local")
+                .put("message", "async")
+                .put("date", tgt.toLocalDate().toString())
+                .put("time", tgt.toLocalTime().format(HM));
+
+        SendReminderServlet s = new SendReminderServlet(new ScheduledThreadPoolExecutor(1),
+                direct((a, b, c) -> fail("not due yet")), new ReminderJournal(file, 4096, 200));
+        AsyncContext ac = mock(AsyncContext.class);
+        CountDownLatch completed = new CountDownLatch(1);
+        doAnswer(inv -> { completed.countDown(); return null; }).when(ac).complete();
+        StubHttpServletRequest req = spy(new StubHttpServletRequest(body.toString()));
+        doReturn(true).when(req).isAsyncSupported();
+        doReturn(ac).when(req).startAsync(any(), any());
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+
+        s.doPost(req, resp);
+        assertEquals("nothing is answered before the record is on disk", "", resp.getBody());
+        assertEquals(0, s.monitor().pending());
+
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+        assertEquals(200, resp.getStatus());
+        assertTrue(resp.getBody().contains("scheduled"));
+        assertEquals(1, s.monitor().pending());
+        s.destroy();
+    }
+
+    @Test
+    public void monitor_tracksPendingUntilTheOutcomeIsKnown() throws Exception {
+        ZonedDateTime tgt = ZonedDateTime.now(ZONE).plusMinutes(10).withSecond(0).withNano(0);
+        JSONObject body = new JSONObject()
+                .put("email", "u@test.local")
+                .put("message", "later")
+                .put("date", tgt.toLocalDate().toString())
+                .put("time", tgt.toLocalTime().format(HM));
+
+        SendReminderServlet later = new SendReminderServlet(new ScheduledThreadPoolExecutor(1), direct((a, b, c) -> {}), null);
+        later.doPost(new StubHttpServletRequest(body.toString()), new StubHttpServletResponse());
+        assertEquals(1, later.monitor().pending());
+        ReminderMonitor.Pending p = later.monitor().next(5).get(0);
+        assertEquals("u@test.local", p.to);
+        assertEquals(tgt.toInstant().toEpochMilli(), p.dueMillis);
+        assertFalse(p.fired());
+        later.destroy();
+        assertEquals(0, later.monitor().pending());
+
+        SendReminderServlet failing = new TestableServlet(new DirectScheduler(),
+                (a, b, c) -> { throw new RuntimeException("boom"); }, Map.of("REMINDER_MIN_LEAD_MINUTES", "0"));
+        failing.doPost(new StubHttpServletRequest(body.toString()), new StubHttpServletResponse());
+        assertEquals(0, failing.monitor().pending());
+        ReminderMonitor.Hour h = failing.monitor().hours().get(0);
+        assertEquals(1, h.fired.sum());
+        assertEquals(0, h.delivered.sum());
+        assertEquals(1, h.failed.sum());
+    }
+
+    @Test
+    public void destroy_forgetsOnlyItsOwnReminders_onASharedMonitor() throws Exception {
+        ZonedDateTime tgt = ZonedDateTime.now(ZONE).plusMinutes(10).withSecond(0).withNano(0);
+        ReminderMonitor shared = new ReminderMonitor();
+        SendReminderServlet first = new SendReminderServlet(new ScheduledThreadPoolExecutor(1),
+                new ReminderDispatcher(batch -> new Exception[batch.size()], Runnable::run, 10, 0, 10, 1, r -> {}),
+                null, shared);
+        SendReminderServlet second = new SendReminderServlet(new ScheduledThreadPoolExecutor(1),
+                new ReminderDispatcher(batch -> new Exception[batch.size()], Runnable::run, 10, 0, 10, 1, r -> {}),
+                null, shared);
+
+        for (SendReminderServlet s : List.of(first, second)) {
+            JSONObject body = new JSONObject()
+                    .put("email", (s == first ? "first" : "second") + "@test.local")
+                    .put("message", "later")
+                    .put("date", tgt.toLocalDate().toString())
+                    .put("time", tgt.toLocalTime().format(HM));
+            StubHttpServletResponse resp = new StubHttpServletResponse();
+            s.doPost(new StubHttpServletRequest(body.toString()), resp);
+            assertEquals(200, resp.getStatus());
+        }
+        assertEquals(2, shared.pending());
+
+        first.destroy();
+        assertEquals(1, shared.pending());
+        assertEquals("second@test.local", shared.next(5).get(0).to);
+
+        second.destroy();
+        assertEquals(0, shared.pending());
+    }
+
+    @Test
+    public void failedDelivery_isRetried_andStaysInJournal() throws Exception {
+        Path file = tmp.newFolder().toPath().resolve(ReminderJournal.FILE_NAME);
+        ZonedDateTime tgt = ZonedDateTime.now(ZONE).plusMinutes(1).withSecond(0).withNano(0).plusMinutes(1);
+        JSONObject body = new JSONObject()
+                .put("email", "u@test.local")
+                .put("message", "smtp down")
+                .put("date", tgt.toLocalDate().toString())
+                .put("time", tgt.toLocalTime().format(HM));
+        Map<String, String> env = Map.of("REMINDER_MIN_LEAD_MINUTES", "0", "REMINDER_SEND_ATTEMPTS", "3");
+
+        AtomicInteger calls = new AtomicInteger();
+        ReminderJournal journal = new ReminderJournal(file, 4096, 0);
+        SendReminderServlet down = new SendReminderServlet(new DirectScheduler(),
+                direct((a, b, c) -> { calls.incrementAndGet(); throw new RuntimeException("connection refused"); }),
+                journal) {
+            @Override protected String getEnv(String key) { return env.get(key); }
+        };
+        down.doPost(new StubHttpServletRequest(body.toString()), new StubHttpServletResponse());
+        assertEquals(3, calls.get());
+        assertEquals(1, journal.size());   // not tombstoned: retried on the next start
+        down.destroy();
+
+        calls.set(0);
+        ReminderJournal reopened = new ReminderJournal(file, 4096, 0);
+        SendReminderServlet flaky = new SendReminderServlet(new DirectScheduler(),
+                direct((a, b, c) -> { if (calls.incrementAndGet() == 1) throw new RuntimeException("timeout"); }),
+                reopened) {
+            @Override protected String getEnv(String key) { return env.get(key); }
+        };
+        flaky.init();
+        assertEquals(2, calls.get());
+        assertEquals(0, reopened.size());
+        flaky.destroy();
+    }
+
     private static boolean containsAny(String text, String... keys) {
         String t = Objects.toString(text, "").toLowerCase();
         for (String k : keys) if (k != null && t.contains(k.toLowerCase())) return true;
@@ -0,0 +1,127 @@
+package com.studylife.servlet;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.Assert.*;
+
+public class TimingWheelSchedulerTest {
+
+    private TimingWheelScheduler wheel;
+
+    @After
+    public void tearDown() {
+        if (wheel != null) wheel.shutdownNow();
+    }
+
+    /** The counter drops just after a task body returns, so give the last one a moment. */
+    private void assertNoPending() throws InterruptedException {
+        for (int i = 0; i < 100 && wheel.pending() != 0; i++) Thread.sleep(10);
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    public void tasksFireNoEarlierThanTheirDelay_acrossLevels() throws Exception {
+        // 8 slots per level and 2 ms ticks: delays up to 1.5 s cascade through three levels.
+        wheel = new TimingWheelScheduler(2, 3, 4, Runnable::run);
+        long[] delays = {0, 1, 5, 17, 64, 130, 513, 900, 1500};
+        AtomicLongArray firedAt = new AtomicLongArray(delays.length);
+        CountDownLatch all = new CountDownLatch(delays.length);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < delays.length; i++) {
+            final int n = i;
+            wheel.schedule(() -> {
+                firedAt.set(n, System.nanoTime());
+                all.countDown();
+            }, delays[i], TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(all.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < delays.length; i++) {
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(firedAt.get(i) - start);
+            assertTrue("task " + delays[i] + "ms fired early at " + elapsedMs, elapsedMs >= delays[i]);
+            assertTrue("task " + delays[i] + "ms fired late at " + elapsedMs, elapsedMs < delays[i] + 250);
+        }
+        assertNoPending();
+    }
+
+    @Test
+    public void cancelledTaskNeverRuns() throws Exception {
+        wheel = new TimingWheelScheduler(2, 3, 4, Runnable::run);
+        AtomicInteger runs = new AtomicInteger();
+        ScheduledFuture<?> f = wheel.schedule(runs::incrementAndGet, 100, TimeUnit.MILLISECONDS);
+        CountDownLatch later = new CountDownLatch(1);
+        wheel.schedule(later::countDown, 200, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(20);  // let the wheel thread place it first
+        assertTrue(f.cancel(false));
+        assertTrue(later.await(5, TimeUnit.SECONDS));
+        assertEquals(0, runs.get());
+        assertTrue(f.isCancelled());
+        assertNoPending();
+    }
+
+    @Test
+    public void callableResultIsAvailableThroughFuture() throws Exception {
+        wheel = new TimingWheelScheduler(1, 4, 2, Runnable::run);
+        ScheduledFuture<String> f = wheel.schedule(() -> "done", 10, TimeUnit.MILLISECONDS);
+        assertEquals("done", f.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void fixedRateRepeatsUntilCancelled() throws Exception {
+        wheel = new TimingWheelScheduler(1, 4, 2, Runnable::run);
+        CountDownLatch three = new CountDownLatch(3);
+        ScheduledFuture<?> f = wheel.scheduleAtFixedRate(three::countDown, 5, 5, TimeUnit.MILLISECONDS);
+        assertTrue(three.await(5, TimeUnit.SECONDS));
+        f.cancel(false);
+        assertNoPending();
+    }
+
+    @Test
+    public void beyondHorizonTasksAreKept() throws Exception {
+        // 2 levels of 4 slots at 1 ms cover only 16 ms; a 60 ms task must be parked and re-placed.
+        wheel = new TimingWheelScheduler(1, 2, 2, Runnable::run);
+        CountDownLatch fired = new CountDownLatch(1);
+        long start = System.nanoTime();
+        wheel.schedule(fired::countDown, 60, TimeUnit.MILLISECONDS);
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 60);
+    }
+
+    @Test
+    public void shutdownNowReturnsPendingTasks_andRejectsNewOnes() throws Exception {
+        wheel = new TimingWheelScheduler(5, 8, 4, Runnable::run);
+        wheel.schedule(() -> { }, 1, TimeUnit.HOURS);
+        wheel.schedule(() -> { }, 2, TimeUnit.DAYS);
+        Thread.sleep(20);
+
+        List<Runnable> left = wheel.shutdownNow();
+        assertEquals(2, left.size());
+        assertTrue(wheel.isTerminated());
+        try {
+            wheel.schedule(() -> { }, 1, TimeUnit.SECONDS);
+            fail("expected rejection");
+        } catch (java.util.concurrent.RejectedExecutionException expected) {
+            // shut down
+        }
+    }
+
+    @Test
+    public void shutdownWaitsForPendingTasks() throws Exception {
+        wheel = new TimingWheelScheduler(1, 4, 2, Runnable::run);
+        AtomicInteger runs = new AtomicInteger();
+        wheel.schedule(runs::incrementAndGet, 30, TimeUnit.MILLISECONDS);
+        wheel.shutdown();
+        assertTrue(wheel.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+    }
+}
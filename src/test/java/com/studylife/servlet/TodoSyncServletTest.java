@@ -0,0 +1,125 @@
+package com.studylife.servlet;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import testsupport.StubHttpServletRequest;
+import testsupport.StubHttpServletResponse;
+
+import javax.sql.DataSource;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TodoSyncServletTest {
+
+    private JdbcDataSource h2;
+    private TodoSyncServlet servlet;
+
+    @Before
+    public void setUp() throws Exception {
+        h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:todo_sync_" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE");
+        h2.setUser("sa");
+        new SchemaMigrator(h2).migrate();
+        servlet = new TodoSyncServlet() {
+            @Override protected DataSource dataSource() { return h2; }
+        };
+    }
+
+    private JSONObject sync(int userId, long token, JSONArray changes) throws Exception {
+        JSONObject body = new JSONObject().put("userId", userId).put("token", token);
+        if (changes != null) body.put("changes", changes);
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        servlet.doPost(new StubHttpServletRequest(body.toString()), resp);
+        assertEquals(resp.getBody(), 200, resp.getStatus());
+        return new JSONObject(resp.getBody());
+    }
+
+    private static JSONObject todo(String id, String text, String status) {
+        return new JSONObject().put("id", id).put("date", "2025-03-03").put("text", text).put("status", status);
+    }
+
+    @Test
+    public void secondDeviceReceivesOnlyWhatChanged() throws Exception {
+        JSONObject a1 = sync(1, 0, new JSONArray()
+                .put(todo("t1", "Read chapter 3", "todo"))
+                .put(todo("t2", "Lab report", "todo"))
+                .put(todo("t3", "Email tutor", "todo")));
+        assertEquals(3, a1.getLong("token"));
+        assertEquals("own changes are not echoed", 0, a1.getJSONArray("changes").length());
+
+        JSONObject b1 = sync(1, 0, null);
+        assertEquals(3, b1.getJSONArray("changes").length());
+        long bToken = b1.getLong("token");
+
+        // Device A ticks one box and deletes another: B gets exactly those two changes.
+        JSONObject a2 = sync(1, a1.getLong("token"), new JSONArray()
+                .put(todo("t2", "Lab report", "done"))
+                .put(new JSONObject().put("id", "t3").put("deleted", true)));
+        assertEquals(0, a2.getJSONArray("changes").length());
+
+        JSONObject b2 = sync(1, bToken, null);
+        JSONArray changed = b2.getJSONArray("changes");
+        assertEquals(2, changed.length());
+        assertEquals("done", changed.getJSONObject(0).getString("status"));
+        assertTrue(changed.getJSONObject(1).getBoolean("deleted"));
+        assertEquals(a2.getLong("token"), b2.getLong("token"));
+
+        assertEquals(0, sync(1, b2.getLong("token"), null).getJSONArray("changes").length());
+    }
+
+    @Test
+    public void firstSyncSkipsTombstones_andUsersAreSeparate() throws Exception {
+        sync(5, 0, new JSONArray().put(todo("x", "keep", "todo")).put(todo("y", "drop", "todo")));
+        sync(5, 2, new JSONArray().put(new JSONObject().put("id", "y").put("deleted", true)));
+        sync(6, 0, new JSONArray().put(todo("z", "someone else", "todo")));
+
+        JSONArray fresh = sync(5, 0, null).getJSONArray("changes");
+        assertEquals(1, fresh.length());
+        assertEquals("x", fresh.getJSONObject(0).getString("id"));
+    }
+
+    @Test
+    public void largeBacklogComesInPages() throws Exception {
+        JSONArray many = new JSONArray();
+        for (int i = 0; i < 1200; i++) {
+            if (many.length() == 500) {
+                sync(9, 0, many);
+                many = new JSONArray();
+            }
+            many.put(todo("n" + i, "task " + i, "todo"));
+        }
+        sync(9, 0, many);
+
+        Set<String> seen = new HashSet<>();
+        long token = 0;
+        int rounds = 0;
+        JSONObject r;
+        do {
+            r = sync(9, token, null);
+            for (int i = 0; i < r.getJSONArray("changes").length(); i++) {
+                seen.add(r.getJSONArray("changes").getJSONObject(i).getString("id"));
+            }
+            token = r.getLong("token");
+            rounds++;
+        } while (r.getBoolean("hasMore"));
+
+        assertEquals(1200, seen.size());
+        assertEquals(3, rounds);
+        assertEquals(1200, token);
+    }
+
+    @Test
+    public void invalidChange_is400() throws Exception {
+        JSONObject body = new JSONObject().put("userId", 1).put("token", 0)
+                .put("changes", new JSONArray().put(todo("a", "x", "later")));
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+        servlet.doPost(new StubHttpServletRequest(body.toString()), resp);
+        assertEquals(400, resp.getStatus());
+        assertTrue(resp.getBody().contains("changes[0]"));
+    }
+}
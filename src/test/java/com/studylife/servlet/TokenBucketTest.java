@@ -0,0 +1,85 @@
+package com.studylife.servlet;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class TokenBucketTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+    @Test
+    public void burstIsAvailableUpFront_thenCallersMustWait() {
+        TokenBucket b = new TokenBucket(60, 3, now::get);   // one token a second
+
+        for (int i = 0; i < 3; i++) assertEquals(0, b.tryAcquire());
+        long wait = b.tryAcquire();
+        assertEquals(TimeUnit.SECONDS.toNanos(1), wait);
+        assertEquals(0, b.available());
+    }
+
+    @Test
+    public void tokensRefillAtTheConfiguredRate() {
+        TokenBucket b = new TokenBucket(60, 2, now::get);
+        assertEquals(0, b.tryAcquire());
+        assertEquals(0, b.tryAcquire());
+        assertTrue(b.tryAcquire() > 0);
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1500));
+        assertEquals(1, b.available());
+        assertEquals(0, b.tryAcquire());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), b.tryAcquire());
+
+        now.addAndGet(TimeUnit.MINUTES.toNanos(10));
+        assertEquals("refill stops at the burst size", 2, b.available());
+    }
+
+    @Test
+    public void forcedAcquireBorrowsFromTheRefill() {
+        TokenBucket b = new TokenBucket(60, 1, now::get);
+        assertEquals(0, b.tryAcquire());
+        b.acquireForced();
+        b.acquireForced();
+
+        assertEquals(TimeUnit.SECONDS.toNanos(3), b.tryAcquire());
+    }
+
+    @Test
+    public void concurrentCallersNeverOverdraw() throws Exception {
+        TokenBucket b = new TokenBucket(1, 500, now::get);   // frozen clock: exactly 500 tokens
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            for (int t = 0; t < 8; t++) {
+                pool.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 200; i++) if (b.tryAcquire() == 0) granted.incrementAndGet();
+                });
+            }
+            start.countDown();
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(500, granted.get());
+    }
+
+    @Test
+    public void sameHostSharesOneBucket() {
+        assertSame(TokenBucket.forHost("smtp.test.local"), TokenBucket.forHost("SMTP.test.local"));
+        assertNotSame(TokenBucket.forHost("smtp.test.local"), TokenBucket.forHost("relay.test.local"));
+    }
+}
@@ -0,0 +1,64 @@
+package com.studylife.servlet;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import testsupport.StubHttpServletRequest;
+import testsupport.StubHttpServletResponse;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+
+public class UsernameAvailableServletTest {
+
+    private static final String URL = "jdbc:h2:mem:uname_avail;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    @Before
+    public void setUp() throws Exception {
+        try (Connection c = DriverManager.getConnection(URL, "sa", "x"); Statement st = c.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS users (id INT AUTO_INCREMENT PRIMARY KEY, " +
+                    "username VARCHAR(255) NOT NULL UNIQUE, password VARCHAR(255) NOT NULL)");
+            st.execute("MERGE INTO users (username, password) KEY (username) VALUES ('taken_name', 'x')");
+        }
+        System.setProperty("DB_URL", URL);
+        System.setProperty("DB_USER", "sa");
+        System.setProperty("DB_PASS", "x");
+        UsernameIndex.resetShared();
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("DB_URL");
+        System.clearProperty("DB_USER");
+        System.clearProperty("DB_PASS");
+        UsernameIndex.resetShared();
+    }
+
+    private static JSONObject get(String username, int expectedStatus) throws Exception {
+        StubHttpServletRequest req = new StubHttpServletRequest("");
+        req.setMethod("GET");
+        if (username != null) req.setParameter("username", username);
+        StubHttpServletResponse resp = new StubHttpServletResponse();
+
+        new UsernameAvailableServlet().doGet(req, resp);
+
+        assertEquals(expectedStatus, resp.getStatus());
+        return new JSONObject(resp.getBody());
+    }
+
+    @Test
+    public void missingUsername_returns400() throws Exception {
+        assertEquals("fail", get(null, 400).getString("status"));
+        assertEquals("fail", get("   ", 400).getString("status"));
+    }
+
+    @Test
+    public void takenAndFreeNames() throws Exception {
+        assertFalse(get("taken_name", 200).getBoolean("available"));
+        assertTrue(get("free_" + System.nanoTime(), 200).getBoolean("available"));
+    }
+}
@@ -0,0 +1,79 @@
+package com.studylife.servlet;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+
+public class UsernameIndexTest {
+
+    private JdbcDataSource h2;
+
+    @Before
+    public void setUp() throws Exception {
+        h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:uidx_" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        h2.setUser("sa");
+        try (Connection c = h2.getConnection(); Statement st = c.createStatement()) {
+            st.execute("CREATE TABLE users (id INT AUTO_INCREMENT PRIMARY KEY, " +
+                    "username VARCHAR(255) NOT NULL UNIQUE, password VARCHAR(255) NOT NULL)");
+            st.execute("INSERT INTO users (username, password) VALUES ('alice','x'), ('Bob','x')");
+        }
+    }
+
+    /** A DataSource that fails the test if the index ever reaches for the database. */
+    private static final DataSource NO_DB = (DataSource) java.lang.reflect.Proxy.newProxyInstance(
+            DataSource.class.getClassLoader(), new Class[]{DataSource.class},
+            (proxy, method, args) -> { throw new AssertionError("database must not be queried"); });
+
+    @Test
+    public void bloomFilter_hasNoFalseNegatives() {
+        BloomFilter f = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) f.put("user" + i);
+        for (int i = 0; i < 10_000; i++) assertTrue(f.mightContain("user" + i));
+
+        int fp = 0;
+        for (int i = 0; i < 10_000; i++) if (f.mightContain("other" + i)) fp++;
+        assertTrue("false positive rate too high: " + fp, fp < 300);
+    }
+
+    @Test
+    public void beforeWarmUp_everyCheckGoesToDb() {
+        UsernameIndex idx = new UsernameIndex(1000, 0.01, 100);
+        assertFalse(idx.isReady());
+        assertFalse(idx.isKnownTaken("alice"));
+        assertEquals(UsernameIndex.Availability.TAKEN, idx.check("alice", h2));
+        assertEquals(UsernameIndex.Availability.AVAILABLE, idx.check("carol", h2));
+        assertEquals(UsernameIndex.Availability.UNKNOWN, idx.check("carol", null));
+    }
+
+    @Test
+    public void afterWarmUp_answersFromMemory() throws Exception {
+        UsernameIndex idx = new UsernameIndex(1000, 0.01, 100);
+        assertEquals(2, idx.warm(h2));
+
+        assertEquals(UsernameIndex.Availability.TAKEN, idx.check("alice", NO_DB));
+        assertEquals(UsernameIndex.Availability.TAKEN, idx.check("BOB", NO_DB));
+        assertEquals(UsernameIndex.Availability.AVAILABLE, idx.check("carol", NO_DB));
+        assertTrue(idx.isKnownTaken("Alice"));
+
+        idx.add("carol");
+        assertEquals(UsernameIndex.Availability.TAKEN, idx.check("carol", NO_DB));
+    }
+
+    @Test
+    public void evictedName_isConfirmedAgainstDb() throws Exception {
+        UsernameIndex idx = new UsernameIndex(1000, 0.01, 16);
+        idx.warm(h2);
+        for (int i = 0; i < 32; i++) idx.add("filler" + i); // pushes alice/bob out of the LRU set
+
+        assertFalse(idx.isKnownTaken("alice"));
+        assertEquals(UsernameIndex.Availability.TAKEN, idx.check("alice", h2));
+        assertTrue(idx.isKnownTaken("alice"));
+    }
+}
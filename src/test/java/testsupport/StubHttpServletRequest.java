@@ -20,6 +20,7 @@ public class StubHttpServletRequest implements HttpServletRequest {
     private final Map<String, String[]> params = new HashMap<>();
     private String method = "POST";
     private String contentType = "application/json";
+    private String remoteAddr = "127.0.0.1";
 
     public StubHttpServletRequest(String body) {
         this.body = (body == null ? "" : body);
@@ -52,6 +53,10 @@ public class StubHttpServletRequest implements HttpServletRequest {
 
     public void setMethod(String m) { this.method = m; }
 
+    public void setHeader(String name, String value) { headers.put(name, value); }
+
+    public void setRemoteAddr(String addr) { this.remoteAddr = addr; }
+
     @Override
     public String getMethod() { return method; }
 
@@ -123,7 +128,7 @@ public class StubHttpServletRequest implements HttpServletRequest {
     @Override public String getServerName() { return "localhost"; }
     @Override public int getServerPort() { return 80; }
     public BufferedReader getReader(String charset) throws IOException { return getReader(); } // 兼容部分 IDE 补全
-    @Override public String getRemoteAddr() { return "127.0.0.1"; }
+    @Override public String getRemoteAddr() { return remoteAddr; }
     @Override public String getRemoteHost() { return "localhost"; }
     @Override public Locale getLocale() { return Locale.getDefault(); }
     @Override public Enumeration<Locale> getLocales() { return Collections.enumeration(Collections.singletonList(getLocale())); }
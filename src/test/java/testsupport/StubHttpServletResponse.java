@@ -4,10 +4,11 @@ import javax.servlet.ServletOutputStream;
 import javax.servlet.WriteListener;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.Map;
 import java.util.function.Supplier;
@@ -23,6 +24,9 @@ public class StubHttpServletResponse implements HttpServletResponse {
   private int status = SC_OK;
   private final StringWriter bodyWriter = new StringWriter();
   private final PrintWriter writer = new PrintWriter(bodyWriter, true);
+  /** bytes from getOutputStream(), decoded as UTF-8 into the body on flush */
+  private final ByteArrayOutputStream pendingBytes = new ByteArrayOutputStream();
+  private int contentLength = -1;
   private String contentType = "application/json";
   private String characterEncoding = "UTF-8";
   private boolean committed = false;
@@ -35,7 +39,19 @@ public class StubHttpServletResponse implements HttpServletResponse {
 
   public int getStatus() { return status; }
 
-  public String getBody() { return bodyWriter.toString(); }
+  public String getBody() {
+    drainBytes();
+    return bodyWriter.toString();
+  }
+
+  /** value of the last setContentLength call, or -1 */
+  public int getContentLength() { return contentLength; }
+
+  private void drainBytes() {
+    if (pendingBytes.size() == 0) return;
+    bodyWriter.write(new String(pendingBytes.toByteArray(), StandardCharsets.UTF_8));
+    pendingBytes.reset();
+  }
 
   public String getRedirectLocation() { return redirectLocation; }
 
@@ -75,18 +91,19 @@ public class StubHttpServletResponse implements HttpServletResponse {
   @Override public PrintWriter getWriter() { return writer; }
 
   @Override public ServletOutputStream getOutputStream() {
-    // Provide a minimal OutputStream that writes into the same body as getWriter()
+    // Provide a minimal OutputStream that writes into the same body as getWriter(), decoding UTF-8
     return new ServletOutputStream() {
-      private final Writer w = writer;
       @Override public boolean isReady() { return true; }
       @Override public void setWriteListener(WriteListener writeListener) { /* not needed in tests */ }
-      @Override public void write(int b) throws IOException { w.write(b); }
-      @Override public void flush() throws IOException { w.flush(); }
+      @Override public void write(int b) { pendingBytes.write(b); }
+      @Override public void write(byte[] b, int off, int len) { pendingBytes.write(b, off, len); }
+      @Override public void flush() { writer.flush(); drainBytes(); }
     };
   }
 
   @Override public void flushBuffer() throws IOException {
     writer.flush();
+    drainBytes();
     committed = true;
   }
 
@@ -94,6 +111,7 @@ public class StubHttpServletResponse implements HttpServletResponse {
 
   @Override public void resetBuffer() {
     bodyWriter.getBuffer().setLength(0);
+    pendingBytes.reset();
   }
 
   @Override public void reset() {
@@ -157,9 +175,9 @@ public class StubHttpServletResponse implements HttpServletResponse {
 
   @Override public void addIntHeader(String name, int value) { addHeader(name, String.valueOf(value)); }
 
-  @Override public void setContentLength(int len) { /* not needed by tests */ }
+  @Override public void setContentLength(int len) { this.contentLength = len; }
 
-  @Override public void setContentLengthLong(long len) { /* not needed by tests */ }
+  @Override public void setContentLengthLong(long len) { this.contentLength = (int) len; }
 
   @Override public void setBufferSize(int size) { /* not needed by tests */ }
 